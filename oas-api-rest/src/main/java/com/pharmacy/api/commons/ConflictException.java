@@ -0,0 +1,26 @@
+package com.pharmacy.api.commons;
+
+/**
+ * Escritura rechazada porque la entidad cambió desde que se leyó
+ * (concurrencia optimista). El cliente debe volver a leer y reintentar.
+ */
+public class ConflictException extends RuntimeException {
+
+    private final Long currentRevision;
+
+    public ConflictException(String message) {
+        this(message, null);
+    }
+
+    public ConflictException(String message, Long currentRevision) {
+        super(message);
+        this.currentRevision = currentRevision;
+    }
+
+    /**
+     * Revisión vigente de la entidad, o null si ya no existe.
+     */
+    public Long getCurrentRevision() {
+        return currentRevision;
+    }
+}
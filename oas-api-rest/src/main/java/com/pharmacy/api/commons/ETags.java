@@ -0,0 +1,37 @@
+package com.pharmacy.api.commons;
+
+import jakarta.ws.rs.core.EntityTag;
+
+/**
+ * Conversión entre revisiones de entidades y los encabezados ETag / If-Match.
+ */
+public final class ETags {
+
+    private ETags() {
+    }
+
+    public static EntityTag of(long revision) {
+        return new EntityTag(Long.toString(revision));
+    }
+
+    /**
+     * Revisión esperada según If-Match, o null si no se envió (o es "*").
+     */
+    public static Long parseIfMatch(String header) {
+        if (header == null || header.isBlank() || header.trim().equals("*")) {
+            return null;
+        }
+        String value = header.trim();
+        if (value.startsWith("W/")) {
+            value = value.substring(2);
+        }
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("El encabezado If-Match debe contener la revisión devuelta en el ETag, por ejemplo \"42\"");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.pharmacy.api.commons;
+
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
+
+import jakarta.validation.ConstraintViolationException;
+
+/**
+ * Estado HTTP, código y mensaje de error que corresponden a una excepción.
+ * Es la única traducción de excepciones a errores de la API: la usan
+ * {@link GlobalExceptionMapper} para las respuestas y el lote de ventas para
+ * cada venta que falla, así ambos informan lo mismo.
+ *
+ * @param status  estado HTTP
+ * @param code    código de error
+ * @param message descripción para el cliente
+ */
+public record ErrorMapping(int status, String code, String message) {
+
+    public static final int INTERNAL_SERVER_ERROR = 500;
+
+    public static ErrorMapping of(Exception exception) {
+        if (exception instanceof AlreadyExistsException) {
+            return new ErrorMapping(409, "ALREADY_EXISTS", exception.getMessage());
+        }
+        // Concurrencia optimista
+        if (exception instanceof ConflictException) {
+            return new ErrorMapping(409, "CONFLICT", exception.getMessage());
+        }
+        if (exception instanceof NotFoundException) {
+            return new ErrorMapping(404, "NOT_FOUND", exception.getMessage());
+        }
+        if (exception instanceof BadRequestException) {
+            return new ErrorMapping(400, "BAD_REQUEST", exception.getMessage());
+        }
+        if (exception instanceof PayloadTooLargeException) {
+            return new ErrorMapping(413, "PAYLOAD_TOO_LARGE", exception.getMessage());
+        }
+        if (exception instanceof JsonProcessingException) {
+            return new ErrorMapping(400, "INVALID_JSON", exception.getMessage());
+        }
+        if (exception instanceof ConstraintViolationException violations) {
+            String detail = violations.getConstraintViolations().stream()
+                .map(violation -> {
+                    String path = violation.getPropertyPath().toString();
+                    // Extraer solo el nombre del campo del path completo
+                    String fieldName = path.contains(".") ? path.substring(path.lastIndexOf('.') + 1) : path;
+                    return fieldName + ": " + violation.getMessage();
+                })
+                .sorted()
+                .collect(Collectors.joining("; "));
+            return new ErrorMapping(400, "VALIDATION_ERROR", "Error de validación: " + detail);
+        }
+        // Excepciones de Jackson (JSON parsing)
+        if (exception instanceof JsonParseException parse) {
+            return new ErrorMapping(400, "INVALID_JSON_FORMAT", "JSON malformado: " + parse.getOriginalMessage());
+        }
+        if (exception instanceof JsonMappingException mapping) {
+            return new ErrorMapping(400, "JSON_MAPPING_ERROR", "Error en el mapeo JSON: " + mapping.getOriginalMessage());
+        }
+        if (exception instanceof InvalidFormatException format) {
+            String fieldName = format.getPath().isEmpty() ? "campo desconocido" : format.getPath().get(0).getFieldName();
+            return new ErrorMapping(400, "INVALID_FORMAT", String.format(
+                "Formato inválido para el campo '%s'. Se esperaba: %s",
+                fieldName, format.getTargetType().getSimpleName()));
+        }
+        if (exception instanceof UnrecognizedPropertyException unrecognized) {
+            return new ErrorMapping(400, "UNRECOGNIZED_FIELD", String.format(
+                "Campo no reconocido: '%s'. Campos permitidos: %s",
+                unrecognized.getPropertyName(), unrecognized.getKnownPropertyIds()));
+        }
+        if (exception instanceof MismatchedInputException mismatched) {
+            return new ErrorMapping(400, "MISMATCHED_INPUT", "Tipo de dato incorrecto: " + mismatched.getOriginalMessage());
+        }
+        return new ErrorMapping(INTERNAL_SERVER_ERROR, "INTERNAL_SERVER_ERROR", "Ocurrió un error interno en el servidor");
+    }
+
+    public boolean isInternal() {
+        return status == INTERNAL_SERVER_ERROR;
+    }
+}
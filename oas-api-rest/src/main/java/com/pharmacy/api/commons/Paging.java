@@ -0,0 +1,81 @@
+package com.pharmacy.api.commons;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Parámetros de paginación por cursor de los endpoints de listas.
+ *
+ * El cursor es opaco para el cliente: codifica la llave de orden del último
+ * elemento entregado y la página siguiente empieza justo después de ella, así
+ * que una página profunda cuesta lo mismo que la primera y las escrituras
+ * entre páginas no desplazan resultados.
+ */
+public final class Paging {
+
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 500;
+
+    private Paging() {
+    }
+
+    /**
+     * Tamaño de página pedido, o el predeterminado si no se envió.
+     */
+    public static int limit(Integer limit) {
+        int value = limit != null ? limit : DEFAULT_LIMIT;
+        if (value < 1 || value > MAX_LIMIT) {
+            throw new BadRequestException("El parámetro 'limit' debe estar entre 1 y " + MAX_LIMIT);
+        }
+        return value;
+    }
+
+    /**
+     * Último ID entregado según el cursor de una lista ordenada por ID, o 0
+     * para empezar desde el principio.
+     */
+    public static int afterId(String cursor) {
+        long[] key = parseCursor(cursor, 1);
+        if (key == null) {
+            return 0;
+        }
+        if (key[0] < 0 || key[0] > Integer.MAX_VALUE) {
+            throw new BadRequestException("El parámetro 'cursor' no es válido; use el nextCursor de la página anterior");
+        }
+        return (int) key[0];
+    }
+
+    public static String cursor(long... key) {
+        StringBuilder text = new StringBuilder();
+        for (long part : key) {
+            if (!text.isEmpty()) {
+                text.append('.');
+            }
+            text.append(part);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(text.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Llave codificada en el cursor, con {@code parts} componentes; null si no
+     * se envió cursor.
+     */
+    public static long[] parseCursor(String cursor, int parts) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String[] text = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.US_ASCII).split("\\.");
+            if (text.length == parts) {
+                long[] key = new long[parts];
+                for (int i = 0; i < parts; i++) {
+                    key[i] = Long.parseLong(text[i]);
+                }
+                return key;
+            }
+        } catch (IllegalArgumentException e) {
+            // Base64 o número inválido: se reporta igual que un cursor de otra lista
+        }
+        throw new BadRequestException("El parámetro 'cursor' no es válido; use el nextCursor de la página anterior");
+    }
+}
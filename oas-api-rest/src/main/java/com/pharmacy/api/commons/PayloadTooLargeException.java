@@ -0,0 +1,8 @@
+package com.pharmacy.api.commons;
+
+public class PayloadTooLargeException extends RuntimeException {
+    
+    public PayloadTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,238 @@
+package com.pharmacy.api.commons;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.pharmacy.api.model.Sale;
+import com.pharmacy.api.model.SaleProduct;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+
+/**
+ * Lee ventas del cuerpo de la solicitud token por token, sin enlazar antes
+ * el documento completo: las partidas se leen una a una, se validan al
+ * llegar y se dejan de leer en cuanto pasan del límite, así que un arreglo
+ * products enorme se rechaza sin haberlo guardado en memoria.
+ *
+ * Los campos sueltos de la venta (fechas, montos, IDs) sí se enlazan con el
+ * ObjectMapper de la aplicación, para que se lean igual que antes.
+ *
+ * Límites: {@code pharmacy.sales.max-bytes} y {@code pharmacy.sales.max-items}
+ * por venta; los lotes traen los suyos. Un Content-Length mayor al límite se
+ * rechaza antes de leer; sin él, la lectura se corta al pasar del límite.
+ * Ambos casos responden 413.
+ */
+@ApplicationScoped
+public class SaleJsonParser {
+
+    @Inject
+    ObjectMapper mapper;
+
+    @Inject
+    Validator validator;
+
+    @ConfigProperty(name = "pharmacy.sales.max-bytes", defaultValue = "262144")
+    long maxBytes;
+
+    @ConfigProperty(name = "pharmacy.sales.max-items", defaultValue = "1000")
+    int maxItems;
+
+    /**
+     * Una venta (POST y PUT /sales), o null si el cuerpo está vacío. Cada
+     * partida se valida al leerla; la primera inválida corta la lectura.
+     */
+    public Sale readSale(InputStream entity, String contentLength) throws IOException {
+        checkContentLength(contentLength, maxBytes, "La venta");
+        LimitedInputStream in = new LimitedInputStream(entity, maxBytes);
+        try (JsonParser parser = mapper.getFactory().createParser(in)) {
+            return parser.nextToken() != null ? readSale(parser, true) : null;
+        } catch (JsonMappingException e) {
+            // Sin esto RESTEasy responde 400 sin cuerpo en lugar del formato de GlobalExceptionMapper
+            throw new JsonProcessingException("La venta no es JSON válido: " + e.getOriginalMessage(), e);
+        } catch (IOException | RuntimeException e) {
+            if (in.exceeded()) {
+                throw new PayloadTooLargeException("La venta pasa del límite de " + maxBytes + " bytes");
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Ventas de un lote, como arreglo JSON o como NDJSON (una por línea). Las
+     * partidas no se validan aquí: cada venta del lote se valida por separado
+     * para que una inválida no rechace a las demás.
+     */
+    public List<Sale> readSales(InputStream entity, String contentLength, long maxBatchBytes, int maxSales)
+            throws IOException {
+        checkContentLength(contentLength, maxBatchBytes, "El lote");
+        LimitedInputStream in = new LimitedInputStream(entity, maxBatchBytes);
+        List<Sale> sales = new ArrayList<>();
+        try (JsonParser parser = mapper.getFactory().createParser(in)) {
+            JsonToken token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+            while (token != null && !(array && token == JsonToken.END_ARRAY)) {
+                if (sales.size() == maxSales) {
+                    throw new PayloadTooLargeException("El lote no puede tener más de " + maxSales + " ventas");
+                }
+                sales.add(readSale(parser, false));
+                token = parser.nextToken();
+            }
+        } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
+            if (in.exceeded()) {
+                throw new PayloadTooLargeException("El lote pasa del límite de " + maxBatchBytes + " bytes");
+            }
+            throw new JsonProcessingException("El lote no es JSON válido en la venta " + sales.size() + ": "
+                + e.getOriginalMessage(), e);
+        } catch (IOException | RuntimeException e) {
+            if (in.exceeded()) {
+                throw new PayloadTooLargeException("El lote pasa del límite de " + maxBatchBytes + " bytes");
+            }
+            throw e;
+        }
+        return sales;
+    }
+
+    /**
+     * Lee la venta que empieza en el token actual. El arreglo products se
+     * recorre aquí; el resto de los campos se junta en un árbol pequeño y se
+     * enlaza al final.
+     */
+    private Sale readSale(JsonParser parser, boolean validateItems) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new JsonProcessingException("Se esperaba una venta como objeto JSON");
+        }
+        ObjectNode fields = mapper.createObjectNode();
+        List<SaleProduct> products = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (Sale.JSON_PROPERTY_PRODUCTS.equals(name) && value == JsonToken.START_ARRAY) {
+                products = new ArrayList<>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (products.size() == maxItems) {
+                        throw new PayloadTooLargeException("La venta no puede tener más de " + maxItems + " productos");
+                    }
+                    SaleProduct product = mapper.readValue(parser, SaleProduct.class);
+                    if (validateItems) {
+                        validate(product, products.size());
+                    }
+                    products.add(product);
+                }
+            } else {
+                fields.set(name, mapper.readTree(parser));
+            }
+        }
+        Sale sale = mapper.treeToValue(fields, Sale.class);
+        if (products != null) {
+            sale.setProducts(products);
+        }
+        return sale;
+    }
+
+    /**
+     * Mismas reglas que {@code @Valid} sobre el modelo. Se responde con
+     * BadRequestException y no con ConstraintViolationException porque esta
+     * la atrapa primero el mapper de Quarkus, que la trata como error interno
+     * cuando no viene de un parámetro.
+     */
+    private void validate(SaleProduct product, int index) {
+        if (product == null) {
+            throw new BadRequestException("Cada producto de la venta requiere su ID");
+        }
+        Set<ConstraintViolation<SaleProduct>> violations = validator.validate(product);
+        if (!violations.isEmpty()) {
+            throw new BadRequestException("Error de validación: " + violations.stream()
+                .map(violation -> Sale.JSON_PROPERTY_PRODUCTS + "[" + index + "]." + violation.getPropertyPath()
+                    + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; ")));
+        }
+    }
+
+    private static void checkContentLength(String contentLength, long limit, String what) {
+        if (contentLength == null) {
+            return;
+        }
+        try {
+            if (Long.parseLong(contentLength.trim()) > limit) {
+                throw new PayloadTooLargeException(what + " pasa del límite de " + limit + " bytes");
+            }
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Content-Length inválido: " + contentLength);
+        }
+    }
+
+    /**
+     * Corta la lectura en cuanto pasa de {@code limit} bytes. Jackson puede
+     * envolver la excepción, así que además queda marcado para reconocerla.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+
+        private final long limit;
+        private long read;
+        private boolean exceeded;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        boolean exceeded() {
+            return exceeded;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long n) throws IOException {
+            read += n;
+            if (read > limit) {
+                exceeded = true;
+                throw new IOException("Se pasó del límite de " + limit + " bytes");
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.pharmacy.api.commons;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import com.pharmacy.api.model.Sale;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.MessageBodyReader;
+import jakarta.ws.rs.ext.Provider;
+
+/**
+ * Cuerpos JSON de tipo {@link Sale}: en lugar del lector genérico de
+ * Jackson, que enlaza el documento completo antes de validar, se leen con
+ * {@link SaleJsonParser} y sus límites.
+ */
+@Provider
+@Consumes(MediaType.APPLICATION_JSON)
+public class SaleJsonReader implements MessageBodyReader<Sale> {
+
+    @Inject
+    SaleJsonParser parser;
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return type == Sale.class;
+    }
+
+    @Override
+    public Sale readFrom(Class<Sale> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                         MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException {
+        return parser.readSale(entityStream, httpHeaders.getFirst(HttpHeaders.CONTENT_LENGTH));
+    }
+}
@@ -0,0 +1,69 @@
+package com.pharmacy.api.data;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generador de IDs enteros positivos sin contención.
+ *
+ * Cada hilo reserva un bloque de secuencias del contador global con un solo
+ * getAndAdd y después entrega IDs de su bloque sin sincronización. El ID final
+ * combina la secuencia con el número de nodo en los bits bajos:
+ * {@code id = (secuencia << nodeBits) | node}, de modo que varias instancias con
+ * nodos distintos nunca generan el mismo ID sin coordinarse entre sí.
+ *
+ * Los IDs son únicos y crecientes dentro de un hilo, pero no consecutivos
+ * entre hilos: los bloques que no se terminan de usar dejan huecos.
+ */
+public class BlockIdAllocator {
+
+    private final int node;
+    private final int nodeBits;
+    private final int blockSize;
+    private final long maxSequence;
+    private final AtomicLong nextBlock;
+    private final ThreadLocal<long[]> block = ThreadLocal.withInitial(() -> new long[] {0, 0});
+
+    public BlockIdAllocator(int node, int nodeBits, int blockSize, long firstSequence) {
+        if (nodeBits < 0 || nodeBits > 16) {
+            throw new IllegalArgumentException("nodeBits debe estar entre 0 y 16: " + nodeBits);
+        }
+        if (node < 0 || node >= (1 << nodeBits)) {
+            throw new IllegalArgumentException("El nodo " + node + " no cabe en " + nodeBits + " bits");
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize debe ser mayor a 0: " + blockSize);
+        }
+        this.node = node;
+        this.nodeBits = nodeBits;
+        this.blockSize = blockSize;
+        this.maxSequence = (long) Integer.MAX_VALUE >> nodeBits;
+        this.nextBlock = new AtomicLong(Math.max(firstSequence, 1));
+    }
+
+    public int next() {
+        long[] current = block.get();
+        if (current[0] >= current[1]) {
+            long start = nextBlock.getAndAdd(blockSize);
+            current[0] = start;
+            current[1] = start + blockSize;
+        }
+        long sequence = current[0]++;
+        if (sequence > maxSequence) {
+            throw new IllegalStateException("Se agotó el espacio de IDs para el nodo " + node);
+        }
+        return (int) ((sequence << nodeBits) | node);
+    }
+
+    /**
+     * Garantiza que los bloques que se reserven a partir de ahora queden por
+     * encima de un ID ya existente (por ejemplo, al cargar datos guardados).
+     */
+    public void advancePast(int existingId) {
+        long sequence = ((long) existingId >>> nodeBits) + 1;
+        nextBlock.accumulateAndGet(sequence, Math::max);
+    }
+
+    public int getNode() {
+        return node;
+    }
+}
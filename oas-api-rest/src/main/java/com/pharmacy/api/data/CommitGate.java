@@ -0,0 +1,44 @@
+package com.pharmacy.api.data;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compuerta entre las escrituras de los almacenes y el snapshot del journal.
+ *
+ * Cada escritura anexa su registro al journal en {@code onCommit} y lo publica
+ * después; entre ambos pasos el registro ya está en el segmento pero el
+ * cambio todavía no se ve en memoria. Las escrituras pasan la compuerta en
+ * modo compartido ({@link #enter()}) desde antes de tomar el lock de su
+ * almacén hasta después de publicar, y el snapshot la cierra
+ * ({@link #close()}) mientras cambia de segmento y captura el estado: así
+ * todo registro de los segmentos que va a borrar ya está en la foto.
+ *
+ * Se entra antes que a cualquier lock o monitor de un almacén, para que quien
+ * la cierra nunca espere a un escritor que a su vez la espera a ella. Es
+ * reentrante: un {@code onCommit} que escribe en otro almacén (la reserva de
+ * existencias dentro de una venta) vuelve a entrar sin bloquearse.
+ */
+public final class CommitGate {
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void enter() {
+        lock.readLock().lock();
+    }
+
+    public void exit() {
+        lock.readLock().unlock();
+    }
+
+    /**
+     * Espera a que terminen las escrituras en curso y detiene las nuevas
+     * hasta {@link #open()}.
+     */
+    public void close() {
+        lock.writeLock().lock();
+    }
+
+    public void open() {
+        lock.writeLock().unlock();
+    }
+}
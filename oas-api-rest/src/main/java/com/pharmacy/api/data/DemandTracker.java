@@ -0,0 +1,136 @@
+package com.pharmacy.api.data;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Demanda diaria estimada por (farmacia, producto), actualizada con cada
+ * venta nueva en lugar de recorrer las ventas guardadas.
+ *
+ * Cada estimador lleva las unidades del día en curso y un promedio móvil
+ * exponencial (EWMA) de los días cerrados: al cambiar de día se pliega el
+ * día cerrado con peso {@code pharmacy.demand.alpha} y cada día sin ventas
+ * decae el promedio por (1 - alpha). El día en curso entra con un peso
+ * proporcional a la fracción transcurrida, así que el estimado no cae al
+ * empezar el día ni se infla antes de que termine. Los días se cuentan con
+ * el reloj del servidor (UTC, en milisegundos), no con saleDate, para que
+ * una venta con fecha atrasada no reabra un día ya plegado.
+ *
+ * Los estimadores se agrupan por farmacia, así que leer los de una sucursal
+ * cuesta O(productos de la sucursal). Cada estimador tiene su propio
+ * monitor; no hay un lock global. Viven solo en memoria.
+ */
+@ApplicationScoped
+public class DemandTracker {
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    @ConfigProperty(name = "pharmacy.demand.alpha", defaultValue = "0.3")
+    double alpha;
+
+    private final ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, Estimator>> byPharmacy = new ConcurrentHashMap<>();
+
+    public DemandTracker() {
+    }
+
+    DemandTracker(double alpha) {
+        this.alpha = alpha;
+    }
+
+    /**
+     * Suma las partidas de una venta a la demanda del día que contiene {@code nowMillis}.
+     */
+    public void record(SaleRecord sale, long nowMillis) {
+        Map<Integer, Estimator> products = byPharmacy.computeIfAbsent(sale.pharmacyId(), k -> new ConcurrentHashMap<>());
+        for (int i = 0; i < sale.itemCount(); i++) {
+            products.computeIfAbsent(sale.productId(i), k -> new Estimator())
+                .add(nowMillis / MILLIS_PER_DAY, sale.quantity(i), alpha);
+        }
+    }
+
+    /**
+     * Unidades por día estimadas del producto en la farmacia, o 0 si nunca se ha vendido.
+     */
+    public double dailyUnits(int pharmacyId, int productId, long nowMillis) {
+        Map<Integer, Estimator> products = byPharmacy.get(pharmacyId);
+        Estimator estimator = products != null ? products.get(productId) : null;
+        return estimator != null ? estimate(estimator, nowMillis) : 0;
+    }
+
+    /**
+     * Recorre los productos vendidos en la farmacia con su demanda estimada.
+     */
+    public void forEach(int pharmacyId, long nowMillis, ProductDemand consumer) {
+        Map<Integer, Estimator> products = byPharmacy.get(pharmacyId);
+        if (products != null) {
+            products.forEach((productId, estimator) -> consumer.accept(productId, estimate(estimator, nowMillis)));
+        }
+    }
+
+    private double estimate(Estimator estimator, long nowMillis) {
+        return estimator.estimate(nowMillis / MILLIS_PER_DAY,
+            (double) (nowMillis % MILLIS_PER_DAY) / MILLIS_PER_DAY, alpha);
+    }
+
+    @FunctionalInterface
+    public interface ProductDemand {
+        void accept(int productId, double dailyUnits);
+    }
+
+    /**
+     * EWMA de unidades diarias de un producto en una farmacia.
+     */
+    static final class Estimator {
+
+        private long day = Long.MIN_VALUE;
+        private long unitsToday;
+        /** NaN mientras no haya un día cerrado; el primero se toma tal cual. */
+        private double average = Double.NaN;
+
+        synchronized void add(long today, long units, double alpha) {
+            if (today > day) {
+                if (day != Long.MIN_VALUE) {
+                    average = fold(today, alpha);
+                }
+                day = today;
+                unitsToday = 0;
+            }
+            unitsToday += units;
+        }
+
+        /**
+         * Estimado a la fracción {@code elapsed} del día {@code today}. El
+         * día en curso se proyecta a día completo y entra con peso
+         * alpha x elapsed: alpha x unidades + (1 - alpha x elapsed) x
+         * promedio. Al empezar el día vale el promedio de los cerrados, al
+         * terminarlo coincide con plegarlo, y una racha de ventas se nota el
+         * mismo día. Sin días cerrados se toman las unidades de hoy tal cual.
+         */
+        synchronized double estimate(long today, double elapsed, double alpha) {
+            if (day == Long.MIN_VALUE) {
+                return 0;
+            }
+            double closed = today > day ? fold(today, alpha) : average;
+            long units = today > day ? 0 : unitsToday;
+            if (Double.isNaN(closed)) {
+                return units;
+            }
+            return alpha * units + (1 - alpha * elapsed) * closed;
+        }
+
+        /**
+         * Promedio tras cerrar {@link #day} y los días vacíos hasta {@code today}.
+         */
+        private double fold(long today, double alpha) {
+            return observe(average, unitsToday, alpha) * Math.pow(1 - alpha, today - day - 1);
+        }
+
+        private static double observe(double average, long units, double alpha) {
+            return Double.isNaN(average) ? units : alpha * units + (1 - alpha) * average;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.pharmacy.api.data;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.stream.StreamSupport;
+
+/**
+ * Particiones que la retención desprendió del almacén de ventas: todas las
+ * ventas con saleDate anterior a {@code before} que existían en la revisión
+ * {@code revision}, una raíz por partición y shard.
+ */
+public record ExpiredSales(OffsetDateTime before, long revision, List<PersistentIntMap<Versioned<SaleRecord>>> partitions) {
+
+    public boolean isEmpty() {
+        return partitions.isEmpty();
+    }
+
+    public long size() {
+        long count = 0;
+        for (PersistentIntMap<Versioned<SaleRecord>> partition : partitions) {
+            count += partition.size();
+        }
+        return count;
+    }
+
+    /**
+     * Ventas de todas las particiones, una tras otra y sin ordenar.
+     */
+    public Iterable<Versioned<SaleRecord>> sales() {
+        return () -> partitions.stream()
+            .flatMap(partition -> StreamSupport.stream(partition.values().spliterator(), false))
+            .iterator();
+    }
+}
@@ -0,0 +1,59 @@
+package com.pharmacy.api.data;
+
+import java.util.Arrays;
+
+/**
+ * Conjunto inmutable de IDs para responder "¿existe?" con una lectura de
+ * palabra: un bitset para los IDs menores que {@link #DENSE_LIMIT} y un
+ * arreglo ordenado (búsqueda binaria) para los pocos que quedan por encima.
+ */
+public final class IdSet {
+
+    /** Tope del bitset: 1M de IDs, 128 KB. */
+    static final int DENSE_LIMIT = 1 << 20;
+
+    public static final IdSet EMPTY = new IdSet(new long[0], new int[0]);
+
+    private final long[] words;
+    private final int[] sparse;
+
+    private IdSet(long[] words, int[] sparse) {
+        this.words = words;
+        this.sparse = sparse;
+    }
+
+    /**
+     * IDs (las llaves) de una versión de un almacén.
+     */
+    public static IdSet of(PersistentIntMap<?> entities) {
+        int[] maxDense = {-1};
+        int[] sparseCount = {0};
+        entities.forEach((id, value) -> {
+            if (id >= 0 && id < DENSE_LIMIT) {
+                maxDense[0] = Math.max(maxDense[0], id);
+            } else {
+                sparseCount[0]++;
+            }
+        });
+        long[] words = new long[(maxDense[0] >> 6) + 1];
+        int[] sparse = new int[sparseCount[0]];
+        int[] s = {0};
+        entities.forEach((id, value) -> {
+            if (id >= 0 && id < DENSE_LIMIT) {
+                words[id >> 6] |= 1L << id;
+            } else {
+                sparse[s[0]++] = id;
+            }
+        });
+        Arrays.sort(sparse);
+        return new IdSet(words, sparse);
+    }
+
+    public boolean contains(int id) {
+        if (id >= 0 && id < DENSE_LIMIT) {
+            int word = id >> 6;
+            return word < words.length && (words[word] & 1L << id) != 0;
+        }
+        return Arrays.binarySearch(sparse, id) >= 0;
+    }
+}
@@ -0,0 +1,1036 @@
+package com.pharmacy.api.data;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+
+/**
+ * Implementación en memoria de {@link SaleRepository}, repartida en shards
+ * por pharmacyId y, dentro de cada shard, en particiones por saleDate (un día
+ * por omisión).
+ *
+ * Cada partición es un valor inmutable: el mapa persistente saleId -> versión
+ * más los índices secundarios pharmacyId -> ventas y employeeId -> ventas de
+ * sus ventas. Cada entrada de un índice recuerda su lista ordenada la primera
+ * vez que se consulta, así que las lecturas repetidas no ordenan ni copian
+ * nada hasta que una escritura la reemplaza. El estado de un shard son sus
+ * particiones más un directorio saleId -> partición; una escritura arma un
+ * estado nuevo que comparte casi todo con el anterior y lo publica en un campo
+ * volatile bajo el lock del shard, así que ventas de farmacias en shards
+ * distintos no compiten entre sí, los lectores no toman locks y
+ * {@code onCommit} se ejecuta en el orden en que se publica cada venta, justo
+ * antes de publicarla. Cada escritura pasa la {@link CommitGate} antes de
+ * tomar cualquier lock y la deja después de publicar.
+ *
+ * Una venta que cambia de farmacia puede cambiar de shard: se toman ambos
+ * locks (en orden de índice) y se publica primero en el destino, así que la
+ * venta nunca falta de los dos a la vez. Esos movimientos toman además el
+ * lock exclusivo de {@code moves}; las lecturas que recorren varios shards
+ * validan contra él y se repiten si un movimiento ocurrió a la mitad, de modo
+ * que nunca ven una venta duplicada o ausente.
+ *
+ * La retención ({@link #dropBefore}) desprende particiones completas: quitar
+ * una cuesta lo mismo sin importar cuántas ventas tenga. Las entradas del
+ * directorio que apuntaban a ella quedan huérfanas (las búsquedas las ignoran
+ * porque la partición ya no está) y las escrituras posteriores del shard las
+ * barren de a pocas.
+ */
+public class InMemorySaleRepository implements SaleRepository {
+
+    /** Debajo de este total las lecturas de todos los shards no se paralelizan. */
+    private static final int PARALLEL_THRESHOLD = 10_000;
+
+    /** Entradas huérfanas del directorio que barre cada escritura. */
+    private static final int SWEEP_PER_WRITE = 4;
+
+    /** Partición de las ventas sin saleDate; la retención nunca la desprende. */
+    private static final int UNDATED = Integer.MIN_VALUE;
+
+    private static final Comparator<Versioned<SaleRecord>> BY_ID = Comparator.comparingInt(v -> v.value().saleId());
+
+    private record State(PersistentIntMap<Partition> partitions, PersistentIntMap<Integer> directory, int size) {
+
+        static final State EMPTY = new State(PersistentIntMap.empty(), PersistentIntMap.empty(), 0);
+
+        Versioned<SaleRecord> get(int saleId) {
+            Integer day = directory.get(saleId);
+            Partition partition = day != null ? partitions.get(day) : null;
+            return partition != null ? partition.sales().get(saleId) : null;
+        }
+    }
+
+    /**
+     * Ventas de un shard cuya saleDate cae en la misma partición, con sus
+     * índices. {@code day} se comparte como valor del directorio para no
+     * crear un Integer por venta.
+     */
+    private record Partition(Integer day, PersistentIntMap<Versioned<SaleRecord>> sales,
+                             PersistentIntMap<SaleGroup> byPharmacy, PersistentIntMap<SaleGroup> byEmployee) {
+
+        static Partition empty(int day) {
+            return new Partition(day, PersistentIntMap.empty(), PersistentIntMap.empty(), PersistentIntMap.empty());
+        }
+
+        /**
+         * Partición con la venta {@code id} cambiada de {@code previous} a
+         * {@code next} (cualquiera puede ser null) y los índices al día.
+         */
+        Partition with(int id, Versioned<SaleRecord> previous, Versioned<SaleRecord> next) {
+            return new Partition(day,
+                next != null ? sales.put(id, next) : sales.remove(id),
+                reindex(byPharmacy, SaleRecord::pharmacyId, id, previous, next),
+                reindex(byEmployee, SaleRecord::employeeId, id, previous, next));
+        }
+    }
+
+    /**
+     * Ventas de una farmacia o de un empleado dentro de una partición. Es inmutable como el resto del estado; la lista
+     * ordenada se calcula a lo más una vez por entrada (una carrera solo
+     * calcula dos listas iguales).
+     */
+    private static final class SaleGroup {
+        final PersistentIntMap<Versioned<SaleRecord>> sales;
+        private volatile List<SaleRecord> sorted;
+
+        SaleGroup(PersistentIntMap<Versioned<SaleRecord>> sales) {
+            this.sales = sales;
+        }
+
+        List<SaleRecord> sorted() {
+            List<SaleRecord> result = sorted;
+            if (result == null) {
+                result = sales.sortedValues().stream().map(Versioned::value).toList();
+                sorted = result;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Ventas de una partición desprendida cuyo saleId aún puede estar en el
+     * directorio del shard.
+     */
+    private record Sweep(int day, Iterator<Versioned<SaleRecord>> sales) {
+    }
+
+    /**
+     * Además del estado, cada shard ordena sus ventas por (saleDate, saleId)
+     * en una skip list por partición para las páginas por fecha. Las listas no
+     * son parte de la foto inmutable: la versión nueva entra antes de publicar
+     * el estado y la anterior sale después, así que una venta nunca falta de
+     * ellas; si su fecha cambia, por un momento aparece en ambas posiciones.
+     */
+    private static final class Shard {
+        final ReentrantLock lock = new ReentrantLock();
+        final ConcurrentSkipListMap<Integer, ConcurrentSkipListMap<SaleTimeKey, Versioned<SaleRecord>>> timelines =
+            new ConcurrentSkipListMap<>();
+        // Solo se toca bajo el lock del shard
+        final ArrayDeque<Sweep> sweeps = new ArrayDeque<>();
+        volatile State state = State.EMPTY;
+
+        ConcurrentSkipListMap<SaleTimeKey, Versioned<SaleRecord>> timeline(int day) {
+            return timelines.computeIfAbsent(day, d -> new ConcurrentSkipListMap<>());
+        }
+    }
+
+    private final Shard[] shards;
+    private final StampedLock moves = new StampedLock();
+    private final RevisionClock clock;
+    private final CommitGate commits;
+    private final long partitionSeconds;
+
+    public InMemorySaleRepository() {
+        this(new RevisionClock(), 1);
+    }
+
+    public InMemorySaleRepository(RevisionClock clock, int shardCount) {
+        this(clock, shardCount, Duration.ofDays(1));
+    }
+
+    public InMemorySaleRepository(RevisionClock clock, int shardCount, Duration partitionWidth) {
+        this(clock, new CommitGate(), shardCount, partitionWidth);
+    }
+
+    public InMemorySaleRepository(RevisionClock clock, CommitGate commits, int shardCount, Duration partitionWidth) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Se requiere al menos un shard de ventas");
+        }
+        if (partitionWidth.getSeconds() < 1) {
+            throw new IllegalArgumentException("Las particiones de ventas deben cubrir al menos un segundo");
+        }
+        this.clock = clock;
+        this.commits = commits;
+        this.partitionSeconds = partitionWidth.getSeconds();
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Particiones vivas sumando todos los shards.
+     */
+    public int partitionCount() {
+        int count = 0;
+        for (State state : capture()) {
+            count += state.partitions().size();
+        }
+        return count;
+    }
+
+    @Override
+    public List<SaleRecord> findAll() {
+        return versions().stream().map(Versioned::value).toList();
+    }
+
+    @Override
+    public List<PersistentIntMap<Versioned<SaleRecord>>> snapshot() {
+        List<PersistentIntMap<Versioned<SaleRecord>>> roots = new ArrayList<>();
+        for (State state : capture()) {
+            state.partitions().forEach((day, partition) -> roots.add(partition.sales()));
+        }
+        return roots;
+    }
+
+    /**
+     * Ordena cada partición en paralelo y las mezcla por saleId.
+     */
+    @Override
+    public List<Versioned<SaleRecord>> versions() {
+        List<PersistentIntMap<Versioned<SaleRecord>>> roots = snapshot();
+        long total = roots.stream().mapToLong(PersistentIntMap::size).sum();
+        Stream<PersistentIntMap<Versioned<SaleRecord>>> stream = roots.stream();
+        if (roots.size() > 1 && total >= PARALLEL_THRESHOLD) {
+            stream = stream.parallel();
+        }
+        return merge(stream.map(PersistentIntMap::sortedValues).toList());
+    }
+
+    @Override
+    public Optional<SaleRecord> findById(int saleId) {
+        Versioned<SaleRecord> version = lookup(saleId);
+        return version != null ? Optional.of(version.value()) : Optional.empty();
+    }
+
+    @Override
+    public Optional<Versioned<SaleRecord>> findVersion(int saleId) {
+        return Optional.ofNullable(lookup(saleId));
+    }
+
+    /**
+     * Si todas las ventas de la farmacia caen en una partición se devuelve su
+     * lista memorizada, O(1) mientras no reciba escrituras; si no, se mezclan
+     * las listas de cada partición, O(k log p).
+     */
+    @Override
+    public List<SaleRecord> findByPharmacy(int pharmacyId) {
+        List<List<SaleRecord>> parts = new ArrayList<>();
+        shardFor(pharmacyId).state.partitions().forEach((day, partition) -> {
+            SaleGroup group = partition.byPharmacy().get(pharmacyId);
+            if (group != null) {
+                parts.add(group.sorted());
+            }
+        });
+        if (parts.size() <= 1) {
+            return parts.isEmpty() ? List.of() : parts.get(0);
+        }
+        return Collections.unmodifiableList(page(parts, Integer.MIN_VALUE, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Las ventas de un empleado pueden estar en cualquier shard y partición:
+     * se posiciona la lista de cada una en el cursor y se mezclan solo las de
+     * la página, O(p log k + limit log p) con p particiones.
+     */
+    @Override
+    public List<SaleRecord> findByEmployee(int employeeId, int afterSaleId, int limit) {
+        List<List<SaleRecord>> parts = new ArrayList<>();
+        for (State state : capture()) {
+            state.partitions().forEach((day, partition) -> {
+                SaleGroup group = partition.byEmployee().get(employeeId);
+                if (group != null) {
+                    parts.add(group.sorted());
+                }
+            });
+        }
+        return page(parts, afterSaleId, limit);
+    }
+
+    /**
+     * Solo se recorren las particiones que se cruzan con el rango: cada shard
+     * encadena sus skip lists en orden de partición, se posiciona en O(log n)
+     * y se mezclan solo las ventas de la página, así que una página profunda
+     * cuesta lo mismo que la primera. Se repite si un movimiento entre shards
+     * o una retención ocurrió a la mitad, como las demás lecturas de todos los
+     * shards.
+     */
+    @Override
+    public List<SaleRecord> findByDate(SaleTimeKey after, SaleTimeKey before, int limit) {
+        long stamp = moves.tryOptimisticRead();
+        List<SaleRecord> page = pageByDate(after, before, limit);
+        if (moves.validate(stamp)) {
+            return page;
+        }
+        stamp = moves.readLock();
+        try {
+            return pageByDate(after, before, limit);
+        } finally {
+            moves.unlockRead(stamp);
+        }
+    }
+
+    private List<SaleRecord> pageByDate(SaleTimeKey after, SaleTimeKey before, int limit) {
+        PriorityQueue<TimelineHead> heads = new PriorityQueue<>(Comparator.comparing(TimelineHead::key));
+        if (after != null && before != null && after.compareTo(before) >= 0) {
+            return List.of();
+        }
+        for (Shard shard : shards) {
+            Map<Integer, ConcurrentSkipListMap<SaleTimeKey, Versioned<SaleRecord>>> partitions = shard.timelines;
+            if (after != null && before != null) {
+                partitions = shard.timelines.subMap(partitionOf(after), true, partitionOf(before), true);
+            } else if (after != null) {
+                partitions = shard.timelines.tailMap(partitionOf(after), true);
+            } else if (before != null) {
+                partitions = shard.timelines.headMap(partitionOf(before), true);
+            }
+            TimelineHead head = new TimelineHead(partitions.values().iterator(), after, before);
+            if (head.advance()) {
+                heads.add(head);
+            }
+        }
+        List<SaleRecord> result = new ArrayList<>(Math.min(limit, 64));
+        Set<Integer> seen = new HashSet<>();
+        while (!heads.isEmpty() && result.size() < limit) {
+            TimelineHead head = heads.poll();
+            SaleRecord sale = head.current.getValue().value();
+            // Una venta a la que le cambian la fecha puede verse en ambas posiciones
+            if (seen.add(sale.saleId())) {
+                result.add(sale);
+            }
+            if (head.advance()) {
+                heads.add(head);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean existsByPharmacy(int pharmacyId) {
+        for (Partition partition : shardFor(pharmacyId).state.partitions().values()) {
+            if (partition.byPharmacy().containsKey(pharmacyId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void save(SaleRecord sale) {
+        int id = requireId(sale);
+        while (true) {
+            Versioned<SaleRecord> current = lookup(id);
+            boolean saved = current == null
+                ? insert(sale, version -> { }) != null
+                : replace(current, sale, version -> { }) != null;
+            if (saved) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Los saleId vienen del asignador y son únicos en todo el almacén, así que
+     * basta con revisar el shard de la farmacia.
+     */
+    @Override
+    public Versioned<SaleRecord> insert(SaleRecord sale, Consumer<Versioned<SaleRecord>> onCommit) {
+        int id = requireId(sale);
+        Shard shard = shardFor(sale.pharmacyId());
+        commits.enter();
+        shard.lock.lock();
+        try {
+            State current = shard.state;
+            if (current.get(id) != null) {
+                return null;
+            }
+            Versioned<SaleRecord> created = new Versioned<>(sale, clock.next());
+            onCommit.accept(created);
+            publish(shard, with(current, id, null, created), null, created);
+            return created;
+        } finally {
+            shard.lock.unlock();
+            commits.exit();
+        }
+    }
+
+    @Override
+    public List<Versioned<SaleRecord>> insertAll(List<SaleRecord> sales, Predicate<Versioned<SaleRecord>> admit,
+                                                 Consumer<List<Versioned<SaleRecord>>> onCommit) {
+        // Posiciones de las ventas de cada shard, en el orden del lote
+        List<List<Integer>> byShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (int i = 0; i < sales.size(); i++) {
+            requireId(sales.get(i));
+            byShard.get(shardIndex(sales.get(i).pharmacyId())).add(i);
+        }
+        List<Versioned<SaleRecord>> created = new ArrayList<>(Collections.nCopies(sales.size(), null));
+        for (int s = 0; s < shards.length; s++) {
+            List<Integer> positions = byShard.get(s);
+            if (positions.isEmpty()) {
+                continue;
+            }
+            Shard shard = shards[s];
+            commits.enter();
+            shard.lock.lock();
+            try {
+                State state = shard.state;
+                List<Versioned<SaleRecord>> inserted = new ArrayList<>(positions.size());
+                List<Integer> insertedAt = new ArrayList<>(positions.size());
+                for (int i : positions) {
+                    SaleRecord sale = sales.get(i);
+                    if (state.get(sale.saleId()) != null) {
+                        continue;
+                    }
+                    Versioned<SaleRecord> version = new Versioned<>(sale, clock.next());
+                    if (!admit.test(version)) {
+                        continue;
+                    }
+                    state = with(state, sale.saleId(), null, version);
+                    inserted.add(version);
+                    insertedAt.add(i);
+                }
+                if (inserted.isEmpty()) {
+                    continue;
+                }
+                try {
+                    onCommit.accept(inserted);
+                } catch (RuntimeException e) {
+                    // Este shard no se publica; los siguientes siguen su curso
+                    continue;
+                }
+                // Como en publish: la línea de tiempo antes que el estado
+                for (int k = 0; k < inserted.size(); k++) {
+                    Versioned<SaleRecord> version = inserted.get(k);
+                    shard.timeline(partitionOf(version.value())).put(SaleTimeKey.of(version.value()), version);
+                    created.set(insertedAt.get(k), version);
+                }
+                shard.state = sweep(shard, state);
+            } finally {
+                shard.lock.unlock();
+                commits.exit();
+            }
+        }
+        return created;
+    }
+
+    @Override
+    public void reinsert(Iterable<Versioned<SaleRecord>> versions, Consumer<List<Versioned<SaleRecord>>> onCommit) {
+        List<List<Versioned<SaleRecord>>> parts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            parts.add(new ArrayList<>());
+        }
+        for (Versioned<SaleRecord> version : versions) {
+            requireId(version.value());
+            parts.get(shardIndex(version.value().pharmacyId())).add(version);
+        }
+        for (int s = 0; s < shards.length; s++) {
+            if (parts.get(s).isEmpty()) {
+                continue;
+            }
+            Shard shard = shards[s];
+            commits.enter();
+            shard.lock.lock();
+            try {
+                State state = shard.state;
+                List<Versioned<SaleRecord>> restored = new ArrayList<>(parts.get(s).size());
+                for (Versioned<SaleRecord> version : parts.get(s)) {
+                    if (state.get(version.value().saleId()) == null) {
+                        state = with(state, version.value().saleId(), null, version);
+                        restored.add(version);
+                    }
+                }
+                if (restored.isEmpty()) {
+                    continue;
+                }
+                onCommit.accept(restored);
+                for (Versioned<SaleRecord> version : restored) {
+                    shard.timeline(partitionOf(version.value())).put(SaleTimeKey.of(version.value()), version);
+                }
+                shard.state = sweep(shard, state);
+            } finally {
+                shard.lock.unlock();
+                commits.exit();
+            }
+        }
+    }
+
+    @Override
+    public Versioned<SaleRecord> replace(Versioned<SaleRecord> expected, SaleRecord update, Consumer<Versioned<SaleRecord>> onCommit) {
+        int id = requireId(expected.value());
+        int from = shardIndex(expected.value().pharmacyId());
+        int to = shardIndex(update.pharmacyId());
+        if (from == to) {
+            Shard shard = shards[from];
+            commits.enter();
+            shard.lock.lock();
+            try {
+                State current = shard.state;
+                if (current.get(id) != expected) {
+                    return null;
+                }
+                Versioned<SaleRecord> next = new Versioned<>(update, clock.next());
+                onCommit.accept(next);
+                publish(shard, with(current, id, expected, next), expected, next);
+                return next;
+            } finally {
+                shard.lock.unlock();
+                commits.exit();
+            }
+        }
+
+        commits.enter();
+        long stamp = moves.writeLock();
+        Shard first = shards[Math.min(from, to)];
+        Shard second = shards[Math.max(from, to)];
+        first.lock.lock();
+        second.lock.lock();
+        try {
+            State source = shards[from].state;
+            if (source.get(id) != expected) {
+                return null;
+            }
+            Versioned<SaleRecord> next = new Versioned<>(update, clock.next());
+            onCommit.accept(next);
+            publish(shards[to], with(shards[to].state, id, null, next), null, next);
+            publish(shards[from], with(source, id, expected, null), expected, null);
+            return next;
+        } finally {
+            second.lock.unlock();
+            first.lock.unlock();
+            moves.unlockWrite(stamp);
+            commits.exit();
+        }
+    }
+
+    @Override
+    public long delete(Versioned<SaleRecord> expected, LongConsumer onCommit) {
+        int id = requireId(expected.value());
+        Shard shard = shardFor(expected.value().pharmacyId());
+        commits.enter();
+        shard.lock.lock();
+        try {
+            State current = shard.state;
+            if (current.get(id) != expected) {
+                return -1;
+            }
+            long revision = clock.next();
+            onCommit.accept(revision);
+            publish(shard, with(current, id, expected, null), expected, null);
+            return revision;
+        } finally {
+            shard.lock.unlock();
+            commits.exit();
+        }
+    }
+
+    @Override
+    public boolean deleteById(int saleId) {
+        while (true) {
+            Versioned<SaleRecord> current = lookup(saleId);
+            if (current == null) {
+                return false;
+            }
+            if (delete(current, revision -> { }) >= 0) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Toma todos los locks a la vez para que la retención ocupe un solo punto
+     * en el orden de revisiones: toda escritura anterior tiene una revisión
+     * menor que la devuelta y ninguna posterior cae en lo desprendido. El
+     * trabajo bajo los locks es O(particiones expiradas) por shard; recorrer
+     * las ventas desprendidas queda para quien recibe el resultado.
+     */
+    @Override
+    public ExpiredSales dropBefore(OffsetDateTime cutoff, Consumer<ExpiredSales> onDetach) {
+        int cutoffDay = partitionOf(cutoff.toEpochSecond());
+        OffsetDateTime boundary = OffsetDateTime.ofInstant(
+            Instant.ofEpochSecond(cutoffDay * partitionSeconds), ZoneOffset.UTC);
+        List<PersistentIntMap<Versioned<SaleRecord>>> dropped = new ArrayList<>();
+        commits.enter();
+        long stamp = moves.writeLock();
+        for (Shard shard : shards) {
+            shard.lock.lock();
+        }
+        try {
+            long revision = clock.next();
+            State[] detached = new State[shards.length];
+            List<List<Integer>> expiredDays = new ArrayList<>(shards.length);
+            for (int i = 0; i < shards.length; i++) {
+                State state = shards[i].state;
+                PersistentIntMap<Partition> partitions = state.partitions();
+                int size = state.size();
+                List<Integer> expired = new ArrayList<>(shards[i].timelines.headMap(cutoffDay, false).keySet());
+                expired.remove(Integer.valueOf(UNDATED));
+                for (int day : expired) {
+                    Partition partition = partitions.get(day);
+                    if (partition != null) {
+                        partitions = partitions.remove(day);
+                        size -= partition.sales().size();
+                        dropped.add(partition.sales());
+                    }
+                }
+                detached[i] = new State(partitions, state.directory(), size);
+                expiredDays.add(expired);
+            }
+            ExpiredSales result = new ExpiredSales(boundary, revision, dropped);
+            if (!result.isEmpty()) {
+                onDetach.accept(result);
+            }
+            for (int i = 0; i < shards.length; i++) {
+                Shard shard = shards[i];
+                PersistentIntMap<Partition> partitions = shard.state.partitions();
+                for (int day : expiredDays.get(i)) {
+                    Partition partition = partitions.get(day);
+                    if (partition != null) {
+                        shard.sweeps.add(new Sweep(day, partition.sales().values().iterator()));
+                    }
+                }
+                shard.state = detached[i];
+                expiredDays.get(i).forEach(shard.timelines::remove);
+            }
+            return result;
+        } finally {
+            for (Shard shard : shards) {
+                shard.lock.unlock();
+            }
+            moves.unlockWrite(stamp);
+            commits.exit();
+        }
+    }
+
+    @Override
+    public void restore(Collection<Versioned<SaleRecord>> versions) {
+        List<List<Versioned<SaleRecord>>> parts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            parts.add(new ArrayList<>());
+        }
+        for (Versioned<SaleRecord> version : versions) {
+            requireId(version.value());
+            parts.get(shardIndex(version.value().pharmacyId())).add(version);
+            clock.advancePast(version.revision());
+        }
+        long stamp = moves.writeLock();
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                Shard shard = shards[i];
+                shard.lock.lock();
+                try {
+                    shard.state = build(parts.get(i));
+                    shard.sweeps.clear();
+                    shard.timelines.clear();
+                    for (Versioned<SaleRecord> version : parts.get(i)) {
+                        shard.timeline(partitionOf(version.value())).put(SaleTimeKey.of(version.value()), version);
+                    }
+                } finally {
+                    shard.lock.unlock();
+                }
+            }
+        } finally {
+            moves.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int count() {
+        int count = 0;
+        for (State state : capture()) {
+            count += state.size();
+        }
+        return count;
+    }
+
+    @Override
+    public void clear() {
+        long stamp = moves.writeLock();
+        try {
+            for (Shard shard : shards) {
+                shard.lock.lock();
+                try {
+                    shard.state = State.EMPTY;
+                    shard.sweeps.clear();
+                    shard.timelines.clear();
+                } finally {
+                    shard.lock.unlock();
+                }
+            }
+        } finally {
+            moves.unlockWrite(stamp);
+        }
+    }
+
+    // --- Auxiliares ---
+
+    private Shard shardFor(int pharmacyId) {
+        return shards[shardIndex(pharmacyId)];
+    }
+
+    private int shardIndex(int pharmacyId) {
+        if (pharmacyId == SaleRecord.NO_ID || shards.length == 1) {
+            return 0;
+        }
+        int h = pharmacyId * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), shards.length);
+    }
+
+    private int partitionOf(SaleRecord sale) {
+        return sale.hasDate() ? partitionOf(sale.saleDate()) : UNDATED;
+    }
+
+    private int partitionOf(SaleTimeKey key) {
+        return key.epochSecond() != Long.MIN_VALUE ? partitionOf(key.epochSecond()) : UNDATED;
+    }
+
+    private int partitionOf(long epochSecond) {
+        long day = Math.floorDiv(epochSecond, partitionSeconds);
+        return (int) Math.max(UNDATED + 1L, Math.min(Integer.MAX_VALUE, day));
+    }
+
+    /**
+     * Estados de todos los shards sin un movimiento entre shards a la mitad.
+     * Solo espera si hay uno en curso; las escrituras normales no lo afectan.
+     */
+    private State[] capture() {
+        State[] states = new State[shards.length];
+        long stamp = moves.tryOptimisticRead();
+        for (int i = 0; i < shards.length; i++) {
+            states[i] = shards[i].state;
+        }
+        if (moves.validate(stamp)) {
+            return states;
+        }
+        stamp = moves.readLock();
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                states[i] = shards[i].state;
+            }
+            return states;
+        } finally {
+            moves.unlockRead(stamp);
+        }
+    }
+
+    private Versioned<SaleRecord> lookup(int saleId) {
+        long stamp = moves.tryOptimisticRead();
+        Versioned<SaleRecord> found = probe(saleId);
+        // Una versión encontrada siempre es válida; solo la ausencia puede
+        // deberse a un movimiento entre shards
+        if (found != null || moves.validate(stamp)) {
+            return found;
+        }
+        stamp = moves.readLock();
+        try {
+            return probe(saleId);
+        } finally {
+            moves.unlockRead(stamp);
+        }
+    }
+
+    private Versioned<SaleRecord> probe(int saleId) {
+        for (Shard shard : shards) {
+            Versioned<SaleRecord> version = shard.state.get(saleId);
+            if (version != null) {
+                return version;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Publica el estado nuevo del shard y mantiene sus líneas de tiempo: la
+     * versión nueva entra antes de publicar y la anterior sale después. De
+     * paso barre algunas entradas huérfanas del directorio.
+     */
+    private void publish(Shard shard, State state, Versioned<SaleRecord> previous, Versioned<SaleRecord> next) {
+        SaleTimeKey oldKey = previous != null ? SaleTimeKey.of(previous.value()) : null;
+        SaleTimeKey newKey = next != null ? SaleTimeKey.of(next.value()) : null;
+        if (newKey != null) {
+            shard.timeline(partitionOf(newKey)).put(newKey, next);
+        }
+        shard.state = sweep(shard, state);
+        if (oldKey != null && !oldKey.equals(newKey)) {
+            int day = partitionOf(oldKey);
+            ConcurrentSkipListMap<SaleTimeKey, Versioned<SaleRecord>> timeline = shard.timelines.get(day);
+            if (timeline != null) {
+                timeline.remove(oldKey, previous);
+                if (timeline.isEmpty() && !shard.state.partitions().containsKey(day)) {
+                    shard.timelines.remove(day, timeline);
+                }
+            }
+        }
+    }
+
+    /**
+     * Quita del directorio hasta {@link #SWEEP_PER_WRITE} saleId de
+     * particiones desprendidas, salvo los que volvieron a escribirse.
+     */
+    private static State sweep(Shard shard, State state) {
+        PersistentIntMap<Integer> directory = state.directory();
+        for (int visited = 0; visited < SWEEP_PER_WRITE && !shard.sweeps.isEmpty(); ) {
+            Sweep pending = shard.sweeps.peek();
+            if (!pending.sales().hasNext()) {
+                shard.sweeps.poll();
+                continue;
+            }
+            int id = pending.sales().next().value().saleId();
+            Integer day = directory.get(id);
+            if (day != null && day == pending.day() && state.get(id) == null) {
+                directory = directory.remove(id);
+            }
+            visited++;
+        }
+        return directory == state.directory() ? state : new State(state.partitions(), directory, state.size());
+    }
+
+    /**
+     * Posición actual de un shard durante una mezcla por fecha: recorre sus
+     * particiones en orden y dentro de cada una solo el rango pedido.
+     */
+    private static final class TimelineHead {
+        private final Iterator<ConcurrentSkipListMap<SaleTimeKey, Versioned<SaleRecord>>> partitions;
+        private final SaleTimeKey after;
+        private final SaleTimeKey before;
+        private Iterator<Map.Entry<SaleTimeKey, Versioned<SaleRecord>>> entries = Collections.emptyIterator();
+        Map.Entry<SaleTimeKey, Versioned<SaleRecord>> current;
+
+        TimelineHead(Iterator<ConcurrentSkipListMap<SaleTimeKey, Versioned<SaleRecord>>> partitions,
+                     SaleTimeKey after, SaleTimeKey before) {
+            this.partitions = partitions;
+            this.after = after;
+            this.before = before;
+        }
+
+        SaleTimeKey key() {
+            return current.getKey();
+        }
+
+        boolean advance() {
+            while (!entries.hasNext()) {
+                if (!partitions.hasNext()) {
+                    return false;
+                }
+                entries = range(partitions.next()).entrySet().iterator();
+            }
+            current = entries.next();
+            return true;
+        }
+
+        private Map<SaleTimeKey, Versioned<SaleRecord>> range(ConcurrentSkipListMap<SaleTimeKey, Versioned<SaleRecord>> timeline) {
+            if (after != null && before != null) {
+                return timeline.subMap(after, false, before, false);
+            } else if (after != null) {
+                return timeline.tailMap(after, false);
+            } else if (before != null) {
+                return timeline.headMap(before, false);
+            }
+            return timeline;
+        }
+    }
+
+    private static int requireId(SaleRecord sale) {
+        if (sale.saleId() == SaleRecord.NO_ID) {
+            throw new IllegalArgumentException("La venta debe tener saleId para guardarse");
+        }
+        return sale.saleId();
+    }
+
+    private State build(List<Versioned<SaleRecord>> versions) {
+        Map<Integer, List<Versioned<SaleRecord>>> byDay = new HashMap<>();
+        for (Versioned<SaleRecord> version : versions) {
+            byDay.computeIfAbsent(partitionOf(version.value()), d -> new ArrayList<>()).add(version);
+        }
+        PersistentIntMap.Builder<Partition> partitions = PersistentIntMap.builder();
+        PersistentIntMap.Builder<Integer> directory = PersistentIntMap.builder();
+        byDay.forEach((day, members) -> {
+            PersistentIntMap.Builder<Versioned<SaleRecord>> sales = PersistentIntMap.builder();
+            for (Versioned<SaleRecord> version : members) {
+                sales.put(version.value().saleId(), version);
+                directory.put(version.value().saleId(), day);
+            }
+            partitions.put(day, new Partition(day, sales.build(),
+                buildIndex(members, SaleRecord::pharmacyId), buildIndex(members, SaleRecord::employeeId)));
+        });
+        return new State(partitions.build(), directory.build(), versions.size());
+    }
+
+    private static PersistentIntMap<SaleGroup> buildIndex(List<Versioned<SaleRecord>> versions, ToIntFunction<SaleRecord> key) {
+        PersistentIntMap<PersistentIntMap.Builder<Versioned<SaleRecord>>> groups = PersistentIntMap.empty();
+        for (Versioned<SaleRecord> version : versions) {
+            int value = key.applyAsInt(version.value());
+            if (value != SaleRecord.NO_ID) {
+                PersistentIntMap.Builder<Versioned<SaleRecord>> group = groups.get(value);
+                if (group == null) {
+                    group = PersistentIntMap.builder();
+                    groups = groups.put(value, group);
+                }
+                group.put(version.value().saleId(), version);
+            }
+        }
+        PersistentIntMap.Builder<SaleGroup> index = PersistentIntMap.builder();
+        groups.forEach((value, group) -> index.put(value, new SaleGroup(group.build())));
+        return index.build();
+    }
+
+    /**
+     * Mezcla listas ya ordenadas por saleId.
+     */
+    private static List<Versioned<SaleRecord>> merge(List<List<Versioned<SaleRecord>>> parts) {
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        int total = parts.stream().mapToInt(List::size).sum();
+        List<Versioned<SaleRecord>> result = new ArrayList<>(total);
+        int[] next = new int[parts.size()];
+        PriorityQueue<Integer> heads = new PriorityQueue<>(
+            Comparator.comparing((Integer p) -> parts.get(p).get(next[p]), BY_ID));
+        for (int p = 0; p < parts.size(); p++) {
+            if (!parts.get(p).isEmpty()) {
+                heads.add(p);
+            }
+        }
+        while (!heads.isEmpty()) {
+            int p = heads.poll();
+            result.add(parts.get(p).get(next[p]++));
+            if (next[p] < parts.get(p).size()) {
+                heads.add(p);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Hasta {@code limit} ventas con saleId mayor que {@code afterSaleId},
+     * tomadas de listas ordenadas por saleId. Cada lista se posiciona con
+     * búsqueda binaria, así que el costo no depende de las páginas anteriores.
+     */
+    private static List<SaleRecord> page(List<List<SaleRecord>> parts, int afterSaleId, int limit) {
+        int[] next = new int[parts.size()];
+        PriorityQueue<Integer> heads = new PriorityQueue<>(
+            Comparator.comparing((Integer p) -> parts.get(p).get(next[p]).saleId()));
+        for (int p = 0; p < parts.size(); p++) {
+            next[p] = firstAfter(parts.get(p), afterSaleId);
+            if (next[p] < parts.get(p).size()) {
+                heads.add(p);
+            }
+        }
+        List<SaleRecord> result = new ArrayList<>(Math.min(limit, 64));
+        while (!heads.isEmpty() && result.size() < limit) {
+            int p = heads.poll();
+            result.add(parts.get(p).get(next[p]++));
+            if (next[p] < parts.get(p).size()) {
+                heads.add(p);
+            }
+        }
+        return result;
+    }
+
+    private static int firstAfter(List<SaleRecord> sorted, int saleId) {
+        int low = 0;
+        int high = sorted.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted.get(mid).saleId() <= saleId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Estado con la venta {@code id} cambiada de {@code previous} a
+     * {@code next} (cualquiera puede ser null); si su fecha cambió de
+     * partición, sale de una y entra en la otra.
+     */
+    private State with(State current, int id, Versioned<SaleRecord> previous, Versioned<SaleRecord> next) {
+        int oldDay = previous != null ? partitionOf(previous.value()) : 0;
+        int newDay = next != null ? partitionOf(next.value()) : 0;
+        boolean sameDay = previous != null && next != null && oldDay == newDay;
+        PersistentIntMap<Partition> partitions = current.partitions();
+        PersistentIntMap<Integer> directory = current.directory();
+        if (previous != null && !sameDay) {
+            Partition remaining = partitions.get(oldDay).with(id, previous, null);
+            partitions = remaining.sales().isEmpty() ? partitions.remove(oldDay) : partitions.put(oldDay, remaining);
+            directory = directory.remove(id);
+        }
+        if (next != null) {
+            Partition partition = partitions.get(newDay);
+            if (partition == null) {
+                partition = Partition.empty(newDay);
+            }
+            partitions = partitions.put(newDay, partition.with(id, sameDay ? previous : null, next));
+            if (!sameDay) {
+                directory = directory.put(id, partition.day());
+            }
+        }
+        int size = current.size() + (previous == null ? 1 : 0) - (next == null ? 1 : 0);
+        return new State(partitions, directory, size);
+    }
+
+    private static PersistentIntMap<SaleGroup> reindex(PersistentIntMap<SaleGroup> index, ToIntFunction<SaleRecord> key,
+                                                       int id, Versioned<SaleRecord> previous, Versioned<SaleRecord> next) {
+        int oldKey = previous != null ? key.applyAsInt(previous.value()) : SaleRecord.NO_ID;
+        int newKey = next != null ? key.applyAsInt(next.value()) : SaleRecord.NO_ID;
+        if (oldKey != SaleRecord.NO_ID && oldKey != newKey) {
+            index = unindex(index, oldKey, id);
+        }
+        if (newKey != SaleRecord.NO_ID) {
+            // También cuando la llave no cambió: el índice guarda la versión
+            SaleGroup group = index.get(newKey);
+            PersistentIntMap<Versioned<SaleRecord>> members = group != null ? group.sales : PersistentIntMap.empty();
+            index = index.put(newKey, new SaleGroup(members.put(id, next)));
+        }
+        return index;
+    }
+
+    private static PersistentIntMap<SaleGroup> unindex(PersistentIntMap<SaleGroup> index, int key, int saleId) {
+        SaleGroup group = index.get(key);
+        if (group == null) {
+            return index;
+        }
+        PersistentIntMap<Versioned<SaleRecord>> remaining = group.sales.remove(saleId);
+        return remaining.isEmpty() ? index.remove(key) : index.put(key, new SaleGroup(remaining));
+    }
+}
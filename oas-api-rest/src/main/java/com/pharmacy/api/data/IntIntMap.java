@@ -0,0 +1,142 @@
+package com.pharmacy.api.data;
+
+import java.util.Arrays;
+
+/**
+ * Mapa int -> int con direccionamiento abierto y sondeo lineal, sin objetos
+ * por entrada. No es thread-safe: quien lo use debe sincronizar.
+ *
+ * Las llaves vacías se marcan con {@link Integer#MIN_VALUE}, que por eso no
+ * puede usarse como llave. Al borrar se recorren hacia atrás las entradas
+ * del mismo grupo, así que no quedan lápidas.
+ */
+public final class IntIntMap {
+
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    public IntIntMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int key, int missing) {
+        int slot = find(key);
+        return slot < 0 ? missing : values[slot];
+    }
+
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Asocia el valor a la llave y devuelve el anterior, o {@code missing}.
+     */
+    public int put(int key, int value, int missing) {
+        checkKey(key);
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > (mask + 1) >> 1) {
+            rehash((mask + 1) << 1);
+        }
+        return missing;
+    }
+
+    /**
+     * Elimina la llave y devuelve su valor, o {@code missing} si no estaba.
+     */
+    public int remove(int key, int missing) {
+        int slot = find(key);
+        if (slot < 0) {
+            return missing;
+        }
+        int previous = values[slot];
+        // Corrimiento hacia atrás: cada entrada posterior del grupo que
+        // pueda ocupar el hueco se mueve a él
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = mix(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = EMPTY;
+        size--;
+        return previous;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private int find(int key) {
+        if (key == EMPTY) {
+            return -1;
+        }
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    private static void checkKey(int key) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Integer.MIN_VALUE no puede usarse como llave");
+        }
+    }
+
+    // Los IDs suelen ser consecutivos; se dispersan para no formar grupos largos
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,50 @@
+package com.pharmacy.api.data;
+
+/**
+ * Aritmética de montos en centavos sobre {@code long}, sin objetos ni
+ * redondeos acumulados de double. Los Double del contrato (precios, subtotal,
+ * IVA, total) se convierten aquí a la entrada y de vuelta a la salida.
+ *
+ * Las tasas van en puntos base (1600 = 16 %) y los resultados se redondean
+ * al centavo, con las mitades alejándose de cero. Un desbordamiento lanza
+ * {@link ArithmeticException} en lugar de dar un monto equivocado.
+ */
+public final class Money {
+
+    /** Monto ausente (el Double del DTO era null). */
+    public static final long NONE = Long.MIN_VALUE;
+
+    /** Puntos base en una unidad (100 %). */
+    public static final int BASIS_POINTS = 10_000;
+
+    private Money() {
+    }
+
+    public static long cents(Double amount) {
+        return amount != null ? Math.round(amount * 100) : NONE;
+    }
+
+    public static Double amount(long cents) {
+        return cents != NONE ? cents / 100.0 : null;
+    }
+
+    /**
+     * Importe de una partida: precio unitario por cantidad.
+     */
+    public static long times(long cents, int quantity) {
+        return Math.multiplyExact(cents, (long) quantity);
+    }
+
+    public static long plus(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    /**
+     * {@code cents * basisPoints / 10000}, redondeado al centavo.
+     */
+    public static long rate(long cents, int basisPoints) {
+        long scaled = Math.multiplyExact(cents, (long) basisPoints);
+        long half = scaled >= 0 ? BASIS_POINTS / 2 : -BASIS_POINTS / 2;
+        return (scaled + half) / BASIS_POINTS;
+    }
+}
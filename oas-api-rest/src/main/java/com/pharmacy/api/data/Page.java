@@ -0,0 +1,33 @@
+package com.pharmacy.api.data;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Una página de resultados.
+ *
+ * @param items      elementos de la página, en el orden de la consulta
+ * @param nextCursor valor a enviar como {@code cursor} para pedir la página
+ *                   siguiente, o null si esta es la última
+ */
+public record Page<T>(List<T> items, String nextCursor) {
+
+    /**
+     * Página a partir de una consulta que pidió {@code limit + 1} elementos:
+     * el extra solo indica que hay otra página y no se entrega.
+     */
+    public static <T> Page<T> of(List<T> fetched, int limit, Function<T, String> cursorOf) {
+        if (fetched.size() <= limit) {
+            return new Page<>(fetched, null);
+        }
+        List<T> items = fetched.subList(0, limit);
+        return new Page<>(items, cursorOf.apply(items.get(limit - 1)));
+    }
+
+    /**
+     * La misma página con cada elemento convertido, por ejemplo a su DTO.
+     */
+    public <R> Page<R> map(Function<T, R> mapper) {
+        return new Page<>(items.stream().map(mapper).toList(), nextCursor);
+    }
+}
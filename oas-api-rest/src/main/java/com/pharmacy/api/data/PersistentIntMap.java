@@ -0,0 +1,429 @@
+package com.pharmacy.api.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Mapa int -> V persistente: nunca cambia después de construirse y cada
+ * escritura devuelve un mapa nuevo que comparte con el anterior todo lo que
+ * no tocó.
+ *
+ * Es un trie de 32 ramas indexado por bitmaps (HAMT en la variante CHAMP):
+ * cada nodo guarda primero sus entradas en línea (llaves int[] sin empaquetar)
+ * y después sus subnodos, y cada nivel consume 5 bits de la llave empezando
+ * por los menos significativos. Con IDs consecutivos el árbol queda denso y
+ * con profundidad log32(n); buscar, insertar o borrar copia a lo sumo esa
+ * cantidad de nodos. Quien guarde una referencia al mapa tiene una foto
+ * consistente que los escritores no alteran.
+ *
+ * Las cargas masivas usan {@link Builder}, que modifica en el lugar los nodos
+ * que él mismo creó y deja de hacerlo al llamar {@link Builder#build()}.
+ */
+public final class PersistentIntMap<V> {
+
+    /** Recibe cada entrada del mapa. */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(int key, V value);
+    }
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int[] NO_KEYS = new int[0];
+
+    private static final PersistentIntMap<?> EMPTY = new PersistentIntMap<>(new Node(0, 0, NO_KEYS, new Object[0], null), 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentIntMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+
+    public static <V> Builder<V> builder() {
+        return new Builder<>(empty());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        Node node = root;
+        for (int shift = 0; ; shift += BITS) {
+            int bit = bit(key, shift);
+            if ((node.dataMap & bit) != 0) {
+                int i = index(node.dataMap, bit);
+                return node.keys[i] == key ? (V) node.slots[i] : null;
+            }
+            if ((node.nodeMap & bit) == 0) {
+                return null;
+            }
+            node = node.child(index(node.nodeMap, bit));
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Mapa con la llave asociada al valor; el mismo mapa si ya lo estaba.
+     */
+    public PersistentIntMap<V> put(int key, V value) {
+        Change change = new Change();
+        Node updated = put(root, key, value, 0, null, change);
+        return updated == root ? this : new PersistentIntMap<>(updated, change.added ? size + 1 : size);
+    }
+
+    /**
+     * Mapa sin la llave; el mismo mapa si no estaba.
+     */
+    public PersistentIntMap<V> remove(int key) {
+        Change change = new Change();
+        Node updated = remove(root, key, 0, null, change);
+        return change.removed ? new PersistentIntMap<>(updated, size - 1) : this;
+    }
+
+    public Builder<V> toBuilder() {
+        return new Builder<>(this);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> consumer) {
+        forEach(root, (EntryConsumer<Object>) consumer);
+    }
+
+    /**
+     * Valores en el orden interno del trie (no ordenados por llave), sin copiarlos.
+     */
+    public Iterable<V> values() {
+        return () -> new ValueIterator<>(root);
+    }
+
+    /**
+     * Valores ordenados por llave.
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> sortedValues() {
+        // Llave en los 32 bits altos y posición en los bajos: ordenar los
+        // long ordena por llave sin empaquetar nada
+        long[] order = new long[size];
+        Object[] values = new Object[size];
+        int[] next = new int[1];
+        forEach((key, value) -> {
+            int i = next[0]++;
+            order[i] = ((long) key << 32) | i;
+            values[i] = value;
+        });
+        Arrays.sort(order);
+        List<V> result = new ArrayList<>(size);
+        for (long entry : order) {
+            result.add((V) values[(int) entry]);
+        }
+        return result;
+    }
+
+    /**
+     * Construye un mapa con escrituras en el lugar. No es thread-safe.
+     */
+    public static final class Builder<V> {
+
+        private Object edit = new Object();
+        private Node root;
+        private int size;
+
+        private Builder(PersistentIntMap<V> from) {
+            this.root = from.root;
+            this.size = from.size;
+        }
+
+        public Builder<V> put(int key, V value) {
+            Change change = new Change();
+            root = PersistentIntMap.put(root, key, value, 0, owner(), change);
+            if (change.added) {
+                size++;
+            }
+            return this;
+        }
+
+        public Builder<V> remove(int key) {
+            Change change = new Change();
+            root = PersistentIntMap.remove(root, key, 0, owner(), change);
+            if (change.removed) {
+                size--;
+            }
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public PersistentIntMap<V> build() {
+            owner();
+            // A partir de aquí los nodos quedan compartidos con el mapa devuelto
+            edit = null;
+            return new PersistentIntMap<>(root, size);
+        }
+
+        private Object owner() {
+            if (edit == null) {
+                throw new IllegalStateException("El builder ya se usó para construir un mapa");
+            }
+            return edit;
+        }
+    }
+
+    // --- Nodos ---
+
+    /**
+     * Nodo del trie. dataMap marca los fragmentos con una entrada en línea y
+     * nodeMap los que tienen subnodo; slots guarda los valores en línea
+     * (alineados con keys) seguidos de los subnodos. Los arreglos de un nodo
+     * compartido no se modifican nunca; solo un Builder dueño ({@code edit})
+     * escribe en el lugar.
+     */
+    private static final class Node {
+        int dataMap;
+        int nodeMap;
+        int[] keys;
+        Object[] slots;
+        final Object edit;
+
+        Node(int dataMap, int nodeMap, int[] keys, Object[] slots, Object edit) {
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.keys = keys;
+            this.slots = slots;
+            this.edit = edit;
+        }
+
+        Node child(int nodeIndex) {
+            return (Node) slots[keys.length + nodeIndex];
+        }
+
+        private boolean ownedBy(Object owner) {
+            return owner != null && edit == owner;
+        }
+
+        Node withSlot(int slot, Object value, Object owner) {
+            if (ownedBy(owner)) {
+                slots[slot] = value;
+                return this;
+            }
+            Object[] copy = slots.clone();
+            copy[slot] = value;
+            return new Node(dataMap, nodeMap, keys, copy, owner);
+        }
+
+        Node withData(int bit, int key, Object value, Object owner) {
+            int i = index(dataMap, bit);
+            int[] newKeys = new int[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            newKeys[i] = key;
+            System.arraycopy(keys, i, newKeys, i + 1, keys.length - i);
+            Object[] newSlots = new Object[slots.length + 1];
+            System.arraycopy(slots, 0, newSlots, 0, i);
+            newSlots[i] = value;
+            System.arraycopy(slots, i, newSlots, i + 1, slots.length - i);
+            return rebuild(dataMap | bit, nodeMap, newKeys, newSlots, owner);
+        }
+
+        Node withoutData(int bit, Object owner) {
+            int i = index(dataMap, bit);
+            int[] newKeys = new int[keys.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            System.arraycopy(keys, i + 1, newKeys, i, keys.length - i - 1);
+            Object[] newSlots = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, newSlots, 0, i);
+            System.arraycopy(slots, i + 1, newSlots, i, slots.length - i - 1);
+            return rebuild(dataMap & ~bit, nodeMap, newKeys, newSlots, owner);
+        }
+
+        /** Reemplaza la entrada en línea del fragmento por un subnodo. */
+        Node dataToNode(int bit, Node child, Object owner) {
+            int i = index(dataMap, bit);
+            int target = keys.length - 1 + index(nodeMap, bit);
+            int[] newKeys = new int[keys.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            System.arraycopy(keys, i + 1, newKeys, i, keys.length - i - 1);
+            Object[] newSlots = new Object[slots.length];
+            System.arraycopy(slots, 0, newSlots, 0, i);
+            System.arraycopy(slots, i + 1, newSlots, i, target - i);
+            newSlots[target] = child;
+            System.arraycopy(slots, target + 1, newSlots, target + 1, slots.length - target - 1);
+            return rebuild(dataMap & ~bit, nodeMap | bit, newKeys, newSlots, owner);
+        }
+
+        /** Reemplaza el subnodo del fragmento por su única entrada. */
+        Node nodeToData(int bit, int key, Object value, Object owner) {
+            int source = keys.length + index(nodeMap, bit);
+            int i = index(dataMap, bit);
+            int[] newKeys = new int[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            newKeys[i] = key;
+            System.arraycopy(keys, i, newKeys, i + 1, keys.length - i);
+            Object[] newSlots = new Object[slots.length];
+            System.arraycopy(slots, 0, newSlots, 0, i);
+            newSlots[i] = value;
+            System.arraycopy(slots, i, newSlots, i + 1, source - i);
+            System.arraycopy(slots, source + 1, newSlots, source + 1, slots.length - source - 1);
+            return rebuild(dataMap | bit, nodeMap & ~bit, newKeys, newSlots, owner);
+        }
+
+        private Node rebuild(int newDataMap, int newNodeMap, int[] newKeys, Object[] newSlots, Object owner) {
+            if (ownedBy(owner)) {
+                dataMap = newDataMap;
+                nodeMap = newNodeMap;
+                keys = newKeys;
+                slots = newSlots;
+                return this;
+            }
+            return new Node(newDataMap, newNodeMap, newKeys, newSlots, owner);
+        }
+    }
+
+    /** Resultado de una escritura recursiva. */
+    private static final class Change {
+        boolean added;
+        boolean removed;
+    }
+
+    private static Node put(Node node, int key, Object value, int shift, Object owner, Change change) {
+        int bit = bit(key, shift);
+        if ((node.dataMap & bit) != 0) {
+            int i = index(node.dataMap, bit);
+            if (node.keys[i] == key) {
+                return node.slots[i] == value ? node : node.withSlot(i, value, owner);
+            }
+            // Dos llaves con el mismo fragmento bajan juntas a un subnodo
+            change.added = true;
+            Node pair = pair(node.keys[i], node.slots[i], key, value, shift + BITS, owner);
+            return node.dataToNode(bit, pair, owner);
+        }
+        if ((node.nodeMap & bit) != 0) {
+            int slot = node.keys.length + index(node.nodeMap, bit);
+            Node child = (Node) node.slots[slot];
+            Node updated = put(child, key, value, shift + BITS, owner, change);
+            return updated == child ? node : node.withSlot(slot, updated, owner);
+        }
+        change.added = true;
+        return node.withData(bit, key, value, owner);
+    }
+
+    private static Node remove(Node node, int key, int shift, Object owner, Change change) {
+        int bit = bit(key, shift);
+        if ((node.dataMap & bit) != 0) {
+            if (node.keys[index(node.dataMap, bit)] != key) {
+                return node;
+            }
+            change.removed = true;
+            return node.withoutData(bit, owner);
+        }
+        if ((node.nodeMap & bit) != 0) {
+            int slot = node.keys.length + index(node.nodeMap, bit);
+            Node child = (Node) node.slots[slot];
+            Node updated = remove(child, key, shift + BITS, owner, change);
+            if (!change.removed) {
+                return node;
+            }
+            // Forma canónica: un subnodo con una sola entrada sube al padre.
+            // Se revisa aunque el Builder haya modificado el hijo en el lugar
+            if (updated.nodeMap == 0 && updated.keys.length == 1) {
+                return node.nodeToData(bit, updated.keys[0], updated.slots[0], owner);
+            }
+            return updated == child ? node : node.withSlot(slot, updated, owner);
+        }
+        return node;
+    }
+
+    private static Node pair(int key1, Object value1, int key2, Object value2, int shift, Object owner) {
+        int fragment1 = (key1 >>> shift) & MASK;
+        int fragment2 = (key2 >>> shift) & MASK;
+        if (fragment1 == fragment2) {
+            // Llaves distintas siempre difieren en algún fragmento antes de agotar los 32 bits
+            Node child = pair(key1, value1, key2, value2, shift + BITS, owner);
+            return new Node(0, 1 << fragment1, NO_KEYS, new Object[] {child}, owner);
+        }
+        int bits = (1 << fragment1) | (1 << fragment2);
+        return fragment1 < fragment2
+            ? new Node(bits, 0, new int[] {key1, key2}, new Object[] {value1, value2}, owner)
+            : new Node(bits, 0, new int[] {key2, key1}, new Object[] {value2, value1}, owner);
+    }
+
+    private static void forEach(Node node, EntryConsumer<Object> consumer) {
+        for (int i = 0; i < node.keys.length; i++) {
+            consumer.accept(node.keys[i], node.slots[i]);
+        }
+        for (int i = node.keys.length; i < node.slots.length; i++) {
+            forEach((Node) node.slots[i], consumer);
+        }
+    }
+
+    private static int bit(int key, int shift) {
+        return 1 << ((key >>> shift) & MASK);
+    }
+
+    private static int index(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    /**
+     * Recorrido en profundidad con una pila explícita (a lo sumo 7 niveles).
+     */
+    private static final class ValueIterator<V> implements Iterator<V> {
+        private final Node[] stack = new Node[8];
+        private final int[] nextChild = new int[8];
+        private int depth;
+        private Node current;
+        private int nextData;
+
+        ValueIterator(Node root) {
+            stack[0] = root;
+            current = root;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (current == null || nextData >= current.keys.length) {
+                current = null;
+                while (depth >= 0 && nextChild[depth] >= Integer.bitCount(stack[depth].nodeMap)) {
+                    depth--;
+                }
+                if (depth < 0) {
+                    return false;
+                }
+                Node child = stack[depth].child(nextChild[depth]++);
+                stack[++depth] = child;
+                nextChild[depth] = 0;
+                current = child;
+                nextData = 0;
+            }
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return (V) current.slots[nextData++];
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.pharmacy.api.data;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.pharmacy.api.model.Product;
+import com.pharmacy.api.model.Product.ProductTypeEnum;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Precios del catálogo en centavos, en un arreglo indexado por productId,
+ * para tasar una venta sin buscar en mapas ni desempaquetar Double. Junto al
+ * precio se guarda el ordinal del tipo de producto, que decide su tasa de IVA.
+ *
+ * La tabla vigente es inmutable y se reemplaza completa con cada cambio del
+ * catálogo ({@link #rebuild()}); quien tasa una venta lee la referencia una
+ * sola vez, así que todas sus partidas usan los mismos precios aunque otro
+ * hilo publique una tabla nueva a la mitad.
+ *
+ * Los productId menores que {@link #DENSE_LIMIT} van en el arreglo denso; los
+ * pocos que quedan por encima, en un arreglo ordenado con búsqueda binaria,
+ * para que un ID enorme no obligue a reservar gigas.
+ */
+@ApplicationScoped
+public class PriceTable {
+
+    /** El producto no existe en el catálogo. */
+    public static final long ABSENT = Long.MIN_VALUE;
+
+    /** El producto existe pero no tiene precio. */
+    public static final long UNPRICED = Long.MIN_VALUE + 1;
+
+    /** Tipo de un producto sin productType; va después de los ordinales del enum. */
+    public static final int UNTYPED = ProductTypeEnum.values().length;
+
+    /** Tope del arreglo denso: 1M de productos, 8 MB. */
+    static final int DENSE_LIMIT = 1 << 20;
+
+    @Inject
+    SharedData sharedData;
+
+    private volatile Prices current = Prices.of(List.of());
+    private PersistentIntMap<Versioned<Product>> builtFrom;
+
+    @PostConstruct
+    void init() {
+        rebuild();
+    }
+
+    /**
+     * Tabla vigente; se lee una vez por venta.
+     */
+    public Prices current() {
+        return current;
+    }
+
+    /**
+     * Vuelve a construir la tabla desde el catálogo actual. Se llama después
+     * de escribir en el catálogo; como cada llamada lee el catálogo dentro del
+     * lock, la última en publicar ya incluye todas las escrituras anteriores.
+     */
+    public synchronized void rebuild() {
+        PersistentIntMap<Versioned<Product>> catalog = sharedData.getProducts().snapshot();
+        if (catalog == builtFrom) {
+            return;
+        }
+        current = Prices.of(sharedData.getProducts().values());
+        builtFrom = catalog;
+    }
+
+    /**
+     * Precios de una versión del catálogo.
+     */
+    public static final class Prices {
+
+        private final long[] dense;
+        private final byte[] denseTypes;
+        private final int[] sparseIds;
+        private final long[] sparseCents;
+        private final byte[] sparseTypes;
+
+        private Prices(long[] dense, byte[] denseTypes, int[] sparseIds, long[] sparseCents, byte[] sparseTypes) {
+            this.dense = dense;
+            this.denseTypes = denseTypes;
+            this.sparseIds = sparseIds;
+            this.sparseCents = sparseCents;
+            this.sparseTypes = sparseTypes;
+        }
+
+        /**
+         * @param products productos ordenados por productId
+         */
+        public static Prices of(List<Product> products) {
+            int maxDense = -1;
+            int sparse = 0;
+            for (Product product : products) {
+                int id = product.getProductId();
+                if (id < DENSE_LIMIT) {
+                    maxDense = Math.max(maxDense, id);
+                } else {
+                    sparse++;
+                }
+            }
+            long[] dense = new long[maxDense + 1];
+            byte[] denseTypes = new byte[maxDense + 1];
+            Arrays.fill(dense, ABSENT);
+            int[] sparseIds = new int[sparse];
+            long[] sparseCents = new long[sparse];
+            byte[] sparseTypes = new byte[sparse];
+            int s = 0;
+            for (Product product : products) {
+                int id = product.getProductId();
+                long cents = product.getPrice() != null ? Money.cents(product.getPrice()) : UNPRICED;
+                byte type = (byte) (product.getProductType() != null ? product.getProductType().ordinal() : UNTYPED);
+                if (id < DENSE_LIMIT) {
+                    dense[id] = cents;
+                    denseTypes[id] = type;
+                } else {
+                    sparseIds[s] = id;
+                    sparseCents[s] = cents;
+                    sparseTypes[s++] = type;
+                }
+            }
+            return new Prices(dense, denseTypes, sparseIds, sparseCents, sparseTypes);
+        }
+
+        /**
+         * Precio unitario en centavos, {@link #ABSENT} o {@link #UNPRICED}.
+         */
+        public long cents(int productId) {
+            if (productId >= 0 && productId < dense.length) {
+                return dense[productId];
+            }
+            if (productId < DENSE_LIMIT) {
+                return ABSENT;
+            }
+            int i = Arrays.binarySearch(sparseIds, productId);
+            return i >= 0 ? sparseCents[i] : ABSENT;
+        }
+
+        /**
+         * Ordinal del {@link ProductTypeEnum} del producto, o {@link #UNTYPED}.
+         * Solo tiene sentido para productos que {@link #cents(int)} encuentra.
+         */
+        public int type(int productId) {
+            if (productId >= 0 && productId < denseTypes.length) {
+                return denseTypes[productId];
+            }
+            int i = Arrays.binarySearch(sparseIds, productId);
+            return i >= 0 ? sparseTypes[i] : UNTYPED;
+        }
+    }
+}
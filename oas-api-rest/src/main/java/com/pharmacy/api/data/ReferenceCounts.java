@@ -0,0 +1,181 @@
+package com.pharmacy.api.data;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.pharmacy.api.commons.NotFoundException;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Cuántas ventas en memoria apuntan a cada farmacia, empleado y producto
+ * (los productos cuentan una vez por partida). Con esto, saber si una
+ * entidad se puede eliminar es leer un contador en lugar de recorrer ventas.
+ * Las ventas archivadas no cuentan: ya no admiten cambios.
+ *
+ * Para que una venta y un borrado simultáneos no dejen una venta huérfana,
+ * el borrado no solo lee el contador: lo pasa con compare-and-swap de 0 a
+ * {@link #RETIRED} antes de quitar la entidad, y una venta solo suma si el
+ * contador no está retirado. Así gana exactamente uno de los dos: o la venta
+ * sumó primero y el borrado ve ventas, o el borrado retiró primero y la venta
+ * no encuentra la entidad.
+ */
+@ApplicationScoped
+public class ReferenceCounts {
+
+    /** La entidad se está eliminando o ya se eliminó. */
+    static final long RETIRED = Long.MIN_VALUE;
+
+    @Inject
+    SharedData sharedData;
+
+    private final Counters pharmacies = new Counters("La farmacia con ID %d no fue encontrada");
+    private final Counters employees = new Counters("El empleado con ID %d no fue encontrado");
+    private final Counters products = new Counters("El producto con ID %d no fue encontrado");
+
+    @PostConstruct
+    void init() {
+        rebuild(sharedData.getSales().findAll());
+    }
+
+    public Counters pharmacies() {
+        return pharmacies;
+    }
+
+    public Counters employees() {
+        return employees;
+    }
+
+    public Counters products() {
+        return products;
+    }
+
+    /**
+     * Suma las referencias de una venta que se va a guardar; si alguna
+     * entidad se eliminó mientras tanto no suma ninguna.
+     *
+     * @throws NotFoundException si alguna entidad ya está retirada
+     */
+    public void acquire(SaleRecord sale) {
+        pharmacies.acquire(sale.pharmacyId());
+        try {
+            employees.acquire(sale.employeeId());
+        } catch (NotFoundException e) {
+            pharmacies.release(sale.pharmacyId());
+            throw e;
+        }
+        for (int i = 0; i < sale.itemCount(); i++) {
+            try {
+                products.acquire(sale.productId(i));
+            } catch (NotFoundException e) {
+                for (int j = 0; j < i; j++) {
+                    products.release(sale.productId(j));
+                }
+                employees.release(sale.employeeId());
+                pharmacies.release(sale.pharmacyId());
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Resta las referencias de una venta que se eliminó, se reemplazó o no
+     * se llegó a guardar.
+     */
+    public void release(SaleRecord sale) {
+        pharmacies.release(sale.pharmacyId());
+        employees.release(sale.employeeId());
+        for (int i = 0; i < sale.itemCount(); i++) {
+            products.release(sale.productId(i));
+        }
+    }
+
+    /**
+     * Cuenta desde cero las ventas dadas (al arrancar o al recuperar el journal).
+     */
+    public synchronized void rebuild(Collection<SaleRecord> sales) {
+        pharmacies.clear();
+        employees.clear();
+        products.clear();
+        sales.forEach(sale -> {
+            pharmacies.counter(sale.pharmacyId()).incrementAndGet();
+            employees.counter(sale.employeeId()).incrementAndGet();
+            for (int i = 0; i < sale.itemCount(); i++) {
+                products.counter(sale.productId(i)).incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Contadores de un tipo de entidad, uno por ID.
+     */
+    public static final class Counters {
+
+        private final ConcurrentHashMap<Integer, AtomicLong> counts = new ConcurrentHashMap<>();
+        private final String notFound;
+
+        Counters(String notFound) {
+            this.notFound = notFound;
+        }
+
+        /**
+         * Ventas que apuntan a la entidad.
+         */
+        public long count(int id) {
+            AtomicLong counter = counts.get(id);
+            return counter != null ? Math.max(counter.get(), 0) : 0;
+        }
+
+        /**
+         * Marca la entidad como en eliminación si ninguna venta la usa. Si
+         * devuelve true, quien elimina debe llamar después a
+         * {@link #restore(int)} si al final no la elimina.
+         */
+        public boolean tryRetire(int id) {
+            return counter(id).compareAndSet(0, RETIRED);
+        }
+
+        /**
+         * La entidad vuelve a aceptar ventas: la eliminación no se completó,
+         * o se dio de alta de nuevo un ID que se había eliminado.
+         */
+        public void restore(int id) {
+            counter(id).compareAndSet(RETIRED, 0);
+        }
+
+        void acquire(int id) {
+            if (id == SaleRecord.NO_ID) {
+                return;
+            }
+            AtomicLong counter = counter(id);
+            long current;
+            do {
+                current = counter.get();
+                if (current == RETIRED) {
+                    throw new NotFoundException(String.format(notFound, id));
+                }
+            } while (!counter.compareAndSet(current, current + 1));
+        }
+
+        void release(int id) {
+            if (id == SaleRecord.NO_ID) {
+                return;
+            }
+            AtomicLong counter = counts.get(id);
+            if (counter != null) {
+                counter.decrementAndGet();
+            }
+        }
+
+        private AtomicLong counter(int id) {
+            return counts.computeIfAbsent(id, k -> new AtomicLong());
+        }
+
+        private void clear() {
+            counts.clear();
+        }
+    }
+}
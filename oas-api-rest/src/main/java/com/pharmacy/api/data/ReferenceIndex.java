@@ -0,0 +1,55 @@
+package com.pharmacy.api.data;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * IDs vigentes de farmacias y empleados como {@link IdSet}, para validar
+ * las referencias de una venta sin consultar los almacenes. Los productos se
+ * validan con la {@link PriceTable}, que ya es un arreglo por productId.
+ *
+ * Como la {@link PriceTable}, cada conjunto es inmutable y se reemplaza con
+ * una escritura volátil; solo hay que reconstruirlo cuando cambia quién
+ * existe (altas, bajas, cambios de ID), no cuando cambian los datos.
+ */
+@ApplicationScoped
+public class ReferenceIndex {
+
+    @Inject
+    SharedData sharedData;
+
+    private volatile IdSet pharmacies = IdSet.EMPTY;
+    private volatile IdSet employees = IdSet.EMPTY;
+
+    @PostConstruct
+    void init() {
+        rebuild();
+    }
+
+    public boolean hasPharmacy(int pharmacyId) {
+        return pharmacies.contains(pharmacyId);
+    }
+
+    public boolean hasEmployee(int employeeId) {
+        return employees.contains(employeeId);
+    }
+
+    /**
+     * Se llama después de dar de alta, dar de baja o cambiar el ID de una
+     * farmacia; la reconstrucción lee el almacén dentro del lock, así que la
+     * última en publicar incluye todas las escrituras anteriores.
+     */
+    public synchronized void pharmaciesChanged() {
+        pharmacies = IdSet.of(sharedData.getPharmacies().snapshot());
+    }
+
+    public synchronized void employeesChanged() {
+        employees = IdSet.of(sharedData.getEmployees().snapshot());
+    }
+
+    public void rebuild() {
+        pharmaciesChanged();
+        employeesChanged();
+    }
+}
@@ -0,0 +1,29 @@
+package com.pharmacy.api.data;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contador global de revisiones. Cada escritura toma una revisión nueva
+ * después de leer la versión que va a reemplazar, así que para una misma
+ * llave las revisiones instaladas son estrictamente crecientes.
+ */
+public final class RevisionClock {
+
+    private final AtomicLong last = new AtomicLong();
+
+    public long next() {
+        return last.incrementAndGet();
+    }
+
+    public long current() {
+        return last.get();
+    }
+
+    /**
+     * Garantiza que las próximas revisiones sean mayores que {@code revision},
+     * por ejemplo después de recuperar el estado del journal.
+     */
+    public void advancePast(long revision) {
+        last.accumulateAndGet(revision, Math::max);
+    }
+}
@@ -0,0 +1,339 @@
+package com.pharmacy.api.data;
+
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Espejo columnar de las ventas para consultas analíticas.
+ *
+ * Cada campo vive en su propio arreglo primitivo (una fila por venta) y las
+ * líneas de venta se aplanan en dos columnas productId/quantity, donde cada
+ * fila apunta a su rango con itemStart/itemCount. Así los agregados recorren
+ * memoria contigua sin tocar objetos {@link SaleRecord}; los montos van en
+ * centavos, así que las sumas son exactas y no dependen del orden.
+ *
+ * Se mantiene de forma incremental desde SaleService. Las filas se reparten
+ * en segmentos por saleId, cada uno con sus columnas y su propio lock de
+ * lectura/escritura, para que escrituras de shards distintos del repositorio
+ * no se formen detrás del mismo lock. Se reparte por saleId y no por farmacia
+ * para que una venta que cambia de farmacia siga en su mismo segmento. Un resumen recorre los segmentos (en
+ * paralelo si son grandes) y suma sus resultados; cada segmento se lee de
+ * forma consistente, aunque no todos en el mismo instante.
+ */
+@ApplicationScoped
+public class SaleColumns {
+
+    /** Filas por bloque en los recorridos paralelos. */
+    static final int CHUNK_ROWS = 1 << 16;
+
+    /** Segmentos independientes; potencia de dos. */
+    static final int SEGMENTS = 16;
+
+    private static final int INITIAL_ROWS = 256;
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    @Inject
+    SharedData sharedData;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    public SaleColumns() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        rebuild(sharedData.getSales().findAll());
+    }
+
+    /**
+     * Reemplaza todo el contenido, por ejemplo después de recuperar del journal.
+     */
+    public void rebuild(Collection<SaleRecord> sales) {
+        for (Segment segment : segments) {
+            segment.lock.writeLock().lock();
+        }
+        try {
+            for (Segment segment : segments) {
+                segment.clear();
+            }
+            for (SaleRecord sale : sales) {
+                segmentFor(sale.saleId()).write(sale);
+            }
+        } finally {
+            for (Segment segment : segments) {
+                segment.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Inserta la venta o reemplaza la fila con el mismo saleId.
+     */
+    public void upsert(SaleRecord sale) {
+        Segment segment = segmentFor(sale.saleId());
+        segment.lock.writeLock().lock();
+        try {
+            segment.write(sale);
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    public boolean delete(int id) {
+        Segment segment = segmentFor(id);
+        segment.lock.writeLock().lock();
+        try {
+            return segment.remove(id);
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            segment.lock.readLock().lock();
+            try {
+                size += segment.size;
+            } finally {
+                segment.lock.readLock().unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Totales de las ventas que cumplen los filtros; cualquiera puede ser null.
+     * El rango de fechas es [from, to).
+     */
+    public SalesSummary summarize(Integer pharmacy, OffsetDateTime from, OffsetDateTime to) {
+        int pharmacyFilter = pharmacy != null ? pharmacy : 0;
+        long fromEpoch = from != null ? from.toEpochSecond() : NO_DATE;
+        long toEpoch = to != null ? to.toEpochSecond() : Long.MAX_VALUE;
+        boolean byDate = from != null || to != null;
+
+        IntStream indexes = IntStream.range(0, SEGMENTS);
+        if (size() > CHUNK_ROWS) {
+            indexes = indexes.parallel();
+        }
+        return indexes
+            .mapToObj(i -> segments[i].summarize(pharmacyFilter, byDate, fromEpoch, toEpoch))
+            .reduce(SalesSummary.EMPTY, SalesSummary::plus);
+    }
+
+    private Segment segmentFor(int saleId) {
+        int h = saleId * 0x9E3779B9;
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Columnas de una parte de las ventas. Todo acceso a los arreglos se hace
+     * con el lock del segmento tomado.
+     */
+    private static final class Segment {
+
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        private final IntIntMap rowBySaleId = new IntIntMap(INITIAL_ROWS);
+        int size;
+
+        private int[] saleId = new int[INITIAL_ROWS];
+        private long[] epochSecond = new long[INITIAL_ROWS];
+        private long[] subTotal = new long[INITIAL_ROWS];
+        private long[] iva = new long[INITIAL_ROWS];
+        private long[] total = new long[INITIAL_ROWS];
+        private int[] pharmacyId = new int[INITIAL_ROWS];
+        private int[] employeeId = new int[INITIAL_ROWS];
+        private int[] itemStart = new int[INITIAL_ROWS];
+        private int[] itemCount = new int[INITIAL_ROWS];
+
+        // Líneas aplanadas; las que quedan huérfanas al reemplazar o borrar una
+        // venta se cuentan como basura y se compactan cuando superan la mitad
+        private int[] itemProductId = new int[INITIAL_ROWS * 2];
+        private int[] itemQuantity = new int[INITIAL_ROWS * 2];
+        private int itemSize;
+        private int itemGarbage;
+
+        void clear() {
+            rowBySaleId.clear();
+            size = 0;
+            itemSize = 0;
+            itemGarbage = 0;
+        }
+
+        boolean remove(int id) {
+            int row = rowBySaleId.remove(id, -1);
+            if (row < 0) {
+                return false;
+            }
+            itemGarbage += itemCount[row];
+            // La última fila ocupa el hueco para mantener las columnas densas
+            int last = --size;
+            if (row != last) {
+                moveRow(last, row);
+                rowBySaleId.put(saleId[row], row, -1);
+            }
+            compactItemsIfNeeded();
+            return true;
+        }
+
+        SalesSummary summarize(int pharmacy, boolean byDate, long fromEpoch, long toEpoch) {
+            lock.readLock().lock();
+            try {
+                int rows = size;
+                if (rows <= CHUNK_ROWS) {
+                    return scan(0, rows, pharmacy, byDate, fromEpoch, toEpoch);
+                }
+                int chunks = (rows + CHUNK_ROWS - 1) / CHUNK_ROWS;
+                return IntStream.range(0, chunks).parallel()
+                    .mapToObj(c -> scan(c * CHUNK_ROWS, Math.min(rows, (c + 1) * CHUNK_ROWS),
+                        pharmacy, byDate, fromEpoch, toEpoch))
+                    .reduce(SalesSummary.EMPTY, SalesSummary::plus);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private SalesSummary scan(int from, int to, int pharmacy, boolean byDate, long fromEpoch, long toEpoch) {
+            long count = 0;
+            long sub = 0;
+            long tax = 0;
+            long sum = 0;
+            long units = 0;
+            for (int row = from; row < to; row++) {
+                if (pharmacy != 0 && pharmacyId[row] != pharmacy) {
+                    continue;
+                }
+                if (byDate && (epochSecond[row] == NO_DATE || epochSecond[row] < fromEpoch || epochSecond[row] >= toEpoch)) {
+                    continue;
+                }
+                count++;
+                sub += subTotal[row];
+                tax += iva[row];
+                sum += total[row];
+                int end = itemStart[row] + itemCount[row];
+                for (int i = itemStart[row]; i < end; i++) {
+                    units += itemQuantity[i];
+                }
+            }
+            return new SalesSummary(count, sub, tax, sum, units);
+        }
+
+        // --- Escritura (siempre con el lock de escritura tomado) ---
+
+        private void write(SaleRecord sale) {
+            int id = sale.saleId();
+            int row = rowBySaleId.get(id, -1);
+            if (row < 0) {
+                row = size++;
+                ensureRows(size);
+                rowBySaleId.put(id, row, -1);
+                itemCount[row] = 0;
+            }
+            saleId[row] = id;
+            epochSecond[row] = sale.saleDate();
+            subTotal[row] = orZero(sale.subTotalCents());
+            iva[row] = orZero(sale.ivaCents());
+            total[row] = orZero(sale.totalCents());
+            pharmacyId[row] = orZero(sale.pharmacyId());
+            employeeId[row] = orZero(sale.employeeId());
+            writeItems(row, sale);
+        }
+
+        private void writeItems(int row, SaleRecord sale) {
+            int count = sale.itemCount();
+            int start;
+            if (count <= itemCount[row]) {
+                // Cabe en su rango actual: se reescribe en el lugar
+                start = itemStart[row];
+                itemGarbage += itemCount[row] - count;
+            } else {
+                itemGarbage += itemCount[row];
+                ensureItems(itemSize + count);
+                start = itemSize;
+                itemSize += count;
+            }
+            for (int i = 0; i < count; i++) {
+                itemProductId[start + i] = orZero(sale.productId(i));
+                itemQuantity[start + i] = orZero(sale.quantity(i));
+            }
+            itemStart[row] = start;
+            itemCount[row] = count;
+            compactItemsIfNeeded();
+        }
+
+        private void moveRow(int from, int to) {
+            saleId[to] = saleId[from];
+            epochSecond[to] = epochSecond[from];
+            subTotal[to] = subTotal[from];
+            iva[to] = iva[from];
+            total[to] = total[from];
+            pharmacyId[to] = pharmacyId[from];
+            employeeId[to] = employeeId[from];
+            itemStart[to] = itemStart[from];
+            itemCount[to] = itemCount[from];
+        }
+
+        private void compactItemsIfNeeded() {
+            if (itemGarbage < INITIAL_ROWS || itemGarbage * 2 < itemSize) {
+                return;
+            }
+            int[] products = new int[Math.max(INITIAL_ROWS * 2, (itemSize - itemGarbage) * 2)];
+            int[] quantities = new int[products.length];
+            int next = 0;
+            for (int row = 0; row < size; row++) {
+                System.arraycopy(itemProductId, itemStart[row], products, next, itemCount[row]);
+                System.arraycopy(itemQuantity, itemStart[row], quantities, next, itemCount[row]);
+                itemStart[row] = next;
+                next += itemCount[row];
+            }
+            itemProductId = products;
+            itemQuantity = quantities;
+            itemSize = next;
+            itemGarbage = 0;
+        }
+
+        private void ensureRows(int rows) {
+            if (rows <= saleId.length) {
+                return;
+            }
+            int capacity = Math.max(rows, saleId.length + (saleId.length >> 1));
+            saleId = Arrays.copyOf(saleId, capacity);
+            epochSecond = Arrays.copyOf(epochSecond, capacity);
+            subTotal = Arrays.copyOf(subTotal, capacity);
+            iva = Arrays.copyOf(iva, capacity);
+            total = Arrays.copyOf(total, capacity);
+            pharmacyId = Arrays.copyOf(pharmacyId, capacity);
+            employeeId = Arrays.copyOf(employeeId, capacity);
+            itemStart = Arrays.copyOf(itemStart, capacity);
+            itemCount = Arrays.copyOf(itemCount, capacity);
+        }
+
+        private void ensureItems(int items) {
+            if (items <= itemProductId.length) {
+                return;
+            }
+            int capacity = Math.max(items, itemProductId.length + (itemProductId.length >> 1));
+            itemProductId = Arrays.copyOf(itemProductId, capacity);
+            itemQuantity = Arrays.copyOf(itemQuantity, capacity);
+        }
+    }
+
+    private static long orZero(long cents) {
+        return cents != SaleRecord.NO_AMOUNT ? cents : 0;
+    }
+
+    private static int orZero(int value) {
+        return value != SaleRecord.NO_ID ? value : 0;
+    }
+}
@@ -0,0 +1,57 @@
+package com.pharmacy.api.data;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.pharmacy.api.data.archive.SaleArchive;
+import com.pharmacy.api.data.archive.SaleSegment;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Asigna los saleId de las ventas nuevas en tiempo constante.
+ * El nodo permite que varias instancias del servicio creen ventas sin coordinarse.
+ */
+@ApplicationScoped
+public class SaleIdAllocator {
+
+    @Inject
+    SharedData sharedData;
+
+    @Inject
+    SaleArchive saleArchive;
+
+    @ConfigProperty(name = "pharmacy.sale-id.node", defaultValue = "0")
+    int node;
+
+    @ConfigProperty(name = "pharmacy.sale-id.node-bits", defaultValue = "0")
+    int nodeBits;
+
+    @ConfigProperty(name = "pharmacy.sale-id.block-size", defaultValue = "64")
+    int blockSize;
+
+    private BlockIdAllocator allocator;
+
+    @PostConstruct
+    void init() {
+        allocator = new BlockIdAllocator(node, nodeBits, blockSize, 1);
+        // Único recorrido completo: arrancar por encima de las ventas ya cargadas
+        for (SaleRecord sale : sharedData.getSales().findAll()) {
+            allocator.advancePast(sale.saleId());
+        }
+        // Ni los de las ventas ya archivadas, que el almacén no ve
+        for (SaleSegment segment : saleArchive.segments()) {
+            allocator.advancePast(segment.maxSaleId());
+        }
+        System.out.println("SaleIdAllocator - Nodo " + node + " (" + nodeBits + " bits), bloques de " + blockSize);
+    }
+
+    public int nextId() {
+        return allocator.next();
+    }
+
+    public void advancePast(int existingId) {
+        allocator.advancePast(existingId);
+    }
+}
@@ -0,0 +1,133 @@
+package com.pharmacy.api.data;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.pharmacy.api.model.Sale;
+import com.pharmacy.api.model.SaleProduct;
+
+/**
+ * Forma interna y compacta de una venta: solo primitivos y un {@code long[]}
+ * con las partidas, en lugar del {@link Sale} generado con sus Integer,
+ * Double, OffsetDateTime y una lista de {@link SaleProduct}.
+ *
+ * La fecha va en segundos epoch (UTC), los montos en centavos y cada partida
+ * empaqueta productId en los 32 bits altos y quantity en los bajos; el
+ * saleId de la partida es siempre el de la venta. Los campos ausentes usan
+ * {@link #NO_DATE}, {@link #NO_AMOUNT} y {@link #NO_ID}.
+ *
+ * Los servicios y almacenes trabajan con este registro y solo la capa REST lo
+ * convierte al DTO ({@link #toDto()}). En JSON (journal incluido) se escribe
+ * y se lee con la forma del DTO, así que el formato en disco no cambia.
+ *
+ * Una venta con dos partidas ocupa unos 100 bytes de heap contra unos 400
+ * como DTO (ver {@code SaleFootprintBenchmark}).
+ */
+public record SaleRecord(int saleId, long saleDate, long subTotalCents, long ivaCents, long totalCents,
+                         int pharmacyId, int employeeId, long[] items) {
+
+    public static final long NO_DATE = Long.MIN_VALUE;
+    public static final long NO_AMOUNT = Money.NONE;
+    public static final int NO_ID = Integer.MIN_VALUE;
+
+    private static final long[] NO_ITEMS = new long[0];
+
+    public static long item(int productId, int quantity) {
+        return ((long) productId << 32) | (quantity & 0xFFFFFFFFL);
+    }
+
+    public boolean hasDate() {
+        return saleDate != NO_DATE;
+    }
+
+    public int itemCount() {
+        return items.length;
+    }
+
+    public int productId(int item) {
+        return (int) (items[item] >>> 32);
+    }
+
+    public int quantity(int item) {
+        return (int) items[item];
+    }
+
+    /**
+     * Convierte el DTO recibido por la API. La fecha pierde la fracción de
+     * segundo y la zona, y los montos se redondean al centavo; las partidas
+     * con productId o quantity nulos se guardan con {@link #NO_ID}.
+     */
+    @JsonCreator
+    public static SaleRecord from(Sale sale) {
+        List<SaleProduct> products = sale.getProducts();
+        long[] items = NO_ITEMS;
+        if (products != null && !products.isEmpty()) {
+            items = new long[products.size()];
+            for (int i = 0; i < items.length; i++) {
+                SaleProduct product = products.get(i);
+                items[i] = item(orNoId(product.getProductId()), orNoId(product.getQuantity()));
+            }
+        }
+        return new SaleRecord(
+            sale.getSaleId() != null ? sale.getSaleId() : NO_ID,
+            sale.getSaleDate() != null ? sale.getSaleDate().toEpochSecond() : NO_DATE,
+            Money.cents(sale.getSubTotal()),
+            Money.cents(sale.getIva()),
+            Money.cents(sale.getTotal()),
+            orNoId(sale.getPharmacyId()),
+            orNoId(sale.getEmployeeId()),
+            items);
+    }
+
+    @JsonValue
+    public Sale toDto() {
+        List<SaleProduct> products = new ArrayList<>(items.length);
+        for (int i = 0; i < items.length; i++) {
+            products.add(new SaleProduct().saleId(id(saleId)).productId(id(productId(i))).quantity(id(quantity(i))));
+        }
+        return new Sale()
+            .saleId(id(saleId))
+            .saleDate(hasDate() ? OffsetDateTime.ofInstant(Instant.ofEpochSecond(saleDate), ZoneOffset.UTC) : null)
+            .subTotal(Money.amount(subTotalCents))
+            .iva(Money.amount(ivaCents))
+            .total(Money.amount(totalCents))
+            .pharmacyId(id(pharmacyId))
+            .employeeId(id(employeeId))
+            .products(products);
+    }
+
+    private static int orNoId(Integer value) {
+        return value != null ? value : NO_ID;
+    }
+
+    private static Integer id(int value) {
+        return value != NO_ID ? value : null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SaleRecord other
+            && saleId == other.saleId && saleDate == other.saleDate
+            && subTotalCents == other.subTotalCents && ivaCents == other.ivaCents && totalCents == other.totalCents
+            && pharmacyId == other.pharmacyId && employeeId == other.employeeId
+            && Arrays.equals(items, other.items);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Integer.hashCode(saleId) + Arrays.hashCode(items);
+    }
+
+    @Override
+    public String toString() {
+        return "SaleRecord[saleId=" + saleId + ", saleDate=" + saleDate + ", subTotalCents=" + subTotalCents
+            + ", ivaCents=" + ivaCents + ", totalCents=" + totalCents + ", pharmacyId=" + pharmacyId
+            + ", employeeId=" + employeeId + ", items=" + Arrays.toString(items) + "]";
+    }
+}
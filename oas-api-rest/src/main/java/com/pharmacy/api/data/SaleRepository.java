@@ -0,0 +1,137 @@
+package com.pharmacy.api.data;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Almacén de ventas indexado por saleId, repartido en shards por pharmacyId
+ * y, dentro de cada shard, en particiones por saleDate. Las escrituras de
+ * farmacias en shards distintos no compiten entre sí.
+ * Las operaciones por llave cuestan O(log32 n); las consultas por farmacia
+ * cuestan lo proporcional al resultado y no al total de ventas.
+ *
+ * Las ventas guardadas son versiones inmutables ({@link Versioned}). Las
+ * operaciones condicionadas reciben la versión que el llamador leyó y no
+ * hacen nada si otra escritura la reemplazó antes; {@code onCommit} se ejecuta
+ * dentro de la misma sección atómica, así que los espejos que actualiza ven
+ * las escrituras de una venta en el mismo orden que el repositorio. Se
+ * ejecuta antes de publicar la escritura: si lanza, la escritura no se
+ * publica y la excepción llega al llamador, así que el journal puede anexar
+ * ahí su registro antes de que nadie vea el cambio.
+ */
+public interface SaleRepository {
+
+    List<SaleRecord> findAll();
+
+    /**
+     * Foto de todas las ventas en este instante, una raíz por partición de
+     * cada shard, en O(particiones); no cambia con escrituras posteriores.
+     */
+    List<PersistentIntMap<Versioned<SaleRecord>>> snapshot();
+
+    /**
+     * Versiones actuales, ordenadas por saleId.
+     */
+    List<Versioned<SaleRecord>> versions();
+
+    Optional<SaleRecord> findById(int saleId);
+
+    /**
+     * Hasta {@code limit} ventas con llave (saleDate, saleId) estrictamente
+     * entre {@code after} y {@code before} (cualquiera puede ser null), en ese
+     * orden. Cuesta lo proporcional a la página, no a su posición.
+     */
+    List<SaleRecord> findByDate(SaleTimeKey after, SaleTimeKey before, int limit);
+
+    Optional<Versioned<SaleRecord>> findVersion(int saleId);
+
+    /**
+     * Ventas de la farmacia ordenadas por saleId, como lista inmutable. Si
+     * caen en una sola partición, la misma lista se comparte entre llamadas
+     * mientras la farmacia no cambie.
+     */
+    List<SaleRecord> findByPharmacy(int pharmacyId);
+
+    boolean existsByPharmacy(int pharmacyId);
+
+    /**
+     * Hasta {@code limit} ventas del empleado con saleId mayor que
+     * {@code afterSaleId}, ordenadas por saleId. Cuesta lo proporcional a la
+     * página, no al historial del empleado ni al total de ventas.
+     */
+    List<SaleRecord> findByEmployee(int employeeId, int afterSaleId, int limit);
+
+    /**
+     * Inserta la venta o reemplaza la existente con el mismo saleId,
+     * manteniendo los índices secundarios.
+     */
+    void save(SaleRecord sale);
+
+    /**
+     * Inserta la venta si su saleId está libre; devuelve la versión creada o null.
+     */
+    Versioned<SaleRecord> insert(SaleRecord sale, Consumer<Versioned<SaleRecord>> onCommit);
+
+    /**
+     * Inserta un lote tomando el lock de cada shard una sola vez y publicando
+     * un solo estado por shard. Devuelve, en el lugar de cada venta, la
+     * versión creada o null si no se creó.
+     *
+     * Una venta no se crea si su saleId ya estaba ocupado (como en
+     * {@link #insert}, se revisa el shard de la farmacia) o si {@code admit}
+     * rechaza la versión que se le asignó; {@code admit} se llama por venta
+     * con el lock tomado y no debe lanzar. {@code onCommit} recibe, una vez
+     * por shard, las versiones admitidas; si lanza, las de ese shard no se
+     * publican y el lote sigue con los demás shards, así que quien llama
+     * registra ahí el motivo de cada una.
+     */
+    List<Versioned<SaleRecord>> insertAll(List<SaleRecord> sales, Predicate<Versioned<SaleRecord>> admit,
+                                          Consumer<List<Versioned<SaleRecord>>> onCommit);
+
+    /**
+     * Reemplaza {@code expected} por {@code update}; null si ya no es la versión actual.
+     */
+    Versioned<SaleRecord> replace(Versioned<SaleRecord> expected, SaleRecord update, Consumer<Versioned<SaleRecord>> onCommit);
+
+    /**
+     * Elimina {@code expected} y devuelve la revisión del borrado, o -1 si ya
+     * no era la versión actual. {@code onCommit} recibe esa revisión.
+     */
+    long delete(Versioned<SaleRecord> expected, LongConsumer onCommit);
+
+    boolean deleteById(int saleId);
+
+    /**
+     * Reemplaza todo el contenido con versiones recuperadas, sin tomar
+     * revisiones nuevas.
+     */
+    void restore(Collection<Versioned<SaleRecord>> versions);
+
+    /**
+     * Vuelve a publicar versiones desprendidas por {@link #dropBefore} con su
+     * revisión original, sin tomar nuevas; se omite la que tenga su saleId
+     * ocupado otra vez. {@code onCommit} recibe, una vez por shard, las que
+     * se van a publicar en él; si lanza, las de ese shard no se publican y
+     * las de shards anteriores sí.
+     */
+    void reinsert(Iterable<Versioned<SaleRecord>> versions, Consumer<List<Versioned<SaleRecord>>> onCommit);
+
+    /**
+     * Retención: desprende las particiones de fecha que terminan a más tardar
+     * en {@code cutoff} (nunca la de ventas sin fecha) y las devuelve. Cuesta
+     * lo proporcional al número de particiones, no al de ventas, y solo
+     * detiene las escrituras durante ese cambio. Si hay algo que desprender,
+     * {@code onDetach} lo recibe con los locks tomados y antes de que los
+     * lectores dejen de ver esas ventas; si lanza, no se desprende nada.
+     */
+    ExpiredSales dropBefore(OffsetDateTime cutoff, Consumer<ExpiredSales> onDetach);
+
+    int count();
+
+    void clear();
+}
@@ -0,0 +1,30 @@
+package com.pharmacy.api.data;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Posición de una venta en el orden por (saleDate, saleId). Las ventas sin
+ * fecha van antes que todas las demás.
+ */
+public record SaleTimeKey(long epochSecond, int nano, int saleId) implements Comparable<SaleTimeKey> {
+
+    public static SaleTimeKey of(SaleRecord sale) {
+        return new SaleTimeKey(sale.saleDate(), 0, sale.saleId());
+    }
+
+    /**
+     * Llave anterior a cualquier venta con fecha igual o posterior a {@code instant}.
+     */
+    public static SaleTimeKey before(OffsetDateTime instant) {
+        return new SaleTimeKey(instant.toEpochSecond(), instant.getNano(), Integer.MIN_VALUE);
+    }
+
+    @Override
+    public int compareTo(SaleTimeKey other) {
+        int order = Long.compare(epochSecond, other.epochSecond);
+        if (order == 0) {
+            order = Integer.compare(nano, other.nano);
+        }
+        return order != 0 ? order : Integer.compare(saleId, other.saleId);
+    }
+}
@@ -0,0 +1,43 @@
+package com.pharmacy.api.data;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * Totales agregados de un conjunto de ventas. Los montos se suman en
+ * centavos y solo se convierten a número decimal al escribir el JSON, que
+ * conserva los campos {@code subTotal}, {@code iva} y {@code total}.
+ *
+ * @param count         número de ventas
+ * @param subTotalCents suma de subtotales, en centavos
+ * @param ivaCents      suma de IVA, en centavos
+ * @param totalCents    suma de totales, en centavos
+ * @param units         unidades vendidas (suma de cantidades de todas las líneas)
+ */
+@JsonPropertyOrder({"count", "subTotal", "iva", "total", "units"})
+public record SalesSummary(long count, @JsonIgnore long subTotalCents, @JsonIgnore long ivaCents,
+                           @JsonIgnore long totalCents, long units) {
+
+    public static final SalesSummary EMPTY = new SalesSummary(0, 0, 0, 0, 0);
+
+    public SalesSummary plus(SalesSummary other) {
+        return new SalesSummary(count + other.count, subTotalCents + other.subTotalCents, ivaCents + other.ivaCents,
+            totalCents + other.totalCents, units + other.units);
+    }
+
+    @JsonProperty("subTotal")
+    public double subTotal() {
+        return subTotalCents / 100.0;
+    }
+
+    @JsonProperty("iva")
+    public double iva() {
+        return ivaCents / 100.0;
+    }
+
+    @JsonProperty("total")
+    public double total() {
+        return totalCents / 100.0;
+    }
+}
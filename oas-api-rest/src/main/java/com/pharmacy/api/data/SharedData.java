@@ -1,56 +1,192 @@
 package com.pharmacy.api.data;
 
+import com.pharmacy.api.model.Employee;
+import com.pharmacy.api.model.Employee.TypeEmployeeEnum;
 import com.pharmacy.api.model.Pharmacy;
+import com.pharmacy.api.model.Product;
+import com.pharmacy.api.model.Product.ProductTypeEnum;
 import com.pharmacy.api.model.Sale;
 import com.pharmacy.api.model.SaleProduct;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.StreamSupport;
 
 @ApplicationScoped
 public class SharedData {
     
-    private List<Pharmacy> pharmacies = new CopyOnWriteArrayList<>(Arrays.asList(
-        new Pharmacy(1, "Similares - Real Solare", "Avenida Siempre Viva 123 colonia Real Solare"),
-        new Pharmacy(12, "Similares 3", "Centro 123"),
-        new Pharmacy(32, "Similares Dentista", "Centro 123"),
-        new Pharmacy(55, "Similares Veterinaria", "Colonia Las Flores 45 calle 5 cp 78234")
-    ));
-    
-    private List<Sale> sales = new CopyOnWriteArrayList<>(Arrays.asList(
-        new Sale().saleId(201)
-            .saleDate(OffsetDateTime.now())
-            .subTotal(1500.50)
-            .iva(240.08)
-            .total(1740.58)
-            .pharmacyId(1)  // Ahora referencia una farmacia existente
-            .employeeId(401)
-            .products(new ArrayList<SaleProduct>() {{
-                add(new SaleProduct().saleId(201).productId(301).quantity(3));
-                add(new SaleProduct().saleId(201).productId(302).quantity(1));
-            }}),
-        new Sale().saleId(202)
-            .saleDate(OffsetDateTime.now())
-            .subTotal(1000.00)
-            .iva(160.00)
-            .total(1160.00)
-            .pharmacyId(12)  // Ahora referencia una farmacia existente
-            .employeeId(402)
-            .products(new ArrayList<SaleProduct>() {{
-                add(new SaleProduct().saleId(202).productId(401).quantity(2));
-            }})
-    ));
+    // Una sola secuencia de revisiones para todas las entidades
+    private final RevisionClock revisions = new RevisionClock();
+    // Todas las escrituras la pasan; el snapshot del journal la cierra
+    private final CommitGate commits = new CommitGate();
+    private final VersionedRegistry<Pharmacy> pharmacies = new VersionedRegistry<>(revisions, commits);
+    private final VersionedRegistry<Product> products = new VersionedRegistry<>(revisions, commits);
+    private final VersionedRegistry<Employee> employees = new VersionedRegistry<>(revisions, commits);
+    private final SaleRepository sales;
+
+    /**
+     * Foto de todos los almacenes. Cada uno se captura en O(1) leyendo su raíz;
+     * las ventas traen una raíz por partición de cada shard.
+     */
+    public record Snapshot(PersistentIntMap<Versioned<Pharmacy>> pharmacies, List<PersistentIntMap<Versioned<SaleRecord>>> sales,
+                           PersistentIntMap<Versioned<Product>> products, PersistentIntMap<Versioned<Employee>> employees) {
+
+        public long size() {
+            long count = (long) pharmacies.size() + products.size() + employees.size();
+            for (PersistentIntMap<Versioned<SaleRecord>> partition : sales) {
+                count += partition.size();
+            }
+            return count;
+        }
+
+        /**
+         * Ventas de todas las particiones, una tras otra y sin ordenar.
+         */
+        public Iterable<Versioned<SaleRecord>> saleValues() {
+            return () -> sales.stream()
+                .flatMap(partition -> StreamSupport.stream(partition.values().spliterator(), false))
+                .iterator();
+        }
+    }
+
+    private static List<Pharmacy> seedPharmacies() {
+        return Arrays.asList(
+            new Pharmacy(1, "Similares - Real Solare", "Avenida Siempre Viva 123 colonia Real Solare"),
+            new Pharmacy(12, "Similares 3", "Centro 123"),
+            new Pharmacy(32, "Similares Dentista", "Centro 123"),
+            new Pharmacy(55, "Similares Veterinaria", "Colonia Las Flores 45 calle 5 cp 78234")
+        );
+    }
+
+    private static List<Product> seedProducts() {
+        return Arrays.asList(
+            new Product(1, ProductTypeEnum.GENERICO, "Paracetamol", 50.50),
+            new Product(55, ProductTypeEnum.GENERICO, "Jarabe Broncolin", 130.22),
+            new Product(302, ProductTypeEnum.PRESCRITO, "Amoxicilina", 160.00),
+            new Product(2, ProductTypeEnum.GENERICO, "Ibuprofeno", 50.50)
+        );
+    }
+
+    private static List<Employee> seedEmployees() {
+        return Arrays.asList(
+            new Employee()
+                .idEmployee(101)
+                .idPharmacy(3) 
+                .name("Juan")
+                .lastName("Perez")
+                .phone("4421234567")
+                .typeEmployee(TypeEmployeeEnum.CAJERO),
+            
+            new Employee()
+                .idEmployee(102)
+                .idPharmacy(1)
+                .name("Maria")
+                .lastName("Gomez")
+                .phone("4427654321")
+                .typeEmployee(TypeEmployeeEnum.DOCTOR),
+            
+            new Employee()
+                .idEmployee(201)
+                .idPharmacy(2)
+                .name("Carlos")
+                .lastName("Hernandez")
+                .phone("5551112233")
+                .typeEmployee(TypeEmployeeEnum.CAJERO)
+        );
+    }
+
+    @Inject
+    public SharedData(@ConfigProperty(name = "pharmacy.sales.shards", defaultValue = "16") int saleShards,
+                      @ConfigProperty(name = "pharmacy.sales.partition-hours", defaultValue = "24") int partitionHours) {
+        sales = new InMemorySaleRepository(revisions, commits, saleShards, Duration.ofHours(partitionHours));
+        seedPharmacies().forEach(p -> pharmacies.insert(p.getIdPharmacy(), p));
+        seedProducts().forEach(p -> products.insert(p.getProductId(), p));
+        seedEmployees().forEach(e -> employees.insert(e.getIdEmployee(), e));
+        for (Sale sale : seedSales()) {
+            sales.save(SaleRecord.from(sale));
+        }
+    }
+
+    private static List<Sale> seedSales() {
+        return Arrays.asList(
+            new Sale().saleId(201)
+                .saleDate(OffsetDateTime.now())
+                .subTotal(1500.50)
+                .iva(240.08)
+                .total(1740.58)
+                .pharmacyId(1)  // Ahora referencia una farmacia existente
+                .employeeId(102)  // Ahora referencia un empleado existente
+                .products(new ArrayList<SaleProduct>() {{
+                    add(new SaleProduct().saleId(201).productId(1).quantity(3));
+                    add(new SaleProduct().saleId(201).productId(302).quantity(1));
+                }}),
+            new Sale().saleId(202)
+                .saleDate(OffsetDateTime.now())
+                .subTotal(1000.00)
+                .iva(160.00)
+                .total(1160.00)
+                .pharmacyId(12)  // Ahora referencia una farmacia existente
+                .employeeId(101)  // Ahora referencia un empleado existente
+                .products(new ArrayList<SaleProduct>() {{
+                    add(new SaleProduct().saleId(202).productId(55).quantity(2));
+                }})
+        );
+    }
     
-    public List<Pharmacy> getPharmacies() {
+    public VersionedRegistry<Pharmacy> getPharmacies() {
         return pharmacies;
     }
     
-    public List<Sale> getSales() {
+    public RevisionClock getRevisions() {
+        return revisions;
+    }
+
+    public CommitGate getCommits() {
+        return commits;
+    }
+
+    public SaleRepository getSales() {
         return sales;
     }
+
+    public VersionedRegistry<Product> getProducts() {
+        return products;
+    }
+
+    public VersionedRegistry<Employee> getEmployees() {
+        return employees;
+    }
+
+    /**
+     * Foto consistente de todos los datos sin detener a los escritores.
+     *
+     * Las ventas se capturan primero: una entidad que una venta referencia ya
+     * existía cuando la venta se escribió, así que también está en las raíces
+     * que se leen después (salvo que se haya borrado entre ambas lecturas).
+     */
+    public Snapshot snapshot() {
+        List<PersistentIntMap<Versioned<SaleRecord>>> salesRoot = sales.snapshot();
+        return new Snapshot(pharmacies.snapshot(), salesRoot, products.snapshot(), employees.snapshot());
+    }
+
+    /**
+     * Reemplaza todo el estado (datos de prueba incluidos) con el recuperado
+     * del snapshot y el journal. Solo se usa al arrancar, antes de atender peticiones.
+     */
+    public void restore(Collection<Versioned<Pharmacy>> pharmacies, Collection<Versioned<SaleRecord>> sales,
+                        Collection<Versioned<Product>> products, Collection<Versioned<Employee>> employees) {
+        this.pharmacies.restore(pharmacies, Pharmacy::getIdPharmacy);
+        this.sales.restore(sales);
+        this.products.restore(products, Product::getProductId);
+        this.employees.restore(employees, Employee::getIdEmployee);
+    }
 }
\ No newline at end of file
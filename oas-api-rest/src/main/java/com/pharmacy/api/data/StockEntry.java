@@ -0,0 +1,19 @@
+package com.pharmacy.api.data;
+
+/**
+ * Estado persistido de un contador de existencias: lo que se anexa al
+ * journal con cada cambio y lo que guarda el snapshot.
+ *
+ * @param pharmacyId   farmacia
+ * @param productId    producto
+ * @param available    unidades disponibles después del cambio
+ * @param trackedSince revisión desde la que el producto lleva inventario en
+ *                     la farmacia; una partida de una venta con revisión
+ *                     mayor tomó existencias, una anterior no
+ */
+public record StockEntry(int pharmacyId, int productId, long available, long trackedSince) {
+
+    public StockLevel level() {
+        return new StockLevel(pharmacyId, productId, available);
+    }
+}
@@ -0,0 +1,435 @@
+package com.pharmacy.api.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import com.pharmacy.api.commons.BadRequestException;
+import com.pharmacy.api.commons.ConflictException;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Existencias por (farmacia, producto), cada una en su propio contador.
+ *
+ * Los contadores se agrupan por farmacia, así que leer las existencias de una
+ * sucursal cuesta O(productos de la sucursal). Cada contador tiene su propio
+ * monitor; no hay un lock global, y dos terminales solo compiten si venden el
+ * mismo producto en la misma farmacia.
+ *
+ * Un producto sin contador en una farmacia no lleva inventario y se vende sin
+ * límite; empieza a controlarse cuando se le fija una existencia, y la
+ * revisión de ese primer cambio queda como {@code trackedSince}. Una partida
+ * tomó existencias si y solo si su venta tiene una revisión mayor: con eso se
+ * decide qué devolver al reemplazar o eliminar una venta, también después de
+ * reiniciar.
+ *
+ * Cada cambio pasa su {@link StockEntry} a {@code onCommit} con el monitor
+ * tomado y antes de publicarse, como las escrituras del
+ * {@link VersionedRegistry}: el servicio lo anexa al journal y, si lanza, el
+ * contador no cambia. Por contador las revisiones crecen en el orden de los
+ * cambios, así que al reproducir el journal gana el último. Como en los
+ * almacenes, cada operación pasa la {@link CommitGate} antes de tomar un
+ * monitor.
+ */
+@ApplicationScoped
+public class StockLedger {
+
+    /** trackedSince de un contador cuyo primer cambio todavía no se publica. */
+    private static final long UNTRACKED = Long.MAX_VALUE;
+
+    @Inject
+    SharedData sharedData;
+
+    private final ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, Counter>> byPharmacy = new ConcurrentHashMap<>();
+    private RevisionClock clock;
+    private CommitGate commits = new CommitGate();
+
+    public StockLedger() {
+    }
+
+    public StockLedger(RevisionClock clock) {
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    void init() {
+        clock = sharedData.getRevisions();
+        commits = sharedData.getCommits();
+    }
+
+    /**
+     * Existencia disponible, o null si el producto no lleva inventario en la farmacia.
+     */
+    public Long available(int pharmacyId, int productId) {
+        Counter counter = find(pharmacyId, productId);
+        return counter != null && counter.tracked() ? counter.available : null;
+    }
+
+    /**
+     * Existencias de la farmacia, ordenadas por productId.
+     */
+    public List<StockLevel> levels(int pharmacyId) {
+        Map<Integer, Counter> products = byPharmacy.get(pharmacyId);
+        if (products == null) {
+            return List.of();
+        }
+        List<StockLevel> levels = new ArrayList<>(products.size());
+        products.forEach((productId, counter) -> {
+            if (counter.tracked()) {
+                levels.add(new StockLevel(pharmacyId, productId, counter.available));
+            }
+        });
+        levels.sort(Comparator.comparingInt(StockLevel::productId));
+        return levels;
+    }
+
+    /**
+     * Fija la existencia (conteo físico); a partir de aquí el producto lleva inventario.
+     */
+    public StockLevel set(int pharmacyId, int productId, long available, Consumer<Versioned<StockEntry>> onCommit) {
+        if (available < 0) {
+            throw new BadRequestException("La existencia no puede ser negativa");
+        }
+        Counter counter = counter(pharmacyId, productId);
+        commits.enter();
+        try {
+            synchronized (counter) {
+                return counter.change(available, onCommit).level();
+            }
+        } finally {
+            commits.exit();
+        }
+    }
+
+    /**
+     * Suma {@code delta} (entradas positivas, mermas negativas) sin dejar la
+     * existencia por debajo de cero ni pasar de {@link Long#MAX_VALUE}.
+     */
+    public StockLevel adjust(int pharmacyId, int productId, long delta, Consumer<Versioned<StockEntry>> onCommit) {
+        Counter counter = counter(pharmacyId, productId);
+        commits.enter();
+        try {
+            synchronized (counter) {
+                long current = counter.available;
+                long next;
+                try {
+                    next = Math.addExact(current, delta);
+                } catch (ArithmeticException e) {
+                    throw new BadRequestException("El ajuste " + delta + " a la existencia del producto " + productId
+                        + " en la farmacia " + pharmacyId + " está fuera de rango");
+                }
+                if (next < 0) {
+                    throw new ConflictException("La existencia del producto " + productId + " en la farmacia "
+                        + pharmacyId + " es " + current + ", no admite un ajuste de " + delta);
+                }
+                return counter.change(next, onCommit).level();
+            }
+        } finally {
+            commits.exit();
+        }
+    }
+
+    /**
+     * Reserva lo que pide {@code next} de más respecto a {@code previous} (la
+     * versión que reemplaza, o null si es nueva): todas las partidas o
+     * ninguna. De {@code previous} solo cuentan las partidas que tomaron
+     * existencias. Lo que deja de usar se libera hasta
+     * {@link Reservation#commit()}, una vez guardada la venta, para que otra
+     * terminal no lo tome si la escritura falla y hay que deshacer.
+     *
+     * @throws ConflictException si alguna partida no tiene existencia suficiente
+     */
+    public Reservation reserve(Versioned<SaleRecord> previous, SaleRecord next, Consumer<Versioned<StockEntry>> onCommit) {
+        Map<Long, long[]> lines = new LinkedHashMap<>();
+        if (previous != null) {
+            SaleRecord sale = previous.value();
+            for (int i = 0; i < sale.itemCount(); i++) {
+                lines.computeIfAbsent(key(sale.pharmacyId(), sale.productId(i)), k -> new long[2])[0] += sale.quantity(i);
+            }
+        }
+        if (next != null) {
+            for (int i = 0; i < next.itemCount(); i++) {
+                lines.computeIfAbsent(key(next.pharmacyId(), next.productId(i)), k -> new long[2])[1] += next.quantity(i);
+            }
+        }
+        long previousRevision = previous != null ? previous.revision() : 0;
+        Reservation reservation = new Reservation(onCommit);
+        commits.enter();
+        try {
+            lines.forEach((key, quantities) -> move(reservation, key, quantities[0], quantities[1], previousRevision));
+        } finally {
+            commits.exit();
+        }
+        return reservation;
+    }
+
+    /**
+     * Devuelve al inventario las partidas de una venta eliminada que tomaron existencias.
+     */
+    public void release(Versioned<SaleRecord> sale, Consumer<Versioned<StockEntry>> onCommit) {
+        Map<Long, Long> quantities = new LinkedHashMap<>();
+        SaleRecord record = sale.value();
+        for (int i = 0; i < record.itemCount(); i++) {
+            quantities.merge(key(record.pharmacyId(), record.productId(i)), (long) record.quantity(i), Long::sum);
+        }
+        commits.enter();
+        try {
+            quantities.forEach((key, quantity) -> {
+                Counter counter = find(pharmacyOf(key), productOf(key));
+                if (counter != null) {
+                    synchronized (counter) {
+                        if (counter.trackedBefore(sale.revision())) {
+                            counter.change(counter.available + quantity, onCommit);
+                        }
+                    }
+                }
+            });
+        } finally {
+            commits.exit();
+        }
+    }
+
+    /**
+     * Estado de todos los contadores, para el snapshot, que lo captura con la
+     * {@link CommitGate} cerrada.
+     */
+    public List<Versioned<StockEntry>> entries() {
+        List<Versioned<StockEntry>> entries = new ArrayList<>();
+        byPharmacy.values().forEach(products -> products.values().forEach(counter -> {
+            synchronized (counter) {
+                if (counter.tracked()) {
+                    entries.add(new Versioned<>(counter.entry(), counter.revision));
+                }
+            }
+        }));
+        return entries;
+    }
+
+    /**
+     * Reemplaza todos los contadores con los recuperados del journal.
+     */
+    public void restore(Collection<Versioned<StockEntry>> entries) {
+        byPharmacy.clear();
+        long last = 0;
+        for (Versioned<StockEntry> entry : entries) {
+            StockEntry value = entry.value();
+            Counter counter = counter(value.pharmacyId(), value.productId());
+            synchronized (counter) {
+                counter.available = value.available();
+                counter.trackedSince = value.trackedSince();
+                counter.revision = entry.revision();
+            }
+            last = Math.max(last, entry.revision());
+        }
+        clock.advancePast(last);
+    }
+
+    /**
+     * Aplica la diferencia de una línea agrupada por producto. Si no alcanza,
+     * deshace lo ya reservado fuera del monitor, para no tomar dos a la vez.
+     */
+    private void move(Reservation reservation, long key, long previous, long next, long previousRevision) {
+        Counter counter = find(pharmacyOf(key), productOf(key));
+        if (counter == null) {
+            if (next > 0) {
+                reservation.untracked.add(new Line(key, next));
+            }
+            return;
+        }
+        long available;
+        long delta;
+        synchronized (counter) {
+            if (!counter.tracked()) {
+                if (next > 0) {
+                    reservation.untracked.add(new Line(key, next));
+                }
+                return;
+            }
+            delta = next - (counter.trackedBefore(previousRevision) ? previous : 0);
+            available = counter.available;
+            if (delta < 0) {
+                reservation.releases.add(new Move(counter, -delta));
+                return;
+            }
+            if (delta == 0) {
+                return;
+            }
+            if (available >= delta) {
+                counter.change(available - delta, reservation.onCommit);
+                reservation.taken.add(new Move(counter, delta));
+                return;
+            }
+        }
+        reservation.cancel();
+        throw insufficient(key, available, delta);
+    }
+
+    private Counter find(int pharmacyId, int productId) {
+        Map<Integer, Counter> products = byPharmacy.get(pharmacyId);
+        return products != null ? products.get(productId) : null;
+    }
+
+    private Counter counter(int pharmacyId, int productId) {
+        return byPharmacy.computeIfAbsent(pharmacyId, k -> new ConcurrentHashMap<>())
+            .computeIfAbsent(productId, k -> new Counter(pharmacyId, productId));
+    }
+
+    private static ConflictException insufficient(long key, long available, long requested) {
+        return new ConflictException("Existencia insuficiente del producto " + productOf(key)
+            + " en la farmacia " + pharmacyOf(key) + ": disponible " + available + ", solicitado " + requested);
+    }
+
+    static long key(int pharmacyId, int productId) {
+        return (long) pharmacyId << 32 | (productId & 0xFFFFFFFFL);
+    }
+
+    private static int pharmacyOf(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int productOf(long key) {
+        return (int) key;
+    }
+
+    /**
+     * Contador de un producto en una farmacia. Se escribe solo con su monitor
+     * tomado; {@code available} y {@code trackedSince} se leen sin él.
+     */
+    private final class Counter {
+
+        final int pharmacyId;
+        final int productId;
+        volatile long available;
+        volatile long trackedSince = UNTRACKED;
+        long revision;
+
+        Counter(int pharmacyId, int productId) {
+            this.pharmacyId = pharmacyId;
+            this.productId = productId;
+        }
+
+        boolean tracked() {
+            return trackedSince != UNTRACKED;
+        }
+
+        /** Si una partida de una venta con esta revisión tomó existencias. */
+        boolean trackedBefore(long saleRevision) {
+            return trackedSince < saleRevision;
+        }
+
+        StockEntry entry() {
+            return new StockEntry(pharmacyId, productId, available, trackedSince);
+        }
+
+        /**
+         * Con el monitor tomado: pasa el cambio a {@code onCommit} y, si no
+         * lanza, lo publica.
+         */
+        StockEntry change(long next, Consumer<Versioned<StockEntry>> onCommit) {
+            long installed = clock.next();
+            StockEntry entry = new StockEntry(pharmacyId, productId, next, tracked() ? trackedSince : installed);
+            onCommit.accept(new Versioned<>(entry, installed));
+            revision = installed;
+            trackedSince = entry.trackedSince();
+            available = next;
+            return entry;
+        }
+
+        void add(long quantity, Consumer<Versioned<StockEntry>> onCommit) {
+            commits.enter();
+            try {
+                synchronized (this) {
+                    change(available + quantity, onCommit);
+                }
+            } finally {
+                commits.exit();
+            }
+        }
+    }
+
+    private record Move(Counter counter, long quantity) {
+    }
+
+    private record Line(long key, long quantity) {
+    }
+
+    /**
+     * Existencias tomadas para una venta que aún no se guarda, las que se
+     * liberarán cuando se guarde y las partidas que no llevaban inventario al
+     * reservar.
+     */
+    public final class Reservation {
+
+        private final Consumer<Versioned<StockEntry>> onCommit;
+        private final List<Move> taken = new ArrayList<>();
+        private final List<Move> releases = new ArrayList<>();
+        private final List<Line> untracked = new ArrayList<>();
+
+        private Reservation(Consumer<Versioned<StockEntry>> onCommit) {
+            this.onCommit = onCommit;
+        }
+
+        /**
+         * Se llama en el {@code onCommit} de la venta, con la revisión que va
+         * a instalar: si entre la reserva y la escritura alguno de sus
+         * productos empezó a llevar inventario, la partida se toma ahora,
+         * para que valga la regla de {@code trackedSince}.
+         *
+         * @throws ConflictException si esa partida no tiene existencia suficiente
+         */
+        public void confirm(long revision) {
+            commits.enter();
+            try {
+                confirmUntracked(revision);
+            } finally {
+                commits.exit();
+            }
+            untracked.clear();
+        }
+
+        private void confirmUntracked(long revision) {
+            for (Line line : untracked) {
+                Counter counter = find(pharmacyOf(line.key()), productOf(line.key()));
+                if (counter == null) {
+                    continue;
+                }
+                long available;
+                synchronized (counter) {
+                    if (!counter.trackedBefore(revision)) {
+                        continue;
+                    }
+                    available = counter.available;
+                    if (available >= line.quantity()) {
+                        counter.change(available - line.quantity(), onCommit);
+                        taken.add(new Move(counter, line.quantity()));
+                        continue;
+                    }
+                }
+                throw insufficient(line.key(), available, line.quantity());
+            }
+        }
+
+        /**
+         * La venta se guardó: se libera lo que la versión anterior ya no usa.
+         */
+        public void commit() {
+            releases.forEach(move -> move.counter().add(move.quantity(), onCommit));
+        }
+
+        /**
+         * La venta no se guardó: se devuelve lo reservado.
+         */
+        public void cancel() {
+            taken.forEach(move -> move.counter().add(move.quantity(), onCommit));
+            taken.clear();
+        }
+    }
+}
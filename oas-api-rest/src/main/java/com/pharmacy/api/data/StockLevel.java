@@ -0,0 +1,11 @@
+package com.pharmacy.api.data;
+
+/**
+ * Existencia de un producto en una farmacia.
+ *
+ * @param pharmacyId farmacia
+ * @param productId  producto
+ * @param available  unidades disponibles para vender
+ */
+public record StockLevel(int pharmacyId, int productId, long available) {
+}
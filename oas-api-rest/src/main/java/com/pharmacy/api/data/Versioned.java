@@ -0,0 +1,18 @@
+package com.pharmacy.api.data;
+
+/**
+ * Versión inmutable de una entidad guardada.
+ *
+ * La entidad publicada en un almacén no se vuelve a modificar: cada escritura
+ * construye una copia nueva y, con el lock del almacén (o del shard) tomado,
+ * comprueba que la actual siga siendo la versión que leyó, le da su
+ * revisión, corre el {@code onCommit} que la anexa al journal y solo entonces
+ * la publica; si el {@code onCommit} lanza, no se publica nada. Antes del
+ * lock la escritura entra en la {@link CommitGate}, que el snapshot cierra
+ * para no perder lo que ya está en el journal pero aún no en memoria.
+ *
+ * {@code revision} viene de {@link RevisionClock}, así que crece con cada
+ * escritura y sirve como ETag.
+ */
+public record Versioned<T>(T value, long revision) {
+}
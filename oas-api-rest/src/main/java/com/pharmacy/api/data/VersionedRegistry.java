@@ -0,0 +1,230 @@
+package com.pharmacy.api.data;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Almacén de entidades inmutables por ID, sobre un {@link PersistentIntMap}.
+ *
+ * Cada escritura instala un {@link Versioned} nuevo con una revisión del
+ * {@link RevisionClock} compartido. Las actualizaciones reciben la versión
+ * que el llamador leyó y solo se aplican si sigue siendo la actual; si otra
+ * escritura ganó, devuelven null para que el servicio reporte el conflicto.
+ *
+ * El estado completo es la raíz del mapa persistente: escribir es construir
+ * un mapa nuevo y publicarlo sobre la raíz, y {@link #snapshot()} es leerla,
+ * así que una foto cuesta O(1) y los lectores no se detienen.
+ *
+ * Las escrituras se hacen una a la vez bajo un lock del almacén, porque cada
+ * una ejecuta {@code onCommit} (el anexado al journal) antes de publicar: si
+ * lanza, la escritura no se publica. Con compare-and-swap un intento que
+ * pierde ya habría anexado un registro de una versión que nunca existió.
+ * Estas entidades cambian poco, así que el lock no se nota; el fsync se
+ * espera fuera de él. Antes del lock se pasa la {@link CommitGate}, que el
+ * snapshot cierra para no capturar un registro anexado y sin publicar.
+ *
+ * Cada escritura toma su revisión después de leer la raíz: si ve que la llave
+ * fue borrada o reemplazada, la revisión de esa escritura ya estaba asignada
+ * y la nueva siempre es mayor.
+ *
+ * El orden por ID que usan los listados se calcula una vez por raíz: mientras
+ * nadie escriba, las lecturas y páginas siguientes lo reutilizan.
+ */
+public final class VersionedRegistry<T> {
+
+    private final AtomicReference<PersistentIntMap<Versioned<T>>> root =
+        new AtomicReference<>(PersistentIntMap.empty());
+    private final RevisionClock clock;
+    private final CommitGate commits;
+    private final ReentrantLock writes = new ReentrantLock();
+    private volatile SortedView<T> sortedView;
+
+    private record SortedView<T>(PersistentIntMap<Versioned<T>> root, List<Versioned<T>> versions) {
+    }
+
+    public VersionedRegistry(RevisionClock clock) {
+        this(clock, new CommitGate());
+    }
+
+    public VersionedRegistry(RevisionClock clock, CommitGate commits) {
+        this.clock = clock;
+        this.commits = commits;
+    }
+
+    /**
+     * Foto del almacén en este instante; no cambia con escrituras posteriores.
+     */
+    public PersistentIntMap<Versioned<T>> snapshot() {
+        return root.get();
+    }
+
+    public T get(int id) {
+        Versioned<T> current = root.get().get(id);
+        return current != null ? current.value() : null;
+    }
+
+    public Versioned<T> getVersioned(int id) {
+        return root.get().get(id);
+    }
+
+    public boolean contains(int id) {
+        return root.get().containsKey(id);
+    }
+
+    public int size() {
+        return root.get().size();
+    }
+
+    /**
+     * Entidades ordenadas por ID, todas de la misma foto.
+     */
+    public List<T> values() {
+        return versions().stream().map(Versioned::value).toList();
+    }
+
+    public List<Versioned<T>> versions() {
+        PersistentIntMap<Versioned<T>> current = root.get();
+        SortedView<T> view = sortedView;
+        if (view == null || view.root() != current) {
+            view = new SortedView<>(current, Collections.unmodifiableList(current.sortedValues()));
+            sortedView = view;
+        }
+        return view.versions();
+    }
+
+    /**
+     * Hasta {@code limit} entidades con ID mayor que {@code afterId}, en orden
+     * de ID. Se posiciona con búsqueda binaria, así que cuesta O(log n + limit)
+     * sin importar la profundidad de la página.
+     */
+    public List<T> page(int afterId, int limit, ToIntFunction<T> idOf) {
+        List<Versioned<T>> sorted = versions();
+        int low = 0;
+        int high = sorted.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (idOf.applyAsInt(sorted.get(mid).value()) <= afterId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return sorted.subList(low, Math.min(sorted.size(), low + limit)).stream().map(Versioned::value).toList();
+    }
+
+    /**
+     * Inserta si el ID está libre; devuelve la versión creada o null si ya existía.
+     */
+    public Versioned<T> insert(int id, T entity) {
+        return insert(id, entity, version -> { });
+    }
+
+    /**
+     * Como {@link #insert(int, Object)}; {@code onCommit} recibe la versión
+     * antes de publicarla.
+     */
+    public Versioned<T> insert(int id, T entity, Consumer<Versioned<T>> onCommit) {
+        commits.enter();
+        writes.lock();
+        try {
+            PersistentIntMap<Versioned<T>> current = root.get();
+            if (current.containsKey(id)) {
+                return null;
+            }
+            Versioned<T> created = new Versioned<>(entity, clock.next());
+            onCommit.accept(created);
+            root.set(current.put(id, created));
+            return created;
+        } finally {
+            writes.unlock();
+            commits.exit();
+        }
+    }
+
+    /**
+     * Reemplaza {@code expected} por {@code update}; null si ya no es la versión actual.
+     */
+    public Versioned<T> replace(int id, Versioned<T> expected, T update) {
+        return replace(id, expected, id, update, version -> { });
+    }
+
+    public Versioned<T> replace(int id, Versioned<T> expected, T update, Consumer<Versioned<T>> onCommit) {
+        return replace(id, expected, id, update, onCommit);
+    }
+
+    /**
+     * Como {@link #replace}, pero instalando la entidad con otro ID; null si
+     * {@code expected} ya no es la actual o el ID nuevo está ocupado. Ambos
+     * cambios se publican en la misma raíz.
+     */
+    public Versioned<T> replace(int id, Versioned<T> expected, int newId, T update, Consumer<Versioned<T>> onCommit) {
+        commits.enter();
+        writes.lock();
+        try {
+            PersistentIntMap<Versioned<T>> current = root.get();
+            if (current.get(id) != expected || id != newId && current.containsKey(newId)) {
+                return null;
+            }
+            Versioned<T> next = new Versioned<>(update, clock.next());
+            onCommit.accept(next);
+            root.set(id != newId ? current.remove(id).put(newId, next) : current.put(id, next));
+            return next;
+        } finally {
+            writes.unlock();
+            commits.exit();
+        }
+    }
+
+    /**
+     * Elimina {@code expected} y devuelve la revisión del borrado, o -1 si ya
+     * no era la versión actual.
+     */
+    public long remove(int id, Versioned<T> expected) {
+        return remove(id, expected, revision -> { });
+    }
+
+    /**
+     * Como {@link #remove(int, Versioned)}; {@code onCommit} recibe la
+     * revisión del borrado antes de publicarlo.
+     */
+    public long remove(int id, Versioned<T> expected, LongConsumer onCommit) {
+        commits.enter();
+        writes.lock();
+        try {
+            PersistentIntMap<Versioned<T>> current = root.get();
+            if (current.get(id) != expected) {
+                return -1;
+            }
+            long revision = clock.next();
+            onCommit.accept(revision);
+            root.set(current.remove(id));
+            return revision;
+        } finally {
+            writes.unlock();
+            commits.exit();
+        }
+    }
+
+    /**
+     * Reemplaza todo el contenido con versiones recuperadas, sin tomar
+     * revisiones nuevas. Se construye fuera de línea y se publica de una vez.
+     */
+    public void restore(Collection<Versioned<T>> versions, ToIntFunction<T> idOf) {
+        PersistentIntMap.Builder<Versioned<T>> builder = PersistentIntMap.builder();
+        for (Versioned<T> version : versions) {
+            builder.put(idOf.applyAsInt(version.value()), version);
+            clock.advancePast(version.revision());
+        }
+        root.set(builder.build());
+    }
+
+    public void clear() {
+        root.set(PersistentIntMap.empty());
+    }
+}
@@ -0,0 +1,217 @@
+package com.pharmacy.api.data.archive;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.pharmacy.api.data.ExpiredSales;
+import com.pharmacy.api.data.PersistentIntMap;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.SaleTimeKey;
+import com.pharmacy.api.data.Versioned;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Archivo en frío de las ventas que la retención saca del almacén en memoria:
+ * un {@link SaleSegment} por retención en {@code pharmacy.archive.dir}. Del
+ * archivo solo viven en el heap los índices dispersos de cada segmento.
+ *
+ * La retención deja las particiones desprendidas en espera ({@link #stage})
+ * con los locks del almacén todavía tomados; mientras su segmento se escribe
+ * se siguen consultando desde ahí, así que una venta nunca falta del almacén
+ * y del archivo a la vez.
+ */
+@ApplicationScoped
+public class SaleArchive {
+
+    private static final Comparator<Versioned<SaleRecord>> BY_TIME = Comparator.comparing(v -> SaleTimeKey.of(v.value()));
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "pharmacy.archive.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "pharmacy.archive.dir", defaultValue = "data/archive")
+    String dir;
+
+    @ConfigProperty(name = "pharmacy.archive.block-sales", defaultValue = "128")
+    int blockSales;
+
+    private final List<SaleSegment> segments = new CopyOnWriteArrayList<>();
+    private volatile ExpiredSales pending;
+    private Path directory;
+
+    @PostConstruct
+    void open() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            directory = Paths.get(dir);
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> list = Files.list(directory)) {
+                files = list.sorted().toList();
+            }
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".seg.tmp")) {
+                    // Escritura interrumpida: la retención no llegó a registrarse
+                    Files.deleteIfExists(file);
+                } else if (name.startsWith("sales-") && name.endsWith(".seg")) {
+                    segments.add(SaleSegment.open(file));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo abrir el archivo de ventas en " + dir, e);
+        }
+        registry.gauge("pharmacy.archive.sales", segments, list -> list.stream().mapToLong(SaleSegment::size).sum());
+        registry.gauge("pharmacy.archive.bytes", segments, list -> list.stream().mapToLong(SaleSegment::bytes).sum());
+        System.out.println("SaleArchive - " + segments.size() + " segmentos (" + sales() + " ventas, " + bytes()
+            + " bytes) en " + directory.toAbsolutePath());
+    }
+
+    @PreDestroy
+    void close() {
+        for (SaleSegment segment : segments) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                System.err.println("SaleArchive - Error al cerrar " + segment.file() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Segmentos en orden de creación. Cada uno equivale a una retención
+     * (ventas anteriores a {@code before()} escritas antes de {@code revision()}).
+     */
+    public List<SaleSegment> segments() {
+        return List.copyOf(segments);
+    }
+
+    public long sales() {
+        return segments.stream().mapToLong(SaleSegment::size).sum();
+    }
+
+    public long bytes() {
+        return segments.stream().mapToLong(SaleSegment::bytes).sum();
+    }
+
+    /**
+     * Deja visibles las ventas desprendidas hasta que {@link #archive} las
+     * escriba o {@link #unstage} las retire. Se llama desde el
+     * {@code onDetach} de {@link com.pharmacy.api.data.SaleRepository#dropBefore},
+     * antes de que el almacén deje de verlas. Solo una retención a la vez.
+     */
+    public void stage(ExpiredSales expired) {
+        if (pending != null) {
+            throw new IllegalStateException("Ya hay una retención en espera de archivarse");
+        }
+        pending = expired;
+    }
+
+    /**
+     * Ventas desprendidas que todavía no están en un segmento, o null. El
+     * snapshot del journal las incluye: ya no están en el almacén y su
+     * registro puede estar en un segmento del journal que el snapshot borra.
+     */
+    public ExpiredSales staged() {
+        return pending;
+    }
+
+    /**
+     * Quita las ventas en espera; la retención las devolvió al almacén.
+     */
+    public void unstage(ExpiredSales expired) {
+        if (pending == expired) {
+            pending = null;
+        }
+    }
+
+    /**
+     * Escribe las ventas en espera en un segmento nuevo y lo fuerza a disco.
+     * Si falla, siguen en espera hasta que la retención las devuelva al
+     * almacén y llame a {@link #unstage}.
+     */
+    public synchronized SaleSegment archive(ExpiredSales expired) throws IOException {
+        if (pending != expired) {
+            throw new IllegalStateException("Las ventas a archivar no están en espera");
+        }
+        List<Versioned<SaleRecord>> sorted = new ArrayList<>((int) expired.size());
+        expired.sales().forEach(sorted::add);
+        sorted.sort(BY_TIME);
+        SaleSegment segment = SaleSegment.write(SaleSegment.path(directory, expired.revision()),
+            expired.revision(), expired.before(), sorted, blockSales);
+        // El segmento entra antes de soltar las particiones: sin huecos entre ambos
+        segments.add(segment);
+        pending = null;
+        return segment;
+    }
+
+    public Optional<Versioned<SaleRecord>> findVersion(int saleId) {
+        ExpiredSales staged = pending;
+        if (staged != null) {
+            for (PersistentIntMap<Versioned<SaleRecord>> partition : staged.partitions()) {
+                Versioned<SaleRecord> sale = partition.get(saleId);
+                if (sale != null) {
+                    return Optional.of(sale);
+                }
+            }
+        }
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            Versioned<SaleRecord> sale = segments.get(i).find(saleId);
+            if (sale != null) {
+                return Optional.of(sale);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Hasta {@code limit} ventas archivadas con llave estrictamente entre
+     * {@code after} y {@code before}, en orden (saleDate, saleId). Cada
+     * segmento aporta a lo más {@code limit}; no se lee ningún bloque fuera
+     * del rango.
+     */
+    public List<SaleRecord> findByDate(SaleTimeKey after, SaleTimeKey before, int limit) {
+        List<SaleRecord> found = new ArrayList<>();
+        ExpiredSales staged = pending;
+        if (staged != null) {
+            for (Versioned<SaleRecord> sale : staged.sales()) {
+                SaleTimeKey key = SaleTimeKey.of(sale.value());
+                if ((after == null || key.compareTo(after) > 0) && (before == null || key.compareTo(before) < 0)) {
+                    found.add(sale.value());
+                }
+            }
+        }
+        for (SaleSegment segment : segments) {
+            // Recién escrito y todavía en espera: sus ventas ya se tomaron arriba
+            if (staged == null || segment.revision() != staged.revision()) {
+                found.addAll(segment.range(after, before, limit));
+            }
+        }
+        found.sort(Comparator.comparing(SaleTimeKey::of));
+        return found.size() > limit ? found.subList(0, limit) : found;
+    }
+}
@@ -0,0 +1,425 @@
+package com.pharmacy.api.data.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.SaleTimeKey;
+import com.pharmacy.api.data.Versioned;
+
+/**
+ * Segmento de archivo en frío: ventas inmutables ordenadas por (saleDate,
+ * saleId) en bloques comprimidos, con un índice disperso de un renglón por
+ * bloque que se mantiene en memoria.
+ *
+ * Formato:
+ * <pre>
+ * [magic]
+ * [bloque]...   {@link SaleSegmentCodec} comprimido con deflate
+ * [id]...       [int saleId][int bloque] por venta, ordenados por saleId
+ * [int bloques] y por bloque [long offset][int bytes][int bytesSinComprimir][int ventas][int crc32c]
+ *               [llave primera][llave última]
+ * [int páginas] y por página de IDs [int saleId primero]
+ * [long offsetDelIndice][long offsetDeIds][long revision][long antesDe][int ventas][magic]
+ * </pre>
+ * Una llave es [long epochSecond][int nano][int saleId]. Buscar por fecha
+ * posiciona con búsqueda binaria sobre el índice y descomprime solo los
+ * bloques del rango. Buscar por saleId no depende del orden por fecha (un
+ * ticket con fecha atrasada no ensancha nada): localiza la página de IDs con
+ * búsqueda binaria sobre el primer saleId de cada página, lee esa página y
+ * descomprime a lo más el bloque que contiene la venta; un ID que no está no
+ * descomprime ninguno. Se escribe en un temporal y se renombra de forma
+ * atómica.
+ */
+public final class SaleSegment implements Closeable {
+
+    private static final byte[] MAGIC = {'P', 'H', 'A', 'R', 'C', '0', '0', '2'};
+    private static final int KEY_BYTES = 8 + 4 + 4;
+    private static final int BLOCK_INDEX_BYTES = 8 + 4 + 4 + 4 + 4 + 2 * KEY_BYTES;
+    private static final int ID_BYTES = 4 + 4;
+    /** Entradas por página de IDs: 4 KiB por lectura. */
+    private static final int ID_PAGE = 512;
+    private static final int TRAILER_BYTES = 8 + 8 + 8 + 8 + 4 + MAGIC.length;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long revision;
+    private final OffsetDateTime before;
+    private final int size;
+    private final long bytes;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[] rawLengths;
+    private final int[] counts;
+    private final int[] crcs;
+    private final SaleTimeKey[] firstKeys;
+    private final SaleTimeKey[] lastKeys;
+    private final long idsOffset;
+    private int[] pageFirstIds;
+    private int maxSaleId;
+
+    private SaleSegment(Path file, FileChannel channel, long revision, OffsetDateTime before, int size, int blocks,
+                        long idsOffset) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.revision = revision;
+        this.before = before;
+        this.size = size;
+        this.bytes = channel.size();
+        this.offsets = new long[blocks];
+        this.lengths = new int[blocks];
+        this.rawLengths = new int[blocks];
+        this.counts = new int[blocks];
+        this.crcs = new int[blocks];
+        this.firstKeys = new SaleTimeKey[blocks];
+        this.lastKeys = new SaleTimeKey[blocks];
+        this.idsOffset = idsOffset;
+    }
+
+    public static Path path(Path dir, long revision) {
+        return dir.resolve(String.format("sales-%020d.seg", revision));
+    }
+
+    /**
+     * Escribe las ventas, ya ordenadas por {@link SaleTimeKey} y todas con
+     * fecha, en bloques de {@code blockSales} y abre el segmento resultante.
+     */
+    public static SaleSegment write(Path target, long revision, OffsetDateTime before, List<Versioned<SaleRecord>> sorted,
+                                    int blockSales) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, ByteBuffer.wrap(MAGIC));
+            long position = MAGIC.length;
+            int blocks = (sorted.size() + blockSales - 1) / blockSales;
+            int pages = (sorted.size() + ID_PAGE - 1) / ID_PAGE;
+            ByteBuffer index = ByteBuffer.allocate(4 + blocks * BLOCK_INDEX_BYTES + 4 + pages * 4);
+            index.putInt(blocks);
+            // saleId en la mitad alta y bloque en la baja: ordenar los long ordena por saleId
+            long[] ids = new long[sorted.size()];
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            ByteArrayOutputStream raw = new ByteArrayOutputStream(blockSales * 64);
+            try {
+                for (int start = 0; start < sorted.size(); start += blockSales) {
+                    List<Versioned<SaleRecord>> block = sorted.subList(start, Math.min(sorted.size(), start + blockSales));
+                    raw.reset();
+                    SaleSegmentCodec.writeBlock(raw, block);
+                    byte[] compressed = deflate(deflater, raw.toByteArray());
+                    CRC32C crc = new CRC32C();
+                    crc.update(compressed);
+
+                    int b = start / blockSales;
+                    for (int i = 0; i < block.size(); i++) {
+                        ids[start + i] = (long) block.get(i).value().saleId() << 32 | b;
+                    }
+                    index.putLong(position).putInt(compressed.length).putInt(raw.size()).putInt(block.size())
+                        .putInt((int) crc.getValue());
+                    putKey(index, SaleTimeKey.of(block.get(0).value()));
+                    putKey(index, SaleTimeKey.of(block.get(block.size() - 1).value()));
+
+                    writeFully(out, ByteBuffer.wrap(compressed));
+                    position += compressed.length;
+                }
+            } finally {
+                deflater.end();
+            }
+
+            long idsOffset = position;
+            Arrays.sort(ids);
+            ByteBuffer idSection = ByteBuffer.allocate(ids.length * ID_BYTES);
+            index.putInt(pages);
+            for (int i = 0; i < ids.length; i++) {
+                int saleId = (int) (ids[i] >>> 32);
+                idSection.putInt(saleId).putInt((int) ids[i]);
+                if (i % ID_PAGE == 0) {
+                    index.putInt(saleId);
+                }
+            }
+            writeFully(out, idSection.flip());
+            position += ids.length * ID_BYTES;
+
+            writeFully(out, index.flip());
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+            trailer.putLong(position).putLong(idsOffset).putLong(revision).putLong(before.toEpochSecond())
+                .putInt(sorted.size()).put(MAGIC);
+            writeFully(out, trailer.flip());
+            out.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return open(target);
+    }
+
+    /**
+     * Abre un segmento y carga su índice; los bloques se leen al consultarlos.
+     */
+    public static SaleSegment open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long fileSize = channel.size();
+            if (fileSize < MAGIC.length + 4 + 4 + TRAILER_BYTES) {
+                throw new IOException("Segmento de archivo truncado: " + file);
+            }
+            ByteBuffer trailer = read(channel, fileSize - TRAILER_BYTES, TRAILER_BYTES);
+            long indexOffset = trailer.getLong();
+            long idsOffset = trailer.getLong();
+            long revision = trailer.getLong();
+            OffsetDateTime before = OffsetDateTime.ofInstant(Instant.ofEpochSecond(trailer.getLong()), ZoneOffset.UTC);
+            int size = trailer.getInt();
+            byte[] magic = new byte[MAGIC.length];
+            trailer.get(magic);
+            byte[] headerMagic = new byte[MAGIC.length];
+            read(channel, 0, MAGIC.length).get(headerMagic);
+            if (!Arrays.equals(magic, MAGIC) || !Arrays.equals(headerMagic, MAGIC)) {
+                throw new IOException("El archivo " + file + " no es un segmento de ventas válido");
+            }
+
+            ByteBuffer index = read(channel, indexOffset, (int) (fileSize - TRAILER_BYTES - indexOffset));
+            int blocks = index.getInt();
+            SaleSegment segment = new SaleSegment(file, channel, revision, before, size, blocks, idsOffset);
+            for (int b = 0; b < blocks; b++) {
+                segment.offsets[b] = index.getLong();
+                segment.lengths[b] = index.getInt();
+                segment.rawLengths[b] = index.getInt();
+                segment.counts[b] = index.getInt();
+                segment.crcs[b] = index.getInt();
+                segment.firstKeys[b] = getKey(index);
+                segment.lastKeys[b] = getKey(index);
+            }
+            segment.pageFirstIds = new int[index.getInt()];
+            for (int p = 0; p < segment.pageFirstIds.length; p++) {
+                segment.pageFirstIds[p] = index.getInt();
+            }
+            if (size > 0) {
+                segment.maxSaleId = read(channel, idsOffset + (long) (size - 1) * ID_BYTES, 4).getInt();
+            }
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    /** Revisión de la retención que produjo el segmento. */
+    public long revision() {
+        return revision;
+    }
+
+    /** Todas las ventas del segmento tienen saleDate anterior a esta fecha. */
+    public OffsetDateTime before() {
+        return before;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Bytes del archivo en disco, índice incluido. */
+    public long bytes() {
+        return bytes;
+    }
+
+    /** Mayor saleId del segmento (la última entrada de su índice de IDs); 0 si está vacío. */
+    public int maxSaleId() {
+        return maxSaleId;
+    }
+
+    /** Bloques del índice disperso (junto con el primer saleId de cada página de IDs, lo único del segmento en el heap). */
+    public int blocks() {
+        return offsets.length;
+    }
+
+    /**
+     * Venta con ese saleId: una lectura de la página de IDs y, si está, la
+     * descompresión de su bloque.
+     */
+    public Versioned<SaleRecord> find(int saleId) {
+        int page = pageOf(saleId);
+        if (page < 0) {
+            return null;
+        }
+        int from = page * ID_PAGE;
+        int entries = Math.min(ID_PAGE, size - from);
+        ByteBuffer ids;
+        try {
+            ids = read(channel, idsOffset + (long) from * ID_BYTES, entries * ID_BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int low = 0;
+        int high = entries - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int id = ids.getInt(mid * ID_BYTES);
+            if (id < saleId) {
+                low = mid + 1;
+            } else if (id > saleId) {
+                high = mid - 1;
+            } else {
+                for (Versioned<SaleRecord> sale : block(ids.getInt(mid * ID_BYTES + 4))) {
+                    if (sale.value().saleId() == saleId) {
+                        return sale;
+                    }
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Hasta {@code limit} ventas con llave estrictamente entre {@code after}
+     * y {@code before} (cualquiera puede ser null), en orden.
+     */
+    public List<SaleRecord> range(SaleTimeKey after, SaleTimeKey before, int limit) {
+        List<SaleRecord> result = new ArrayList<>(Math.min(limit, 64));
+        for (int b = firstBlockAfter(after); b < offsets.length && result.size() < limit; b++) {
+            if (before != null && firstKeys[b].compareTo(before) >= 0) {
+                break;
+            }
+            for (Versioned<SaleRecord> sale : block(b)) {
+                SaleTimeKey key = SaleTimeKey.of(sale.value());
+                if (before != null && key.compareTo(before) >= 0 || result.size() == limit) {
+                    break;
+                }
+                if (after == null || key.compareTo(after) > 0) {
+                    result.add(sale.value());
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Última página de IDs cuyo primer saleId no pasa de {@code saleId}, o -1
+     * si el ID es menor que todos los del segmento.
+     */
+    private int pageOf(int saleId) {
+        int low = 0;
+        int high = pageFirstIds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (pageFirstIds[mid] <= saleId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * Primer bloque cuya última llave es posterior a {@code after}.
+     */
+    private int firstBlockAfter(SaleTimeKey after) {
+        if (after == null) {
+            return 0;
+        }
+        int low = 0;
+        int high = lastKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lastKeys[mid].compareTo(after) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private List<Versioned<SaleRecord>> block(int b) {
+        try {
+            ByteBuffer compressed = read(channel, offsets[b], lengths[b]);
+            CRC32C crc = new CRC32C();
+            crc.update(compressed.duplicate());
+            if ((int) crc.getValue() != crcs[b]) {
+                throw new IOException("Bloque corrupto en el segmento " + file + " (offset " + offsets[b] + ")");
+            }
+            byte[] raw = new byte[rawLengths[b]];
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(compressed);
+                int filled = 0;
+                while (filled < raw.length) {
+                    int n = inflater.inflate(raw, filled, raw.length - filled);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new IOException("Bloque incompleto en el segmento " + file + " (offset " + offsets[b] + ")");
+                    }
+                    filled += n;
+                }
+            } finally {
+                inflater.end();
+            }
+            return SaleSegmentCodec.readBlock(ByteBuffer.wrap(raw), counts[b], firstKeys[b].epochSecond());
+        } catch (IOException | DataFormatException e) {
+            throw new UncheckedIOException(e instanceof IOException io ? io : new IOException(e));
+        }
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            out.write(chunk, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static void putKey(ByteBuffer buffer, SaleTimeKey key) {
+        buffer.putLong(key.epochSecond()).putInt(key.nano()).putInt(key.saleId());
+    }
+
+    private static SaleTimeKey getKey(ByteBuffer buffer) {
+        return new SaleTimeKey(buffer.getLong(), buffer.getInt(), buffer.getInt());
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Fin de archivo inesperado en un segmento de ventas");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
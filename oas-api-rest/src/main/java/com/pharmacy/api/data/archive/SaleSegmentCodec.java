@@ -0,0 +1,149 @@
+package com.pharmacy.api.data.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.pharmacy.api.data.Money;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.Versioned;
+
+/**
+ * Codificación de un bloque de ventas del archivo, antes de comprimirlo.
+ *
+ * Todo entero va como varint (7 bits por byte); los que pueden ser negativos
+ * o null, en zigzag y corridos en uno para que 0 signifique null. Dentro del
+ * bloque la fecha se guarda como diferencia en segundos con la venta anterior
+ * (la primera con el inicio del bloque, que está en el índice) y el saleId
+ * como diferencia con el anterior, así que en ventas consecutivas ambos
+ * suelen ocupar uno o dos bytes. Los montos van en centavos (los segmentos
+ * antiguos pueden traer además un double crudo). Cada partida guarda solo
+ * producto, cantidad y la diferencia de su saleId con el de la venta, que
+ * desde {@link SaleRecord} siempre es 0.
+ *
+ * Por venta:
+ * <pre>
+ * [Δsegundos][nanos][offset en segundos][ΔsaleId][revisión]
+ * [pharmacyId?][employeeId?][subTotal?][iva?][total?]
+ * [partidas + 1, 0 si null] y por partida [productId?][quantity?][ΔsaleId?]
+ * </pre>
+ */
+final class SaleSegmentCodec {
+
+    private static final int MONEY_NULL = 0;
+    private static final int MONEY_RAW = 1;
+
+    private SaleSegmentCodec() {
+    }
+
+    static void writeBlock(ByteArrayOutputStream out, List<Versioned<SaleRecord>> block) {
+        long previousSecond = block.get(0).value().saleDate();
+        long previousId = 0;
+        for (Versioned<SaleRecord> version : block) {
+            SaleRecord sale = version.value();
+            long second = sale.saleDate();
+            writeVarLong(out, zigzag(second - previousSecond));
+            // Nanos y offset: siempre 0 desde SaleRecord, se conservan por formato
+            writeVarLong(out, 0);
+            writeVarLong(out, zigzag(0));
+            writeVarLong(out, zigzag(sale.saleId() - previousId));
+            writeVarLong(out, version.revision());
+            previousSecond = second;
+            previousId = sale.saleId();
+
+            writeNullable(out, sale.pharmacyId());
+            writeNullable(out, sale.employeeId());
+            writeMoney(out, sale.subTotalCents());
+            writeMoney(out, sale.ivaCents());
+            writeMoney(out, sale.totalCents());
+
+            writeVarLong(out, sale.itemCount() + 1L);
+            for (int p = 0; p < sale.itemCount(); p++) {
+                writeNullable(out, sale.productId(p));
+                writeNullable(out, sale.quantity(p));
+                writeNullable(out, 0);
+            }
+        }
+    }
+
+    static List<Versioned<SaleRecord>> readBlock(ByteBuffer in, int count, long firstSecond) {
+        List<Versioned<SaleRecord>> sales = new ArrayList<>(count);
+        long second = firstSecond;
+        long saleId = 0;
+        for (int i = 0; i < count; i++) {
+            second += unzigzag(readVarLong(in));
+            readVarLong(in);
+            readVarLong(in);
+            saleId += unzigzag(readVarLong(in));
+            long revision = readVarLong(in);
+
+            int pharmacyId = readNullable(in);
+            int employeeId = readNullable(in);
+            long subTotal = readMoney(in);
+            long iva = readMoney(in);
+            long total = readMoney(in);
+
+            long[] items = new long[Math.max(0, (int) readVarLong(in) - 1)];
+            for (int p = 0; p < items.length; p++) {
+                items[p] = SaleRecord.item(readNullable(in), readNullable(in));
+                readNullable(in);
+            }
+            sales.add(new Versioned<>(new SaleRecord((int) saleId, second, subTotal, iva, total, pharmacyId,
+                employeeId, items), revision));
+        }
+        return sales;
+    }
+
+    private static void writeNullable(ByteArrayOutputStream out, int value) {
+        writeVarLong(out, value != SaleRecord.NO_ID ? zigzag(value) + 1 : 0);
+    }
+
+    private static int readNullable(ByteBuffer in) {
+        long value = readVarLong(in);
+        return value != 0 ? (int) unzigzag(value - 1) : SaleRecord.NO_ID;
+    }
+
+    private static void writeMoney(ByteArrayOutputStream out, long cents) {
+        writeVarLong(out, cents != SaleRecord.NO_AMOUNT ? zigzag(cents) + 2 : MONEY_NULL);
+    }
+
+    private static long readMoney(ByteBuffer in) {
+        long tag = readVarLong(in);
+        if (tag == MONEY_NULL) {
+            return SaleRecord.NO_AMOUNT;
+        }
+        if (tag == MONEY_RAW) {
+            // Segmentos escritos cuando se archivaban montos que no eran centavos
+            return Money.cents(Double.longBitsToDouble(in.getLong()));
+        }
+        return unzigzag(tag - 2);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
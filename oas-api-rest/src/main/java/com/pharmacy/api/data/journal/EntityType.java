@@ -0,0 +1,32 @@
+package com.pharmacy.api.data.journal;
+
+/**
+ * Tipo de entidad al que pertenece un registro del journal.
+ * El código se guarda en disco, no se debe reutilizar ni cambiar.
+ */
+public enum EntityType {
+    PHARMACY(1),
+    SALE(2),
+    PRODUCT(3),
+    EMPLOYEE(4),
+    STOCK(5);
+
+    private final byte code;
+
+    EntityType(int code) {
+        this.code = (byte) code;
+    }
+
+    public byte code() {
+        return code;
+    }
+
+    public static EntityType fromCode(byte code) {
+        for (EntityType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Tipo de entidad desconocido en el journal: " + code);
+    }
+}
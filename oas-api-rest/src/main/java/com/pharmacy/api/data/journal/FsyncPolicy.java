@@ -0,0 +1,26 @@
+package com.pharmacy.api.data.journal;
+
+/**
+ * Cuándo se fuerza a disco lo escrito en el journal.
+ * <ul>
+ *   <li>PER_WRITE: fsync en cada registro; la petición espera su propio fsync.</li>
+ *   <li>GROUP_COMMIT: un hilo hace un fsync por lote; cada petición espera a que
+ *       su registro quede incluido en un fsync, pero muchas comparten el mismo.</li>
+ *   <li>INTERVAL: fsync periódico; la petición no espera y se pueden perder los
+ *       últimos milisegundos ante una caída del sistema operativo.</li>
+ * </ul>
+ */
+public enum FsyncPolicy {
+    PER_WRITE,
+    GROUP_COMMIT,
+    INTERVAL;
+
+    public static FsyncPolicy parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Política de fsync inválida: " + value
+                + ". Valores permitidos: per-write, group-commit, interval", e);
+        }
+    }
+}
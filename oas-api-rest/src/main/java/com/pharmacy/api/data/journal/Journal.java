@@ -0,0 +1,412 @@
+package com.pharmacy.api.data.journal;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Journal de escritura anticipada (write-ahead) en disco local, solo de anexado.
+ *
+ * Anexar tiene dos pasos: {@link #write} deja los registros en el archivo y
+ * {@link #sync} espera a que estén en disco según la política. Así quien
+ * escribe puede anexar bajo su propio lock, antes de publicar el cambio en
+ * memoria, y esperar el fsync ya sin él.
+ *
+ * Se guarda en segmentos {@code journal-<generacion>.log}. Cada registro es
+ * {@code [int largo][int crc32c][long secuencia][long revision][byte tipo][byte op][int llave][payload]};
+ * al leer, un registro incompleto o con CRC inválido marca el final del segmento
+ * (escritura interrumpida por una caída).
+ */
+public class Journal implements Closeable {
+
+    static final int HEADER_BYTES = 8;
+    static final int BODY_FIXED_BYTES = 8 + 8 + 1 + 1 + 4;
+    static final int MAX_RECORD_BYTES = 64 << 20;
+
+    private final Path dir;
+    private final FsyncPolicy policy;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pending = lock.newCondition();
+    private final Condition durableAdvanced = lock.newCondition();
+
+    private FileChannel channel;
+    private long generation;
+    private long sequence;
+    // Bytes escritos y bytes ya forzados a disco, acumulados entre segmentos
+    private long written;
+    private long durable;
+    private long recordsSinceRoll;
+    private volatile boolean open = true;
+    private IOException failure;
+
+    private Thread groupCommitThread;
+    private ScheduledExecutorService intervalExecutor;
+
+    public Journal(Path dir, long generation, long lastSequence, FsyncPolicy policy, long fsyncIntervalMs) throws IOException {
+        this.dir = dir;
+        this.policy = policy;
+        this.generation = generation;
+        this.sequence = lastSequence;
+        Files.createDirectories(dir);
+        this.channel = openSegment(generation);
+
+        if (policy == FsyncPolicy.GROUP_COMMIT) {
+            groupCommitThread = new Thread(this::groupCommitLoop, "journal-group-commit");
+            groupCommitThread.setDaemon(true);
+            groupCommitThread.start();
+        } else if (policy == FsyncPolicy.INTERVAL) {
+            intervalExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "journal-interval-fsync");
+                t.setDaemon(true);
+                return t;
+            });
+            intervalExecutor.scheduleWithFixedDelay(this::forceQuietly, fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static Path segmentPath(Path dir, long generation) {
+        return dir.resolve(String.format("journal-%020d.log", generation));
+    }
+
+    /**
+     * Anexa un registro y, según la política, espera a que quede en disco.
+     * Devuelve la secuencia asignada.
+     */
+    public long append(EntityType type, JournalRecord.Op op, int key, long revision, byte[] payload) {
+        return appendAll(List.of(new JournalRecord(0, revision, type, op, key, payload)));
+    }
+
+    /**
+     * {@link #write} seguido de {@link #sync}.
+     */
+    public long appendAll(List<JournalRecord> records) {
+        long assigned = write(records);
+        sync();
+        return assigned;
+    }
+
+    /**
+     * Escribe varios registros con una sola escritura, sin esperar a disco:
+     * un lote de N ventas paga después un fsync y no N. La secuencia de cada
+     * registro se asigna aquí; la que traen se ignora. Devuelve la secuencia
+     * del último.
+     *
+     * @throws UncheckedIOException si no se pudo escribir; en ese caso no se
+     *         debe publicar el cambio que describen
+     */
+    public long write(List<JournalRecord> records) {
+        long assigned;
+        lock.lock();
+        try {
+            if (!open) {
+                throw new IllegalStateException("El journal está cerrado");
+            }
+            ByteBuffer[] buffers = new ByteBuffer[records.size()];
+            long bytes = 0;
+            for (int i = 0; i < buffers.length; i++) {
+                JournalRecord record = records.get(i);
+                buffers[i] = encode(new JournalRecord(++sequence, record.revision(), record.type(), record.op(),
+                    record.key(), record.payload()));
+                bytes += buffers[i].limit();
+            }
+            assigned = sequence;
+            for (long remaining = bytes; remaining > 0; ) {
+                remaining -= channel.write(buffers);
+            }
+            written += bytes;
+            recordsSinceRoll += buffers.length;
+            if (policy == FsyncPolicy.GROUP_COMMIT) {
+                pending.signal();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo escribir en el journal", e);
+        } finally {
+            lock.unlock();
+        }
+        return assigned;
+    }
+
+    /**
+     * Espera, según la política, a que todo lo escrito hasta ahora esté en
+     * disco. Con INTERVAL no espera.
+     */
+    public void sync() {
+        if (policy == FsyncPolicy.INTERVAL) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (policy == FsyncPolicy.PER_WRITE) {
+                if (durable < written && open) {
+                    channel.force(false);
+                    durable = written;
+                    durableAdvanced.signalAll();
+                }
+                return;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo forzar el journal a disco", e);
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(writtenBytes());
+    }
+
+    /**
+     * Cierra el segmento actual (forzándolo a disco) y abre el siguiente.
+     * Devuelve la generación nueva: todo lo registrado antes está en segmentos anteriores.
+     */
+    public long roll() throws IOException {
+        lock.lock();
+        try {
+            channel.force(false);
+            durable = written;
+            durableAdvanced.signalAll();
+            channel.close();
+            generation++;
+            channel = openSegment(generation);
+            recordsSinceRoll = 0;
+            return generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long recordsSinceRoll() {
+        lock.lock();
+        try {
+            return recordsSinceRoll;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long lastSequence() {
+        lock.lock();
+        try {
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long durableBytes() {
+        lock.lock();
+        try {
+            return durable;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (!open) {
+                return;
+            }
+            open = false;
+            channel.force(false);
+            durable = written;
+            durableAdvanced.signalAll();
+            pending.signalAll();
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+        if (intervalExecutor != null) {
+            intervalExecutor.shutdownNow();
+        }
+    }
+
+    public static long read(Path file, Consumer<JournalRecord> consumer) throws IOException {
+        return read(file, 0, consumer);
+    }
+
+    /**
+     * Lee los registros válidos de un archivo a partir de {@code offset}.
+     * Se detiene sin error en el primer registro truncado o corrupto.
+     */
+    public static long read(Path file, int offset, Consumer<JournalRecord> consumer) throws IOException {
+        long count = 0;
+        try (InputStream in = Files.newInputStream(file);
+             DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16))) {
+            data.skipNBytes(offset);
+            CRC32C crc = new CRC32C();
+            byte[] body = new byte[256];
+            while (true) {
+                int length;
+                int checksum;
+                try {
+                    length = data.readInt();
+                    checksum = data.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < BODY_FIXED_BYTES || length > MAX_RECORD_BYTES) {
+                    break;
+                }
+                if (body.length < length) {
+                    body = new byte[Math.max(length, body.length * 2)];
+                }
+                try {
+                    data.readFully(body, 0, length);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(body, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    System.out.println("Journal - Registro corrupto en " + file.getFileName() + ", se ignora el resto del segmento");
+                    break;
+                }
+                consumer.accept(decodeBody(ByteBuffer.wrap(body, 0, length)));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    static ByteBuffer encode(JournalRecord record) {
+        byte[] payload = record.payload() != null ? record.payload() : new byte[0];
+        int bodyLength = BODY_FIXED_BYTES + payload.length;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + bodyLength);
+        buffer.putInt(bodyLength);
+        buffer.putInt(0);
+        buffer.putLong(record.sequence());
+        buffer.putLong(record.revision());
+        buffer.put(record.type().code());
+        buffer.put((byte) record.op().ordinal());
+        buffer.putInt(record.key());
+        buffer.put(payload);
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), HEADER_BYTES, bodyLength);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    private static JournalRecord decodeBody(ByteBuffer body) {
+        long sequence = body.getLong();
+        long revision = body.getLong();
+        EntityType type = EntityType.fromCode(body.get());
+        JournalRecord.Op op = JournalRecord.Op.values()[body.get()];
+        int key = body.getInt();
+        byte[] payload = new byte[body.remaining()];
+        body.get(payload);
+        return new JournalRecord(sequence, revision, type, op, key, payload);
+    }
+
+    private FileChannel openSegment(long gen) throws IOException {
+        return FileChannel.open(segmentPath(dir, gen),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    long writtenBytes() {
+        lock.lock();
+        try {
+            return written;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitDurable(long target) {
+        lock.lock();
+        try {
+            while (durable < target && open && failure == null) {
+                durableAdvanced.awaitUninterruptibly();
+            }
+            if (durable < target && failure != null) {
+                throw new UncheckedIOException("No se pudo forzar el journal a disco", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void groupCommitLoop() {
+        while (open) {
+            long target;
+            FileChannel current;
+            lock.lock();
+            try {
+                while (open && durable >= written) {
+                    pending.awaitUninterruptibly();
+                }
+                if (!open) {
+                    return;
+                }
+                target = written;
+                current = channel;
+            } finally {
+                lock.unlock();
+            }
+            force(current, target);
+        }
+    }
+
+    private void forceQuietly() {
+        long target;
+        FileChannel current;
+        lock.lock();
+        try {
+            if (durable >= written || !open) {
+                return;
+            }
+            target = written;
+            current = channel;
+        } finally {
+            lock.unlock();
+        }
+        force(current, target);
+    }
+
+    private void force(FileChannel current, long target) {
+        try {
+            current.force(false);
+        } catch (ClosedChannelException e) {
+            // roll() o close() ya forzaron el segmento antes de cerrarlo
+        } catch (IOException e) {
+            System.err.println("Journal - Error al forzar a disco: " + e.getMessage());
+            lock.lock();
+            try {
+                failure = e;
+                durableAdvanced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            return;
+        }
+        lock.lock();
+        try {
+            failure = null;
+            if (target > durable) {
+                durable = target;
+            }
+            durableAdvanced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.pharmacy.api.data.journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.pharmacy.api.data.CommitGate;
+import com.pharmacy.api.data.ExpiredSales;
+import com.pharmacy.api.data.PersistentIntMap;
+import com.pharmacy.api.data.PriceTable;
+import com.pharmacy.api.data.ReferenceCounts;
+import com.pharmacy.api.data.ReferenceIndex;
+import com.pharmacy.api.data.SaleColumns;
+import com.pharmacy.api.data.SaleIdAllocator;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.SharedData;
+import com.pharmacy.api.data.StockEntry;
+import com.pharmacy.api.data.StockLedger;
+import com.pharmacy.api.data.Versioned;
+import com.pharmacy.api.data.archive.SaleArchive;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * Persistencia local de SharedData: journal de cada mutación más snapshots
+ * periódicos. Al arrancar carga el último snapshot y reproduce solo los
+ * segmentos del journal posteriores a él.
+ *
+ * Cada escritura anexa su registro con {@link #upsert}, {@link #upsertAll} o
+ * {@link #delete} bajo el lock del almacén y antes de publicar el cambio: si
+ * el anexado falla, el cambio no llega a memoria y nadie lo ve. Después,
+ * fuera del lock, {@link #sync} espera el fsync antes de responder. Si es el
+ * fsync el que falla, el cambio ya es visible y su registro está en el
+ * archivo, aunque quizá no en disco; el cliente recibe el error.
+ */
+@ApplicationScoped
+public class JournalManager {
+
+    @Inject
+    SharedData sharedData;
+
+    @Inject
+    SaleIdAllocator saleIdAllocator;
+
+    @Inject
+    SaleColumns saleColumns;
+
+    @Inject
+    PriceTable priceTable;
+
+    @Inject
+    ReferenceIndex referenceIndex;
+
+    @Inject
+    ReferenceCounts referenceCounts;
+
+    @Inject
+    SaleArchive saleArchive;
+
+    @Inject
+    StockLedger stockLedger;
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "pharmacy.journal.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "pharmacy.journal.dir", defaultValue = "data/journal")
+    String dir;
+
+    @ConfigProperty(name = "pharmacy.journal.fsync", defaultValue = "group-commit")
+    String fsync;
+
+    @ConfigProperty(name = "pharmacy.journal.fsync-interval-ms", defaultValue = "100")
+    long fsyncIntervalMs;
+
+    @ConfigProperty(name = "pharmacy.journal.snapshot-every", defaultValue = "100000")
+    long snapshotEvery;
+
+    @ConfigProperty(name = "pharmacy.journal.snapshot-check-interval-s", defaultValue = "60")
+    long snapshotCheckIntervalSeconds;
+
+    private final ObjectMapper mapper = newMapper();
+
+    private final AtomicLong snapshotRecords = new AtomicLong();
+    private final AtomicLong replayedRecords = new AtomicLong();
+    private final AtomicLong recoveryMillis = new AtomicLong();
+
+    private volatile Journal journal;
+    private volatile boolean recovered;
+    private ScheduledExecutorService snapshotScheduler;
+    private Path directory;
+
+    void onStart(@Observes StartupEvent event) throws IOException {
+        if (!enabled) {
+            System.out.println("JournalManager - Journal deshabilitado, los datos solo viven en memoria");
+            recovered = true;
+            return;
+        }
+        directory = Paths.get(dir);
+        Files.createDirectories(directory);
+
+        registry.gauge("pharmacy.recovery.snapshot.records", snapshotRecords);
+        registry.gauge("pharmacy.recovery.journal.records", replayedRecords);
+        registry.gauge("pharmacy.recovery.duration.ms", recoveryMillis);
+
+        long[] positions = recover();
+        journal = new Journal(directory, positions[0], positions[1], FsyncPolicy.parse(fsync), fsyncIntervalMs);
+        recovered = true;
+
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "journal-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(this::snapshotIfDue,
+            snapshotCheckIntervalSeconds, snapshotCheckIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    void onStop(@Observes ShutdownEvent event) throws IOException {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    public boolean isRecovered() {
+        return recovered;
+    }
+
+    public long getRecoveryMillis() {
+        return recoveryMillis.get();
+    }
+
+    public long getRecoveredRecords() {
+        return snapshotRecords.get() + replayedRecords.get();
+    }
+
+    /**
+     * Anexa la versión sin esperar el fsync; ver {@link #sync}.
+     */
+    public void upsert(EntityType type, int key, Versioned<?> version) {
+        Journal current = journal;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.write(List.of(new JournalRecord(0, version.revision(), type, JournalRecord.Op.UPSERT, key,
+                mapper.writeValueAsBytes(version.value()))));
+        } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar " + type + " " + key + " para el journal", e);
+        }
+    }
+
+    /**
+     * Como {@link #upsert}, para un lote: todas las versiones se anexan en una
+     * sola escritura y después esperan un solo fsync.
+     */
+    public <T> void upsertAll(EntityType type, List<Versioned<T>> versions, ToIntFunction<T> key) {
+        Journal current = journal;
+        if (current == null || versions.isEmpty()) {
+            return;
+        }
+        List<JournalRecord> records = new ArrayList<>(versions.size());
+        for (Versioned<T> version : versions) {
+            int id = key.applyAsInt(version.value());
+            try {
+                records.add(new JournalRecord(0, version.revision(), type, JournalRecord.Op.UPSERT, id,
+                    mapper.writeValueAsBytes(version.value())));
+            } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
+                throw new IllegalStateException("No se pudo serializar " + type + " " + id + " para el journal", e);
+            }
+        }
+        current.write(records);
+    }
+
+    /**
+     * Anexa el borrado sin esperar el fsync; ver {@link #sync}.
+     */
+    public void delete(EntityType type, int key, long revision) {
+        Journal current = journal;
+        if (current != null) {
+            current.write(List.of(new JournalRecord(0, revision, type, JournalRecord.Op.DELETE, key, null)));
+        }
+    }
+
+    /**
+     * Espera a que lo anexado hasta ahora esté en disco, según la política de
+     * fsync. Se llama después de soltar el lock del almacén.
+     */
+    public void sync() {
+        Journal current = journal;
+        if (current != null) {
+            current.sync();
+        }
+    }
+
+    /**
+     * Registra que la retención desprendió las ventas con saleDate anterior a
+     * {@code before} que existían antes de {@code revision}.
+     */
+    public void truncate(EntityType type, OffsetDateTime before, long revision) {
+        Journal current = journal;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.append(type, JournalRecord.Op.TRUNCATE, 0, revision, mapper.writeValueAsBytes(before));
+        } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar la retención de " + type + " para el journal", e);
+        }
+    }
+
+    /**
+     * Toma un snapshot del estado actual y elimina los segmentos que cubre.
+     *
+     * Una escritura anexa su registro antes de publicar el cambio, así que un
+     * registro de un segmento anterior puede no estar todavía en memoria. Por
+     * eso el cambio de segmento y la captura se hacen con la
+     * {@link CommitGate} cerrada: espera a que las escrituras en curso
+     * publiquen, y las que llegan después anexan en el segmento nuevo. La foto
+     * son solo raíces y contadores, así que la compuerta se abre antes de
+     * escribir el archivo.
+     */
+    public synchronized void snapshot() throws IOException {
+        Journal current = journal;
+        if (current == null) {
+            return;
+        }
+        CommitGate commits = sharedData.getCommits();
+        long lastSequence;
+        long generation;
+        SharedData.Snapshot state;
+        List<Versioned<StockEntry>> stock;
+        commits.close();
+        try {
+            lastSequence = current.lastSequence();
+            generation = current.roll();
+            state = capture();
+            stock = stockLedger.entries();
+        } finally {
+            commits.open();
+        }
+        long start = System.nanoTime();
+        long records = writeSnapshot(SnapshotFile.path(directory, generation), lastSequence, state, stock);
+        deleteOlderThan(generation);
+        System.out.println("JournalManager - Snapshot " + generation + " con " + records + " registros en "
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+
+    /**
+     * Mapper propio del journal: fechas ISO completas, independiente del formato de la API.
+     */
+    static ObjectMapper newMapper() {
+        return JsonMapper.builder()
+            .addModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+    }
+
+    private void snapshotIfDue() {
+        try {
+            Journal current = journal;
+            if (current != null && current.recordsSinceRoll() >= snapshotEvery) {
+                snapshot();
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("JournalManager - Error al tomar snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Carga el último snapshot y reproduce los segmentos posteriores.
+     * Devuelve {generación para el próximo segmento, última secuencia}.
+     */
+    private long[] recover() throws IOException {
+        long start = System.nanoTime();
+        List<Long> snapshots = generations("snapshot-", ".snap");
+        List<Long> segments = generations("journal-", ".log");
+
+        if (snapshots.isEmpty() && segments.isEmpty()) {
+            // Primer arranque: el snapshot inicial conserva los datos de prueba
+            writeSnapshot(SnapshotFile.path(directory, 1), 0, capture(), stockLedger.entries());
+            System.out.println("JournalManager - Directorio vacío, snapshot inicial creado en " + directory.toAbsolutePath());
+            return new long[] {1, 0};
+        }
+
+        RecoveredState state = new RecoveredState(mapper);
+        long snapshotGeneration = 0;
+        if (!snapshots.isEmpty()) {
+            snapshotGeneration = snapshots.get(snapshots.size() - 1);
+            long snapshotStart = System.nanoTime();
+            SnapshotFile.Contents contents = SnapshotFile.read(SnapshotFile.path(directory, snapshotGeneration));
+            state.load(contents);
+            snapshotRecords.set(contents.size());
+            registry.timer("pharmacy.recovery.phase", "phase", "snapshot")
+                .record(System.nanoTime() - snapshotStart, TimeUnit.NANOSECONDS);
+        }
+
+        long replayStart = System.nanoTime();
+        long nextGeneration = Math.max(snapshotGeneration, 1);
+        long replayed = 0;
+        for (long generation : segments) {
+            nextGeneration = Math.max(nextGeneration, generation + 1);
+            if (generation < snapshotGeneration) {
+                continue;
+            }
+            replayed += Journal.read(Journal.segmentPath(directory, generation), state::apply);
+        }
+        replayedRecords.set(replayed);
+        registry.timer("pharmacy.recovery.phase", "phase", "journal")
+            .record(System.nanoTime() - replayStart, TimeUnit.NANOSECONDS);
+
+        install(state);
+        recoveryMillis.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        System.out.println("JournalManager - Recuperación: snapshot " + snapshotGeneration + " (" + snapshotRecords.get()
+            + " registros) + journal (" + replayed + " registros) en " + recoveryMillis.get() + " ms");
+        return new long[] {nextGeneration, state.lastSequence};
+    }
+
+    private void install(RecoveredState state) {
+        // Los saleId desprendidos o archivados tampoco se reutilizan
+        state.sales.live.keySet().forEach(saleIdAllocator::advancePast);
+        saleArchive.segments().forEach(s -> saleIdAllocator.advancePast(s.maxSaleId()));
+        // Cada segmento archivado es también una retención, aunque su registro no llegara al journal
+        saleArchive.segments().forEach(s -> state.truncate(s.before(), s.revision()));
+        sharedData.restore(state.pharmacies.live.values(), state.liveSales(), state.products.live.values(),
+            state.employees.live.values());
+        // Incluye revisiones de borrados que ya no están en ningún almacén
+        sharedData.getRevisions().advancePast(state.lastRevision);
+        saleColumns.rebuild(sharedData.getSales().findAll());
+        priceTable.rebuild();
+        referenceIndex.rebuild();
+        referenceCounts.rebuild(sharedData.getSales().findAll());
+        stockLedger.restore(state.stock.values());
+    }
+
+    /**
+     * Raíces de SharedData más las ventas que la retención desprendió y el
+     * archivo aún no escribe: su registro puede estar en un segmento que se
+     * va a borrar. Si después se archivan, el segmento del archivo las quita
+     * al recuperar.
+     */
+    private SharedData.Snapshot capture() {
+        SharedData.Snapshot state = sharedData.snapshot();
+        ExpiredSales staged = saleArchive.staged();
+        if (staged == null) {
+            return state;
+        }
+        List<PersistentIntMap<Versioned<SaleRecord>>> sales = new ArrayList<>(state.sales());
+        sales.addAll(staged.partitions());
+        return new SharedData.Snapshot(state.pharmacies(), sales, state.products(), state.employees());
+    }
+
+    /**
+     * Escribe la foto recorriendo directamente sus tries: no se copian ni
+     * ordenan las entidades y los escritores siguen trabajando.
+     */
+    private long writeSnapshot(Path target, long lastSequence, SharedData.Snapshot state,
+                               List<Versioned<StockEntry>> stock) throws IOException {
+        return SnapshotFile.write(target, lastSequence, state.pharmacies().values(), state.saleValues(),
+            state.products().values(), state.employees().values(), stock);
+    }
+
+    private void deleteOlderThan(long generation) throws IOException {
+        for (long old : generations("journal-", ".log")) {
+            if (old < generation) {
+                Files.deleteIfExists(Journal.segmentPath(directory, old));
+            }
+        }
+        for (long old : generations("snapshot-", ".snap")) {
+            if (old < generation) {
+                Files.deleteIfExists(SnapshotFile.path(directory, old));
+            }
+        }
+    }
+
+    private List<Long> generations(String prefix, String suffix) throws IOException {
+        List<Long> result = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(p -> p.getFileName().toString())
+                .filter(name -> name.startsWith(prefix) && name.endsWith(suffix))
+                .forEach(name -> result.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()))));
+        }
+        result.sort(null);
+        return result;
+    }
+}
@@ -0,0 +1,20 @@
+package com.pharmacy.api.data.journal;
+
+/**
+ * Un registro del journal: la última versión completa de una entidad (UPSERT),
+ * su eliminación (DELETE) o la retención de todas las ventas anteriores a una
+ * fecha (TRUNCATE, con la fecha como payload y sin llave). Aplicarlo dos veces
+ * da el mismo resultado.
+ *
+ * {@code revision} es la revisión que la escritura instaló en memoria. Dos
+ * escrituras de la misma llave pueden anexarse en orden distinto al que se
+ * aplicaron; al reproducir gana la revisión mayor, no la secuencia.
+ */
+public record JournalRecord(long sequence, long revision, EntityType type, Op op, int key, byte[] payload) {
+
+    public enum Op {
+        UPSERT,
+        DELETE,
+        TRUNCATE
+    }
+}
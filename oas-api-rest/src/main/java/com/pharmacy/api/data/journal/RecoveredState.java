@@ -0,0 +1,190 @@
+package com.pharmacy.api.data.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.StockEntry;
+import com.pharmacy.api.data.Versioned;
+import com.pharmacy.api.model.Employee;
+import com.pharmacy.api.model.Pharmacy;
+import com.pharmacy.api.model.Product;
+
+/**
+ * Estado acumulado durante la recuperación: el último snapshot más los
+ * registros del journal reproducidos encima. Usa mapas por ID para que
+ * reproducir millones de registros sea lineal.
+ *
+ * Por llave se aplica solo el registro de mayor revisión, y los borrados
+ * dejan una lápida con la suya, así que el resultado no depende del orden
+ * en que se anexaron dos escrituras concurrentes de la misma entidad.
+ */
+final class RecoveredState {
+
+    final Table<Pharmacy> pharmacies;
+    final Table<SaleRecord> sales;
+    final Table<Product> products;
+    final Table<Employee> employees;
+    // Por (farmacia, producto); las existencias no se borran
+    final Map<Long, Versioned<StockEntry>> stock = new HashMap<>();
+    final List<Truncation> truncations = new ArrayList<>();
+    long lastSequence;
+    long lastRevision;
+
+    private final ObjectMapper mapper;
+
+    RecoveredState(ObjectMapper mapper) {
+        this.mapper = mapper;
+        this.pharmacies = new Table<>(Pharmacy.class, mapper);
+        this.sales = new Table<>(SaleRecord.class, mapper);
+        this.products = new Table<>(Product.class, mapper);
+        this.employees = new Table<>(Employee.class, mapper);
+    }
+
+    void load(SnapshotFile.Contents contents) {
+        contents.pharmacies().forEach(p -> pharmacies.live.put(p.value().getIdPharmacy(), p));
+        contents.sales().forEach(s -> sales.live.put(s.value().saleId(), s));
+        contents.products().forEach(p -> products.live.put(p.value().getProductId(), p));
+        contents.employees().forEach(e -> employees.live.put(e.value().getIdEmployee(), e));
+        contents.stock().forEach(this::applyStock);
+        lastSequence = Math.max(lastSequence, contents.lastSequence());
+    }
+
+    void apply(JournalRecord record) {
+        lastSequence = Math.max(lastSequence, record.sequence());
+        lastRevision = Math.max(lastRevision, record.revision());
+        if (record.op() == JournalRecord.Op.TRUNCATE) {
+            truncations.add(Truncation.of(record, mapper));
+            return;
+        }
+        switch (record.type()) {
+            case PHARMACY -> pharmacies.apply(record);
+            case SALE -> sales.apply(record);
+            case PRODUCT -> products.apply(record);
+            case EMPLOYEE -> employees.apply(record);
+            case STOCK -> {
+                try {
+                    applyStock(new Versioned<>(mapper.readValue(record.payload(), StockEntry.class), record.revision()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Registro de existencias ilegible en el journal", e);
+                }
+            }
+        }
+    }
+
+    void applyStock(Versioned<StockEntry> entry) {
+        long key = (long) entry.value().pharmacyId() << 32 | (entry.value().productId() & 0xFFFFFFFFL);
+        stock.merge(key, entry, (current, next) -> next.revision() > current.revision() ? next : current);
+    }
+
+    /**
+     * Registra una retención que no viene del journal (un segmento del archivo).
+     */
+    void truncate(OffsetDateTime before, long revision) {
+        truncations.add(new Truncation(before, revision));
+    }
+
+    /**
+     * Ventas vivas después de quitar las que cubre alguna retención.
+     *
+     * Las retenciones se reducen primero a una escalera: ordenadas por
+     * revisión, cada una guarda la fecha de corte más alta de ella en
+     * adelante. Una venta cae si la de su primer escalón con revisión mayor
+     * que la suya supera su fecha, así que cada venta cuesta una búsqueda
+     * binaria y no un recorrido de todas las retenciones.
+     */
+    Collection<Versioned<SaleRecord>> liveSales() {
+        if (truncations.isEmpty()) {
+            return sales.live.values();
+        }
+        List<Truncation> sorted = new ArrayList<>(truncations);
+        sorted.sort(Comparator.comparingLong(Truncation::revision));
+        long[] revisions = new long[sorted.size()];
+        long[] cutoffs = new long[sorted.size()];
+        long cutoff = Long.MIN_VALUE;
+        for (int i = sorted.size() - 1; i >= 0; i--) {
+            revisions[i] = sorted.get(i).revision();
+            cutoff = Math.max(cutoff, sorted.get(i).before().toEpochSecond());
+            cutoffs[i] = cutoff;
+        }
+        sales.live.values().removeIf(sale -> {
+            if (!sale.value().hasDate()) {
+                return false;
+            }
+            int step = firstAbove(revisions, sale.revision());
+            return step < revisions.length && sale.value().saleDate() < cutoffs[step];
+        });
+        return sales.live.values();
+    }
+
+    /** Primera posición con revisión mayor que {@code revision}, o el largo si no hay. */
+    private static int firstAbove(long[] revisions, long revision) {
+        int low = 0;
+        int high = revisions.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (revisions[mid] > revision) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Retención reproducida: quita las ventas anteriores a {@code before}
+     * escritas antes de {@code revision}; las escritas después la sobreviven,
+     * igual que en memoria.
+     */
+    record Truncation(OffsetDateTime before, long revision) {
+
+        static Truncation of(JournalRecord record, ObjectMapper mapper) {
+            try {
+                return new Truncation(mapper.readValue(record.payload(), OffsetDateTime.class), record.revision());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Registro de retención ilegible en el journal", e);
+            }
+        }
+    }
+
+    static final class Table<T> {
+        final Map<Integer, Versioned<T>> live = new LinkedHashMap<>();
+        final Map<Integer, Long> deleted = new HashMap<>();
+        final Class<T> type;
+        private final ObjectMapper mapper;
+
+        Table(Class<T> type, ObjectMapper mapper) {
+            this.type = type;
+            this.mapper = mapper;
+        }
+
+        void apply(JournalRecord record) {
+            Versioned<T> current = live.get(record.key());
+            long latest = Math.max(current != null ? current.revision() : 0, deleted.getOrDefault(record.key(), 0L));
+            if (record.revision() <= latest) {
+                return;
+            }
+            if (record.op() == JournalRecord.Op.DELETE) {
+                live.remove(record.key());
+                deleted.put(record.key(), record.revision());
+                return;
+            }
+            try {
+                live.put(record.key(), new Versioned<>(mapper.readValue(record.payload(), type), record.revision()));
+                deleted.remove(record.key());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Registro ilegible en el journal: " + record.type() + " " + record.key(), e);
+            }
+        }
+    }
+}
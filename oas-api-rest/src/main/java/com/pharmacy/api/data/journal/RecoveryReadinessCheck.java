@@ -0,0 +1,28 @@
+package com.pharmacy.api.data.journal;
+
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.Readiness;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * La instancia está lista cuando terminó de cargar el snapshot y el journal.
+ */
+@Readiness
+@ApplicationScoped
+public class RecoveryReadinessCheck implements HealthCheck {
+
+    @Inject
+    JournalManager journalManager;
+
+    @Override
+    public HealthCheckResponse call() {
+        return HealthCheckResponse.named("data-recovery")
+            .status(journalManager.isRecovered())
+            .withData("recoveryMillis", journalManager.getRecoveryMillis())
+            .withData("recoveredRecords", journalManager.getRecoveredRecords())
+            .build();
+    }
+}
@@ -0,0 +1,227 @@
+package com.pharmacy.api.data.journal;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.pharmacy.api.data.Money;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.StockEntry;
+import com.pharmacy.api.model.Employee;
+import com.pharmacy.api.model.Pharmacy;
+import com.pharmacy.api.model.Product;
+
+/**
+ * Codificación binaria de cada entidad dentro de un snapshot.
+ *
+ * Cada entidad empieza con una máscara de presencia (un bit por campo, en el
+ * orden en que se escriben) y solo se escriben los campos no nulos. Los textos
+ * van como {@code [int largo][UTF-8]} y las fechas como
+ * {@code [long epochSecond][int nano][int offsetSeconds]}.
+ */
+final class SnapshotCodec {
+
+    private SnapshotCodec() {
+    }
+
+    // --- Escritura ---
+
+    static void writePharmacy(DataOutputStream out, Pharmacy p) throws IOException {
+        out.writeByte(mask(p.getIdPharmacy(), p.getName(), p.getAddress()));
+        writeInt(out, p.getIdPharmacy());
+        writeString(out, p.getName());
+        writeString(out, p.getAddress());
+    }
+
+    static void writeProduct(DataOutputStream out, Product p) throws IOException {
+        out.writeByte(mask(p.getProductId(), p.getProductType(), p.getName(), p.getDescription(), p.getPrice()));
+        writeInt(out, p.getProductId());
+        if (p.getProductType() != null) {
+            out.writeByte(p.getProductType().ordinal());
+        }
+        writeString(out, p.getName());
+        writeString(out, p.getDescription());
+        if (p.getPrice() != null) {
+            out.writeDouble(p.getPrice());
+        }
+    }
+
+    static void writeEmployee(DataOutputStream out, Employee e) throws IOException {
+        out.writeByte(mask(e.getIdEmployee(), e.getIdPharmacy(), e.getName(), e.getLastName(), e.getPhone(), e.getTypeEmployee()));
+        writeInt(out, e.getIdEmployee());
+        writeInt(out, e.getIdPharmacy());
+        writeString(out, e.getName());
+        writeString(out, e.getLastName());
+        writeString(out, e.getPhone());
+        if (e.getTypeEmployee() != null) {
+            out.writeByte(e.getTypeEmployee().ordinal());
+        }
+    }
+
+    /**
+     * Mismo formato que cuando se guardaba el DTO: la fecha se escribe en UTC
+     * sin fracción y los montos como double, así los snapshots anteriores se
+     * siguen leyendo sin conversión.
+     */
+    static void writeSale(DataOutputStream out, SaleRecord s) throws IOException {
+        int mask = 1 << 7;
+        if (s.saleId() != SaleRecord.NO_ID) mask |= 1;
+        if (s.hasDate()) mask |= 1 << 1;
+        if (s.subTotalCents() != SaleRecord.NO_AMOUNT) mask |= 1 << 2;
+        if (s.ivaCents() != SaleRecord.NO_AMOUNT) mask |= 1 << 3;
+        if (s.totalCents() != SaleRecord.NO_AMOUNT) mask |= 1 << 4;
+        if (s.pharmacyId() != SaleRecord.NO_ID) mask |= 1 << 5;
+        if (s.employeeId() != SaleRecord.NO_ID) mask |= 1 << 6;
+        out.writeByte(mask);
+        writeId(out, s.saleId());
+        if (s.hasDate()) {
+            out.writeLong(s.saleDate());
+            out.writeInt(0);
+            out.writeInt(0);
+        }
+        writeCents(out, s.subTotalCents());
+        writeCents(out, s.ivaCents());
+        writeCents(out, s.totalCents());
+        writeId(out, s.pharmacyId());
+        writeId(out, s.employeeId());
+        out.writeInt(s.itemCount());
+        for (int i = 0; i < s.itemCount(); i++) {
+            int itemMask = 0;
+            if (s.saleId() != SaleRecord.NO_ID) itemMask |= 1;
+            if (s.productId(i) != SaleRecord.NO_ID) itemMask |= 1 << 1;
+            if (s.quantity(i) != SaleRecord.NO_ID) itemMask |= 1 << 2;
+            out.writeByte(itemMask);
+            writeId(out, s.saleId());
+            writeId(out, s.productId(i));
+            writeId(out, s.quantity(i));
+        }
+    }
+
+    /** Todos los campos son obligatorios: sin máscara. */
+    static void writeStock(DataOutputStream out, StockEntry s) throws IOException {
+        out.writeInt(s.pharmacyId());
+        out.writeInt(s.productId());
+        out.writeLong(s.available());
+        out.writeLong(s.trackedSince());
+    }
+
+    // --- Lectura ---
+
+    static Pharmacy readPharmacy(ByteBuffer in) {
+        int mask = in.get();
+        Pharmacy p = new Pharmacy();
+        if (has(mask, 0)) p.setIdPharmacy(in.getInt());
+        if (has(mask, 1)) p.setName(readString(in));
+        if (has(mask, 2)) p.setAddress(readString(in));
+        return p;
+    }
+
+    static Product readProduct(ByteBuffer in) {
+        int mask = in.get();
+        Product p = new Product();
+        if (has(mask, 0)) p.setProductId(in.getInt());
+        if (has(mask, 1)) p.setProductType(Product.ProductTypeEnum.values()[in.get()]);
+        if (has(mask, 2)) p.setName(readString(in));
+        if (has(mask, 3)) p.setDescription(readString(in));
+        if (has(mask, 4)) p.setPrice(in.getDouble());
+        return p;
+    }
+
+    static Employee readEmployee(ByteBuffer in) {
+        int mask = in.get();
+        Employee e = new Employee();
+        if (has(mask, 0)) e.setIdEmployee(in.getInt());
+        if (has(mask, 1)) e.setIdPharmacy(in.getInt());
+        if (has(mask, 2)) e.setName(readString(in));
+        if (has(mask, 3)) e.setLastName(readString(in));
+        if (has(mask, 4)) e.setPhone(readString(in));
+        if (has(mask, 5)) e.setTypeEmployee(Employee.TypeEmployeeEnum.values()[in.get()]);
+        return e;
+    }
+
+    static SaleRecord readSale(ByteBuffer in) {
+        int mask = in.get();
+        int saleId = has(mask, 0) ? in.getInt() : SaleRecord.NO_ID;
+        long saleDate = SaleRecord.NO_DATE;
+        if (has(mask, 1)) {
+            // Fracción y zona se descartan: SaleRecord guarda segundos UTC
+            saleDate = in.getLong();
+            in.getInt();
+            in.getInt();
+        }
+        long subTotal = has(mask, 2) ? Money.cents(in.getDouble()) : SaleRecord.NO_AMOUNT;
+        long iva = has(mask, 3) ? Money.cents(in.getDouble()) : SaleRecord.NO_AMOUNT;
+        long total = has(mask, 4) ? Money.cents(in.getDouble()) : SaleRecord.NO_AMOUNT;
+        int pharmacyId = has(mask, 5) ? in.getInt() : SaleRecord.NO_ID;
+        int employeeId = has(mask, 6) ? in.getInt() : SaleRecord.NO_ID;
+        long[] items = new long[has(mask, 7) ? in.getInt() : 0];
+        for (int i = 0; i < items.length; i++) {
+            int itemMask = in.get();
+            if (has(itemMask, 0)) in.getInt();
+            int productId = has(itemMask, 1) ? in.getInt() : SaleRecord.NO_ID;
+            int quantity = has(itemMask, 2) ? in.getInt() : SaleRecord.NO_ID;
+            items[i] = SaleRecord.item(productId, quantity);
+        }
+        return new SaleRecord(saleId, saleDate, subTotal, iva, total, pharmacyId, employeeId, items);
+    }
+
+    static StockEntry readStock(ByteBuffer in) {
+        return new StockEntry(in.getInt(), in.getInt(), in.getLong(), in.getLong());
+    }
+
+    // --- Auxiliares ---
+
+    private static int mask(Object... fields) {
+        int mask = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] != null) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
+    private static boolean has(int mask, int bit) {
+        return (mask & (1 << bit)) != 0;
+    }
+
+    private static void writeInt(DataOutputStream out, Integer value) throws IOException {
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeDouble(DataOutputStream out, Double value) throws IOException {
+        if (value != null) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static void writeId(DataOutputStream out, int value) throws IOException {
+        if (value != SaleRecord.NO_ID) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeCents(DataOutputStream out, long cents) throws IOException {
+        if (cents != SaleRecord.NO_AMOUNT) {
+            out.writeDouble(cents / 100.0);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value != null) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
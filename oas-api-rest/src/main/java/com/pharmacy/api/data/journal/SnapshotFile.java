@@ -0,0 +1,249 @@
+package com.pharmacy.api.data.journal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.zip.CRC32C;
+
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.StockEntry;
+import com.pharmacy.api.data.Versioned;
+import com.pharmacy.api.model.Employee;
+import com.pharmacy.api.model.Pharmacy;
+import com.pharmacy.api.model.Product;
+
+/**
+ * Snapshot binario compacto del estado, leído con un {@link FileChannel} mapeado en memoria.
+ *
+ * Formato:
+ * <pre>
+ * [magic][long ultimaSecuencia]
+ * [bloque]...            entidades de un solo tipo: [long revision] y la entidad codificada con {@link SnapshotCodec}
+ * [int bloques] y por bloque [byte tipo][int entidades][long offset][int bytes][int crc32c]
+ * [long offsetDelIndice][magic]
+ * </pre>
+ * El índice al final permite mapear y decodificar los bloques en paralelo sin
+ * recorrer el archivo. Se escribe en un temporal y se renombra de forma atómica,
+ * así que un snapshot visible siempre está completo.
+ *
+ * La versión 04 agrega los bloques de existencias; los snapshots 03 se leen
+ * igual y simplemente no traen ninguno.
+ */
+public final class SnapshotFile {
+
+    private static final byte[] MAGIC = {'P', 'H', 'S', 'N', 'A', 'P', '0', '4'};
+    private static final byte[] MAGIC_WITHOUT_STOCK = {'P', 'H', 'S', 'N', 'A', 'P', '0', '3'};
+    private static final int TRAILER_BYTES = 8 + MAGIC.length;
+    private static final int CHUNK_INDEX_BYTES = 1 + 4 + 8 + 4 + 4;
+    private static final int ENTITIES_PER_CHUNK = 16384;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Contenido decodificado de un snapshot.
+     */
+    public record Contents(long lastSequence, List<Versioned<Pharmacy>> pharmacies, List<Versioned<SaleRecord>> sales,
+                           List<Versioned<Product>> products, List<Versioned<Employee>> employees,
+                           List<Versioned<StockEntry>> stock) {
+
+        public long size() {
+            return (long) pharmacies.size() + sales.size() + products.size() + employees.size() + stock.size();
+        }
+    }
+
+    public static Path path(Path dir, long generation) {
+        return dir.resolve(String.format("snapshot-%020d.snap", generation));
+    }
+
+    public static long write(Path target, long lastSequence, Iterable<Versioned<Pharmacy>> pharmacies,
+                             Iterable<Versioned<SaleRecord>> sales, Iterable<Versioned<Product>> products,
+                             Iterable<Versioned<Employee>> employees, Iterable<Versioned<StockEntry>> stock)
+            throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        long count;
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ChunkWriter writer = new ChunkWriter(channel);
+            writer.writeFully(ByteBuffer.allocate(MAGIC.length + 8).put(MAGIC).putLong(lastSequence).flip());
+            writer.section(EntityType.PHARMACY, pharmacies, SnapshotCodec::writePharmacy);
+            writer.section(EntityType.SALE, sales, SnapshotCodec::writeSale);
+            writer.section(EntityType.PRODUCT, products, SnapshotCodec::writeProduct);
+            writer.section(EntityType.EMPLOYEE, employees, SnapshotCodec::writeEmployee);
+            writer.section(EntityType.STOCK, stock, SnapshotCodec::writeStock);
+            count = writer.finish();
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return count;
+    }
+
+    /**
+     * Mapea el snapshot y decodifica sus bloques en paralelo.
+     */
+    public static Contents read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MAGIC.length + 8 + 4 + TRAILER_BYTES) {
+                throw new IOException("Snapshot truncado: " + file);
+            }
+            MappedByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - TRAILER_BYTES, TRAILER_BYTES);
+            long indexOffset = trailer.getLong();
+            byte[] magic = new byte[MAGIC.length];
+            trailer.get(magic);
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, MAGIC.length + 8);
+            byte[] headerMagic = new byte[MAGIC.length];
+            header.get(headerMagic);
+            if (!Arrays.equals(magic, headerMagic)
+                    || !Arrays.equals(magic, MAGIC) && !Arrays.equals(magic, MAGIC_WITHOUT_STOCK)) {
+                throw new IOException("El archivo " + file + " no es un snapshot válido");
+            }
+            long lastSequence = header.getLong();
+            if (indexOffset < MAGIC.length + 8 || indexOffset > size - TRAILER_BYTES - 4) {
+                throw new IOException("Snapshot truncado: " + file);
+            }
+
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, size - TRAILER_BYTES - indexOffset);
+            int chunkCount = index.getInt();
+            List<Chunk> chunks = new ArrayList<>(chunkCount);
+            for (int i = 0; i < chunkCount; i++) {
+                chunks.add(new Chunk(EntityType.fromCode(index.get()), index.getInt(), index.getLong(), index.getInt(), index.getInt()));
+            }
+
+            // Cada bloque se mapea y decodifica de forma independiente
+            List<List<Object>> decoded = chunks.parallelStream()
+                .map(chunk -> decode(channel, file, chunk))
+                .toList();
+
+            Contents contents = new Contents(lastSequence, new ArrayList<>(), new ArrayList<>(), new ArrayList<>(),
+                new ArrayList<>(), new ArrayList<>());
+            for (int i = 0; i < chunks.size(); i++) {
+                collect(contents, chunks.get(i).type(), decoded.get(i));
+            }
+            return contents;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void collect(Contents contents, EntityType type, List<?> entities) {
+        switch (type) {
+            case PHARMACY -> contents.pharmacies().addAll((List<Versioned<Pharmacy>>) entities);
+            case SALE -> contents.sales().addAll((List<Versioned<SaleRecord>>) entities);
+            case PRODUCT -> contents.products().addAll((List<Versioned<Product>>) entities);
+            case EMPLOYEE -> contents.employees().addAll((List<Versioned<Employee>>) entities);
+            case STOCK -> contents.stock().addAll((List<Versioned<StockEntry>>) entities);
+        }
+    }
+
+    private static List<Object> decode(FileChannel channel, Path file, Chunk chunk) {
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk.offset(), chunk.length());
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.duplicate());
+            if ((int) crc.getValue() != chunk.crc()) {
+                throw new IOException("Bloque corrupto en el snapshot " + file + " (offset " + chunk.offset() + ")");
+            }
+            Function<ByteBuffer, ?> reader = switch (chunk.type()) {
+                case PHARMACY -> SnapshotCodec::readPharmacy;
+                case SALE -> SnapshotCodec::readSale;
+                case PRODUCT -> SnapshotCodec::readProduct;
+                case EMPLOYEE -> SnapshotCodec::readEmployee;
+                case STOCK -> SnapshotCodec::readStock;
+            };
+            List<Object> entities = new ArrayList<>(chunk.count());
+            for (int i = 0; i < chunk.count(); i++) {
+                long revision = buffer.getLong();
+                entities.add(new Versioned<>(reader.apply(buffer), revision));
+            }
+            return entities;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record Chunk(EntityType type, int count, long offset, int length, int crc) {
+    }
+
+    @FunctionalInterface
+    private interface Encoder<T> {
+        void write(DataOutputStream out, T entity) throws IOException;
+    }
+
+    /**
+     * Agrupa entidades en bloques, los anexa al canal y lleva el índice.
+     */
+    private static final class ChunkWriter {
+        private final FileChannel channel;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 20);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final List<Chunk> chunks = new ArrayList<>();
+        private long position;
+        private long total;
+
+        ChunkWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        <T> void section(EntityType type, Iterable<Versioned<T>> entities, Encoder<T> encoder) throws IOException {
+            int count = 0;
+            for (Versioned<T> entity : entities) {
+                out.writeLong(entity.revision());
+                encoder.write(out, entity.value());
+                if (++count == ENTITIES_PER_CHUNK) {
+                    flush(type, count);
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                flush(type, count);
+            }
+        }
+
+        long finish() throws IOException {
+            long indexOffset = position;
+            ByteBuffer index = ByteBuffer.allocate(4 + chunks.size() * CHUNK_INDEX_BYTES + TRAILER_BYTES);
+            index.putInt(chunks.size());
+            for (Chunk chunk : chunks) {
+                index.put(chunk.type().code()).putInt(chunk.count()).putLong(chunk.offset())
+                    .putInt(chunk.length()).putInt(chunk.crc());
+            }
+            index.putLong(indexOffset).put(MAGIC);
+            writeFully(index.flip());
+            return total;
+        }
+
+        void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer);
+            }
+        }
+
+        private void flush(EntityType type, int count) throws IOException {
+            out.flush();
+            byte[] data = bytes.toByteArray();
+            CRC32C crc = new CRC32C();
+            crc.update(data);
+            chunks.add(new Chunk(type, count, position, data.length, (int) crc.getValue()));
+            writeFully(ByteBuffer.wrap(data));
+            bytes.reset();
+            total += count;
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package com.pharmacy.api.resource;
 
 import com.pharmacy.api.commons.AlreadyExistsException;
+import com.pharmacy.api.commons.BadRequestException;
+import com.pharmacy.api.commons.Paging;
+import com.pharmacy.api.data.Page;
+import com.pharmacy.api.data.SaleRecord;
 import com.pharmacy.api.model.Employee;
 import com.pharmacy.api.model.EmployeePatch;
 import com.pharmacy.api.model.Error400BadRequest;
@@ -18,7 +22,6 @@ import jakarta.ws.rs.core.Response.Status;
 import jakarta.validation.Valid;
 
 import java.net.URI;
-import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -34,9 +37,9 @@ public class EmployeesResource {
     // 1. --- GET /employees : Obtener todos los empleados (200 OK) ---
     @GET
     @Path("/employees")
-    public Response getEmployees() {
-        System.out.println("Resource - Solicitud GET: obtener todos los empleados.");
-        List<Employee> employees = employeeService.getEmployees();
+    public Response getEmployees(@QueryParam("cursor") String cursor, @QueryParam("limit") Integer limit) {
+        System.out.println("Resource - Solicitud GET: obtener página de empleados.");
+        Page<Employee> employees = employeeService.getEmployees(Paging.afterId(cursor), Paging.limit(limit));
         
         SuccessWithData response = new SuccessWithData();
         response.setCode("EMPLOYEES_RETRIEVED");
@@ -70,6 +73,27 @@ public class EmployeesResource {
             
     }
 
+    // --- GET /employees/{idEmployee}/sales : Ventas del empleado, paginadas (200 OK / 400 / 404 NOT_FOUND) ---
+    @GET
+    @Path("/employees/{id}/sales")
+    public Response getSalesByEmployee(@PathParam("id") Integer idEmployee,
+                                       @QueryParam("cursor") String cursor,
+                                       @QueryParam("limit") Integer limit) {
+        System.out.println("Resource - Solicitud GET: ventas del empleado ID: " + idEmployee);
+
+        if (idEmployee == null || idEmployee < 1) {
+            throw new BadRequestException("El ID del empleado es inválido. Debe estar entre 1 y 2147483647.");
+        }
+        Page<SaleRecord> page = employeeService.getSalesByEmployee(idEmployee, Paging.afterId(cursor), Paging.limit(limit));
+
+        SuccessWithData response = new SuccessWithData();
+        response.setCode("SALES_BY_EMPLOYEE_RETRIEVED");
+        response.setMessage("Ventas del empleado obtenidas exitosamente");
+        response.setData(page.map(SaleRecord::toDto));
+
+        return Response.ok(response).build();
+    }
+
     // 3. --- POST /employees : Crear nuevo empleado (201 CREATED / 400 BAD_REQUEST) ---
     @POST
     @Path("/employees")
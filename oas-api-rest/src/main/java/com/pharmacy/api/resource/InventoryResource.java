@@ -0,0 +1,101 @@
+package com.pharmacy.api.resource;
+
+import java.util.List;
+
+import com.pharmacy.api.data.StockLevel;
+import com.pharmacy.api.model.SuccessWithData;
+import com.pharmacy.api.service.InventoryService;
+import com.pharmacy.api.service.ReorderService;
+import com.pharmacy.api.service.StockChange;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.PATCH;
+import jakarta.ws.rs.PUT;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+@Path("/api/v1")
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class InventoryResource {
+
+    @Inject
+    InventoryService inventoryService;
+
+    @Inject
+    ReorderService reorderService;
+
+    @GET
+    @Path("/pharmacys/{idPharmacy}/stock")
+    public Response getStock(@PathParam("idPharmacy") Integer idPharmacy) {
+        System.out.println("Controller - Obteniendo existencias de la farmacia ID: " + idPharmacy);
+
+        List<StockLevel> stock = inventoryService.getStock(idPharmacy);
+
+        SuccessWithData response = new SuccessWithData();
+        response.setCode("STOCK_RETRIEVED");
+        response.setMessage("Existencias obtenidas exitosamente");
+        response.setData(stock);
+
+        return Response.ok(response).build();
+    }
+
+    @GET
+    @Path("/pharmacys/{idPharmacy}/reorder-suggestions")
+    public Response getReorderSuggestions(@PathParam("idPharmacy") Integer idPharmacy) {
+        System.out.println("Controller - Obteniendo sugerencias de resurtido de la farmacia ID: " + idPharmacy);
+
+        SuccessWithData response = new SuccessWithData();
+        response.setCode("REORDER_SUGGESTIONS_RETRIEVED");
+        response.setMessage("Sugerencias de resurtido obtenidas exitosamente");
+        response.setData(reorderService.getSuggestions(idPharmacy));
+
+        return Response.ok(response).build();
+    }
+
+    @GET
+    @Path("/pharmacys/{idPharmacy}/stock/{productId}")
+    public Response getProductStock(@PathParam("idPharmacy") Integer idPharmacy, @PathParam("productId") Integer productId) {
+        System.out.println("Controller - Obteniendo existencia del producto ID " + productId + " en la farmacia ID: " + idPharmacy);
+
+        SuccessWithData response = new SuccessWithData();
+        response.setCode("STOCK_RETRIEVED");
+        response.setMessage("Existencia obtenida exitosamente");
+        response.setData(inventoryService.getStock(idPharmacy, productId));
+
+        return Response.ok(response).build();
+    }
+
+    @PUT
+    @Path("/pharmacys/{idPharmacy}/stock/{productId}")
+    public Response setStock(@PathParam("idPharmacy") Integer idPharmacy, @PathParam("productId") Integer productId,
+            StockChange change) {
+        System.out.println("Controller - Existencia recibida: " + change);
+
+        SuccessWithData response = new SuccessWithData();
+        response.setCode("STOCK_UPDATED");
+        response.setMessage("Existencia actualizada exitosamente");
+        response.setData(inventoryService.setStock(idPharmacy, productId, change));
+
+        return Response.ok(response).build();
+    }
+
+    @PATCH
+    @Path("/pharmacys/{idPharmacy}/stock/{productId}")
+    public Response adjustStock(@PathParam("idPharmacy") Integer idPharmacy, @PathParam("productId") Integer productId,
+            StockChange change) {
+        System.out.println("Controller - Ajuste de existencia recibido: " + change);
+
+        SuccessWithData response = new SuccessWithData();
+        response.setCode("STOCK_ADJUSTED");
+        response.setMessage("Existencia ajustada exitosamente");
+        response.setData(inventoryService.adjustStock(idPharmacy, productId, change));
+
+        return Response.ok(response).build();
+    }
+}
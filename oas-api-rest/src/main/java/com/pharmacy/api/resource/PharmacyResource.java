@@ -3,9 +3,13 @@ package com.pharmacy.api.resource;
 import java.util.List;
 
 import com.pharmacy.api.commons.BadRequestException;
+import com.pharmacy.api.commons.ETags;
+import com.pharmacy.api.commons.Paging;
+import com.pharmacy.api.data.Page;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.Versioned;
 import com.pharmacy.api.model.Pharmacy;
 import com.pharmacy.api.model.PharmacyPatch;
-import com.pharmacy.api.model.Sale;
 import com.pharmacy.api.model.Success;
 import com.pharmacy.api.model.SuccessWithData;
 import com.pharmacy.api.service.PharmacyService;
@@ -15,12 +19,14 @@ import jakarta.validation.Valid;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.PATCH;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
@@ -34,10 +40,10 @@ public class PharmacyResource {
 
     @GET
     @Path("/pharmacys")
-    public Response getAllPharmacys() {
-        System.out.println("Controller - Obteniendo todas las farmacias");
+    public Response getAllPharmacys(@QueryParam("cursor") String cursor, @QueryParam("limit") Integer limit) {
+        System.out.println("Controller - Obteniendo página de farmacias");
         
-        List<Pharmacy> pharmacys = pharmacyService.getPharmacys();
+        Page<Pharmacy> pharmacys = pharmacyService.getPharmacys(Paging.afterId(cursor), Paging.limit(limit));
         
         SuccessWithData response = new SuccessWithData();
         response.setCode("PHARMACYS_RETRIEVED");
@@ -57,14 +63,14 @@ public class PharmacyResource {
             throw new BadRequestException("El ID de la farmacia es inválido. Debe estar entre 1 y 2147483647.");
         }
         
-        Pharmacy pharmacy = pharmacyService.getPharmacyById(idPharmacy);
+        Versioned<Pharmacy> pharmacy = pharmacyService.getPharmacyVersion(idPharmacy);
         
         SuccessWithData response = new SuccessWithData();
         response.setCode("PHARMACY_RETRIEVED");
         response.setMessage("Información de la farmacia obtenida exitosamente");
-        response.setData(pharmacy);
+        response.setData(pharmacy.value());
     
-        return Response.ok(response).build();
+        return Response.ok(response).tag(ETags.of(pharmacy.revision())).build();
     }
 
     @GET
@@ -77,12 +83,12 @@ public class PharmacyResource {
 			throw new BadRequestException("El ID de la farmacia es inválido. Debe estar entre 1 y 2147483647.");
 		}
 
-		List<Sale> sales = pharmacyService.getSalesByPharmacy(idPharmacy);
+		List<SaleRecord> sales = pharmacyService.getSalesByPharmacy(idPharmacy);
 
 		SuccessWithData response = new SuccessWithData();
 		response.setCode("SALES_BY_PHARMACY_RETRIEVED");
 		response.setMessage("Ventas por farmacia obtenidas exitosamente");
-		response.setData(sales);
+		response.setData(sales.stream().map(SaleRecord::toDto).toList());
 
 		return Response.ok(response).build();
 	}
@@ -93,19 +99,20 @@ public class PharmacyResource {
         System.out.println("Controller - Creando farmacia: " + pharmacyRequest);
 
         // Las validaciones y excepciones son manejadas automáticamente por el GlobalExceptionMapper
-        Pharmacy savedPharmacy = pharmacyService.createPharmacy(pharmacyRequest);
+        Versioned<Pharmacy> savedPharmacy = pharmacyService.createPharmacy(pharmacyRequest);
         
         Success response = new Success();
         response.setCode("PHARMACY_CREATED");
         response.setMessage("Farmacia creada exitosamente");
-        response.setData(savedPharmacy);
+        response.setData(savedPharmacy.value());
     
-        return Response.status(Response.Status.CREATED).entity(response).build();
+        return Response.status(Response.Status.CREATED).entity(response).tag(ETags.of(savedPharmacy.revision())).build();
     }
 
     @PUT
     @Path("/pharmacys/{idPharmacy}")
-    public Response updatePharmacy(@PathParam("idPharmacy") Integer idPharmacy, @Valid Pharmacy pharmacyRequest) {
+    public Response updatePharmacy(@PathParam("idPharmacy") Integer idPharmacy, @HeaderParam("If-Match") String ifMatch,
+                                   @Valid Pharmacy pharmacyRequest) {
         System.out.println("Controller - Actualizando farmacia ID " + idPharmacy + ": " + pharmacyRequest);
 
         // Validación básica del ID
@@ -113,19 +120,21 @@ public class PharmacyResource {
             throw new BadRequestException("El ID de la farmacia es inválido. Debe estar entre 1 y 2147483647.");
         }
         
-        Pharmacy updatedPharmacy = pharmacyService.updatePharmacy(idPharmacy, pharmacyRequest);
+        Versioned<Pharmacy> updatedPharmacy = pharmacyService.updatePharmacy(idPharmacy, pharmacyRequest,
+            ETags.parseIfMatch(ifMatch));
 
         Success response = new Success();
         response.setCode("PHARMACY_UPDATED");
         response.setMessage("Farmacia actualizada exitosamente");
-        response.setData(updatedPharmacy);
+        response.setData(updatedPharmacy.value());
         
-        return Response.ok(response).build();
+        return Response.ok(response).tag(ETags.of(updatedPharmacy.revision())).build();
     }
 
     @PATCH
     @Path("/pharmacys/{idPharmacy}")
-    public Response partiallyUpdatePharmacy(@PathParam("idPharmacy") Integer idPharmacy, @Valid PharmacyPatch pharmacyRequest) {
+    public Response partiallyUpdatePharmacy(@PathParam("idPharmacy") Integer idPharmacy, @HeaderParam("If-Match") String ifMatch,
+                                            @Valid PharmacyPatch pharmacyRequest) {
         System.out.println("Controller - Actualizando parcialmente farmacia ID " + idPharmacy + ": " + pharmacyRequest);
         
         // Validación básica del ID
@@ -133,19 +142,20 @@ public class PharmacyResource {
             throw new BadRequestException("El ID de la farmacia es inválido. Debe estar entre 1 y 2147483647.");
         }
         
-        Pharmacy patchedPharmacy = pharmacyService.patchPharmacy(idPharmacy, pharmacyRequest);
+        Versioned<Pharmacy> patchedPharmacy = pharmacyService.patchPharmacy(idPharmacy, pharmacyRequest,
+            ETags.parseIfMatch(ifMatch));
 
         Success response = new Success();
         response.setCode("PHARMACY_PATCHED");
         response.setMessage("Farmacia actualizada parcialmente con éxito");
-        response.setData(patchedPharmacy);
+        response.setData(patchedPharmacy.value());
     
-        return Response.ok(response).build();
+        return Response.ok(response).tag(ETags.of(patchedPharmacy.revision())).build();
     }
 
     @DELETE
     @Path("/pharmacys/{idPharmacy}")
-    public Response deletePharmacy(@PathParam("idPharmacy") Integer idPharmacy) {
+    public Response deletePharmacy(@PathParam("idPharmacy") Integer idPharmacy, @HeaderParam("If-Match") String ifMatch) {
         System.out.println("Controller - Eliminando farmacia ID: " + idPharmacy);
         
         // Validación básica del ID
@@ -153,7 +163,7 @@ public class PharmacyResource {
             throw new BadRequestException("El ID de la farmacia es inválido. Debe estar entre 1 y 2147483647.");
         }
         
-        String deletionResult = pharmacyService.deletePharmacy(idPharmacy);
+        String deletionResult = pharmacyService.deletePharmacy(idPharmacy, ETags.parseIfMatch(ifMatch));
         
         Success response = new Success();
         response.setCode("PHARMACY_DELETED");
@@ -1,7 +1,8 @@
 package com.pharmacy.api.resource;
 
-import java.util.List;
 
+import com.pharmacy.api.commons.Paging;
+import com.pharmacy.api.data.Page;
 import com.pharmacy.api.model.Error400BadRequest;
 import com.pharmacy.api.model.Product;
 import com.pharmacy.api.model.ProductPatch;
@@ -20,6 +21,7 @@ import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
@@ -33,10 +35,10 @@ public class ProductsResource {
 
     @GET
     @Path("/products")
-    public Response getAllProducts() {
+    public Response getAllProducts(@QueryParam("cursor") String cursor, @QueryParam("limit") Integer limit) {
         System.out.println("Controller - Entrada a obtener productos");
         
-        List<Product> products = productsService.getProducts();
+        Page<Product> products = productsService.getProducts(Paging.afterId(cursor), Paging.limit(limit));
         
         SuccessWithData response = new SuccessWithData();
         response.setCode("PRODUCTS_RETRIEVED");
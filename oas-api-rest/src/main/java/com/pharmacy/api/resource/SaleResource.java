@@ -1,14 +1,30 @@
 // [file name]: SaleResource.java (actualizado)
 package com.pharmacy.api.resource;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+
 import com.pharmacy.api.commons.BadRequestException;
+import com.pharmacy.api.commons.ETags;
 import com.pharmacy.api.commons.JsonProcessingException;
+import com.pharmacy.api.commons.Paging;
+import com.pharmacy.api.commons.SaleJsonParser;
+import com.pharmacy.api.data.Page;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.SaleTimeKey;
+import com.pharmacy.api.data.SalesSummary;
+import com.pharmacy.api.data.Versioned;
 import com.pharmacy.api.model.Sale;
 import com.pharmacy.api.model.SalePatch;
 import com.pharmacy.api.model.Success;
 import com.pharmacy.api.model.SuccessWithData;
+import com.pharmacy.api.service.SaleBatchResult;
 import com.pharmacy.api.service.SaleService;
 
 import jakarta.inject.Inject;
@@ -16,12 +32,14 @@ import jakarta.validation.Valid;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.PATCH;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
@@ -30,45 +48,103 @@ import jakarta.ws.rs.core.Response;
 @Consumes(MediaType.APPLICATION_JSON)
 public class SaleResource {
 
+    static final String NDJSON = "application/x-ndjson";
+
     @Inject
     SaleService saleService;
 
+    @Inject
+    SaleJsonParser saleJsonParser;
+
+    @ConfigProperty(name = "pharmacy.sales.batch.max-items", defaultValue = "10000")
+    int maxBatchItems;
+
+    @ConfigProperty(name = "pharmacy.sales.batch.max-bytes", defaultValue = "8388608")
+    long maxBatchBytes;
+
     @GET
     @Path("/sales")
-    public Response getAllSales() {
-        System.out.println("Controller - Obteniendo todas las ventas");
+    public Response getAllSales(@QueryParam("cursor") String cursor,
+                                @QueryParam("limit") Integer limit,
+                                @QueryParam("from") String from,
+                                @QueryParam("to") String to) {
+        System.out.println("Controller - Obteniendo página de ventas");
 
-        List<Sale> sales = saleService.getSales();
+        long[] key = Paging.parseCursor(cursor, 3);
+        SaleTimeKey after = key != null ? new SaleTimeKey(key[0], (int) key[1], (int) key[2]) : null;
+        Page<SaleRecord> sales = saleService.getSales(after, parseDate("from", from), parseDate("to", to), Paging.limit(limit));
 
         SuccessWithData response = new SuccessWithData();
         response.setCode("SALES_RETRIEVED");
         response.setMessage("Lista de ventas obtenida exitosamente");
-        response.setData(sales);
+        response.setData(sales.map(SaleRecord::toDto));
+
+        return Response.ok(response).build();
+    }
+
+    @GET
+    @Path("/sales/summary")
+    public Response getSalesSummary(@QueryParam("pharmacyId") Integer pharmacyId,
+                                    @QueryParam("from") String from,
+                                    @QueryParam("to") String to) {
+        System.out.println("Controller - Obteniendo resumen de ventas");
+
+        if (pharmacyId != null && pharmacyId < 1) {
+            throw new BadRequestException("El ID de la farmacia es inválido. Debe estar entre 1 y 2147483647.");
+        }
+
+        SalesSummary summary = saleService.getSalesSummary(pharmacyId, parseDate("from", from), parseDate("to", to));
+
+        SuccessWithData response = new SuccessWithData();
+        response.setCode("SALES_SUMMARY_RETRIEVED");
+        response.setMessage("Resumen de ventas obtenido exitosamente");
+        response.setData(summary);
 
         return Response.ok(response).build();
     }
 
     @POST
     @Path("/sales")
-    public Response createSale(@Valid Sale saleRequest) {
+    public Response createSale(@HeaderParam("Idempotency-Key") String idempotencyKey, @Valid Sale saleRequest) {
         System.out.println("Controller - Creando venta: " + saleRequest);
         
         // Validación adicional del JSON
         validateJsonPayload(saleRequest);
 
-        Sale savedSale = saleService.createSale(saleRequest);
+        Versioned<SaleRecord> savedSale = saleService.createSale(saleRequest, idempotencyKey);
 
         Success response = new Success();
         response.setCode("SALE_CREATED");
         response.setMessage("Venta creada exitosamente");
-        response.setData(savedSale);
+        response.setData(savedSale.value().toDto());
 
-        return Response.status(Response.Status.CREATED).entity(response).build();
+        return Response.status(Response.Status.CREATED).entity(response).tag(ETags.of(savedSale.revision())).build();
+    }
+
+    @POST
+    @Path("/sales:batch")
+    @Consumes({MediaType.APPLICATION_JSON, NDJSON})
+    public Response createSales(@HeaderParam("Content-Length") String contentLength, InputStream body) throws IOException {
+        System.out.println("Controller - Creando lote de ventas");
+
+        List<Sale> sales = saleJsonParser.readSales(body, contentLength, maxBatchBytes, maxBatchItems);
+        if (sales.isEmpty()) {
+            throw new BadRequestException("El lote debe traer al menos una venta");
+        }
+        SaleBatchResult result = saleService.createSales(sales);
+
+        SuccessWithData response = new SuccessWithData();
+        response.setCode("SALES_BATCH_PROCESSED");
+        response.setMessage("Lote procesado: " + result.created() + " ventas creadas, " + result.failed() + " rechazadas");
+        response.setData(result);
+
+        return Response.ok(response).build();
     }
 
     @PUT
     @Path("/sales/{id}")
-    public Response updateSale(@PathParam("id") Integer saleId, @Valid Sale saleRequest) {
+    public Response updateSale(@PathParam("id") Integer saleId, @HeaderParam("If-Match") String ifMatch,
+                               @Valid Sale saleRequest) {
         System.out.println("Controller - Actualizando venta ID " + saleId + ": " + saleRequest);
 
         // Validación básica del ID
@@ -79,19 +155,20 @@ public class SaleResource {
         // Validación adicional del JSON
         validateJsonPayload(saleRequest);
 
-        Sale updatedSale = saleService.updateSale(saleId, saleRequest);
+        Versioned<SaleRecord> updatedSale = saleService.updateSale(saleId, saleRequest, ETags.parseIfMatch(ifMatch));
 
         Success response = new Success();
         response.setCode("SALE_UPDATED");
         response.setMessage("Venta actualizada exitosamente");
-        response.setData(updatedSale);
+        response.setData(updatedSale.value().toDto());
 
-        return Response.ok(response).build();
+        return Response.ok(response).tag(ETags.of(updatedSale.revision())).build();
     }
 
     @PATCH
     @Path("/sales/{saleId}")
-    public Response partiallyUpdateSale(@PathParam("saleId") Integer saleId, @Valid SalePatch saleRequest) {
+    public Response partiallyUpdateSale(@PathParam("saleId") Integer saleId, @HeaderParam("If-Match") String ifMatch,
+                                        @Valid SalePatch saleRequest) {
         System.out.println("Controller - Actualizando parcialmente venta ID " + saleId + ": " + saleRequest);
 
         // Validación básica del ID
@@ -102,19 +179,19 @@ public class SaleResource {
         // Validación adicional del JSON
         validateJsonPayload(saleRequest);
 
-        Sale patchedSale = saleService.patchSale(saleId, saleRequest);
+        Versioned<SaleRecord> patchedSale = saleService.patchSale(saleId, saleRequest, ETags.parseIfMatch(ifMatch));
 
         Success response = new Success();
         response.setCode("SALE_PATCHED");
         response.setMessage("Venta actualizada parcialmente con éxito");
-        response.setData(patchedSale);
+        response.setData(patchedSale.value().toDto());
 
-        return Response.ok(response).build();
+        return Response.ok(response).tag(ETags.of(patchedSale.revision())).build();
     }
 
     @DELETE
     @Path("/sales/{saleId}")
-    public Response deleteSale(@PathParam("saleId") Integer saleId) {
+    public Response deleteSale(@PathParam("saleId") Integer saleId, @HeaderParam("If-Match") String ifMatch) {
         System.out.println("Controller - Eliminando venta ID: " + saleId);
 
         // Validación básica del ID
@@ -122,7 +199,7 @@ public class SaleResource {
             throw new BadRequestException("El ID de la venta es inválido. Debe estar entre 1 y 2147483647.");
         }
 
-        String deletionResult = saleService.deleteSale(saleId);
+        String deletionResult = saleService.deleteSale(saleId, ETags.parseIfMatch(ifMatch));
 
         Success response = new Success();
         response.setCode("SALE_DELETED");
@@ -132,6 +209,20 @@ public class SaleResource {
         return Response.ok(response).build();
     }
     
+    /**
+     * Convierte un parámetro de fecha ISO-8601 opcional
+     */
+    private OffsetDateTime parseDate(String name, String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException("El parámetro '" + name + "' debe ser una fecha ISO-8601, por ejemplo 2025-12-31T00:00:00Z");
+        }
+    }
+
     /**
      * Método auxiliar para validaciones adicionales del payload JSON
      */
@@ -0,0 +1,55 @@
+package com.pharmacy.api.resource;
+
+import java.util.List;
+
+import com.pharmacy.api.commons.BadRequestException;
+import com.pharmacy.api.model.SuccessWithData;
+import com.pharmacy.api.service.TaxRule;
+import com.pharmacy.api.service.TaxRules;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.PUT;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+@Path("/api/v1")
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class TaxRulesResource {
+
+    @Inject
+    TaxRules taxRules;
+
+    @GET
+    @Path("/tax-rules")
+    public Response getTaxRules() {
+        System.out.println("Controller - Entrada a obtener reglas de IVA");
+
+        SuccessWithData response = new SuccessWithData();
+        response.setCode("TAX_RULES_RETRIEVED");
+        response.setMessage("Reglas de IVA obtenidas exitosamente");
+        response.setData(taxRules.getRules());
+
+        return Response.ok(response).build();
+    }
+
+    @PUT
+    @Path("/tax-rules")
+    public Response replaceTaxRules(List<TaxRule> rules) {
+        System.out.println("Controller - Reglas de IVA recibidas: " + rules);
+
+        if (rules == null) {
+            throw new BadRequestException("Las reglas de IVA son requeridas");
+        }
+        SuccessWithData response = new SuccessWithData();
+        response.setCode("TAX_RULES_UPDATED");
+        response.setMessage("Reglas de IVA actualizadas exitosamente");
+        response.setData(taxRules.replace(rules));
+
+        return Response.ok(response).build();
+    }
+}
@@ -1,61 +1,71 @@
 package com.pharmacy.api.service;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
 import com.pharmacy.api.commons.AlreadyExistsException;
+import com.pharmacy.api.commons.BadRequestException;
+import com.pharmacy.api.commons.ConflictException;
 import com.pharmacy.api.commons.NotFoundException;
+import com.pharmacy.api.commons.Paging;
+import com.pharmacy.api.data.Page;
+import com.pharmacy.api.data.ReferenceCounts;
+import com.pharmacy.api.data.ReferenceIndex;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.SharedData;
+import com.pharmacy.api.data.Versioned;
+import com.pharmacy.api.data.journal.EntityType;
+import com.pharmacy.api.data.journal.JournalManager;
 import com.pharmacy.api.model.Employee;
-import com.pharmacy.api.model.Employee.TypeEmployeeEnum;
 import com.pharmacy.api.model.EmployeePatch; 
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 
 @ApplicationScoped
 public class EmployeesService {
 
-    // 1. Simulación de la base de datos (datos de prueba iniciales)
-    private List<Employee> employees = new ArrayList<>(Arrays.asList(
-        new Employee()
-            .idEmployee(101)
-            .idPharmacy(3) 
-            .name("Juan")
-            .lastName("Perez")
-            .phone("4421234567")
-            .typeEmployee(TypeEmployeeEnum.CAJERO),
-            
-        new Employee()
-            .idEmployee(102)
-            .idPharmacy(1)
-            .name("Maria")
-            .lastName("Gomez")
-            .phone("4427654321")
-            .typeEmployee(TypeEmployeeEnum.DOCTOR),
-            
-        new Employee()
-            .idEmployee(201)
-            .idPharmacy(2)
-            .name("Carlos")
-            .lastName("Hernandez")
-            .phone("5551112233")
-            .typeEmployee(TypeEmployeeEnum.CAJERO)
-    ));
+    @Inject
+    SharedData sharedData;
+
+    @Inject
+    JournalManager journal;
+
+    @Inject
+    ReferenceIndex referenceIndex;
+
+    @Inject
+    ReferenceCounts referenceCounts;
     
     // --- LECTURA (GET) ---
 
-    public List<Employee> getEmployees() {
-        System.out.println("Service - Buscando todos los empleados...");
-        return employees;
+    public Page<Employee> getEmployees(int afterId, int limit) {
+        System.out.println("Service - Buscando empleados después del ID " + afterId + "...");
+        List<Employee> employees = sharedData.getEmployees().page(afterId, limit + 1, Employee::getIdEmployee);
+        return Page.of(employees, limit, employee -> Paging.cursor(employee.getIdEmployee()));
     }
     
     public Employee getEmployee(Integer id) {
         System.out.println("Service - Buscando empleado por ID: " + id);
-        return employees.stream()
-            .filter(e -> e.getIdEmployee().equals(id))
-            .findFirst()
-            .orElseThrow(() -> new NotFoundException("El empleado con ID " + id + " no fue encontrado."));
+        Employee employee = sharedData.getEmployees().get(id);
+        if (employee == null) {
+            throw new NotFoundException("El empleado con ID " + id + " no fue encontrado.");
+        }
+        return employee;
+    }
+
+    /**
+     * Ventas del empleado con saleId mayor que {@code afterSaleId}, a lo más
+     * {@code limit}.
+     */
+    public Page<SaleRecord> getSalesByEmployee(Integer id, int afterSaleId, int limit) {
+        System.out.println("Service - Buscando ventas del empleado ID " + id + " después de la venta " + afterSaleId);
+
+        // Validar que el empleado existe
+        getEmployee(id);
+
+        List<SaleRecord> sales = sharedData.getSales().findByEmployee(id, afterSaleId, limit + 1);
+        return Page.of(sales, limit, sale -> Paging.cursor(sale.saleId()));
     }
 
     // --- CREACIÓN (POST) ---
@@ -63,16 +73,22 @@ public class EmployeesService {
     public Employee createEmployee(Employee employee) {
         System.out.println("Service - Creando empleado: " + employee);
         
+        if (employee.getIdEmployee() == null) {
+            throw new BadRequestException("El ID del empleado es requerido");
+        }
+
         // 2. Validación de regla de negocio: El ID del empleado no debe existir
-        boolean idExists = employees.stream()
-            .anyMatch(e -> e.getIdEmployee().equals(employee.getIdEmployee()));
-            
-        if (idExists) {
+        // (la verificación y la inserción son atómicas; el journal anexa antes de publicar)
+        Versioned<Employee> created = sharedData.getEmployees().insert(employee.getIdEmployee(), employee,
+            version -> journal.upsert(EntityType.EMPLOYEE, employee.getIdEmployee(), version));
+        if (created == null) {
             // Lanza una excepción para indicar conflicto (409) o bad request (400)
             throw new AlreadyExistsException("El ID del empleado ya existe: " + employee.getIdEmployee());
         }
 
-        employees.add(employee);
+        journal.sync();
+        referenceCounts.employees().restore(employee.getIdEmployee());
+        referenceIndex.employeesChanged();
         return employee;
     }
 
@@ -81,13 +97,11 @@ public class EmployeesService {
     public Employee updateEmployee(Integer id, Employee employeeRequest) {
         System.out.println("Service - Actualizando empleado ID " + id + ": " + employeeRequest);
         
-        Optional<Employee> existingEmployeeOpt = employees.stream()
-            .filter(e -> e.getIdEmployee().equals(id))
-            .findFirst();
+        Optional<Versioned<Employee>> existingEmployeeOpt = Optional.ofNullable(sharedData.getEmployees().getVersioned(id));
             
         if (existingEmployeeOpt.isPresent()) {
-            // Actualización (simulando que la DB hace el cambio)
-            Employee existingEmployee = existingEmployeeOpt.get();
+            // Actualización sobre una copia; la versión guardada no se modifica
+            Employee existingEmployee = copyOf(existingEmployeeOpt.get().value());
             
             // Reemplazo total de los campos
             existingEmployee.setName(employeeRequest.getName());
@@ -96,6 +110,12 @@ public class EmployeesService {
             existingEmployee.setTypeEmployee(employeeRequest.getTypeEmployee());
             existingEmployee.setIdPharmacy(employeeRequest.getIdPharmacy()); 
             
+            Versioned<Employee> version = sharedData.getEmployees().replace(id, existingEmployeeOpt.get(), existingEmployee,
+                next -> journal.upsert(EntityType.EMPLOYEE, id, next));
+            if (version == null) {
+                throw new ConflictException("El empleado con ID " + id + " fue modificado por otra solicitud");
+            }
+            journal.sync();
             return existingEmployee;
         } else {
             // Lanza la excepción sugerida para un 404
@@ -107,12 +127,10 @@ public class EmployeesService {
     public Employee patchEmployee(Integer id, EmployeePatch employeePatch) {
         System.out.println("Service - Actualizando parcialmente empleado ID " + id + ": " + employeePatch);
         
-        Optional<Employee> existingEmployeeOpt = employees.stream()
-            .filter(e -> e.getIdEmployee().equals(id))
-            .findFirst();
+        Optional<Versioned<Employee>> existingEmployeeOpt = Optional.ofNullable(sharedData.getEmployees().getVersioned(id));
             
         if (existingEmployeeOpt.isPresent()) {
-            Employee existingEmployee = existingEmployeeOpt.get();
+            Employee existingEmployee = copyOf(existingEmployeeOpt.get().value());
             
             // Aplicar solo los cambios que no son null
             if (employeePatch.getName() != null) {
@@ -125,6 +143,12 @@ public class EmployeesService {
                 existingEmployee.setPhone(employeePatch.getPhone());
             }
 
+            Versioned<Employee> version = sharedData.getEmployees().replace(id, existingEmployeeOpt.get(), existingEmployee,
+                next -> journal.upsert(EntityType.EMPLOYEE, id, next));
+            if (version == null) {
+                throw new ConflictException("El empleado con ID " + id + " fue modificado por otra solicitud");
+            }
+            journal.sync();
             return existingEmployee;
         } else {
             // Lanza la excepción sugerida para un 404
@@ -137,14 +161,42 @@ public class EmployeesService {
     public String deleteEmployee(Integer id) {
         System.out.println("Service - Eliminando empleado ID: " + id);
         
-        // Retorna true si un elemento fue eliminado
-        boolean removed = employees.removeIf(e -> e.getIdEmployee().equals(id));
+        Versioned<Employee> existing = sharedData.getEmployees().getVersioned(id);
         
-        if (removed) {
+        if (existing != null) {
+            // Validar que no tenga ventas asociadas; si no tiene, ya no se le pueden asignar
+            if (!referenceCounts.employees().tryRetire(id)) {
+                throw new BadRequestException("No se puede eliminar el empleado porque tiene ventas asociadas");
+            }
+            long revision = -1;
+            try {
+                revision = sharedData.getEmployees().remove(id, existing,
+                    deleted -> journal.delete(EntityType.EMPLOYEE, id, deleted));
+            } finally {
+                if (revision < 0) {
+                    referenceCounts.employees().restore(id);
+                }
+            }
+            if (revision < 0) {
+                throw new ConflictException("El empleado con ID " + id + " fue modificado por otra solicitud");
+            }
+            journal.sync();
+            referenceIndex.employeesChanged();
             return "Empleado con ID " + id + " eliminado correctamente";
         } else {
             // Lanza la excepción sugerida para un 404
             throw new NotFoundException("El empleado con ID " + id + " no fue encontrado para eliminar.");
         }
     }
+
+    private static Employee copyOf(Employee employee) {
+        Employee copy = new Employee();
+        copy.setIdEmployee(employee.getIdEmployee());
+        copy.setIdPharmacy(employee.getIdPharmacy());
+        copy.setName(employee.getName());
+        copy.setLastName(employee.getLastName());
+        copy.setPhone(employee.getPhone());
+        copy.setTypeEmployee(employee.getTypeEmployee());
+        return copy;
+    }
 }
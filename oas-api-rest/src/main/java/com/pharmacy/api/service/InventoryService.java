@@ -0,0 +1,81 @@
+package com.pharmacy.api.service;
+
+import java.util.List;
+
+import com.pharmacy.api.commons.BadRequestException;
+import com.pharmacy.api.commons.NotFoundException;
+import com.pharmacy.api.data.SharedData;
+import com.pharmacy.api.data.StockEntry;
+import com.pharmacy.api.data.StockLedger;
+import com.pharmacy.api.data.StockLevel;
+import com.pharmacy.api.data.Versioned;
+import com.pharmacy.api.data.journal.EntityType;
+import com.pharmacy.api.data.journal.JournalManager;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+@ApplicationScoped
+public class InventoryService {
+
+    @Inject
+    SharedData sharedData;
+
+    @Inject
+    PharmacyService pharmacyService;
+
+    @Inject
+    StockLedger stockLedger;
+
+    @Inject
+    JournalManager journal;
+
+    public List<StockLevel> getStock(Integer pharmacyId) {
+        System.out.println("Service - Obteniendo existencias de la farmacia ID " + pharmacyId);
+        pharmacyService.getPharmacyById(pharmacyId);
+        return stockLedger.levels(pharmacyId);
+    }
+
+    public StockLevel getStock(Integer pharmacyId, Integer productId) {
+        System.out.println("Service - Obteniendo existencia del producto ID " + productId + " en la farmacia ID " + pharmacyId);
+        checkExists(pharmacyId, productId);
+        Long available = stockLedger.available(pharmacyId, productId);
+        if (available == null) {
+            throw new NotFoundException("El producto con ID " + productId + " no lleva inventario en la farmacia " + pharmacyId);
+        }
+        return new StockLevel(pharmacyId, productId, available);
+    }
+
+    public StockLevel setStock(Integer pharmacyId, Integer productId, StockChange change) {
+        System.out.println("Service - Fijando existencia del producto ID " + productId + " en la farmacia ID " + pharmacyId + ": " + change);
+        if (change == null || change.available() == null) {
+            throw new BadRequestException("La existencia disponible es requerida");
+        }
+        checkExists(pharmacyId, productId);
+        StockLevel level = stockLedger.set(pharmacyId, productId, change.available(), this::journalStock);
+        journal.sync();
+        return level;
+    }
+
+    public StockLevel adjustStock(Integer pharmacyId, Integer productId, StockChange change) {
+        System.out.println("Service - Ajustando existencia del producto ID " + productId + " en la farmacia ID " + pharmacyId + ": " + change);
+        if (change == null || change.delta() == null) {
+            throw new BadRequestException("El ajuste de existencia es requerido");
+        }
+        checkExists(pharmacyId, productId);
+        StockLevel level = stockLedger.adjust(pharmacyId, productId, change.delta(), this::journalStock);
+        journal.sync();
+        return level;
+    }
+
+    private void journalStock(Versioned<StockEntry> entry) {
+        journal.upsert(EntityType.STOCK, entry.value().pharmacyId(), entry);
+    }
+
+    private void checkExists(Integer pharmacyId, Integer productId) {
+        pharmacyService.getPharmacyById(pharmacyId);
+        if (!sharedData.getProducts().contains(productId)) {
+            throw new NotFoundException("El producto con ID " + productId + " no fue encontrado");
+        }
+    }
+}
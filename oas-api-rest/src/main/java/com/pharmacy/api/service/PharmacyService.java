@@ -1,15 +1,22 @@
 package com.pharmacy.api.service;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 import com.pharmacy.api.commons.AlreadyExistsException;
 import com.pharmacy.api.commons.BadRequestException;
+import com.pharmacy.api.commons.ConflictException;
 import com.pharmacy.api.commons.NotFoundException;
+import com.pharmacy.api.commons.Paging;
+import com.pharmacy.api.data.Page;
+import com.pharmacy.api.data.ReferenceCounts;
+import com.pharmacy.api.data.ReferenceIndex;
+import com.pharmacy.api.data.SaleRecord;
 import com.pharmacy.api.data.SharedData;
+import com.pharmacy.api.data.Versioned;
+import com.pharmacy.api.data.journal.EntityType;
+import com.pharmacy.api.data.journal.JournalManager;
 import com.pharmacy.api.model.Pharmacy;
 import com.pharmacy.api.model.PharmacyPatch;
-import com.pharmacy.api.model.Sale;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -20,27 +27,41 @@ public class PharmacyService {
     @Inject
     SharedData sharedData;
 
-    public List<Pharmacy> getPharmacys() {
-        System.out.println("Service - Obteniendo todas las farmacias...");
-        return sharedData.getPharmacies();
+    @Inject
+    JournalManager journal;
+
+    @Inject
+    ReferenceIndex referenceIndex;
+
+    @Inject
+    ReferenceCounts referenceCounts;
+
+    public Page<Pharmacy> getPharmacys(int afterId, int limit) {
+        System.out.println("Service - Obteniendo farmacias después del ID " + afterId + "...");
+        List<Pharmacy> pharmacies = sharedData.getPharmacies().page(afterId, limit + 1, Pharmacy::getIdPharmacy);
+        return Page.of(pharmacies, limit, pharmacy -> Paging.cursor(pharmacy.getIdPharmacy()));
     }
     
     public Pharmacy getPharmacyById(Integer id) {
-        return sharedData.getPharmacies().stream()
-            .filter(p -> p.getIdPharmacy().equals(id))
-            .findFirst()
-            .orElseThrow(() -> new NotFoundException("La farmacia con ID " + id + " no fue encontrada"));
+        return getPharmacyVersion(id).value();
+    }
+
+    public Versioned<Pharmacy> getPharmacyVersion(Integer id) {
+        Versioned<Pharmacy> pharmacy = sharedData.getPharmacies().getVersioned(id);
+        if (pharmacy == null) {
+            throw new NotFoundException("La farmacia con ID " + id + " no fue encontrada");
+        }
+        return pharmacy;
     }
 
-    public List<Sale> getSalesByPharmacy(Integer pharmacyId) {
+    public List<SaleRecord> getSalesByPharmacy(Integer pharmacyId) {
         System.out.println("Service - Obteniendo ventas para farmacia ID: " + pharmacyId);
         
-        // Validar que la farmacia existe
+        // Validar que la farmacia existe (búsqueda por llave, no un recorrido)
         getPharmacyById(pharmacyId);
         
-        List<Sale> result = sharedData.getSales().stream()
-            .filter(s -> s.getPharmacyId() != null && s.getPharmacyId().equals(pharmacyId))
-            .collect(Collectors.toList());
+        // Lista inmutable del índice por farmacia; se devuelve sin copiar
+        List<SaleRecord> result = sharedData.getSales().findByPharmacy(pharmacyId);
             
         if (result.isEmpty()) {
             throw new NotFoundException("No se encontraron ventas para la farmacia con ID " + pharmacyId);
@@ -48,7 +69,7 @@ public class PharmacyService {
         return result;
     }
     
-    public Pharmacy createPharmacy(Pharmacy pharmacy) {
+    public Versioned<Pharmacy> createPharmacy(Pharmacy pharmacy) {
         System.out.println("Service - Creando farmacia: " + pharmacy);
         
         // Validaciones de negocio
@@ -56,24 +77,25 @@ public class PharmacyService {
             throw new BadRequestException("El ID de la farmacia es requerido");
         }
 
-        boolean idExists = sharedData.getPharmacies().stream()
-        .anyMatch(p -> p.getIdPharmacy().equals(pharmacy.getIdPharmacy()));
-
-        if (idExists) {
-            throw new AlreadyExistsException("El ID de la farmacia ya existe: " + pharmacy.getIdPharmacy());
-        }
-
-        // Guardar en la base de datos
+        // Guardar en la base de datos (la verificación y la inserción son atómicas)
         Pharmacy newPharmacy = new Pharmacy(
                 pharmacy.getIdPharmacy(), 
                 pharmacy.getName(), 
                 pharmacy.getAddress());
                 
-        sharedData.getPharmacies().add(newPharmacy);
-        return newPharmacy;
+        // El journal anexa antes de publicar; el fsync se espera después
+        Versioned<Pharmacy> created = sharedData.getPharmacies().insert(newPharmacy.getIdPharmacy(), newPharmacy,
+            version -> journal.upsert(EntityType.PHARMACY, newPharmacy.getIdPharmacy(), version));
+        if (created == null) {
+            throw new AlreadyExistsException("El ID de la farmacia ya existe: " + pharmacy.getIdPharmacy());
+        }
+        journal.sync();
+        referenceCounts.pharmacies().restore(newPharmacy.getIdPharmacy());
+        referenceIndex.pharmaciesChanged();
+        return created;
     }
 
-    public Pharmacy updatePharmacy(Integer id, Pharmacy pharmacy) {
+    public Versioned<Pharmacy> updatePharmacy(Integer id, Pharmacy pharmacy, Long expectedRevision) {
         System.out.println("Service - Actualizando farmacia ID " + id + ": " + pharmacy);
         
         // Validaciones
@@ -82,29 +104,61 @@ public class PharmacyService {
         }
         
         // Buscar si la farmacia existe
-        Pharmacy existingPharmacy = getPharmacyById(id);
+        Versioned<Pharmacy> current = currentVersion(id, expectedRevision);
 
         // Verificar si el nuevo ID ya existe
-        boolean idExists = sharedData.getPharmacies().stream()
-        .anyMatch(p -> p.getIdPharmacy().equals(pharmacy.getIdPharmacy()) && !p.getIdPharmacy().equals(id));
+        boolean idExists = !pharmacy.getIdPharmacy().equals(id)
+            && sharedData.getPharmacies().contains(pharmacy.getIdPharmacy());
         
         if (idExists) {
             throw new AlreadyExistsException("El ID de la farmacia ya existe: " + pharmacy.getIdPharmacy());
         }
         
-        // Actualizar la farmacia
-        existingPharmacy.setIdPharmacy(pharmacy.getIdPharmacy());
-        existingPharmacy.setName(pharmacy.getName());
-        existingPharmacy.setAddress(pharmacy.getAddress());
+        // Se construye una versión nueva; la guardada no se modifica
+        Pharmacy updated = new Pharmacy(pharmacy.getIdPharmacy(), pharmacy.getName(), pharmacy.getAddress());
+        Integer newId = updated.getIdPharmacy();
+
+        // Cambiar el ID es eliminar el anterior: no puede tener ventas asociadas
+        boolean idChanged = !id.equals(newId);
+        if (idChanged && !referenceCounts.pharmacies().tryRetire(id)) {
+            throw new BadRequestException("No se puede cambiar el ID de la farmacia porque tiene ventas asociadas");
+        }
 
-        return existingPharmacy;
+        // Si cambió el ID se vuelve a registrar con el nuevo y, en el journal,
+        // la farmacia anterior deja de existir
+        Versioned<Pharmacy> version = null;
+        try {
+            version = sharedData.getPharmacies().replace(id, current, newId, updated, next -> {
+                if (idChanged) {
+                    journal.delete(EntityType.PHARMACY, id, next.revision());
+                }
+                journal.upsert(EntityType.PHARMACY, newId, next);
+            });
+        } finally {
+            if (version == null && idChanged) {
+                referenceCounts.pharmacies().restore(id);
+            }
+        }
+        if (version == null) {
+            if (idChanged && sharedData.getPharmacies().contains(newId)) {
+                throw new AlreadyExistsException("El ID de la farmacia ya existe: " + newId);
+            }
+            throw concurrentModification(id);
+        }
+        journal.sync();
+        if (idChanged) {
+            referenceCounts.pharmacies().restore(newId);
+            referenceIndex.pharmaciesChanged();
+        }
+        return version;
     }
 
-    public Pharmacy patchPharmacy(Integer id, PharmacyPatch pharmacyPatch) {
+    public Versioned<Pharmacy> patchPharmacy(Integer id, PharmacyPatch pharmacyPatch, Long expectedRevision) {
         System.out.println("Service - Actualizando parcialmente farmacia ID " + id + ": " + pharmacyPatch);
         
-        // Buscar la farmacia existente
-        Pharmacy existingPharmacy = getPharmacyById(id);
+        // Buscar la farmacia existente; el patch se aplica sobre una copia
+        Versioned<Pharmacy> current = currentVersion(id, expectedRevision);
+        Pharmacy existingPharmacy = new Pharmacy(id, current.value().getName(), current.value().getAddress());
         
         // Aplicar los cambios del patch
         if (pharmacyPatch.getName() != null) {
@@ -118,30 +172,64 @@ public class PharmacyService {
             existingPharmacy.setAddress(pharmacyPatch.getAddress());
         }
         
-        return existingPharmacy;
+        Versioned<Pharmacy> version = sharedData.getPharmacies().replace(id, current, existingPharmacy,
+            next -> journal.upsert(EntityType.PHARMACY, id, next));
+        if (version == null) {
+            throw concurrentModification(id);
+        }
+        journal.sync();
+        return version;
     }
 
-    public String deletePharmacy(Integer id) {
+    public String deletePharmacy(Integer id, Long expectedRevision) {
         System.out.println("Service - Eliminando farmacia ID: " + id);
         
         // Verificar que existe antes de eliminar
-        getPharmacyById(id);
+        Versioned<Pharmacy> current = currentVersion(id, expectedRevision);
         
-        // Validar que no tenga ventas asociadas
-        boolean hasSales = sharedData.getSales().stream()
-            .anyMatch(s -> s.getPharmacyId() != null && s.getPharmacyId().equals(id));
-            
-        if (hasSales) {
+        // Validar que no tenga ventas asociadas; si no tiene, ninguna venta
+        // nueva puede apuntarle mientras se elimina
+        if (!referenceCounts.pharmacies().tryRetire(id)) {
             throw new BadRequestException("No se puede eliminar la farmacia porque tiene ventas asociadas");
         }
         
-        // Eliminar la farmacia
-        boolean removed = sharedData.getPharmacies().removeIf(p -> p.getIdPharmacy().equals(id));
-        
-        if (!removed) {
-            throw new NotFoundException("La farmacia con ID " + id + " no fue encontrada");
+        // Eliminar la farmacia; si no se elimina, vuelve a aceptar ventas
+        long revision = -1;
+        try {
+            revision = sharedData.getPharmacies().remove(id, current,
+                deleted -> journal.delete(EntityType.PHARMACY, id, deleted));
+        } finally {
+            if (revision < 0) {
+                referenceCounts.pharmacies().restore(id);
+            }
         }
         
+        if (revision < 0) {
+            throw concurrentModification(id);        }
+        journal.sync();
+        referenceIndex.pharmaciesChanged();
+        
         return "Farmacia con ID " + id + " eliminada correctamente";
     }
+
+    /**
+     * Versión actual de la farmacia; si el cliente envió la revisión que leyó
+     * (If-Match) y ya no coincide, la escritura se rechaza con 409.
+     */
+    private Versioned<Pharmacy> currentVersion(Integer id, Long expectedRevision) {
+        Versioned<Pharmacy> current = getPharmacyVersion(id);
+        if (expectedRevision != null && expectedRevision != current.revision()) {
+            throw new ConflictException("La farmacia con ID " + id + " cambió desde la revisión " + expectedRevision,
+                current.revision());
+        }
+        return current;
+    }
+
+    private ConflictException concurrentModification(Integer id) {
+        Versioned<Pharmacy> current = sharedData.getPharmacies().getVersioned(id);
+        if (current == null) {
+            return new ConflictException("La farmacia con ID " + id + " fue eliminada o renombrada por otra solicitud");
+        }
+        return new ConflictException("La farmacia con ID " + id + " fue modificada por otra solicitud", current.revision());
+    }
 }
@@ -1,50 +1,70 @@
 package com.pharmacy.api.service;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
 import com.pharmacy.api.commons.AlreadyExistsException;
+import com.pharmacy.api.commons.BadRequestException;
+import com.pharmacy.api.commons.ConflictException;
+import com.pharmacy.api.commons.Paging;
+import com.pharmacy.api.data.Page;
+import com.pharmacy.api.data.PriceTable;
+import com.pharmacy.api.data.ReferenceCounts;
+import com.pharmacy.api.data.SharedData;
+import com.pharmacy.api.data.Versioned;
+import com.pharmacy.api.data.journal.EntityType;
+import com.pharmacy.api.data.journal.JournalManager;
 import com.pharmacy.api.model.Product;
-import com.pharmacy.api.model.Product.ProductTypeEnum;
 import com.pharmacy.api.model.ProductPatch;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 
 @ApplicationScoped
 public class ProductsService {
 
-    private List<Product> products = new ArrayList<>(Arrays.asList(
-        new Product(1, ProductTypeEnum.GENERICO, "Paracetamol", 50.50),
-        new Product(55, ProductTypeEnum.GENERICO, "Jarabe Broncolin", 130.22),
-        new Product(302, ProductTypeEnum.PRESCRITO, "Amoxicilina", 160.00),
-        new Product(2, ProductTypeEnum.GENERICO, "Ibuprofeno", 50.50)
-    ));
+    @Inject
+    SharedData sharedData;
 
-    public List<Product> getProducts() {
-        System.out.println("Service - Buscando todos los productos...");
-        return products;
+    @Inject
+    JournalManager journal;
+
+    @Inject
+    PriceTable priceTable;
+
+    @Inject
+    ReferenceCounts referenceCounts;
+
+    public Page<Product> getProducts(int afterId, int limit) {
+        System.out.println("Service - Buscando productos después del ID " + afterId + "...");
+        List<Product> products = sharedData.getProducts().page(afterId, limit + 1, Product::getProductId);
+        return Page.of(products, limit, product -> Paging.cursor(product.getProductId()));
     }
     
     public Product createProduct(Product product) {
         System.out.println("Service - Creando producto: " + product);
         
-        boolean idExists = products.stream()
-                .anyMatch(p -> p.getProductId().equals(product.getProductId()));
-        if (idExists) {
-            // Usar AlreadyExistsException 
-            throw new AlreadyExistsException("El ID del producto ya existe: " + product.getProductId());
+        if (product.getProductId() == null) {
+            throw new BadRequestException("El ID del producto es requerido");
         }
 
-        // Guardar en la base de datos
+        // Guardar en la base de datos (la verificación y la inserción son atómicas)
         Product newProduct = new Product(
                 product.getProductId(), 
                 product.getProductType(), 
                 product.getName(), 
                 product.getPrice());
         newProduct.setDescription(product.getDescription()); 
-        products.add(newProduct);
+        // El journal anexa antes de publicar; el fsync se espera después
+        Versioned<Product> created = sharedData.getProducts().insert(newProduct.getProductId(), newProduct,
+            version -> journal.upsert(EntityType.PRODUCT, newProduct.getProductId(), version));
+        if (created == null) {
+            // Usar AlreadyExistsException 
+            throw new AlreadyExistsException("El ID del producto ya existe: " + product.getProductId());
+        }
+        journal.sync();
+        referenceCounts.products().restore(newProduct.getProductId());
+        priceTable.rebuild();
         return newProduct; // Retornar el nuevo producto creado
     }
 
@@ -52,17 +72,22 @@ public class ProductsService {
         System.out.println("Service - Actualizando producto ID " + id + ": " + product);
         
         // Buscar si el producto existe
-        Optional<Product> existingProductOpt = products.stream()
-            .filter(p -> p.getProductId().equals(id))
-            .findFirst();
+        Optional<Versioned<Product>> existingProductOpt = Optional.ofNullable(sharedData.getProducts().getVersioned(id));
             
         if (existingProductOpt.isPresent()) {
-            // Actualizar el producto
-            Product existingProduct = existingProductOpt.get();
+            // Actualizar el producto sobre una copia; la versión guardada no se modifica
+            Product existingProduct = copyOf(existingProductOpt.get().value());
             existingProduct.setName(product.getName());
             existingProduct.setDescription(product.getDescription());
             existingProduct.setPrice(product.getPrice());
             existingProduct.setProductType(product.getProductType());
+            Versioned<Product> version = sharedData.getProducts().replace(id, existingProductOpt.get(), existingProduct,
+                next -> journal.upsert(EntityType.PRODUCT, id, next));
+            if (version == null) {
+                throw new ConflictException("El producto con ID " + id + " fue modificado por otra solicitud");
+            }
+            journal.sync();
+            priceTable.rebuild();
             return existingProduct; // Retornar el producto actualizado
         } else {
             // Si no existe retornar un exception
@@ -74,12 +99,10 @@ public class ProductsService {
         System.out.println("Service - Actualizando parcialmente producto ID " + id + ": " + productPatch);
         
         // Buscar el producto existente
-        Optional<Product> existingProductOpt = products.stream()
-            .filter(p -> p.getProductId().equals(id))
-            .findFirst();
+        Optional<Versioned<Product>> existingProductOpt = Optional.ofNullable(sharedData.getProducts().getVersioned(id));
             
         if (existingProductOpt.isPresent()) {
-            Product existingProduct = existingProductOpt.get();
+            Product existingProduct = copyOf(existingProductOpt.get().value());
             
             // Aplicar los cambios del patch
             if (productPatch.getPrice() != null) {
@@ -89,6 +112,13 @@ public class ProductsService {
                 existingProduct.setDescription(productPatch.getDescription());
             }
             
+            Versioned<Product> version = sharedData.getProducts().replace(id, existingProductOpt.get(), existingProduct,
+                next -> journal.upsert(EntityType.PRODUCT, id, next));
+            if (version == null) {
+                throw new ConflictException("El producto con ID " + id + " fue modificado por otra solicitud");
+            }
+            journal.sync();
+            priceTable.rebuild();
             return existingProduct;
         }
         // Si no existe, retornar un exception
@@ -99,12 +129,36 @@ public class ProductsService {
         System.out.println("Service - Eliminando producto ID: " + id);
         
         // Buscar si el producto existe y eliminarlo
-        boolean removed = products.removeIf(p -> p.getProductId().equals(id));
+        Versioned<Product> existing = sharedData.getProducts().getVersioned(id);
         
-        if (removed) {
+        if (existing != null) {
+            // Validar que ninguna venta lo use; si ninguna lo usa, ya no se le pueden agregar
+            if (!referenceCounts.products().tryRetire(id)) {
+                throw new BadRequestException("No se puede eliminar el producto porque tiene ventas asociadas");
+            }
+            long revision = -1;
+            try {
+                revision = sharedData.getProducts().remove(id, existing,
+                    deleted -> journal.delete(EntityType.PRODUCT, id, deleted));
+            } finally {
+                if (revision < 0) {
+                    referenceCounts.products().restore(id);
+                }
+            }
+            if (revision < 0) {
+                throw new ConflictException("El producto con ID " + id + " fue modificado por otra solicitud");
+            }
+            journal.sync();
+            priceTable.rebuild();
             return "Producto con ID " + id + " eliminado correctamente";
         } else {
             throw new AlreadyExistsException("El producto con ID no fue encontrado: " + id);
         }
     }
+
+    private static Product copyOf(Product product) {
+        Product copy = new Product(product.getProductId(), product.getProductType(), product.getName(), product.getPrice());
+        copy.setDescription(product.getDescription());
+        return copy;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,102 @@
+package com.pharmacy.api.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.pharmacy.api.data.DemandTracker;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.StockLedger;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Puntos de reorden por farmacia a partir de la demanda estimada
+ * ({@link DemandTracker}) y las existencias ({@link StockLedger}); ambos se
+ * mantienen con cada venta, así que no hay que recorrer ventas para
+ * responder.
+ *
+ * Punto de reorden = demanda diaria x (días de entrega + días de seguridad).
+ * Un producto por debajo de su punto se sugiere con lo necesario para cubrir
+ * además {@code pharmacy.reorder.cover-days}. Solo entran los productos que
+ * llevan inventario en la farmacia.
+ */
+@ApplicationScoped
+public class ReorderService {
+
+    @Inject
+    PharmacyService pharmacyService;
+
+    @Inject
+    DemandTracker demandTracker;
+
+    @Inject
+    StockLedger stockLedger;
+
+    @ConfigProperty(name = "pharmacy.reorder.lead-time-days", defaultValue = "3")
+    int leadTimeDays;
+
+    @ConfigProperty(name = "pharmacy.reorder.safety-days", defaultValue = "2")
+    int safetyDays;
+
+    @ConfigProperty(name = "pharmacy.reorder.cover-days", defaultValue = "7")
+    int coverDays;
+
+    /**
+     * Registra la demanda de una venta nueva y avisa de los productos que
+     * con ella bajaron de su punto de reorden.
+     */
+    public void onSale(SaleRecord sale) {
+        long now = System.currentTimeMillis();
+        long[] pointsBefore = new long[sale.itemCount()];
+        for (int i = 0; i < sale.itemCount(); i++) {
+            pointsBefore[i] = reorderPoint(demandTracker.dailyUnits(sale.pharmacyId(), sale.productId(i), now));
+        }
+        demandTracker.record(sale, now);
+        for (int i = 0; i < sale.itemCount(); i++) {
+            int productId = sale.productId(i);
+            Long available = stockLedger.available(sale.pharmacyId(), productId);
+            if (available == null) {
+                continue;
+            }
+            long reorderPoint = reorderPoint(demandTracker.dailyUnits(sale.pharmacyId(), productId, now));
+            if (available <= reorderPoint && available + sale.quantity(i) > pointsBefore[i]) {
+                System.out.println("Service - Producto " + productId + " en la farmacia " + sale.pharmacyId()
+                    + " bajo su punto de reorden: existencia " + available + ", punto " + reorderPoint);
+            }
+        }
+    }
+
+    /**
+     * Productos por resurtir, los que se agotan antes primero.
+     */
+    public List<ReorderSuggestion> getSuggestions(Integer pharmacyId) {
+        System.out.println("Service - Calculando sugerencias de resurtido de la farmacia ID " + pharmacyId);
+        pharmacyService.getPharmacyById(pharmacyId);
+
+        // Se ordena por días de existencia con la demanda sin redondear: la redondeada puede ser 0
+        List<Ranked> ranked = new ArrayList<>();
+        demandTracker.forEach(pharmacyId, System.currentTimeMillis(), (productId, dailyUnits) -> {
+            Long available = stockLedger.available(pharmacyId, productId);
+            long reorderPoint = reorderPoint(dailyUnits);
+            if (available != null && dailyUnits > 0 && available <= reorderPoint) {
+                long target = (long) Math.ceil(dailyUnits * (leadTimeDays + safetyDays + coverDays));
+                ranked.add(new Ranked(new ReorderSuggestion(productId, available, Math.round(dailyUnits * 100) / 100.0,
+                    reorderPoint, target - available), available / dailyUnits));
+            }
+        });
+        ranked.sort(Comparator.comparingDouble(Ranked::daysLeft)
+            .thenComparingInt(r -> r.suggestion().productId()));
+        return ranked.stream().map(Ranked::suggestion).toList();
+    }
+
+    private record Ranked(ReorderSuggestion suggestion, double daysLeft) {
+    }
+
+    private long reorderPoint(double dailyUnits) {
+        return (long) Math.ceil(dailyUnits * (leadTimeDays + safetyDays));
+    }
+}
@@ -0,0 +1,14 @@
+package com.pharmacy.api.service;
+
+/**
+ * Producto que conviene resurtir en una farmacia.
+ *
+ * @param productId         producto
+ * @param available         existencia actual
+ * @param dailyDemand       unidades por día estimadas (EWMA)
+ * @param reorderPoint      existencia a la que se pide: demanda durante el tiempo de entrega más el de seguridad
+ * @param suggestedQuantity unidades a pedir para cubrir además {@code pharmacy.reorder.cover-days}
+ */
+public record ReorderSuggestion(int productId, long available, double dailyDemand, long reorderPoint,
+                                long suggestedQuantity) {
+}
@@ -0,0 +1,40 @@
+package com.pharmacy.api.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.pharmacy.api.commons.ErrorMapping;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.Versioned;
+import com.pharmacy.api.model.Sale;
+
+/**
+ * Resultado de una venta dentro de un lote. Los códigos y mensajes son los
+ * mismos que daría POST /sales con esa venta sola: ambos salen de
+ * {@link ErrorMapping}.
+ *
+ * @param index    posición de la venta en el lote, desde 0
+ * @param status   estado HTTP que habría tenido la venta sola
+ * @param code     SALE_CREATED o el código de error
+ * @param message  descripción del resultado
+ * @param sale     la venta guardada, solo si se creó
+ * @param revision revisión de la venta guardada (su ETag), solo si se creó
+ */
+public record SaleBatchItem(int index, int status, String code, String message, Sale sale, Long revision) {
+
+    static SaleBatchItem created(int index, Versioned<SaleRecord> version) {
+        return new SaleBatchItem(index, 201, "SALE_CREATED", "Venta creada exitosamente",
+            version.value().toDto(), version.revision());
+    }
+
+    static SaleBatchItem failed(int index, RuntimeException e) {
+        ErrorMapping error = ErrorMapping.of(e);
+        if (error.isInternal()) {
+            System.err.println("Service - Error inesperado en la venta " + index + " del lote: " + e);
+        }
+        return new SaleBatchItem(index, error.status(), error.code(), error.message(), null, null);
+    }
+
+    @JsonIgnore
+    public boolean isCreated() {
+        return status == 201;
+    }
+}
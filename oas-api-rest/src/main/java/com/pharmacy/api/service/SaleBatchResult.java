@@ -0,0 +1,19 @@
+package com.pharmacy.api.service;
+
+import java.util.List;
+
+/**
+ * Resultado de un lote de ventas: cada venta se crea o falla por separado.
+ *
+ * @param received ventas recibidas
+ * @param created  ventas creadas
+ * @param failed   ventas rechazadas
+ * @param items    resultado de cada venta, en el orden del lote
+ */
+public record SaleBatchResult(int received, int created, int failed, List<SaleBatchItem> items) {
+
+    static SaleBatchResult of(List<SaleBatchItem> items) {
+        int created = (int) items.stream().filter(SaleBatchItem::isCreated).count();
+        return new SaleBatchResult(items.size(), created, items.size() - created, items);
+    }
+}
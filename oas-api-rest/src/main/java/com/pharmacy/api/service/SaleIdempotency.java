@@ -0,0 +1,278 @@
+package com.pharmacy.api.service;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.pharmacy.api.commons.BadRequestException;
+import com.pharmacy.api.commons.ConflictException;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.Versioned;
+import com.pharmacy.api.model.Sale;
+import com.pharmacy.api.model.SaleProduct;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Ventas creadas por Idempotency-Key, para que el reintento de una terminal
+ * devuelva la venta que ya se creó en lugar de duplicarla.
+ *
+ * La primera solicitud con una clave la registra en curso y ejecuta la
+ * creación; las que llegan con la misma clave mientras tanto esperan ese
+ * mismo resultado en lugar de ejecutarla otra vez. Si la creación falla, la
+ * clave se libera para que el siguiente reintento vuelva a intentarlo. Una
+ * clave reutilizada con otro cuerpo se rechaza con 409; el cuerpo se compara
+ * por su SHA-256 ({@link #fingerprint(Sale)}), no por {@code hashCode}, que
+ * con 32 bits puede coincidir entre dos ventas distintas y devolver la
+ * venta de otra solicitud.
+ *
+ * Las claves completadas viven {@code pharmacy.sales.idempotency.ttl-s} y
+ * como máximo se guardan {@code pharmacy.sales.idempotency.max-keys}: al
+ * pasarse se descartan las más viejas, en orden de llegada. Viven solo en
+ * memoria, así que un reinicio las olvida.
+ */
+@ApplicationScoped
+public class SaleIdempotency {
+
+    static final int MAX_KEY_LENGTH = 255;
+
+    /** Bytes estimados por clave sin contar el texto de la clave ni las partidas. */
+    private static final long ENTRY_BYTES = 256;
+
+    private static final int ABSENT = -1;
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "pharmacy.sales.idempotency.ttl-s", defaultValue = "86400")
+    long ttlSeconds;
+
+    @ConfigProperty(name = "pharmacy.sales.idempotency.max-keys", defaultValue = "100000")
+    int maxKeys;
+
+    LongSupplier clock = System::nanoTime;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry> order = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final AtomicLong bytes = new AtomicLong();
+    private Counter hits;
+    private Counter coalesced;
+    private Counter misses;
+
+    public SaleIdempotency() {
+    }
+
+    SaleIdempotency(MeterRegistry registry, long ttlSeconds, int maxKeys, LongSupplier clock) {
+        this.registry = registry;
+        this.ttlSeconds = ttlSeconds;
+        this.maxKeys = maxKeys;
+        this.clock = clock;
+        init();
+    }
+
+    @PostConstruct
+    void init() {
+        hits = registry.counter("pharmacy.sales.idempotency.requests", "result", "hit");
+        coalesced = registry.counter("pharmacy.sales.idempotency.requests", "result", "coalesced");
+        misses = registry.counter("pharmacy.sales.idempotency.requests", "result", "miss");
+        registry.gauge("pharmacy.sales.idempotency.keys", entries, ConcurrentHashMap::size);
+        registry.gauge("pharmacy.sales.idempotency.bytes", bytes);
+        registry.gauge("pharmacy.sales.idempotency.hit-ratio", this, SaleIdempotency::hitRatio);
+    }
+
+    /**
+     * Ejecuta {@code create} una sola vez por clave; los reintentos con la
+     * misma clave reciben la venta creada la primera vez.
+     *
+     * @param fingerprint {@link #fingerprint(Sale)} del cuerpo, calculado antes de crear la venta
+     * @throws ConflictException si la clave ya se usó con otro cuerpo
+     */
+    public Versioned<SaleRecord> execute(String key, byte[] fingerprint, Supplier<Versioned<SaleRecord>> create) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new BadRequestException("El encabezado Idempotency-Key debe tener entre 1 y " + MAX_KEY_LENGTH + " caracteres");
+        }
+        Entry entry = new Entry(key, fingerprint);
+        Entry existing;
+        while ((existing = entries.putIfAbsent(key, entry)) != null && existing.expired(clock.getAsLong())) {
+            if (entries.replace(key, existing, entry)) {
+                forget(existing);
+                existing = null;
+                break;
+            }
+        }
+        if (existing != null) {
+            if (!MessageDigest.isEqual(existing.fingerprint, fingerprint)) {
+                throw new ConflictException("La clave de idempotencia " + key + " ya se usó con otra venta");
+            }
+            (existing.result.isDone() ? hits : coalesced).increment();
+            return await(existing);
+        }
+
+        misses.increment();
+        order.add(entry);
+        try {
+            Versioned<SaleRecord> created = create.get();
+            entry.complete(created, clock.getAsLong() + TimeUnit.SECONDS.toNanos(ttlSeconds));
+            bytes.addAndGet(entry.bytes);
+            return created;
+        } catch (RuntimeException e) {
+            // Los que esperaban reciben el mismo error; el siguiente reintento vuelve a ejecutar
+            entries.remove(key, entry);
+            entry.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            evict();
+        }
+    }
+
+    /**
+     * SHA-256 de la forma canónica de la venta: cada campo en orden fijo,
+     * con una marca de ausente para los nulos, y luego cada partida.
+     */
+    public static byte[] fingerprint(Sale sale) {
+        MessageDigest digest = sha256();
+        try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+            writeInt(out, sale.getSaleId());
+            out.writeUTF(sale.getSaleDate() == null ? "" : sale.getSaleDate().toString());
+            writeDouble(out, sale.getSubTotal());
+            writeDouble(out, sale.getIva());
+            writeDouble(out, sale.getTotal());
+            writeInt(out, sale.getPharmacyId());
+            writeInt(out, sale.getEmployeeId());
+            if (sale.getProducts() == null) {
+                out.writeInt(ABSENT);
+            } else {
+                out.writeInt(sale.getProducts().size());
+                for (SaleProduct product : sale.getProducts()) {
+                    out.writeBoolean(product != null);
+                    if (product != null) {
+                        writeInt(out, product.getSaleId());
+                        writeInt(out, product.getProductId());
+                        writeInt(out, product.getQuantity());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return digest.digest();
+    }
+
+    private static void writeInt(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        out.writeInt(value == null ? 0 : value);
+    }
+
+    private static void writeDouble(DataOutputStream out, Double value) throws IOException {
+        out.writeBoolean(value != null);
+        out.writeDouble(value == null ? 0 : value);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no está disponible", e);
+        }
+    }
+
+    double hitRatio() {
+        double repeated = hits.count() + coalesced.count();
+        double total = repeated + misses.count();
+        return total > 0 ? repeated / total : 0;
+    }
+
+    long bytes() {
+        return bytes.get();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Descarta desde la clave más vieja mientras sobren claves o estén
+     * vencidas. Solo un hilo a la vez; los demás no esperan. Se detiene en
+     * una clave aún en curso, que no se puede descartar.
+     */
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = clock.getAsLong();
+            Entry oldest;
+            while ((oldest = order.peek()) != null && oldest.result.isDone()
+                    && (entries.size() > maxKeys || oldest.expired(now) || entries.get(oldest.key) != oldest)) {
+                order.poll();
+                if (entries.remove(oldest.key, oldest)) {
+                    forget(oldest);
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private void forget(Entry entry) {
+        if (!entry.result.isCompletedExceptionally()) {
+            bytes.addAndGet(-entry.bytes);
+        }
+    }
+
+    private static Versioned<SaleRecord> await(Entry entry) {
+        try {
+            return entry.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static final class Entry {
+
+        final String key;
+        final byte[] fingerprint;
+        final CompletableFuture<Versioned<SaleRecord>> result = new CompletableFuture<>();
+        volatile long expiresAt = Long.MAX_VALUE;
+        long bytes;
+
+        Entry(String key, byte[] fingerprint) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+        }
+
+        void complete(Versioned<SaleRecord> created, long expiresAt) {
+            this.bytes = ENTRY_BYTES + 2L * key.length() + fingerprint.length + 8L * created.value().items().length;
+            this.expiresAt = expiresAt;
+            result.complete(created);
+        }
+
+        boolean expired(long now) {
+            // Las que fallaron no se consultan: ya salieron del mapa
+            return result.isDone() && expiresAt != Long.MAX_VALUE && now - expiresAt > 0;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.pharmacy.api.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.pharmacy.api.data.ExpiredSales;
+import com.pharmacy.api.data.ReferenceCounts;
+import com.pharmacy.api.data.SaleColumns;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.SharedData;
+import com.pharmacy.api.data.Versioned;
+import com.pharmacy.api.data.archive.SaleArchive;
+import com.pharmacy.api.data.journal.EntityType;
+import com.pharmacy.api.data.journal.JournalManager;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+/**
+ * Política de retención de ventas: cada cierto tiempo desprende las
+ * particiones de fecha más viejas que {@code pharmacy.sales.retention-days}
+ * y, si el archivo está habilitado, las pasa a un segmento en disco donde
+ * siguen consultándose.
+ *
+ * Desprenderlas es un cambio de punteros en el repositorio, y en ese mismo
+ * momento quedan en espera en el archivo; lo que cuesta proporcional a las
+ * ventas (escribir el segmento, quitarlas del espejo columnar) corre después
+ * en este hilo, sin detener las escrituras.
+ *
+ * Las ventas desprendidas dejan de contar como referencias: una farmacia,
+ * producto o empleado que solo aparece en ventas archivadas se puede eliminar.
+ */
+@ApplicationScoped
+public class SaleRetention {
+
+    @Inject
+    SharedData sharedData;
+
+    @Inject
+    SaleColumns saleColumns;
+
+    @Inject
+    JournalManager journal;
+
+    @Inject
+    SaleArchive archive;
+
+    @Inject
+    ReferenceCounts referenceCounts;
+
+    @Inject
+    MeterRegistry registry;
+
+    /** Días que se conservan; 0 conserva todo. */
+    @ConfigProperty(name = "pharmacy.sales.retention-days", defaultValue = "0")
+    int retentionDays;
+
+    @ConfigProperty(name = "pharmacy.sales.retention-check-interval-s", defaultValue = "3600")
+    long checkIntervalSeconds;
+
+    private ScheduledExecutorService scheduler;
+
+    void onStart(@Observes StartupEvent event) {
+        if (retentionDays <= 0) {
+            System.out.println("SaleRetention - Retención deshabilitada, se conservan todas las ventas");
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sale-retention");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::dropExpiredIfReady,
+            checkIntervalSeconds, checkIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Desprende las particiones que terminan a más tardar en {@code cutoff},
+     * las archiva, registra la retención en el journal y limpia el espejo
+     * columnar. El segmento queda en disco antes que el registro del journal:
+     * si el proceso cae entre ambos, la recuperación toma el segmento como la
+     * retención.
+     */
+    public ExpiredSales dropBefore(OffsetDateTime cutoff) {
+        long start = System.nanoTime();
+        ExpiredSales expired = sharedData.getSales().dropBefore(cutoff,
+            archive.isEnabled() ? archive::stage : staged -> { });
+        if (expired.isEmpty()) {
+            return expired;
+        }
+        long detached = System.nanoTime() - start;
+        if (archive.isEnabled()) {
+            try {
+                archive.archive(expired);
+            } catch (IOException e) {
+                putBack(expired);
+                throw new UncheckedIOException("No se pudieron archivar las ventas anteriores a " + expired.before(), e);
+            } catch (RuntimeException e) {
+                putBack(expired);
+                throw e;
+            }
+        }
+        journal.truncate(EntityType.SALE, expired.before(), expired.revision());
+        long archived = System.nanoTime() - start - detached;
+
+        for (Versioned<SaleRecord> sale : expired.sales()) {
+            saleColumns.delete(sale.value().saleId());
+            referenceCounts.release(sale.value());
+        }
+        long size = expired.size();
+        registry.counter("pharmacy.sales.retention.partitions").increment(expired.partitions().size());
+        registry.counter("pharmacy.sales.retention.sales").increment(size);
+        registry.timer("pharmacy.sales.retention.detach").record(detached, TimeUnit.NANOSECONDS);
+        registry.timer("pharmacy.sales.retention.archive").record(archived, TimeUnit.NANOSECONDS);
+        System.out.println("SaleRetention - " + expired.partitions().size() + " particiones (" + size
+            + " ventas) anteriores a " + expired.before() + " desprendidas en "
+            + String.format("%.2f", detached / 1e6) + " ms" + (archive.isEnabled()
+                ? " y archivadas en " + String.format("%.2f", archived / 1e6) + " ms" : ""));
+        return expired;
+    }
+
+    /**
+     * Devuelve al almacén las ventas de un archivo fallido con sus versiones
+     * originales, revisión incluida. Se anexan otra vez al journal: un
+     * snapshot tomado mientras estaban desprendidas pudo borrar los segmentos
+     * que las tenían, y reproducirlas con la misma revisión no cambia nada.
+     * Se quitan de la espera del archivo solo cuando ya volvieron.
+     */
+    private void putBack(ExpiredSales expired) {
+        sharedData.getSales().reinsert(expired.sales(),
+            versions -> journal.upsertAll(EntityType.SALE, versions, SaleRecord::saleId));
+        journal.sync();
+        archive.unstage(expired);
+    }
+
+    private void dropExpiredIfReady() {
+        try {
+            // Antes de recuperar el journal el almacén aún tiene los datos de prueba
+            if (journal.isRecovered()) {
+                dropBefore(OffsetDateTime.now(ZoneOffset.UTC).minusDays(retentionDays));
+            }
+        } catch (RuntimeException e) {
+            System.err.println("SaleRetention - Error al aplicar la retención: " + e.getMessage());
+        }
+    }
+}
@@ -2,16 +2,44 @@ package com.pharmacy.api.service;
 
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import com.pharmacy.api.commons.BadRequestException;
+import com.pharmacy.api.commons.ConflictException;
 import com.pharmacy.api.commons.NotFoundException;
+import com.pharmacy.api.commons.Paging;
+import com.pharmacy.api.data.Money;
+import com.pharmacy.api.data.Page;
+import com.pharmacy.api.data.PriceTable;
+import com.pharmacy.api.data.ReferenceCounts;
+import com.pharmacy.api.data.ReferenceIndex;
+import com.pharmacy.api.data.SaleColumns;
+import com.pharmacy.api.data.SaleIdAllocator;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.SaleTimeKey;
+import com.pharmacy.api.data.SalesSummary;
 import com.pharmacy.api.data.SharedData;
+import com.pharmacy.api.data.StockEntry;
+import com.pharmacy.api.data.StockLedger;
+import com.pharmacy.api.data.Versioned;
+import com.pharmacy.api.data.archive.SaleArchive;
+import com.pharmacy.api.data.journal.EntityType;
+import com.pharmacy.api.data.journal.JournalManager;
 import com.pharmacy.api.model.Sale;
 import com.pharmacy.api.model.SalePatch;
+import com.pharmacy.api.model.SaleProduct;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validator;
 
 @ApplicationScoped
 public class SaleService {
@@ -22,21 +50,221 @@ public class SaleService {
     @Inject
     PharmacyService pharmacyService;
 
-    public List<Sale> getSales() {
-        System.out.println("Service - Obteniendo todas las ventas...");
-        return sharedData.getSales();
+    @Inject
+    SaleIdAllocator saleIdAllocator;
+
+    @Inject
+    JournalManager journal;
+
+    @Inject
+    SaleColumns saleColumns;
+
+    @Inject
+    SaleArchive saleArchive;
+
+    @Inject
+    SaleTotals saleTotals;
+
+    @Inject
+    StockLedger stockLedger;
+
+    @Inject
+    ReorderService reorderService;
+
+    @Inject
+    ReferenceIndex referenceIndex;
+
+    @Inject
+    ReferenceCounts referenceCounts;
+
+    @Inject
+    SaleIdempotency saleIdempotency;
+
+    @Inject
+    Validator validator;
+
+    @Inject
+    PriceTable priceTable;
+
+    /**
+     * Página de ventas en orden (saleDate, saleId), después de {@code after}
+     * (la llave del cursor, o null) y dentro de [from, to). Incluye las
+     * ventas archivadas del rango.
+     */
+    public Page<SaleRecord> getSales(SaleTimeKey after, OffsetDateTime from, OffsetDateTime to, int limit) {
+        System.out.println("Service - Obteniendo página de ventas (desde=" + from + ", hasta=" + to + ", limite=" + limit + ")");
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new BadRequestException("La fecha 'from' debe ser anterior a 'to'");
+        }
+        SaleTimeKey lower = from != null ? SaleTimeKey.before(from) : null;
+        if (after != null && (lower == null || after.compareTo(lower) > 0)) {
+            lower = after;
+        }
+        SaleTimeKey upper = to != null ? SaleTimeKey.before(to) : null;
+
+        List<SaleRecord> sales = mergeByDate(sharedData.getSales().findByDate(lower, upper, limit + 1),
+            saleArchive.findByDate(lower, upper, limit + 1), limit + 1);
+        return Page.of(sales, limit, sale -> {
+            SaleTimeKey last = SaleTimeKey.of(sale);
+            return Paging.cursor(last.epochSecond(), last.nano(), last.saleId());
+        });
+    }
+
+    public SalesSummary getSalesSummary(Integer pharmacyId, OffsetDateTime from, OffsetDateTime to) {
+        System.out.println("Service - Calculando resumen de ventas (farmacia=" + pharmacyId + ", desde=" + from + ", hasta=" + to + ")");
+        if (pharmacyId != null) {
+            pharmacyService.getPharmacyById(pharmacyId);
+        }
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new BadRequestException("La fecha 'from' debe ser anterior a 'to'");
+        }
+        return saleColumns.summarize(pharmacyId, from, to);
+    }
+
+	public SaleRecord getSaleById(Integer id) {
+        return getSaleVersion(id).value();
     }
 
-	public Sale getSaleById(Integer id) {
-        return sharedData.getSales().stream()
-            .filter(s -> s.getSaleId().equals(id))
-            .findFirst()
+    /**
+     * Versión actual de la venta, en memoria o en el archivo.
+     */
+    public Versioned<SaleRecord> getSaleVersion(Integer id) {
+        return sharedData.getSales().findVersion(id)
+            .or(() -> saleArchive.findVersion(id))
             .orElseThrow(() -> new NotFoundException("La venta con ID " + id + " no fue encontrada"));
     }
 
-    public Sale createSale(Sale sale) {
+    /**
+     * Como {@link #createSale(Sale)}, pero si la terminal envió una
+     * Idempotency-Key un reintento devuelve la venta ya creada con esa clave.
+     */
+    public Versioned<SaleRecord> createSale(Sale sale, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return createSale(sale);
+        }
+        // La huella se toma antes de crear: createSale asigna el saleId a las partidas
+        return saleIdempotency.execute(idempotencyKey, SaleIdempotency.fingerprint(sale), () -> createSale(sale));
+    }
+
+    /**
+     * Valida el DTO recibido y guarda su forma compacta ({@link SaleRecord}).
+     */
+    public Versioned<SaleRecord> createSale(Sale sale) {
         System.out.println("Service - Creando venta: " + sale);
 
+        SaleRecord record = prepare(sale);
+        // Sumar referencias y reservar existencias antes de guardar; si no se guarda, se devuelven
+        referenceCounts.acquire(record);
+        StockLedger.Reservation reservation = reserve(null, record);
+        Versioned<SaleRecord> created = null;
+        try {
+            // El journal anexa antes de publicar: si falla, nadie llega a ver la venta
+            created = sharedData.getSales().insert(record, version -> {
+                reservation.confirm(version.revision());
+                journal.upsert(EntityType.SALE, record.saleId(), version);
+                saleColumns.upsert(record);
+            });
+        } finally {
+            if (created == null) {
+                reservation.cancel();
+                referenceCounts.release(record);
+            }
+        }
+        if (created == null) {
+            throw new ConflictException("El ID de venta " + record.saleId() + " ya está en uso");
+        }
+        journal.sync();
+        reorderService.onSale(record);
+        return created;
+    }
+
+    /**
+     * Crea un lote de ventas en una sola pasada. Cada venta se valida, tasa y
+     * reserva por separado, y la que falla no detiene a las demás; las que
+     * pasan se guardan juntas ({@link com.pharmacy.api.data.SaleRepository#insertAll}),
+     * se anexan al journal con una escritura por shard y esperan un solo fsync.
+     * Una venta cuya reserva no se puede confirmar queda fuera sola; si el
+     * journal falla en un shard, sus ventas no se publican y se informan como
+     * error, y el lote sigue con los demás shards.
+     */
+    public SaleBatchResult createSales(List<Sale> sales) {
+        System.out.println("Service - Creando lote de " + sales.size() + " ventas");
+
+        SaleBatchItem[] results = new SaleBatchItem[sales.size()];
+        List<SaleRecord> records = new ArrayList<>(sales.size());
+        List<Integer> positions = new ArrayList<>(sales.size());
+        List<StockLedger.Reservation> reservations = new ArrayList<>(sales.size());
+        for (int i = 0; i < sales.size(); i++) {
+            try {
+                Sale sale = sales.get(i);
+                if (sale == null) {
+                    throw new BadRequestException("La venta no puede estar vacía");
+                }
+                Set<ConstraintViolation<Sale>> violations = validator.validate(sale);
+                if (!violations.isEmpty()) {
+                    throw new ConstraintViolationException(violations);
+                }
+                SaleRecord record = prepare(sale);
+                referenceCounts.acquire(record);
+                reservations.add(reserve(null, record));
+                records.add(record);
+                positions.add(i);
+            } catch (RuntimeException e) {
+                results[i] = SaleBatchItem.failed(i, e);
+            }
+        }
+
+        // Por instancia y no por saleId: un lote puede repetir un saleId
+        Map<SaleRecord, StockLedger.Reservation> reservationBySale = new IdentityHashMap<>();
+        for (int j = 0; j < records.size(); j++) {
+            reservationBySale.put(records.get(j), reservations.get(j));
+        }
+        // Motivo de cada venta que no se creó
+        Map<SaleRecord, RuntimeException> failures = new IdentityHashMap<>();
+        List<Versioned<SaleRecord>> created = sharedData.getSales().insertAll(records, version -> {
+            try {
+                reservationBySale.get(version.value()).confirm(version.revision());
+                return true;
+            } catch (RuntimeException e) {
+                failures.put(version.value(), e);
+                return false;
+            }
+        }, versions -> {
+            try {
+                journal.upsertAll(EntityType.SALE, versions, SaleRecord::saleId);
+            } catch (RuntimeException e) {
+                versions.forEach(version -> failures.put(version.value(), e));
+                throw e;
+            }
+            versions.forEach(version -> saleColumns.upsert(version.value()));
+        });
+        List<Versioned<SaleRecord>> stored = new ArrayList<>(created.size());
+        for (int j = 0; j < created.size(); j++) {
+            int i = positions.get(j);
+            Versioned<SaleRecord> version = created.get(j);
+            if (version == null) {
+                reservations.get(j).cancel();
+                referenceCounts.release(records.get(j));
+                RuntimeException failure = failures.get(records.get(j));
+                results[i] = SaleBatchItem.failed(i, failure != null ? failure
+                    : new ConflictException("El ID de venta " + records.get(j).saleId() + " ya está en uso"));
+            } else {
+                stored.add(version);
+                results[i] = SaleBatchItem.created(i, version);
+            }
+        }
+        if (!stored.isEmpty()) {
+            journal.sync();
+        }
+        stored.forEach(version -> reorderService.onSale(version.value()));
+        return SaleBatchResult.of(List.of(results));
+    }
+
+    /**
+     * Valida el DTO, comprueba sus referencias, le asigna un saleId y lo
+     * tasa; todavía no reserva ni guarda nada.
+     */
+    private SaleRecord prepare(Sale sale) {
 		// Validar campos requeridos
 		if (sale.getSaleDate() == null) {
 			throw new BadRequestException("La fecha de venta es requerida");
@@ -60,15 +288,10 @@ public class SaleService {
 			throw new BadRequestException("Se requiere al menos un producto en la venta");
 		}
 
-		if (sale.getPharmacyId() != null) {
-            pharmacyService.getPharmacyById(sale.getPharmacyId());
-        }
+		checkReferences(sale.getPharmacyId(), sale.getEmployeeId(), sale.getProducts());
 
-        // Generar un nuevo ID
-        Integer newId = sharedData.getSales().stream()
-                .mapToInt(Sale::getSaleId)
-                .max()
-                .orElse(0) + 1;
+        // Generar un nuevo ID (tiempo constante, sin recorrer las ventas)
+        Integer newId = saleIdAllocator.nextId();
 
         Sale newSale = new Sale();
         newSale.setSaleId(newId);
@@ -83,11 +306,10 @@ public class SaleService {
         // Actualizar el saleId en los productos
         newSale.getProducts().forEach(product -> product.setSaleId(newId));
 
-        sharedData.getSales().add(newSale);
-        return newSale;
+        return priced(SaleRecord.from(newSale));
     }
 
-    public Sale updateSale(Integer id, Sale sale) {
+    public Versioned<SaleRecord> updateSale(Integer id, Sale sale, Long expectedRevision) {
 		System.out.println("Service - Actualizando venta ID " + id + ": " + sale);
 
 		// Validar campos requeridos
@@ -110,31 +332,35 @@ public class SaleService {
 			throw new BadRequestException("Se requiere al menos un producto en la venta");
 		}
 
-		if (sale.getPharmacyId() != null) {
-            pharmacyService.getPharmacyById(sale.getPharmacyId());
-        }
+		checkReferences(sale.getPharmacyId(), sale.getEmployeeId(), sale.getProducts());
 
-        Sale existing = getSaleById(id);
+        Versioned<SaleRecord> current = currentVersion(id, expectedRevision);
 
-		// No actualizamos el saleId ya que debe mantenerse el original
-		existing.setSaleDate(sale.getSaleDate());
-		existing.setSubTotal(sale.getSubTotal());
-		existing.setIva(sale.getIva());
-		existing.setTotal(sale.getTotal());
-		existing.setPharmacyId(sale.getPharmacyId());
-		existing.setEmployeeId(sale.getEmployeeId());
-		existing.setProducts(new ArrayList<>(sale.getProducts()));
+		// Se construye una venta nueva y se reemplaza en el repositorio para que
+		// los índices vean el cambio de farmacia (el saleId se mantiene)
+		Sale updated = new Sale();
+		updated.setSaleId(id);
+		updated.setSaleDate(sale.getSaleDate());
+		updated.setSubTotal(sale.getSubTotal());
+		updated.setIva(sale.getIva());
+		updated.setTotal(sale.getTotal());
+		updated.setPharmacyId(sale.getPharmacyId());
+		updated.setEmployeeId(sale.getEmployeeId());
+		updated.setProducts(new ArrayList<>(sale.getProducts()));
 		
 		// Aseguramos que los productos mantengan el ID de la venta original
-		existing.getProducts().forEach(product -> product.setSaleId(id));
+		updated.getProducts().forEach(product -> product.setSaleId(id));
 
-		return existing;
+		SaleRecord record = priced(SaleRecord.from(updated));
+		return replace(current, record);
 	}
 
-	public Sale patchSale(Integer id, SalePatch salePatch) {
+	public Versioned<SaleRecord> patchSale(Integer id, SalePatch salePatch, Long expectedRevision) {
 		System.out.println("Service - Actualizando parcialmente venta ID " + id + ": " + salePatch);
 
-		Sale existing = getSaleById(id);
+		Versioned<SaleRecord> current = currentVersion(id, expectedRevision);
+		// La versión guardada no se modifica: el patch se aplica sobre su DTO
+		Sale existing = current.value().toDto();
 
 		if (salePatch.getSaleDate() != null) {
 			existing.setSaleDate(salePatch.getSaleDate());
@@ -162,26 +388,181 @@ public class SaleService {
 			if (salePatch.getProducts().isEmpty()) {
 				throw new BadRequestException("La lista de productos no puede estar vacía");
 			}
+			checkReferences(null, null, salePatch.getProducts());
 			existing.setProducts(new ArrayList<>(salePatch.getProducts()));
 			// Actualizar el saleId en los productos
 			existing.getProducts().forEach(product -> product.setSaleId(id));
 		}
 
-		return existing;
+		SaleRecord record = priced(SaleRecord.from(existing));
+		return replace(current, record);
 	}
 
-	public String deleteSale(Integer id) {
+	public String deleteSale(Integer id, Long expectedRevision) {
 		System.out.println("Service - Eliminando venta ID: " + id);
 
 		// Verificar que existe antes de eliminar
-		getSaleById(id);
+		Versioned<SaleRecord> current = currentVersion(id, expectedRevision);
 
-        boolean removed = sharedData.getSales().removeIf(s -> s.getSaleId().equals(id));
+        long revision = sharedData.getSales().delete(current, deleted -> {
+            journal.delete(EntityType.SALE, id, deleted);
+            saleColumns.delete(id);
+        });
 
-        if (!removed) {
-            throw new NotFoundException("La venta con ID " + id + " no fue encontrada");
+        if (revision < 0) {
+            throw concurrentModification(id);
         }
+        stockLedger.release(current, this::journalStock);
+        referenceCounts.release(current.value());
+        journal.sync();
 
         return "Venta con ID " + id + " eliminada correctamente";
     }
+
+    /**
+     * Versión actual de la venta; si el cliente envió la revisión que leyó
+     * (If-Match) y ya no coincide, la escritura se rechaza con 409.
+     */
+    private Versioned<SaleRecord> currentVersion(Integer id, Long expectedRevision) {
+        Versioned<SaleRecord> current = sharedData.getSales().findVersion(id).orElse(null);
+        if (current == null) {
+            Versioned<SaleRecord> archived = getSaleVersion(id);
+            throw new ConflictException("La venta con ID " + id + " está archivada y ya no admite cambios",
+                archived.revision());
+        }
+        if (expectedRevision != null && expectedRevision != current.revision()) {
+            throw new ConflictException("La venta con ID " + id + " cambió desde la revisión " + expectedRevision,
+                current.revision());
+        }
+        return current;
+    }
+
+    /**
+     * Valida que la farmacia, el empleado y cada producto de la venta existan
+     * antes de tasarla o reservar existencias. Cada ID se resuelve con una
+     * lectura de arreglo ({@link ReferenceIndex}, {@link PriceTable}); si
+     * faltan productos se informan todos a la vez.
+     */
+    private void checkReferences(Integer pharmacyId, Integer employeeId, List<SaleProduct> products) {
+        if (pharmacyId != null && !referenceIndex.hasPharmacy(pharmacyId)) {
+            throw new NotFoundException("La farmacia con ID " + pharmacyId + " no fue encontrada");
+        }
+        if (employeeId != null && !referenceIndex.hasEmployee(employeeId)) {
+            throw new NotFoundException("El empleado con ID " + employeeId + " no fue encontrado");
+        }
+        PriceTable.Prices prices = priceTable.current();
+        Set<Integer> missing = null;
+        for (SaleProduct product : products) {
+            if (product == null || product.getProductId() == null) {
+                throw new BadRequestException("Cada producto de la venta requiere su ID");
+            }
+            if (prices.cents(product.getProductId()) == PriceTable.ABSENT) {
+                if (missing == null) {
+                    missing = new TreeSet<>();
+                }
+                missing.add(product.getProductId());
+            }
+        }
+        if (missing != null) {
+            throw new NotFoundException(missing.size() == 1
+                ? "El producto con ID " + missing.iterator().next() + " no fue encontrado"
+                : "Los productos con ID " + missing + " no fueron encontrados");
+        }
+    }
+
+    /**
+     * Reemplaza la versión leída. Solo se reserva la diferencia de existencias
+     * entre ambas versiones, y lo que la anterior deja de usar se libera una
+     * vez guardada la nueva.
+     */
+    private Versioned<SaleRecord> replace(Versioned<SaleRecord> current, SaleRecord record) {
+        referenceCounts.acquire(record);
+        StockLedger.Reservation reservation = reserve(current, record);
+        Versioned<SaleRecord> version = null;
+        try {
+            version = sharedData.getSales().replace(current, record, next -> {
+                reservation.confirm(next.revision());
+                journal.upsert(EntityType.SALE, record.saleId(), next);
+                saleColumns.upsert(record);
+            });
+        } finally {
+            if (version == null) {
+                reservation.cancel();
+                referenceCounts.release(record);
+            }
+        }
+        if (version == null) {
+            throw concurrentModification(record.saleId());
+        }
+        reservation.commit();
+        referenceCounts.release(current.value());
+        journal.sync();
+        return version;
+    }
+
+    /**
+     * Reserva existencias para una venta cuyas referencias ya se sumaron; si
+     * no alcanzan, las referencias se devuelven antes de propagar el 409.
+     */
+    private StockLedger.Reservation reserve(Versioned<SaleRecord> previous, SaleRecord record) {
+        try {
+            return stockLedger.reserve(previous, record, this::journalStock);
+        } catch (ConflictException e) {
+            referenceCounts.release(record);
+            throw e;
+        }
+    }
+
+    /**
+     * Cada cambio de existencias se anexa al journal antes de publicarse; el
+     * fsync lo espera el {@link JournalManager#sync} de la venta.
+     */
+    private void journalStock(Versioned<StockEntry> entry) {
+        journal.upsert(EntityType.STOCK, entry.value().pharmacyId(), entry);
+    }
+
+    /**
+     * Montos calculados en el servidor. Si los que envió el cliente no
+     * coinciden se registra la diferencia y prevalecen los calculados.
+     */
+    private SaleRecord priced(SaleRecord sale) {
+        SaleRecord priced = saleTotals.price(sale);
+        if (priced.subTotalCents() != sale.subTotalCents() || priced.ivaCents() != sale.ivaCents()
+                || priced.totalCents() != sale.totalCents()) {
+            System.out.println("Service - Montos de la venta " + sale.saleId() + " recalculados: total enviado "
+                + Money.amount(sale.totalCents()) + ", calculado " + Money.amount(priced.totalCents()));
+        }
+        return priced;
+    }
+
+    private ConflictException concurrentModification(Integer id) {
+        Long revision = sharedData.getSales().findVersion(id).map(Versioned::revision).orElse(null);
+        if (revision == null) {
+            return new ConflictException("La venta con ID " + id + " fue eliminada por otra solicitud");
+        }
+        return new ConflictException("La venta con ID " + id + " fue modificada por otra solicitud", revision);
+    }
+
+    /**
+     * Mezcla dos páginas ordenadas por (saleDate, saleId). Si una venta está
+     * en ambas (la retención la movió entre las dos lecturas) cuenta una vez.
+     */
+    private static List<SaleRecord> mergeByDate(List<SaleRecord> hot, List<SaleRecord> archived, int limit) {
+        if (archived.isEmpty()) {
+            return hot;
+        }
+        List<SaleRecord> merged = new ArrayList<>(Math.min(limit, hot.size() + archived.size()));
+        Set<Integer> seen = new HashSet<>();
+        int h = 0;
+        int a = 0;
+        while (merged.size() < limit && (h < hot.size() || a < archived.size())) {
+            SaleRecord next = a == archived.size()
+                || h < hot.size() && SaleTimeKey.of(hot.get(h)).compareTo(SaleTimeKey.of(archived.get(a))) <= 0
+                ? hot.get(h++) : archived.get(a++);
+            if (seen.add(next.saleId())) {
+                merged.add(next);
+            }
+        }
+        return merged;
+    }
 }
@@ -0,0 +1,71 @@
+package com.pharmacy.api.service;
+
+import com.pharmacy.api.commons.BadRequestException;
+import com.pharmacy.api.commons.NotFoundException;
+import com.pharmacy.api.data.Money;
+import com.pharmacy.api.data.PriceTable;
+import com.pharmacy.api.data.SaleRecord;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Motor de totales: subTotal, IVA y total de una venta se calculan en el
+ * servidor a partir de sus partidas y del precio de cada producto en la
+ * {@link PriceTable} vigente, todo en centavos ({@link Money}); cada partida
+ * cuesta una lectura de arreglo. Los montos que envía el cliente se siguen
+ * aceptando por compatibilidad con el contrato, pero no se guardan.
+ *
+ * subTotal es la suma de precio por cantidad de cada partida. El IVA se
+ * calcula por tasa, como en una factura con desglose: las partidas se
+ * agrupan por tipo de producto, cada grupo se grava con la tasa que
+ * {@link TaxRules} fija para la farmacia y ese tipo, y se redondea al
+ * centavo. total = subTotal + IVA.
+ */
+@ApplicationScoped
+public class SaleTotals {
+
+    @Inject
+    PriceTable priceTable;
+
+    @Inject
+    TaxRules taxRules;
+
+    /**
+     * La venta con sus montos calculados. Falla si una partida apunta a un
+     * producto inexistente o sin precio, o si su cantidad no es positiva.
+     */
+    public SaleRecord price(SaleRecord sale) {
+        return compute(sale, priceTable.current(), taxRules.current());
+    }
+
+    static SaleRecord compute(SaleRecord sale, PriceTable.Prices prices, TaxRules.Rates rates) {
+        long[] byType = new long[TaxRules.COLUMNS];
+        long subTotal = 0;
+        for (int i = 0; i < sale.itemCount(); i++) {
+            int quantity = sale.quantity(i);
+            if (quantity < 1) {
+                throw new BadRequestException("La cantidad del producto " + sale.productId(i) + " debe ser mayor que cero");
+            }
+            long price = prices.cents(sale.productId(i));
+            if (price == PriceTable.ABSENT) {
+                throw new NotFoundException("El producto con ID " + sale.productId(i) + " no fue encontrado");
+            }
+            if (price == PriceTable.UNPRICED) {
+                throw new BadRequestException("El producto con ID " + sale.productId(i) + " no tiene precio");
+            }
+            long amount = Money.times(price, quantity);
+            int type = prices.type(sale.productId(i));
+            byType[type] = Money.plus(byType[type], amount);
+            subTotal = Money.plus(subTotal, amount);
+        }
+        long iva = 0;
+        for (int type = 0; type < byType.length; type++) {
+            if (byType[type] != 0) {
+                iva = Money.plus(iva, Money.rate(byType[type], rates.rate(sale.pharmacyId(), type)));
+            }
+        }
+        return new SaleRecord(sale.saleId(), sale.saleDate(), subTotal, iva, Money.plus(subTotal, iva),
+            sale.pharmacyId(), sale.employeeId(), sale.items());
+    }
+}
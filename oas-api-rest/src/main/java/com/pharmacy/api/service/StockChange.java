@@ -0,0 +1,11 @@
+package com.pharmacy.api.service;
+
+/**
+ * Cambio de existencia pedido por el cliente: {@code available} fija la
+ * existencia (PUT) y {@code delta} la ajusta (PATCH).
+ *
+ * @param available unidades disponibles tras un conteo físico
+ * @param delta     unidades que entran (positivo) o salen por merma (negativo)
+ */
+public record StockChange(Long available, Long delta) {
+}
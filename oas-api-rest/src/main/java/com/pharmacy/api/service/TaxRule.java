@@ -0,0 +1,63 @@
+package com.pharmacy.api.service;
+
+import com.pharmacy.api.commons.BadRequestException;
+import com.pharmacy.api.data.Money;
+import com.pharmacy.api.model.Product.ProductTypeEnum;
+
+/**
+ * Tasa de IVA, en puntos base, para una farmacia y un tipo de producto. Un
+ * campo nulo aplica a todas las farmacias o a todos los tipos; entre las
+ * reglas que cubren una venta gana la más específica (ver {@link TaxRules}).
+ *
+ * @param pharmacyId  farmacia a la que aplica, o null para todas
+ * @param productType tipo de producto al que aplica, o null para todos
+ * @param rateBp      tasa en puntos base (1600 = 16 %)
+ */
+public record TaxRule(Integer pharmacyId, ProductTypeEnum productType, Integer rateBp) {
+
+    /**
+     * Lee una regla de la configuración con la forma
+     * {@code <farmacia|*>:<tipo|*>=<puntos base>}, por ejemplo
+     * {@code *:PRESCRITO=0} o {@code 55:*=800}.
+     */
+    static TaxRule parse(String entry) {
+        String[] rule = entry.trim().split("[:=]");
+        if (rule.length != 3) {
+            throw new IllegalArgumentException("Regla de IVA inválida: " + entry);
+        }
+        Integer pharmacyId = rule[0].trim().equals("*") ? null : Integer.valueOf(rule[0].trim());
+        ProductTypeEnum productType = null;
+        if (!rule[1].trim().equals("*")) {
+            for (ProductTypeEnum type : ProductTypeEnum.values()) {
+                if (type.name().equalsIgnoreCase(rule[1].trim())) {
+                    productType = type;
+                }
+            }
+            if (productType == null) {
+                throw new IllegalArgumentException("Tipo de producto inválido en la regla de IVA: " + entry);
+            }
+        }
+        return new TaxRule(pharmacyId, productType, Integer.valueOf(rule[2].trim()));
+    }
+
+    void validate() {
+        if (rateBp == null || rateBp < 0 || rateBp > Money.BASIS_POINTS) {
+            throw new BadRequestException("La tasa de IVA debe estar entre 0 y " + Money.BASIS_POINTS + " puntos base: " + this);
+        }
+        if (pharmacyId != null && pharmacyId < 1) {
+            throw new BadRequestException("El ID de farmacia de la regla de IVA debe ser positivo: " + this);
+        }
+    }
+
+    boolean covers(int pharmacy, int type) {
+        return (pharmacyId == null || pharmacyId == pharmacy)
+            && (productType == null || productType.ordinal() == type);
+    }
+
+    /**
+     * 2 si fija la farmacia, más 1 si fija el tipo.
+     */
+    int specificity() {
+        return (pharmacyId != null ? 2 : 0) + (productType != null ? 1 : 0);
+    }
+}
@@ -0,0 +1,146 @@
+package com.pharmacy.api.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.pharmacy.api.commons.BadRequestException;
+import com.pharmacy.api.data.IntIntMap;
+import com.pharmacy.api.data.PriceTable;
+import com.pharmacy.api.data.SaleRecord;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Reglas de IVA por farmacia y tipo de producto, compiladas a una tabla
+ * plana de tasas.
+ *
+ * Para una venta de la farmacia F y un producto de tipo T gana la regla más
+ * específica: (F, T), luego (F, *), luego (*, T), luego (*, *); si ninguna
+ * aplica se usa {@code pharmacy.iva.rate-bp}. La resolución se hace una vez,
+ * al compilar: la tabla tiene una fila por farmacia con reglas propias más
+ * una fila para el resto, y una columna por tipo (más los productos sin
+ * tipo), así que tasar una partida es leer un índice y una celda.
+ *
+ * Las reglas iniciales vienen de {@code pharmacy.iva.rules} y se reemplazan
+ * en caliente con {@link #replace(List)}: la tabla nueva se publica con una
+ * sola escritura volátil y cada venta lee la vigente una vez, sin detener la
+ * ingesta. Las reglas reemplazadas no se guardan en el journal; al reiniciar
+ * se vuelve a la configuración.
+ */
+@ApplicationScoped
+public class TaxRules {
+
+    /** Columnas de la tabla: los tipos del enum y los productos sin tipo. */
+    static final int COLUMNS = PriceTable.UNTYPED + 1;
+
+    @ConfigProperty(name = "pharmacy.iva.rate-bp", defaultValue = "1600")
+    int defaultRate;
+
+    @ConfigProperty(name = "pharmacy.iva.rules")
+    Optional<List<String>> configuredRules;
+
+    private volatile Rates current;
+
+    @PostConstruct
+    void init() {
+        List<TaxRule> rules = new ArrayList<>();
+        configuredRules.orElse(List.of()).forEach(entry -> rules.add(TaxRule.parse(entry)));
+        replace(rules);
+    }
+
+    /**
+     * Tabla vigente; se lee una vez por venta.
+     */
+    public Rates current() {
+        return current;
+    }
+
+    public List<TaxRule> getRules() {
+        return current.rules();
+    }
+
+    /**
+     * Valida las reglas, las compila y publica la tabla nueva.
+     */
+    public synchronized List<TaxRule> replace(List<TaxRule> rules) {
+        System.out.println("Service - Reemplazando reglas de IVA: " + rules);
+        Set<String> seen = new HashSet<>();
+        for (TaxRule rule : rules) {
+            if (rule == null) {
+                throw new BadRequestException("Las reglas de IVA no pueden ser nulas");
+            }
+            rule.validate();
+            if (!seen.add(rule.pharmacyId() + ":" + rule.productType())) {
+                throw new BadRequestException("Regla de IVA duplicada para la farmacia " + rule.pharmacyId()
+                    + " y el tipo " + rule.productType());
+            }
+        }
+        current = Rates.compile(defaultRate, List.copyOf(rules));
+        return current.rules();
+    }
+
+    /**
+     * Tasas resueltas de un conjunto de reglas.
+     */
+    public static final class Rates {
+
+        private final List<TaxRule> rules;
+        private final IntIntMap rows;
+        private final int[] rates;
+
+        private Rates(List<TaxRule> rules, IntIntMap rows, int[] rates) {
+            this.rules = rules;
+            this.rows = rows;
+            this.rates = rates;
+        }
+
+        static Rates compile(int defaultRate, List<TaxRule> rules) {
+            Set<Integer> pharmacies = new TreeSet<>();
+            rules.stream().filter(rule -> rule.pharmacyId() != null).forEach(rule -> pharmacies.add(rule.pharmacyId()));
+            IntIntMap rows = new IntIntMap(pharmacies.size());
+            int[] rates = new int[(pharmacies.size() + 1) * COLUMNS];
+            // Fila 0: farmacias sin reglas propias
+            fill(rates, 0, SaleRecord.NO_ID, defaultRate, rules);
+            int offset = COLUMNS;
+            for (int pharmacyId : pharmacies) {
+                rows.put(pharmacyId, offset, -1);
+                fill(rates, offset, pharmacyId, defaultRate, rules);
+                offset += COLUMNS;
+            }
+            return new Rates(rules, rows, rates);
+        }
+
+        private static void fill(int[] rates, int offset, int pharmacyId, int defaultRate, List<TaxRule> rules) {
+            for (int type = 0; type < COLUMNS; type++) {
+                int rate = defaultRate;
+                int best = -1;
+                for (TaxRule rule : rules) {
+                    if (rule.covers(pharmacyId, type) && rule.specificity() > best) {
+                        rate = rule.rateBp();
+                        best = rule.specificity();
+                    }
+                }
+                rates[offset + type] = rate;
+            }
+        }
+
+        /**
+         * Tasa en puntos base para un producto del tipo dado (ordinal o
+         * {@link PriceTable#UNTYPED}) vendido en la farmacia.
+         */
+        public int rate(int pharmacyId, int type) {
+            return rates[rows.get(pharmacyId, 0) + type];
+        }
+
+        public List<TaxRule> rules() {
+            return rules;
+        }
+    }
+}
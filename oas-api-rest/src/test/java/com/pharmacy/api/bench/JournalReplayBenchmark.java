@@ -0,0 +1,102 @@
+package com.pharmacy.api.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.pharmacy.api.data.journal.EntityType;
+import com.pharmacy.api.data.journal.FsyncPolicy;
+import com.pharmacy.api.data.journal.Journal;
+import com.pharmacy.api.data.journal.JournalRecord;
+import com.pharmacy.api.model.Sale;
+import com.pharmacy.api.model.SaleProduct;
+
+/**
+ * Tiempo de reproducir un journal de N ventas al arrancar (lectura, CRC y
+ * decodificación JSON), para comprobar que millones de registros se
+ * recuperan en pocos segundos.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class JournalReplayBenchmark {
+
+    @Param({"100000", "1000000"})
+    int records;
+
+    Path dir;
+
+    private final ObjectMapper mapper = JsonMapper.builder()
+        .addModule(new JavaTimeModule())
+        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+        .build();
+
+    private final ObjectReader reader = mapper.readerFor(Sale.class);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("journal-bench");
+        try (Journal journal = new Journal(dir, 1, 0, FsyncPolicy.INTERVAL, 1000)) {
+            for (int id = 1; id <= records; id++) {
+                Sale sale = new Sale().saleId(id)
+                    .saleDate(OffsetDateTime.now())
+                    .subTotal(100.0).iva(16.0).total(116.0)
+                    .pharmacyId(id % 100 + 1).employeeId(id % 1000 + 1)
+                    .products(new ArrayList<>());
+                sale.getProducts().add(new SaleProduct().saleId(id).productId(id % 500 + 1).quantity(2));
+                journal.append(EntityType.SALE, JournalRecord.Op.UPSERT, id, id, mapper.writeValueAsBytes(sale));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(Journal.segmentPath(dir, 1));
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public int replay() throws IOException {
+        Map<Integer, Sale> sales = new HashMap<>();
+        Journal.read(Journal.segmentPath(dir, 1), record -> {
+            try {
+                sales.put(record.key(), reader.readValue(record.payload()));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        return sales.size();
+    }
+
+    @Benchmark
+    public long readOnly() throws IOException {
+        return Journal.read(Journal.segmentPath(dir, 1), record -> { });
+    }
+}
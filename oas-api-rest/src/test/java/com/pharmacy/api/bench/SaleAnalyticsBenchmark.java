@@ -0,0 +1,101 @@
+package com.pharmacy.api.bench;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pharmacy.api.data.Money;
+import com.pharmacy.api.data.SaleColumns;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.SalesSummary;
+import com.pharmacy.api.model.Sale;
+import com.pharmacy.api.model.SaleProduct;
+
+/**
+ * Resumen de ventas por farmacia y rango de fechas: recorrido de la lista de
+ * objetos contra el espejo columnar de {@link SaleColumns}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class SaleAnalyticsBenchmark {
+
+    @Param({"100000", "1000000"})
+    int saleCount;
+
+    List<Sale> list;
+    SaleColumns columns;
+    OffsetDateTime from;
+    OffsetDateTime to;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        OffsetDateTime base = OffsetDateTime.now().minusDays(365);
+        list = new ArrayList<>(saleCount);
+        for (int id = 1; id <= saleCount; id++) {
+            List<SaleProduct> items = new ArrayList<>();
+            for (int i = 0; i < id % 3 + 1; i++) {
+                items.add(new SaleProduct().saleId(id).productId(i + 1).quantity(i + 1));
+            }
+            list.add(new Sale().saleId(id)
+                .saleDate(base.plusMinutes(id))
+                .subTotal(100.0).iva(16.0).total(116.0)
+                .pharmacyId(id % 10 + 1).employeeId(id % 1000 + 1)
+                .products(items));
+        }
+        columns = new SaleColumns();
+        columns.rebuild(list.stream().map(SaleRecord::from).toList());
+        from = base.plusMinutes(saleCount / 4);
+        to = base.plusMinutes(saleCount * 3L / 4);
+    }
+
+    @Benchmark
+    public SalesSummary objectScan() {
+        long count = 0;
+        double subTotal = 0;
+        double iva = 0;
+        double total = 0;
+        long units = 0;
+        for (Sale sale : list) {
+            if (!Integer.valueOf(3).equals(sale.getPharmacyId())
+                || sale.getSaleDate().isBefore(from) || !sale.getSaleDate().isBefore(to)) {
+                continue;
+            }
+            count++;
+            subTotal += sale.getSubTotal();
+            iva += sale.getIva();
+            total += sale.getTotal();
+            for (SaleProduct item : sale.getProducts()) {
+                units += item.getQuantity();
+            }
+        }
+        return new SalesSummary(count, Money.cents(subTotal), Money.cents(iva), Money.cents(total), units);
+    }
+
+    @Benchmark
+    public SalesSummary columnar() {
+        return columns.summarize(3, from, to);
+    }
+
+    @Benchmark
+    public SalesSummary columnarAll() {
+        return columns.summarize(null, null, null);
+    }
+}
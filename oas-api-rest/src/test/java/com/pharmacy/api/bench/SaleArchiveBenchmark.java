@@ -0,0 +1,149 @@
+package com.pharmacy.api.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pharmacy.api.data.ExpiredSales;
+import com.pharmacy.api.data.InMemorySaleRepository;
+import com.pharmacy.api.data.RevisionClock;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.SaleTimeKey;
+import com.pharmacy.api.data.Versioned;
+import com.pharmacy.api.data.archive.SaleSegment;
+import com.pharmacy.api.model.Sale;
+import com.pharmacy.api.model.SaleProduct;
+
+/**
+ * Ventas en memoria contra ventas archivadas: lo que ocupa cada una y lo que
+ * cuesta encontrarla por saleId o leer una página por fecha.
+ *
+ * En el setup se llena el repositorio (30 días de ventas con 1 a 4 partidas)
+ * y se mide el heap que retiene por venta, {@code SaleRecord} incluidos,
+ * igual que {@link SnapshotStoreBenchmark}. Después se desprenden todas las
+ * particiones, se escriben en un segmento y se imprimen los bytes en disco
+ * por venta y los del índice disperso que queda en el heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class SaleArchiveBenchmark {
+
+    private static final OffsetDateTime BASE = OffsetDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final int DAYS = 30;
+    private static final int PAGE = 50;
+
+    @Param({"1000000"})
+    int records;
+
+    @Param({"hot", "archived"})
+    String store;
+
+    InMemorySaleRepository repository;
+    SaleSegment segment;
+    Path dir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        long before = usedHeap();
+        InMemorySaleRepository hot = new InMemorySaleRepository(new RevisionClock(), 16);
+        Random random = new Random(5);
+        for (int id = 1; id <= records; id++) {
+            hot.save(SaleRecord.from(sale(id, random)));
+        }
+        long heap = usedHeap() - before;
+        System.out.printf("%nHeap del almacén en memoria (%d ventas): %.1f bytes por venta%n",
+            records, (double) heap / records);
+
+        if (store.equals("hot")) {
+            repository = hot;
+            return;
+        }
+        ExpiredSales expired = hot.dropBefore(BASE.plusDays(DAYS + 1), staged -> { });
+        List<Versioned<SaleRecord>> sorted = new ArrayList<>(records);
+        expired.sales().forEach(sorted::add);
+        sorted.sort(Comparator.comparing(v -> SaleTimeKey.of(v.value())));
+        dir = Files.createTempDirectory("sale-archive-bench");
+        segment = SaleSegment.write(SaleSegment.path(dir, expired.revision()), expired.revision(), expired.before(),
+            sorted, 128);
+        System.out.printf("Segmento archivado: %d bytes, %.1f bytes por venta en disco, %d bloques en el índice%n",
+            segment.bytes(), (double) segment.bytes() / records, segment.blocks());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (segment != null) {
+            segment.close();
+            Files.deleteIfExists(segment.file());
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Benchmark
+    public Object findById() {
+        int id = ThreadLocalRandom.current().nextInt(records) + 1;
+        return segment != null ? segment.find(id) : repository.findVersion(id);
+    }
+
+    @Benchmark
+    public List<SaleRecord> datePage() {
+        OffsetDateTime from = BASE.plusSeconds(ThreadLocalRandom.current().nextLong(DAYS * 86_400L));
+        SaleTimeKey after = SaleTimeKey.before(from);
+        return segment != null ? segment.range(after, null, PAGE) : repository.findByDate(after, null, PAGE);
+    }
+
+    /**
+     * Fechas crecientes con el saleId, como las asigna el servicio.
+     */
+    private Sale sale(int id, Random random) {
+        Sale sale = new Sale().saleId(id)
+            .saleDate(BASE.plusSeconds((long) id * DAYS * 86_400 / records))
+            .subTotal(random.nextInt(500_000) / 100.0)
+            .iva(random.nextInt(80_000) / 100.0)
+            .total(random.nextInt(580_000) / 100.0)
+            .pharmacyId(random.nextInt(100) + 1)
+            .employeeId(random.nextInt(1_000) + 1)
+            .products(new ArrayList<>());
+        for (int p = random.nextInt(4); p >= 0; p--) {
+            sale.getProducts().add(new SaleProduct().saleId(id).productId(random.nextInt(500) + 1)
+                .quantity(random.nextInt(5) + 1));
+        }
+        return sale;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // Varias pasadas hasta que el heap ocupado deja de bajar
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
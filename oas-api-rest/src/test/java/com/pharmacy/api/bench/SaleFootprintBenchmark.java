@@ -0,0 +1,107 @@
+package com.pharmacy.api.bench;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.model.Sale;
+import com.pharmacy.api.model.SaleProduct;
+
+/**
+ * Lo que ocupa una venta como DTO generado ({@link Sale}) y como
+ * {@link SaleRecord}, y lo que cuesta convertir entre ambos en la capa REST.
+ *
+ * En el setup se crean las mismas ventas (dos partidas cada una) en las dos
+ * formas y se imprime el heap retenido por venta de cada una, igual que en
+ * {@link SnapshotStoreBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class SaleFootprintBenchmark {
+
+    private static final OffsetDateTime BASE = OffsetDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    @Param({"1000000"})
+    int records;
+
+    Sale[] dtos;
+    SaleRecord[] compact;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(3);
+        long before = usedHeap();
+        dtos = new Sale[records];
+        for (int i = 0; i < records; i++) {
+            dtos[i] = sale(i + 1, random);
+        }
+        long dtoHeap = usedHeap() - before;
+
+        before = usedHeap();
+        compact = new SaleRecord[records];
+        for (int i = 0; i < records; i++) {
+            compact[i] = SaleRecord.from(dtos[i]);
+        }
+        long recordHeap = usedHeap() - before;
+        System.out.printf("%nHeap por venta con dos partidas: Sale %.1f bytes, SaleRecord %.1f bytes%n",
+            (double) dtoHeap / records, (double) recordHeap / records);
+    }
+
+    @Benchmark
+    public SaleRecord fromDto() {
+        return SaleRecord.from(dtos[ThreadLocalRandom.current().nextInt(records)]);
+    }
+
+    @Benchmark
+    public Sale toDto() {
+        return compact[ThreadLocalRandom.current().nextInt(records)].toDto();
+    }
+
+    private static Sale sale(int id, Random random) {
+        Sale sale = new Sale().saleId(id)
+            .saleDate(BASE.plusSeconds(id))
+            .subTotal(random.nextInt(500_000) / 100.0)
+            .iva(random.nextInt(80_000) / 100.0)
+            .total(random.nextInt(580_000) / 100.0)
+            .pharmacyId(random.nextInt(100) + 1)
+            .employeeId(random.nextInt(1_000) + 1)
+            .products(new ArrayList<>(2));
+        for (int p = 0; p < 2; p++) {
+            sale.getProducts().add(new SaleProduct().saleId(id).productId(random.nextInt(500) + 1)
+                .quantity(random.nextInt(5) + 1));
+        }
+        return sale;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // Varias pasadas hasta que el heap ocupado deja de bajar
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
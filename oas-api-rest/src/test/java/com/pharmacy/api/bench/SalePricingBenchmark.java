@@ -0,0 +1,84 @@
+package com.pharmacy.api.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pharmacy.api.data.Money;
+import com.pharmacy.api.data.PriceTable;
+import com.pharmacy.api.data.RevisionClock;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.VersionedRegistry;
+import com.pharmacy.api.model.Product;
+import com.pharmacy.api.model.Product.ProductTypeEnum;
+
+/**
+ * Tasar un ticket grande buscando cada producto en el catálogo
+ * ({@link VersionedRegistry}, un HAMT de Versioned con precio Double) contra
+ * leer el precio en centavos de la {@link PriceTable}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class SalePricingBenchmark {
+
+    @Param({"10000"})
+    int products;
+
+    @Param({"200"})
+    int lines;
+
+    VersionedRegistry<Product> catalog;
+    PriceTable.Prices prices;
+    SaleRecord ticket;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(5);
+        catalog = new VersionedRegistry<>(new RevisionClock());
+        for (int id = 1; id <= products; id++) {
+            catalog.insert(id, new Product(id, ProductTypeEnum.GENERICO, "Producto " + id, 1 + random.nextInt(50_000) / 100.0));
+        }
+        prices = PriceTable.Prices.of(catalog.values());
+        long[] items = new long[lines];
+        for (int i = 0; i < lines; i++) {
+            items[i] = SaleRecord.item(1 + random.nextInt(products), 1 + random.nextInt(5));
+        }
+        ticket = new SaleRecord(1, SaleRecord.NO_DATE, Money.NONE, Money.NONE, Money.NONE, 12, 101, items);
+    }
+
+    @Benchmark
+    public long registry() {
+        long subTotal = 0;
+        for (int i = 0; i < ticket.itemCount(); i++) {
+            Product product = catalog.get(ticket.productId(i));
+            subTotal = Money.plus(subTotal, Money.times(Money.cents(product.getPrice()), ticket.quantity(i)));
+        }
+        return subTotal;
+    }
+
+    @Benchmark
+    public long priceTable() {
+        PriceTable.Prices current = prices;
+        long subTotal = 0;
+        for (int i = 0; i < ticket.itemCount(); i++) {
+            subTotal = Money.plus(subTotal, Money.times(current.cents(ticket.productId(i)), ticket.quantity(i)));
+        }
+        return subTotal;
+    }
+}
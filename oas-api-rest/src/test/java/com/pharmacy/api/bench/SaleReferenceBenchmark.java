@@ -0,0 +1,90 @@
+package com.pharmacy.api.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pharmacy.api.data.IdSet;
+import com.pharmacy.api.data.PriceTable;
+import com.pharmacy.api.data.RevisionClock;
+import com.pharmacy.api.data.VersionedRegistry;
+import com.pharmacy.api.model.Employee;
+import com.pharmacy.api.model.Product;
+import com.pharmacy.api.model.Product.ProductTypeEnum;
+
+/**
+ * Validar las referencias de un ticket grande (farmacia, empleado y cada
+ * producto) consultando los almacenes contra los índices de membresía
+ * ({@link IdSet} y {@link PriceTable}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class SaleReferenceBenchmark {
+
+    @Param({"10000"})
+    int products;
+
+    @Param({"200"})
+    int lines;
+
+    VersionedRegistry<Product> catalog;
+    VersionedRegistry<Employee> employees;
+    PriceTable.Prices prices;
+    IdSet employeeIds;
+    int employeeId;
+    int[] ticket;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(7);
+        catalog = new VersionedRegistry<>(new RevisionClock());
+        for (int id = 1; id <= products; id++) {
+            catalog.insert(id, new Product(id, ProductTypeEnum.GENERICO, "Producto " + id, 10.0));
+        }
+        employees = new VersionedRegistry<>(new RevisionClock());
+        for (int id = 1; id <= 1_000; id++) {
+            employees.insert(id, new Employee().idEmployee(id));
+        }
+        prices = PriceTable.Prices.of(catalog.values());
+        employeeIds = IdSet.of(employees.snapshot());
+        employeeId = 1 + random.nextInt(1_000);
+        ticket = new int[lines];
+        for (int i = 0; i < lines; i++) {
+            ticket[i] = 1 + random.nextInt(products);
+        }
+    }
+
+    @Benchmark
+    public boolean registry() {
+        boolean valid = employees.contains(employeeId);
+        for (int productId : ticket) {
+            valid &= catalog.contains(productId);
+        }
+        return valid;
+    }
+
+    @Benchmark
+    public boolean indexes() {
+        boolean valid = employeeIds.contains(employeeId);
+        for (int productId : ticket) {
+            valid &= prices.cents(productId) != PriceTable.ABSENT;
+        }
+        return valid;
+    }
+}
@@ -0,0 +1,103 @@
+package com.pharmacy.api.bench;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pharmacy.api.data.InMemorySaleRepository;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.SaleRepository;
+import com.pharmacy.api.model.Sale;
+
+/**
+ * Latencia por operación del repositorio de ventas contra la lista
+ * CopyOnWriteArrayList anterior, variando el número de ventas almacenadas.
+ * El repositorio debe mantenerse plano; la lista crece linealmente.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaleRepositoryBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int saleCount;
+
+    SaleRepository repository;
+    List<SaleRecord> list;
+    int nextId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        repository = new InMemorySaleRepository();
+        List<SaleRecord> seed = IntStream.rangeClosed(1, saleCount)
+            .mapToObj(SaleRepositoryBenchmark::sale)
+            .collect(Collectors.toList());
+        seed.forEach(repository::save);
+        list = new CopyOnWriteArrayList<>(seed);
+        nextId = saleCount + 1;
+    }
+
+    @Benchmark
+    public SaleRecord repositoryFindById() {
+        return repository.findById(randomId()).orElseThrow();
+    }
+
+    @Benchmark
+    public void repositoryReplace() {
+        repository.save(sale(randomId()));
+    }
+
+    @Benchmark
+    public boolean repositoryInsertDelete() {
+        int id = nextId++;
+        repository.save(sale(id));
+        return repository.deleteById(id);
+    }
+
+    @Benchmark
+    public SaleRecord listFindById() {
+        int id = randomId();
+        return list.stream().filter(s -> s.saleId() == id).findFirst().orElseThrow();
+    }
+
+    @Benchmark
+    public boolean listInsertDelete() {
+        int id = nextId++;
+        list.add(sale(id));
+        return list.removeIf(s -> s.saleId() == id);
+    }
+
+    private int randomId() {
+        return ThreadLocalRandom.current().nextInt(1, saleCount + 1);
+    }
+
+    private static SaleRecord sale(int id) {
+        return SaleRecord.from(new Sale().saleId(id)
+            .saleDate(OffsetDateTime.now())
+            .subTotal(100.0)
+            .iva(16.0)
+            .total(116.0)
+            .pharmacyId(id % 100 + 1)
+            .employeeId(id % 1000 + 1));
+    }
+}
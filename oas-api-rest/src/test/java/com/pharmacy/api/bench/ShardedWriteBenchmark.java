@@ -0,0 +1,115 @@
+package com.pharmacy.api.bench;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pharmacy.api.data.InMemorySaleRepository;
+import com.pharmacy.api.data.RevisionClock;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.SaleColumns;
+import com.pharmacy.api.data.Versioned;
+import com.pharmacy.api.model.Sale;
+
+/**
+ * Rendimiento de escrituras concurrentes (PUT de ventas, con el espejo
+ * columnar en el commit como en SaleService) según el número de hilos y de
+ * shards del repositorio.
+ *
+ * JMH no permite variar sus propios hilos como parámetro, así que cada
+ * invocación reparte un lote de escrituras entre {@code threads} hilos de un
+ * pool fijo y espera a que terminen; el resultado es escrituras por ms. Con
+ * un shard todas se forman en el mismo lock; con varios solo compiten las de
+ * farmacias del mismo shard.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShardedWriteBenchmark {
+
+    private static final int SALES = 100_000;
+    private static final int PHARMACIES = 256;
+    private static final int BATCH = 1 << 16;
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    int threads;
+
+    @Param({"1", "16"})
+    int shards;
+
+    InMemorySaleRepository repository;
+    SaleColumns columns;
+    ExecutorService pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        repository = new InMemorySaleRepository(new RevisionClock(), shards);
+        columns = new SaleColumns();
+        for (int id = 1; id <= SALES; id++) {
+            SaleRecord sale = sale(id, id % PHARMACIES + 1);
+            repository.save(sale);
+            columns.upsert(sale);
+        }
+        pool = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void replace() throws Exception {
+        List<Future<?>> tasks = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            tasks.add(pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = BATCH / threads; i > 0; i--) {
+                    int id = random.nextInt(SALES) + 1;
+                    Versioned<SaleRecord> written = null;
+                    while (written == null) {
+                        Versioned<SaleRecord> current = repository.findVersion(id).orElseThrow();
+                        SaleRecord updated = sale(id, current.value().pharmacyId());
+                        written = repository.replace(current, updated, version -> columns.upsert(updated));
+                    }
+                }
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+    }
+
+    private static SaleRecord sale(int id, int pharmacyId) {
+        return SaleRecord.from(new Sale().saleId(id)
+            .saleDate(OffsetDateTime.now())
+            .subTotal(100.0).iva(16.0).total(116.0)
+            .pharmacyId(pharmacyId)
+            .employeeId(id % 1000 + 1)
+            .products(new ArrayList<>()));
+    }
+}
@@ -0,0 +1,73 @@
+package com.pharmacy.api.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.Versioned;
+import com.pharmacy.api.data.journal.SnapshotFile;
+import com.pharmacy.api.model.Sale;
+import com.pharmacy.api.model.SaleProduct;
+
+/**
+ * Tiempo de cargar un snapshot binario de N ventas, comparable con
+ * {@link JournalReplayBenchmark} para el mismo número de registros.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class SnapshotReadBenchmark {
+
+    @Param({"100000", "1000000"})
+    int records;
+
+    Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<Versioned<SaleRecord>> sales = new ArrayList<>(records);
+        for (int id = 1; id <= records; id++) {
+            Sale sale = new Sale().saleId(id)
+                .saleDate(OffsetDateTime.now())
+                .subTotal(100.0).iva(16.0).total(116.0)
+                .pharmacyId(id % 100 + 1).employeeId(id % 1000 + 1)
+                .products(new ArrayList<>());
+            sale.getProducts().add(new SaleProduct().saleId(id).productId(id % 500 + 1).quantity(2));
+            sales.add(new Versioned<>(SaleRecord.from(sale), id));
+        }
+        file = Files.createTempFile("snapshot-bench", ".snap");
+        SnapshotFile.write(file, records, List.of(), sales, List.of(), List.of(), List.of());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long read() throws IOException {
+        return SnapshotFile.read(file).size();
+    }
+}
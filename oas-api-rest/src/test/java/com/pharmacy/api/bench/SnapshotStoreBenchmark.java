@@ -0,0 +1,124 @@
+package com.pharmacy.api.bench;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pharmacy.api.data.PersistentIntMap;
+import com.pharmacy.api.data.Versioned;
+import com.pharmacy.api.model.Sale;
+import com.pharmacy.api.model.SaleProduct;
+
+/**
+ * Almacén de ventas con foto en O(1): {@link CopyOnWriteArrayList} (el
+ * almacén original) contra {@link PersistentIntMap}.
+ *
+ * Ambos dan una foto consistente sin copiar (el iterador de la lista, la raíz
+ * del trie); la diferencia está en lo que cuesta escribir y en la memoria que
+ * ocupa la estructura. Esa memoria se mide en el setup, con el heap estable,
+ * como la diferencia antes y después de llenar el almacén con las mismas
+ * ventas ya creadas, y se imprime por corrida.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class SnapshotStoreBenchmark {
+
+    @Param({"100000", "1000000"})
+    int records;
+
+    @Param({"cow", "hamt"})
+    String store;
+
+    Versioned<Sale>[] sales;
+    CopyOnWriteArrayList<Versioned<Sale>> list;
+    volatile PersistentIntMap<Versioned<Sale>> root;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        sales = new Versioned[records];
+        OffsetDateTime now = OffsetDateTime.now();
+        for (int id = 1; id <= records; id++) {
+            Sale sale = new Sale().saleId(id)
+                .saleDate(now)
+                .subTotal(100.0).iva(16.0).total(116.0)
+                .pharmacyId(id % 100 + 1).employeeId(id % 1000 + 1)
+                .products(new ArrayList<>());
+            sale.getProducts().add(new SaleProduct().saleId(id).productId(id % 500 + 1).quantity(2));
+            sales[id - 1] = new Versioned<>(sale, id);
+        }
+
+        long before = usedHeap();
+        if (store.equals("cow")) {
+            list = new CopyOnWriteArrayList<>(Arrays.asList(sales));
+        } else {
+            PersistentIntMap.Builder<Versioned<Sale>> builder = PersistentIntMap.builder();
+            for (Versioned<Sale> sale : sales) {
+                builder.put(sale.value().getSaleId(), sale);
+            }
+            root = builder.build();
+        }
+        long bytes = usedHeap() - before;
+        System.out.printf("%nMemoria de la estructura (%s, %d ventas): %d bytes, %.1f bytes por venta%n",
+            store, records, bytes, (double) bytes / records);
+    }
+
+    /**
+     * Reemplaza una venta al azar, como un PUT.
+     */
+    @Benchmark
+    public Object update() {
+        int index = ThreadLocalRandom.current().nextInt(records);
+        Versioned<Sale> next = new Versioned<>(sales[index].value(), records + index);
+        if (list != null) {
+            return list.set(index, next);
+        }
+        root = root.put(index + 1, next);
+        return root;
+    }
+
+    /**
+     * Captura una foto y la recorre completa, como un export o un GET de lista.
+     */
+    @Benchmark
+    public long snapshotScan() {
+        Iterator<Versioned<Sale>> it = list != null ? list.iterator() : root.values().iterator();
+        long sum = 0;
+        while (it.hasNext()) {
+            sum += it.next().revision();
+        }
+        return sum;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // Varias pasadas hasta que el heap ocupado deja de bajar
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,89 @@
+package com.pharmacy.api.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pharmacy.api.data.Money;
+import com.pharmacy.api.data.RevisionClock;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.StockLedger;
+import com.pharmacy.api.data.Versioned;
+
+/**
+ * Muchas terminales vendiendo (reservar y devolver) el mismo producto de la
+ * misma farmacia: el {@link StockLedger}, con un monitor por contador, contra un
+ * inventario detrás de un lock global.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@Threads(8)
+public class StockLedgerBenchmark {
+
+    StockLedger ledger;
+    Map<Long, Long> locked;
+    SaleRecord popular;
+    Versioned<SaleRecord> sold;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ledger = new StockLedger(new RevisionClock());
+        ledger.set(12, 1, Long.MAX_VALUE / 2, entry -> { });
+        locked = new HashMap<>();
+        locked.put(key(12, 1), Long.MAX_VALUE / 2);
+        popular = new SaleRecord(1, SaleRecord.NO_DATE, Money.NONE, Money.NONE, Money.NONE, 12, 101,
+            new long[] {SaleRecord.item(1, 2)});
+        sold = new Versioned<>(popular, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public void ledger() {
+        ledger.reserve(null, popular, entry -> { }).commit();
+        // La revisión de la venta es posterior al set: su partida sí tomó existencias
+        ledger.release(sold, entry -> { });
+    }
+
+    @Benchmark
+    public void globalLock() {
+        reserveLocked(popular);
+        releaseLocked(popular);
+    }
+
+    private synchronized void reserveLocked(SaleRecord sale) {
+        for (int i = 0; i < sale.itemCount(); i++) {
+            long key = key(sale.pharmacyId(), sale.productId(i));
+            long available = locked.get(key);
+            if (available < sale.quantity(i)) {
+                throw new IllegalStateException("Sin existencia");
+            }
+            locked.put(key, available - sale.quantity(i));
+        }
+    }
+
+    private synchronized void releaseLocked(SaleRecord sale) {
+        for (int i = 0; i < sale.itemCount(); i++) {
+            locked.merge(key(sale.pharmacyId(), sale.productId(i)), (long) sale.quantity(i), Long::sum);
+        }
+    }
+
+    private static long key(int pharmacyId, int productId) {
+        return (long) pharmacyId << 32 | productId;
+    }
+}
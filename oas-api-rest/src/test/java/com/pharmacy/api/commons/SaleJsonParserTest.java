@@ -0,0 +1,84 @@
+package com.pharmacy.api.commons;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.hibernate.validator.messageinterpolation.ParameterMessageInterpolator;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.pharmacy.api.model.Sale;
+
+import jakarta.validation.Validation;
+
+class SaleJsonParserTest {
+
+    private static final String SALE = "{\"saleDate\":\"2026-10-17T10:00:00Z\",\"pharmacyId\":55,\"employeeId\":201,"
+        + "\"subTotal\":50.5,\"iva\":8.08,\"total\":58.58,\"products\":[%s]}";
+
+    private final SaleJsonParser parser = parser(300, 3);
+
+    @Test
+    void singleSaleStreamsItemsAndStopsAtTheLimits() throws IOException {
+        Sale sale = parser.readSale(body(sale("{\"productId\":2,\"quantity\":1}")), null);
+        assertEquals(55, sale.getPharmacyId());
+        assertEquals(2, sale.getProducts().get(0).getProductId());
+        assertNull(parser.readSale(body(""), null));
+
+        // La partida inválida se rechaza al llegar, con las reglas del modelo
+        BadRequestException invalid = assertThrows(BadRequestException.class,
+            () -> parser.readSale(body(sale("{\"productId\":2,\"quantity\":1},{\"productId\":2,\"quantity\":0}")), null));
+        assertTrue(invalid.getMessage().contains("products[1].quantity"));
+        assertThrows(JsonProcessingException.class,
+            () -> parser.readSale(body(sale("{\"productId\":2,\"quantity\":\"x\"}")), null));
+
+        // Más partidas que el límite, o más bytes, aunque el Content-Length no lo anuncie
+        String item = "{\"productId\":2,\"quantity\":1}";
+        assertThrows(PayloadTooLargeException.class,
+            () -> parser.readSale(body(sale(String.join(",", item, item, item, item))), null));
+        String padded = sale(item).replace("\"pharmacyId\"", " ".repeat(300) + "\"pharmacyId\"");
+        assertThrows(PayloadTooLargeException.class, () -> parser.readSale(body(padded), null));
+        assertThrows(PayloadTooLargeException.class, () -> parser.readSale(body(sale(item)), "301"));
+    }
+
+    @Test
+    void batchesAcceptArraysAndNdjsonWithoutValidatingItems() throws IOException {
+        String invalid = sale("{\"productId\":2,\"quantity\":0}");
+        List<Sale> array = parser.readSales(body("[" + invalid + "," + invalid + "]"), null, 1000, 2);
+        List<Sale> lines = parser.readSales(body(invalid + "\n" + invalid + "\n"), null, 1000, 2);
+        assertEquals(2, array.size());
+        assertEquals(array, lines);
+
+        assertThrows(PayloadTooLargeException.class,
+            () -> parser.readSales(body(invalid + "\n" + invalid + "\n" + invalid), null, 1000, 2));
+        assertThrows(JsonProcessingException.class, () -> parser.readSales(body("[" + invalid + ",{"), null, 1000, 2));
+    }
+
+    private static SaleJsonParser parser(long maxBytes, int maxItems) {
+        SaleJsonParser parser = new SaleJsonParser();
+        parser.mapper = JsonMapper.builder().addModule(new JavaTimeModule()).build();
+        parser.validator = Validation.byDefaultProvider().configure()
+            .messageInterpolator(new ParameterMessageInterpolator())
+            .buildValidatorFactory().getValidator();
+        parser.maxBytes = maxBytes;
+        parser.maxItems = maxItems;
+        return parser;
+    }
+
+    private static String sale(String products) {
+        return String.format(SALE, products);
+    }
+
+    private static InputStream body(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
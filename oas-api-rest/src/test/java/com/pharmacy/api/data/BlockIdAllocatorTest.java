@@ -0,0 +1,41 @@
+package com.pharmacy.api.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class BlockIdAllocatorTest {
+
+    @Test
+    void concurrentThreadsNeverShareAnId() throws InterruptedException {
+        BlockIdAllocator allocator = new BlockIdAllocator(0, 0, 16, 1);
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            pool.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    ids.add(allocator.next());
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(80_000, ids.size());
+    }
+
+    @Test
+    void nodeIsEncodedInLowBitsAndStartsAfterExistingIds() {
+        BlockIdAllocator allocator = new BlockIdAllocator(3, 4, 8, 1);
+        allocator.advancePast(202);
+        int id = allocator.next();
+        assertEquals(3, id & 0xF);
+        assertTrue(id > 202);
+    }
+}
@@ -0,0 +1,49 @@
+package com.pharmacy.api.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class DemandTrackerTest {
+
+    private static final long DAY = 86_400_000L;
+
+    @Test
+    void dailyUnitsFollowAnExponentialMovingAverage() {
+        DemandTracker tracker = new DemandTracker(0.3);
+        tracker.record(sale(12, SaleRecord.item(1, 6), SaleRecord.item(2, 1)), at(100, 0.2));
+        tracker.record(sale(12, SaleRecord.item(1, 4)), at(100, 0.6));
+
+        // El primer día se toma tal cual
+        assertEquals(10, tracker.dailyUnits(12, 1, at(100, 0.7)), 1e-9);
+
+        // A la mitad del día 101 pesa la mitad: 0.3 x 4 + (1 - 0.3 x 0.5) x 10
+        tracker.record(sale(12, SaleRecord.item(1, 4)), at(101, 0.25));
+        assertEquals(9.7, tracker.dailyUnits(12, 1, at(101, 0.5)), 1e-9);
+
+        // Recién empezado el día 102, sin ventas todavía, no cae: es el día 101 cerrado, 0.3 x 4 + 0.7 x 10
+        assertEquals(8.2, tracker.dailyUnits(12, 1, at(102, 0)), 1e-9);
+
+        // Día 102 sin ventas y mitad del día 103 sin ventas: 8.2 x 0.7 x (1 - 0.3 x 0.5)
+        assertEquals(4.879, tracker.dailyUnits(12, 1, at(103, 0.5)), 1e-9);
+
+        // Las demás farmacias y productos no se mezclan
+        assertEquals(0, tracker.dailyUnits(32, 1, at(101, 0.5)));
+        Map<Integer, Double> branch = new HashMap<>();
+        tracker.forEach(12, at(102, 0), branch::put);
+        assertEquals(8.2, branch.get(1), 1e-9);
+        assertEquals(0.7, branch.get(2), 1e-9);
+        assertEquals(2, branch.size());
+    }
+
+    private static long at(long day, double elapsed) {
+        return day * DAY + (long) (elapsed * DAY);
+    }
+
+    private static SaleRecord sale(int pharmacyId, long... items) {
+        return new SaleRecord(1, SaleRecord.NO_DATE, Money.NONE, Money.NONE, Money.NONE, pharmacyId, 101, items);
+    }
+}
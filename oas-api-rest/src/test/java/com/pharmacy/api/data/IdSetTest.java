@@ -0,0 +1,25 @@
+package com.pharmacy.api.data;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class IdSetTest {
+
+    @Test
+    void membershipCoversDenseAndSparseIds() {
+        PersistentIntMap<String> entities = PersistentIntMap.<String>empty()
+            .put(0, "a").put(63, "b").put(64, "c").put(101, "d").put(5_000_000, "e").put(-7, "f");
+        IdSet ids = IdSet.of(entities);
+
+        for (int id : new int[] {0, 63, 64, 101, 5_000_000, -7}) {
+            assertTrue(ids.contains(id), "falta " + id);
+        }
+        for (int id : new int[] {1, 62, 65, 102, 1_000_000, 5_000_001, -8, Integer.MIN_VALUE}) {
+            assertFalse(ids.contains(id), "sobra " + id);
+        }
+        assertFalse(IdSet.EMPTY.contains(0));
+        assertFalse(IdSet.of(PersistentIntMap.empty()).contains(0));
+    }
+}
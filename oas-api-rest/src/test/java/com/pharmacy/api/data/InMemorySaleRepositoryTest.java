@@ -0,0 +1,350 @@
+package com.pharmacy.api.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import com.pharmacy.api.model.Sale;
+
+class InMemorySaleRepositoryTest {
+
+    private static final int SALES = 2_000;
+    private static final int PHARMACIES = 40;
+
+    @Test
+    void pharmacyIndexFollowsWritesAndReusesItsList() {
+        InMemorySaleRepository repository = new InMemorySaleRepository(new RevisionClock(), 4);
+        repository.save(SaleRecord.from(new Sale().saleId(3).pharmacyId(1)));
+        repository.save(SaleRecord.from(new Sale().saleId(1).pharmacyId(1)));
+        repository.save(SaleRecord.from(new Sale().saleId(2).pharmacyId(2)));
+
+        List<SaleRecord> first = repository.findByPharmacy(1);
+        assertEquals(List.of(1, 3), first.stream().map(SaleRecord::saleId).toList());
+        assertSame(first, repository.findByPharmacy(1));
+
+        // Otra farmacia no invalida la lista; mover una venta sí, en ambas
+        repository.save(SaleRecord.from(new Sale().saleId(4).pharmacyId(2)));
+        assertSame(first, repository.findByPharmacy(1));
+        repository.save(SaleRecord.from(new Sale().saleId(1).pharmacyId(2)));
+        assertNotSame(first, repository.findByPharmacy(1));
+        assertEquals(List.of(3), repository.findByPharmacy(1).stream().map(SaleRecord::saleId).toList());
+        assertEquals(List.of(1, 2, 4), repository.findByPharmacy(2).stream().map(SaleRecord::saleId).toList());
+
+        repository.deleteById(3);
+        assertTrue(repository.findByPharmacy(1).isEmpty());
+        assertFalse(repository.existsByPharmacy(1));
+    }
+
+    @Test
+    void batchInsertSkipsTakenIdsAndFeedsEveryIndex() {
+        InMemorySaleRepository repository = new InMemorySaleRepository(new RevisionClock(), 4);
+        OffsetDateTime base = OffsetDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        repository.save(SaleRecord.from(new Sale().saleId(2).pharmacyId(3).saleDate(base)));
+
+        List<SaleRecord> batch = new ArrayList<>();
+        for (int id = 1; id <= 20; id++) {
+            batch.add(SaleRecord.from(new Sale().saleId(id).pharmacyId(id % 5 + 1).employeeId(7).saleDate(base.plusHours(id))));
+        }
+        // Un saleId repetido dentro del mismo lote también se rechaza
+        batch.add(SaleRecord.from(new Sale().saleId(5).pharmacyId(1).saleDate(base)));
+        List<Integer> committed = new ArrayList<>();
+        List<Versioned<SaleRecord>> created = repository.insertAll(batch, version -> true,
+            versions -> versions.forEach(version -> committed.add(version.value().saleId())));
+
+        assertEquals(batch.size(), created.size());
+        assertEquals(null, created.get(1));
+        assertEquals(null, created.get(20));
+        assertEquals(19, created.stream().filter(version -> version != null).count());
+        assertEquals(19, committed.size());
+        assertEquals(20, repository.count());
+        assertSame(batch.get(3), repository.findById(4).orElseThrow());
+        assertEquals(List.of(5, 10, 15, 20), repository.findByPharmacy(1).stream().map(SaleRecord::saleId).toList());
+        assertEquals(19, repository.findByEmployee(7, 0, 100).size());
+        assertEquals(20, repository.findByDate(null, null, 100).size());
+    }
+
+    @Test
+    void failedCommitPublishesNothing() {
+        InMemorySaleRepository repository = new InMemorySaleRepository(new RevisionClock(), 2);
+        OffsetDateTime base = OffsetDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        SaleRecord sale = SaleRecord.from(new Sale().saleId(1).pharmacyId(1).saleDate(base));
+        Versioned<SaleRecord> saved = repository.insert(sale, version -> { });
+        RuntimeException journalDown = new IllegalStateException("journal");
+
+        // Como si el journal no pudiera anexar: ninguna escritura llega a verse
+        SaleRecord other = SaleRecord.from(new Sale().saleId(2).pharmacyId(2).saleDate(base));
+        assertSame(journalDown, assertThrows(RuntimeException.class, () -> repository.insert(other, version -> {
+            throw journalDown;
+        })));
+        SaleRecord moved = SaleRecord.from(new Sale().saleId(1).pharmacyId(2).saleDate(base.plusDays(3)));
+        assertThrows(RuntimeException.class, () -> repository.replace(saved, moved, version -> {
+            throw journalDown;
+        }));
+        assertThrows(RuntimeException.class, () -> repository.delete(saved, revision -> {
+            throw journalDown;
+        }));
+        assertEquals(null, repository.insertAll(List.of(other), version -> true, versions -> {
+            throw journalDown;
+        }).get(0));
+
+        assertEquals(1, repository.count());
+        assertSame(saved, repository.findVersion(1).orElseThrow());
+        assertTrue(repository.findVersion(2).isEmpty());
+        assertEquals(List.of(sale), repository.findByDate(null, null, 10));
+        assertTrue(repository.findByPharmacy(2).isEmpty());
+    }
+
+    @Test
+    void batchDropsRejectedSalesAndFailedShardsOnly() {
+        InMemorySaleRepository repository = new InMemorySaleRepository(new RevisionClock(), 4);
+        OffsetDateTime base = OffsetDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        List<SaleRecord> batch = new ArrayList<>();
+        for (int id = 1; id <= 12; id++) {
+            batch.add(SaleRecord.from(new Sale().saleId(id).pharmacyId(id % 4).saleDate(base.plusHours(id))));
+        }
+        List<Integer> lost = new ArrayList<>();
+
+        // La 6 no pasa su reserva; el journal falla en el shard de la farmacia 1
+        List<Versioned<SaleRecord>> created = repository.insertAll(batch, version -> version.value().saleId() != 6,
+            versions -> {
+                if (versions.stream().anyMatch(version -> version.value().pharmacyId() == 1)) {
+                    versions.forEach(version -> lost.add(version.value().saleId()));
+                    throw new IllegalStateException("journal");
+                }
+            });
+
+        assertTrue(lost.containsAll(List.of(1, 5, 9)));
+        assertTrue(lost.size() < 11);
+        for (int i = 0; i < batch.size(); i++) {
+            int saleId = batch.get(i).saleId();
+            boolean stored = saleId != 6 && !lost.contains(saleId);
+            assertEquals(stored, created.get(i) != null, "venta " + saleId);
+            assertEquals(stored, repository.findVersion(saleId).isPresent(), "venta " + saleId);
+        }
+        assertTrue(repository.findByPharmacy(1).isEmpty());
+        assertEquals(11 - lost.size(), repository.count());
+    }
+
+    @Test
+    void employeePagesWalkAllShardsInSaleIdOrder() {
+        InMemorySaleRepository repository = new InMemorySaleRepository(new RevisionClock(), 8);
+        for (int id = 1; id <= 100; id++) {
+            repository.save(SaleRecord.from(new Sale().saleId(id).pharmacyId(id % PHARMACIES + 1).employeeId(id % 3 == 0 ? 7 : 8)));
+        }
+        // Cambiar de empleado saca la venta de la lista anterior
+        repository.save(SaleRecord.from(new Sale().saleId(3).pharmacyId(1).employeeId(8)));
+
+        List<Integer> seen = new ArrayList<>();
+        int after = 0;
+        List<SaleRecord> page;
+        while (!(page = repository.findByEmployee(7, after, 10)).isEmpty()) {
+            assertTrue(page.size() <= 10);
+            page.forEach(sale -> seen.add(sale.saleId()));
+            after = page.get(page.size() - 1).saleId();
+        }
+        List<Integer> expected = new ArrayList<>();
+        for (int id = 6; id <= 100; id += 3) {
+            expected.add(id);
+        }
+        assertEquals(expected, seen);
+        assertTrue(repository.findByEmployee(99, 0, 10).isEmpty());
+    }
+
+    @Test
+    void datePagesFollowRewrittenSales() {
+        InMemorySaleRepository repository = new InMemorySaleRepository(new RevisionClock(), 8);
+        OffsetDateTime base = OffsetDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        Map<Integer, SaleRecord> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int step = 0; step < 5_000; step++) {
+            int id = random.nextInt(1_000) + 1;
+            if (random.nextInt(5) == 0) {
+                repository.deleteById(id);
+                expected.remove(id);
+            } else {
+                // Pocas horas distintas para que haya empates de fecha
+                SaleRecord sale = SaleRecord.from(new Sale().saleId(id).pharmacyId(random.nextInt(PHARMACIES) + 1)
+                    .saleDate(base.plusHours(random.nextInt(200))));
+                repository.save(sale);
+                expected.put(id, sale);
+            }
+        }
+
+        SaleTimeKey from = SaleTimeKey.before(base.plusHours(50));
+        SaleTimeKey to = SaleTimeKey.before(base.plusHours(150));
+        List<Integer> wanted = expected.values().stream()
+            .filter(s -> SaleTimeKey.of(s).compareTo(from) > 0 && SaleTimeKey.of(s).compareTo(to) < 0)
+            .sorted(Comparator.comparing(SaleTimeKey::of))
+            .map(SaleRecord::saleId)
+            .toList();
+
+        List<Integer> seen = new ArrayList<>();
+        SaleTimeKey after = from;
+        List<SaleRecord> page;
+        while (!(page = repository.findByDate(after, to, 37)).isEmpty()) {
+            page.forEach(sale -> seen.add(sale.saleId()));
+            after = SaleTimeKey.of(page.get(page.size() - 1));
+        }
+        assertEquals(wanted, seen);
+        assertEquals(expected.size(), repository.findByDate(null, null, 10_000).size());
+    }
+
+    @Test
+    void retentionDropsWholePartitionsOnly() {
+        InMemorySaleRepository repository = new InMemorySaleRepository(new RevisionClock(), 4);
+        OffsetDateTime base = OffsetDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        for (int id = 1; id <= 100; id++) {
+            // Diez días, diez ventas por día
+            repository.save(SaleRecord.from(new Sale().saleId(id).pharmacyId(id % PHARMACIES + 1).employeeId(7)
+                .saleDate(base.plusDays((id - 1) / 10).plusHours(id % 10))));
+        }
+        repository.save(SaleRecord.from(new Sale().saleId(500).pharmacyId(1).employeeId(7)));
+
+        // Si onDetach falla no se desprende nada
+        assertThrows(IllegalStateException.class, () -> repository.dropBefore(base.plusDays(3), staged -> {
+            throw new IllegalStateException("archivo lleno");
+        }));
+        assertEquals(101, repository.count());
+
+        // A la mitad del día 3: ese día aún no termina y se conserva completo
+        List<Boolean> visibleOnDetach = new ArrayList<>();
+        ExpiredSales expired = repository.dropBefore(base.plusDays(3).plusHours(12),
+            staged -> visibleOnDetach.add(repository.findById(30).isPresent()));
+        assertEquals(List.of(true), visibleOnDetach);
+        assertEquals(base.plusDays(3), expired.before());
+        assertEquals(30, expired.size());
+        assertEquals(71, repository.count());
+        assertTrue(repository.findById(30).isEmpty());
+        assertTrue(repository.findById(31).isPresent());
+        assertTrue(repository.findById(500).isPresent());
+        assertEquals(71, repository.versions().size());
+        assertEquals(71, repository.findByDate(null, null, 1_000).size());
+        assertTrue(repository.findByDate(null, SaleTimeKey.before(base.plusDays(3)), 1_000).stream()
+            .noneMatch(SaleRecord::hasDate));
+        assertEquals(71, collectEmployee(repository, 7).size());
+
+        // Una venta atrasada vuelve a crear su partición hasta la siguiente retención
+        repository.save(SaleRecord.from(new Sale().saleId(5).pharmacyId(6).saleDate(base.plusHours(1))));
+        assertTrue(repository.findById(5).isPresent());
+        for (int id = 1_000; id < 1_100; id++) {
+            // Las escrituras barren el directorio sin afectar lo vivo
+            repository.save(SaleRecord.from(new Sale().saleId(id).pharmacyId(id % PHARMACIES + 1).saleDate(base.plusDays(9))));
+        }
+        assertTrue(repository.findById(5).isPresent());
+        assertTrue(repository.findById(4).isEmpty());
+        assertEquals(1, repository.dropBefore(base.plusDays(3), staged -> { }).size());
+        assertTrue(repository.dropBefore(base.plusDays(3), staged -> fail("nada que desprender")).isEmpty());
+        assertEquals(171, repository.count());
+    }
+
+    @Test
+    void reinsertedSalesKeepTheirOriginalVersions() {
+        InMemorySaleRepository repository = new InMemorySaleRepository(new RevisionClock(), 4);
+        OffsetDateTime base = OffsetDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        for (int id = 1; id <= 20; id++) {
+            repository.save(SaleRecord.from(new Sale().saleId(id).pharmacyId(id % PHARMACIES + 1).saleDate(base.plusHours(id))));
+        }
+        Map<Integer, Versioned<SaleRecord>> before = new HashMap<>();
+        repository.versions().forEach(version -> before.put(version.value().saleId(), version));
+        ExpiredSales expired = repository.dropBefore(base.plusDays(2), staged -> { });
+        assertEquals(0, repository.count());
+        // Mientras estaba desprendida, su saleId se volvió a ocupar
+        Versioned<SaleRecord> taken = repository.insert(SaleRecord.from(new Sale().saleId(7).pharmacyId(8)), version -> { });
+
+        List<Versioned<SaleRecord>> journaled = new ArrayList<>();
+        repository.reinsert(expired.sales(), journaled::addAll);
+
+        assertEquals(19, journaled.size());
+        assertEquals(20, repository.count());
+        assertSame(taken, repository.findVersion(7).orElseThrow());
+        for (int id = 1; id <= 20; id++) {
+            if (id != 7) {
+                assertSame(before.get(id), repository.findVersion(id).orElseThrow());
+            }
+        }
+        assertEquals(20, repository.findByDate(null, null, 100).size());
+    }
+
+    private static List<Integer> collectEmployee(InMemorySaleRepository repository, int employeeId) {
+        List<Integer> seen = new ArrayList<>();
+        int after = 0;
+        List<SaleRecord> page;
+        while (!(page = repository.findByEmployee(employeeId, after, 25)).isEmpty()) {
+            page.forEach(sale -> seen.add(sale.saleId()));
+            after = page.get(page.size() - 1).saleId();
+        }
+        return seen;
+    }
+
+    @Test
+    void readsNeverMissSalesMovingBetweenShards() throws Exception {
+        InMemorySaleRepository repository = new InMemorySaleRepository(new RevisionClock(), 8);
+        for (int id = 1; id <= SALES; id++) {
+            repository.save(SaleRecord.from(new Sale().saleId(id).pharmacyId(id % PHARMACIES + 1)));
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                writers.add(pool.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 20_000; i++) {
+                        Versioned<SaleRecord> current = repository.findVersion(random.nextInt(SALES) + 1).orElseThrow();
+                        SaleRecord moved = SaleRecord.from(new Sale().saleId(current.value().saleId()).pharmacyId(random.nextInt(PHARMACIES) + 1));
+                        repository.replace(current, moved, version -> { });
+                    }
+                }));
+            }
+            Future<?> reader = pool.submit(() -> {
+                while (running.get()) {
+                    List<Versioned<SaleRecord>> versions = repository.versions();
+                    assertEquals(SALES, versions.size());
+                    for (int i = 0; i < SALES; i++) {
+                        assertEquals(i + 1, versions.get(i).value().saleId());
+                    }
+                    assertEquals(SALES, repository.count());
+                    assertEquals(SALES, repository.findByDate(null, null, SALES + 1).size());
+                    assertTrue(repository.findVersion(ThreadLocalRandom.current().nextInt(SALES) + 1).isPresent());
+                }
+            });
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            running.set(false);
+            reader.get();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        int indexed = 0;
+        for (int pharmacy = 1; pharmacy <= PHARMACIES; pharmacy++) {
+            for (SaleRecord sale : repository.findByPharmacy(pharmacy)) {
+                assertEquals(pharmacy, sale.pharmacyId());
+                indexed++;
+            }
+        }
+        assertEquals(SALES, indexed);
+    }
+}
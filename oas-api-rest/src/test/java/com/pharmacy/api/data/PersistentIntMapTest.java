@@ -0,0 +1,73 @@
+package com.pharmacy.api.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class PersistentIntMapTest {
+
+    @Test
+    void behavesLikeAMapUnderRandomOperations() {
+        PersistentIntMap<String> map = PersistentIntMap.empty();
+        PersistentIntMap.Builder<String> builder = PersistentIntMap.builder();
+        Map<Integer, String> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            // Llaves chicas para forzar choques y algunas de todo el rango de int
+            int key = random.nextInt(4) == 0 ? random.nextInt() : random.nextInt(2_000) - 1_000;
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+                builder.remove(key);
+            } else {
+                expected.put(key, "v" + i);
+                map = map.put(key, "v" + i);
+                builder.put(key, "v" + i);
+            }
+        }
+        assertMatches(expected, map);
+        assertMatches(expected, builder.build());
+    }
+
+    @Test
+    void earlierVersionsAreNotAffectedByLaterWrites() {
+        PersistentIntMap<Integer> map = PersistentIntMap.empty();
+        for (int key = 0; key < 10_000; key++) {
+            map = map.put(key, key);
+        }
+        PersistentIntMap<Integer> snapshot = map;
+        PersistentIntMap.Builder<Integer> builder = map.toBuilder();
+        for (int key = 0; key < 10_000; key += 2) {
+            map = map.remove(key);
+            builder.put(key, -key);
+        }
+        builder.put(Integer.MIN_VALUE, 0);
+
+        assertEquals(10_000, snapshot.size());
+        for (int key = 0; key < 10_000; key++) {
+            assertEquals(key, snapshot.get(key));
+        }
+        assertNull(snapshot.get(Integer.MIN_VALUE));
+        assertEquals(5_000, map.size());
+        assertEquals(10_001, builder.build().size());
+    }
+
+    private static void assertMatches(Map<Integer, String> expected, PersistentIntMap<String> map) {
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key)));
+        List<Integer> keys = new ArrayList<>(expected.keySet());
+        keys.sort(null);
+        assertEquals(keys.stream().map(expected::get).toList(), map.sortedValues());
+        List<String> iterated = new ArrayList<>();
+        map.values().forEach(iterated::add);
+        assertEquals(expected.size(), iterated.size());
+        assertEquals(new HashMap<>(expected).values().stream().sorted().toList(), iterated.stream().sorted().toList());
+    }
+}
@@ -0,0 +1,50 @@
+package com.pharmacy.api.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.pharmacy.api.commons.NotFoundException;
+
+class ReferenceCountsTest {
+
+    @Test
+    void retiredEntitiesRejectNewSalesAndUsedOnesCannotBeRetired() {
+        ReferenceCounts counts = new ReferenceCounts();
+        SaleRecord sale = sale(12, 101, SaleRecord.item(1, 2), SaleRecord.item(1, 1), SaleRecord.item(55, 1));
+        counts.rebuild(List.of(sale));
+        assertEquals(1, counts.pharmacies().count(12));
+        assertEquals(2, counts.products().count(1));
+
+        // Con ventas no se retira; sin ventas sí, y a partir de ahí no admite más
+        assertFalse(counts.products().tryRetire(55));
+        assertTrue(counts.products().tryRetire(2));
+        SaleRecord late = sale(12, 101, SaleRecord.item(1, 1), SaleRecord.item(2, 1));
+        assertThrows(NotFoundException.class, () -> counts.acquire(late));
+
+        // La venta rechazada no dejó referencias a medias
+        assertEquals(1, counts.pharmacies().count(12));
+        assertEquals(1, counts.employees().count(101));
+        assertEquals(2, counts.products().count(1));
+
+        // Si el borrado no se completa, el producto vuelve a aceptar ventas
+        counts.products().restore(2);
+        counts.acquire(late);
+        assertEquals(1, counts.products().count(2));
+
+        counts.release(sale);
+        counts.release(late);
+        assertTrue(counts.pharmacies().tryRetire(12));
+        assertTrue(counts.employees().tryRetire(101));
+        assertEquals(0, counts.products().count(1));
+    }
+
+    private static SaleRecord sale(int pharmacyId, int employeeId, long... items) {
+        return new SaleRecord(1, SaleRecord.NO_DATE, Money.NONE, Money.NONE, Money.NONE, pharmacyId, employeeId, items);
+    }
+}
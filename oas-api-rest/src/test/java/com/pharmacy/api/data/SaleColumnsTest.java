@@ -0,0 +1,80 @@
+package com.pharmacy.api.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.pharmacy.api.model.Sale;
+import com.pharmacy.api.model.SaleProduct;
+
+class SaleColumnsTest {
+
+    private static final OffsetDateTime BASE = OffsetDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    @Test
+    void summaryMatchesObjectScanAfterRandomWrites() {
+        SaleColumns columns = new SaleColumns();
+        Map<Integer, Sale> expected = new HashMap<>();
+        Random random = new Random(42);
+        // Suficientes filas para pasar por el recorrido paralelo y la compactación de líneas
+        for (int step = 0; step < 300_000; step++) {
+            int id = random.nextInt(150_000) + 1;
+            if (random.nextInt(4) == 0) {
+                assertEquals(expected.remove(id) != null, columns.delete(id));
+            } else {
+                Sale sale = sale(id, random);
+                expected.put(id, sale);
+                columns.upsert(SaleRecord.from(sale));
+            }
+        }
+
+        assertEquals(expected.size(), columns.size());
+        OffsetDateTime from = BASE.plusDays(10);
+        OffsetDateTime to = BASE.plusDays(20);
+        assertSummary(expected.values(), null, null, null, columns.summarize(null, null, null));
+        assertSummary(expected.values(), 7, null, null, columns.summarize(7, null, null));
+        assertSummary(expected.values(), 3, from, to, columns.summarize(3, from, to));
+    }
+
+    private static void assertSummary(Iterable<Sale> sales, Integer pharmacy, OffsetDateTime from,
+                                      OffsetDateTime to, SalesSummary actual) {
+        long count = 0;
+        double total = 0;
+        long units = 0;
+        for (Sale sale : sales) {
+            if (pharmacy != null && !pharmacy.equals(sale.getPharmacyId())) {
+                continue;
+            }
+            if (from != null && sale.getSaleDate().isBefore(from) || to != null && !sale.getSaleDate().isBefore(to)) {
+                continue;
+            }
+            count++;
+            total += sale.getTotal();
+            units += sale.getProducts().stream().mapToLong(SaleProduct::getQuantity).sum();
+        }
+        assertEquals(count, actual.count());
+        assertEquals(total, actual.total(), 1e-6 * Math.max(1, total));
+        assertEquals(units, actual.units());
+    }
+
+    private static Sale sale(int id, Random random) {
+        List<SaleProduct> items = new ArrayList<>();
+        for (int i = random.nextInt(4) + 1; i > 0; i--) {
+            items.add(new SaleProduct().saleId(id).productId(random.nextInt(50) + 1).quantity(random.nextInt(5) + 1));
+        }
+        return new Sale().saleId(id)
+            .saleDate(BASE.plusHours(random.nextInt(24 * 30)))
+            .subTotal(100.0).iva(16.0).total(116.0 + random.nextInt(100))
+            .pharmacyId(random.nextInt(10) + 1)
+            .employeeId(random.nextInt(20) + 1)
+            .products(items);
+    }
+}
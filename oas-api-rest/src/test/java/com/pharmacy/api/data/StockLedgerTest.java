@@ -0,0 +1,162 @@
+package com.pharmacy.api.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+import com.pharmacy.api.commons.BadRequestException;
+import com.pharmacy.api.commons.ConflictException;
+
+class StockLedgerTest {
+
+    private static final Consumer<Versioned<StockEntry>> NONE = entry -> { };
+
+    @Test
+    void reservationIsAllOrNothingAndUpdatesOnlyReserveTheDifference() {
+        RevisionClock clock = new RevisionClock();
+        StockLedger ledger = new StockLedger(clock);
+        ledger.set(12, 1, 5, NONE);
+        ledger.set(12, 2, 1, NONE);
+
+        // La segunda partida no alcanza: la primera tampoco se toma
+        assertThrows(ConflictException.class,
+            () -> ledger.reserve(null, sale(12, SaleRecord.item(1, 3), SaleRecord.item(2, 2)), NONE));
+        assertEquals(5, ledger.available(12, 1));
+        assertEquals(1, ledger.available(12, 2));
+
+        // Un producto sin inventario en la farmacia no limita la venta
+        SaleRecord sold = sale(12, SaleRecord.item(1, 2), SaleRecord.item(1, 2), SaleRecord.item(55, 100));
+        ledger.reserve(null, sold, NONE).commit();
+        Versioned<SaleRecord> first = new Versioned<>(sold, clock.next());
+        assertEquals(1, ledger.available(12, 1));
+        assertNull(ledger.available(12, 55));
+
+        // Pasar de 4 a 5 unidades reserva 1; lo liberado espera al commit
+        StockLedger.Reservation grow = ledger.reserve(first, sale(12, SaleRecord.item(1, 5), SaleRecord.item(2, 1)), NONE);
+        assertEquals(0, ledger.available(12, 1));
+        assertEquals(0, ledger.available(12, 2));
+        grow.cancel();
+        assertEquals(1, ledger.available(12, 1));
+        assertEquals(1, ledger.available(12, 2));
+
+        // Cambiar de farmacia libera en la anterior
+        StockLedger.Reservation move = ledger.reserve(first, sale(32, SaleRecord.item(1, 4)), NONE);
+        assertEquals(1, ledger.available(12, 1));
+        move.commit();
+        assertEquals(5, ledger.available(12, 1));
+
+        assertThrows(ConflictException.class, () -> ledger.adjust(12, 1, -6, NONE));
+        assertThrows(ConflictException.class, () -> ledger.adjust(12, 1, Long.MIN_VALUE, NONE));
+        assertThrows(BadRequestException.class, () -> ledger.adjust(12, 1, Long.MAX_VALUE, NONE));
+        assertEquals(5, ledger.available(12, 1));
+        assertEquals(7, ledger.adjust(12, 1, 2, NONE).available());
+        assertEquals(List.of(new StockLevel(12, 1, 7), new StockLevel(12, 2, 1)), ledger.levels(12));
+        assertEquals(List.of(), ledger.levels(32));
+    }
+
+    @Test
+    void onlyLinesThatTookStockAreReturned() {
+        RevisionClock clock = new RevisionClock();
+        StockLedger ledger = new StockLedger(clock);
+
+        // Vendida antes de que el producto llevara inventario
+        StockLedger.Reservation untracked = ledger.reserve(null, sale(12, SaleRecord.item(1, 3)), NONE);
+        untracked.confirm(clock.next());
+        Versioned<SaleRecord> before = new Versioned<>(sale(12, SaleRecord.item(1, 3)), clock.current());
+        ledger.set(12, 1, 10, NONE);
+        ledger.release(before, NONE);
+        assertEquals(10, ledger.available(12, 1));
+        // Reemplazarla toma la cantidad nueva completa y no libera la anterior
+        ledger.reserve(before, sale(12, SaleRecord.item(1, 2)), NONE).commit();
+        assertEquals(8, ledger.available(12, 1));
+
+        // El producto empieza a llevar inventario entre la reserva y la escritura
+        StockLedger.Reservation racing = ledger.reserve(null, sale(12, SaleRecord.item(2, 4)), NONE);
+        ledger.set(12, 2, 10, NONE);
+        racing.confirm(clock.next());
+        Versioned<SaleRecord> after = new Versioned<>(sale(12, SaleRecord.item(2, 4)), clock.current());
+        assertEquals(6, ledger.available(12, 2));
+        ledger.release(after, NONE);
+        assertEquals(10, ledger.available(12, 2));
+
+        StockLedger.Reservation scarce = ledger.reserve(null, sale(12, SaleRecord.item(3, 4)), NONE);
+        ledger.set(12, 3, 1, NONE);
+        assertThrows(ConflictException.class, () -> scarce.confirm(clock.next()));
+        assertEquals(1, ledger.available(12, 3));
+    }
+
+    @Test
+    void journaledEntriesRestoreTheSameCounters() {
+        RevisionClock clock = new RevisionClock();
+        StockLedger ledger = new StockLedger(clock);
+        // Como al reproducir el journal: por contador gana la revisión mayor
+        Map<Long, Versioned<StockEntry>> journal = new HashMap<>();
+        Consumer<Versioned<StockEntry>> append = entry -> journal.merge(
+            StockLedger.key(entry.value().pharmacyId(), entry.value().productId()), entry,
+            (current, next) -> next.revision() > current.revision() ? next : current);
+
+        ledger.set(12, 1, 10, append);
+        ledger.set(55, 2, 4, append);
+        ledger.reserve(null, sale(12, SaleRecord.item(1, 3), SaleRecord.item(7, 1)), append).commit();
+        Versioned<SaleRecord> sold = new Versioned<>(sale(12, SaleRecord.item(1, 3)), clock.next());
+        assertThrows(IllegalStateException.class, () -> ledger.adjust(55, 2, 5, entry -> {
+            throw new IllegalStateException("journal lleno");
+        }));
+        assertEquals(4, ledger.available(55, 2));
+
+        RevisionClock restarted = new RevisionClock();
+        StockLedger recovered = new StockLedger(restarted);
+        recovered.restore(journal.values());
+        assertEquals(ledger.levels(12), recovered.levels(12));
+        assertEquals(ledger.levels(55), recovered.levels(55));
+        assertNull(recovered.available(12, 7));
+        recovered.release(sold, NONE);
+        assertEquals(10, recovered.available(12, 1));
+    }
+
+    @Test
+    void concurrentTerminalsNeverOversell() throws Exception {
+        StockLedger ledger = new StockLedger(new RevisionClock());
+        ledger.set(1, 1, 10_000, NONE);
+        AtomicInteger sold = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                tasks.add(pool.submit(() -> {
+                    for (int i = 0; i < 5_000; i++) {
+                        try {
+                            ledger.reserve(null, sale(1, SaleRecord.item(1, 1)), NONE).commit();
+                            sold.incrementAndGet();
+                        } catch (ConflictException e) {
+                            // Sin existencia
+                        }
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(10_000, sold.get());
+        assertEquals(0, ledger.available(1, 1));
+    }
+
+    private static SaleRecord sale(int pharmacyId, long... items) {
+        return new SaleRecord(1, SaleRecord.NO_DATE, Money.NONE, Money.NONE, Money.NONE, pharmacyId, 101, items);
+    }
+}
@@ -0,0 +1,59 @@
+package com.pharmacy.api.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class VersionedRegistryTest {
+
+    @Test
+    void staleVersionIsRejected() {
+        VersionedRegistry<String> registry = new VersionedRegistry<>(new RevisionClock());
+        Versioned<String> first = registry.insert(1, "a");
+        Versioned<String> second = registry.replace(1, first, "b");
+
+        assertTrue(second.revision() > first.revision());
+        assertNull(registry.replace(1, first, "c"));
+        assertEquals(-1, registry.remove(1, first));
+        assertNull(registry.insert(1, "d"));
+        assertEquals("b", registry.get(1));
+
+        long deleted = registry.remove(1, second);
+        assertTrue(deleted > second.revision());
+        assertTrue(registry.insert(1, "e").revision() > deleted);
+    }
+
+    @Test
+    void concurrentIncrementsAreNotLost() throws Exception {
+        VersionedRegistry<Integer> registry = new VersionedRegistry<>(new RevisionClock());
+        registry.insert(7, 0);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                tasks.add(pool.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        Versioned<Integer> current;
+                        do {
+                            current = registry.getVersioned(7);
+                        } while (registry.replace(7, current, current.value() + 1) == null);
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(40_000, registry.get(7));
+    }
+}
@@ -0,0 +1,112 @@
+package com.pharmacy.api.data.archive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.SaleTimeKey;
+import com.pharmacy.api.data.Versioned;
+import com.pharmacy.api.model.Sale;
+import com.pharmacy.api.model.SaleProduct;
+
+class SaleSegmentTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void archivedSalesReadBackByIdAndByDate() throws Exception {
+        OffsetDateTime base = OffsetDateTime.of(2024, 3, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        Random random = new Random(11);
+        List<Versioned<SaleRecord>> sales = new ArrayList<>();
+        for (int id = 1; id <= 1_000; id++) {
+            Sale sale = new Sale().saleId(id * 3)
+                .saleDate(base.plusSeconds(random.nextInt(30 * 86_400)).plusNanos(random.nextInt(3) * 1_000_000L)
+                    .withOffsetSameInstant(ZoneOffset.ofHours(random.nextInt(3) - 6)))
+                .subTotal(random.nextInt(100_000) / 100.0)
+                // Fracciones, zonas y montos que no son centavos se normalizan antes de archivar; los nulls sobreviven
+                .iva(id % 7 == 0 ? null : random.nextDouble() * 100)
+                .total(-12.5)
+                .pharmacyId(id % 5 == 0 ? null : random.nextInt(60) + 1)
+                .employeeId(random.nextInt(400) + 100);
+            for (int p = random.nextInt(4); p >= 0; p--) {
+                sale.getProducts().add(new SaleProduct().saleId(p == 0 ? null : sale.getSaleId())
+                    .productId(random.nextInt(500) + 1).quantity(p == 1 ? null : random.nextInt(10) + 1));
+            }
+            if (id % 50 == 0) {
+                sale.setProducts(null);
+            }
+            sales.add(new Versioned<>(SaleRecord.from(sale), id + 10_000L));
+        }
+        sales.sort(Comparator.comparing(v -> SaleTimeKey.of(v.value())));
+
+        SaleSegment.write(SaleSegment.path(dir, 77), 77, base.plusDays(31), sales, 16).close();
+        try (SaleSegment segment = SaleSegment.open(SaleSegment.path(dir, 77))) {
+            assertEquals(1_000, segment.size());
+            assertEquals(77, segment.revision());
+            assertEquals(3_000, segment.maxSaleId());
+            assertEquals(base.plusDays(31), segment.before());
+            for (Versioned<SaleRecord> sale : sales) {
+                Versioned<SaleRecord> found = segment.find(sale.value().saleId());
+                assertEquals(sale.value(), found.value());
+                assertEquals(sale.revision(), found.revision());
+            }
+            assertNull(segment.find(1));
+
+            SaleTimeKey from = SaleTimeKey.before(base.plusDays(10));
+            SaleTimeKey to = SaleTimeKey.before(base.plusDays(12));
+            List<SaleRecord> expected = sales.stream().map(Versioned::value)
+                .filter(s -> SaleTimeKey.of(s).compareTo(from) > 0 && SaleTimeKey.of(s).compareTo(to) < 0)
+                .toList();
+            List<SaleRecord> seen = new ArrayList<>();
+            SaleTimeKey after = from;
+            List<SaleRecord> page;
+            while (!(page = segment.range(after, to, 9)).isEmpty()) {
+                seen.addAll(page);
+                after = SaleTimeKey.of(page.get(page.size() - 1));
+            }
+            assertEquals(expected, seen);
+            assertEquals(1_000, segment.range(null, null, 5_000).size());
+        }
+    }
+
+    @Test
+    void missOnBackdatedRangeReadsNoBlock() throws Exception {
+        OffsetDateTime base = OffsetDateTime.of(2024, 3, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        List<Versioned<SaleRecord>> sales = new ArrayList<>();
+        for (int id = 1; id <= 200; id++) {
+            sales.add(new Versioned<>(SaleRecord.from(new Sale().saleId(id * 2).saleDate(base.plusMinutes(id))), id));
+        }
+        // Ticket atrasado: cae en el primer bloque con un ID mayor que todos
+        sales.add(0, new Versioned<>(SaleRecord.from(new Sale().saleId(10_000).saleDate(base)), 201));
+
+        Path file = SaleSegment.path(dir, 5);
+        SaleSegment.write(file, 5, base.plusDays(1), sales, 16).close();
+        // Con el primer bloque corrupto, cualquier lectura de él falla
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.seek(12);
+            raw.write(~raw.read());
+        }
+        try (SaleSegment segment = SaleSegment.open(file)) {
+            assertNull(segment.find(5_001));
+            assertNull(segment.find(9_999));
+            assertNull(segment.find(20_000));
+            assertEquals(sales.get(20).value(), segment.find(sales.get(20).value().saleId()).value());
+            assertThrows(UncheckedIOException.class, () -> segment.find(10_000));
+        }
+    }
+}
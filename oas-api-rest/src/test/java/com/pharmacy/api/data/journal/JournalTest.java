@@ -0,0 +1,135 @@
+package com.pharmacy.api.data.journal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void rollContinuesTheSequenceInANewSegment() throws IOException {
+        try (Journal journal = new Journal(dir, 1, 0, FsyncPolicy.PER_WRITE, 0)) {
+            journal.appendAll(List.of(upsert(7, 10, "a"), upsert(8, 11, "bb")));
+            assertEquals(2, journal.roll());
+            assertEquals(0, journal.recordsSinceRoll());
+            journal.append(EntityType.SALE, JournalRecord.Op.DELETE, 7, 12, null);
+            assertEquals(3, journal.lastSequence());
+        }
+
+        List<JournalRecord> first = read(Journal.segmentPath(dir, 1));
+        assertEquals(2, first.size());
+        assertEquals(1, first.get(0).sequence());
+        assertEquals(10, first.get(0).revision());
+        assertEquals(8, first.get(1).key());
+        assertArrayEquals("bb".getBytes(StandardCharsets.UTF_8), first.get(1).payload());
+
+        List<JournalRecord> second = read(Journal.segmentPath(dir, 2));
+        assertEquals(1, second.size());
+        assertEquals(3, second.get(0).sequence());
+        assertEquals(JournalRecord.Op.DELETE, second.get(0).op());
+        assertEquals(0, second.get(0).payload().length);
+    }
+
+    @Test
+    void tornTailAndBadChecksumEndTheSegment() throws IOException {
+        List<JournalRecord> records = List.of(upsert(1, 1, "a"), upsert(2, 2, "bb"), upsert(3, 3, "ccc"));
+        try (Journal journal = new Journal(dir, 1, 0, FsyncPolicy.PER_WRITE, 0)) {
+            journal.appendAll(records);
+        }
+        Path file = Journal.segmentPath(dir, 1);
+        byte[] bytes = Files.readAllBytes(file);
+        assertEquals(3, read(file).size());
+
+        // Caída a la mitad del último registro
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 2));
+        assertEquals(2, read(file).size());
+
+        // Caída a la mitad de la cabecera del primero
+        Files.write(file, Arrays.copyOf(bytes, 3));
+        assertEquals(0, read(file).size());
+
+        // Un bit cambiado en el segundo invalida su CRC y se ignora el resto
+        byte[] corrupt = bytes.clone();
+        int second = Journal.encode(records.get(0)).limit();
+        corrupt[second + Journal.HEADER_BYTES + 2] ^= 1;
+        Files.write(file, corrupt);
+        List<JournalRecord> recovered = read(file);
+        assertEquals(1, recovered.size());
+        assertEquals(1, recovered.get(0).key());
+
+        // Un largo imposible también termina el segmento
+        byte[] badLength = bytes.clone();
+        badLength[second] = (byte) 0x7F;
+        Files.write(file, badLength);
+        assertEquals(1, read(file).size());
+    }
+
+    @Test
+    void everyPolicyLeavesConcurrentWritesOnDisk() throws Exception {
+        for (FsyncPolicy policy : FsyncPolicy.values()) {
+            Path segments = dir.resolve(policy.name());
+            try (Journal journal = new Journal(segments, 1, 0, policy, 5)) {
+                ExecutorService pool = Executors.newFixedThreadPool(4);
+                try {
+                    List<Future<?>> tasks = new ArrayList<>();
+                    for (int t = 0; t < 4; t++) {
+                        int thread = t;
+                        tasks.add(pool.submit(() -> {
+                            for (int i = 0; i < 50; i++) {
+                                journal.write(List.of(upsert(thread * 100 + i, thread * 100 + i, "x")));
+                                journal.sync();
+                            }
+                        }));
+                    }
+                    for (Future<?> task : tasks) {
+                        task.get();
+                    }
+                } finally {
+                    pool.shutdownNow();
+                }
+
+                if (policy == FsyncPolicy.INTERVAL) {
+                    // sync no espera: el fsync periódico alcanza lo escrito
+                    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                    while (journal.durableBytes() < journal.writtenBytes() && System.nanoTime() < deadline) {
+                        Thread.sleep(5);
+                    }
+                }
+                // Cada sync esperó a que su escritura estuviera en disco
+                assertEquals(journal.writtenBytes(), journal.durableBytes(), policy.name());
+            }
+
+            List<JournalRecord> records = read(Journal.segmentPath(segments, 1));
+            assertEquals(200, records.size(), policy.name());
+            assertEquals(200, records.stream().map(JournalRecord::sequence).distinct().count(), policy.name());
+        }
+    }
+
+    private static JournalRecord upsert(int key, long revision, String payload) {
+        return new JournalRecord(0, revision, EntityType.SALE, JournalRecord.Op.UPSERT, key,
+            payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<JournalRecord> read(Path file) throws IOException {
+        List<JournalRecord> records = new ArrayList<>();
+        Journal.read(file, records::add);
+        return records;
+    }
+}
@@ -0,0 +1,135 @@
+package com.pharmacy.api.data.journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pharmacy.api.data.Money;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.StockEntry;
+import com.pharmacy.api.data.Versioned;
+import com.pharmacy.api.model.Pharmacy;
+import com.pharmacy.api.model.Product;
+import com.pharmacy.api.model.Product.ProductTypeEnum;
+
+class RecoveredStateTest {
+
+    private static final OffsetDateTime CUTOFF = OffsetDateTime.of(2026, 10, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final long OLD = CUTOFF.minusDays(3).toEpochSecond();
+    private static final long RECENT = CUTOFF.plusDays(3).toEpochSecond();
+
+    private final ObjectMapper mapper = JournalManager.newMapper();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void tailReplayedOverTheSnapshotKeepsTheHighestRevisionPerKey() throws IOException {
+        Path snapshot = SnapshotFile.path(dir, 2);
+        SnapshotFile.write(snapshot, 7,
+            List.of(new Versioned<>(new Pharmacy(1, "Centro", "Calle 1"), 3)),
+            List.of(new Versioned<>(sale(10, OLD), 4), new Versioned<>(sale(11, RECENT), 5),
+                new Versioned<>(sale(20, SaleRecord.NO_DATE), 4)),
+            List.of(new Versioned<>(new Product(1, ProductTypeEnum.GENERICO, "Paracetamol", 50.5), 6)),
+            List.of(),
+            List.of(new Versioned<>(new StockEntry(12, 1, 8, 2), 6)));
+
+        try (Journal journal = new Journal(dir, 2, 7, FsyncPolicy.PER_WRITE, 0)) {
+            journal.appendAll(List.of(
+                upsert(EntityType.SALE, 10, sale(10, OLD), 9),
+                delete(EntityType.SALE, 11, 10),
+                // Anexada después del borrado pero con revisión menor: perdió la carrera
+                upsert(EntityType.SALE, 11, sale(11, RECENT), 8),
+                // Más vieja que la del snapshot
+                upsert(EntityType.PHARMACY, 1, new Pharmacy(1, "Anterior", "Calle 0"), 2),
+                upsert(EntityType.STOCK, 12, new StockEntry(12, 1, 5, 2), 12),
+                upsert(EntityType.STOCK, 12, new StockEntry(12, 1, 9, 2), 11),
+                truncate(CUTOFF, 14),
+                // Con fecha vieja pero escrita después de la retención: la sobrevive
+                upsert(EntityType.SALE, 13, sale(13, OLD), 15)));
+        }
+
+        RecoveredState state = new RecoveredState(mapper);
+        state.load(SnapshotFile.read(snapshot));
+        assertEquals(8, Journal.read(Journal.segmentPath(dir, 2), state::apply));
+
+        assertEquals(15, state.lastSequence);
+        assertEquals(15, state.lastRevision);
+        assertEquals("Centro", state.pharmacies.live.get(1).value().getName());
+        assertEquals(3, state.pharmacies.live.get(1).revision());
+        assertEquals(Map.of(11, 10L), state.sales.deleted);
+        assertEquals(5, state.stock.values().iterator().next().value().available());
+        assertEquals(1, state.stock.size());
+        // La 10 cae en la retención; la 20 no tiene fecha y nunca expira
+        assertEquals(Map.of(13, 15L, 20, 4L), revisions(state.liveSales()));
+    }
+
+    @Test
+    void replayingTheSameTailTwiceGivesTheSameState() throws IOException {
+        try (Journal journal = new Journal(dir, 1, 0, FsyncPolicy.PER_WRITE, 0)) {
+            journal.appendAll(List.of(
+                upsert(EntityType.SALE, 1, sale(1, RECENT), 1),
+                upsert(EntityType.SALE, 2, sale(2, OLD), 2),
+                delete(EntityType.SALE, 1, 3),
+                upsert(EntityType.SALE, 3, sale(3, OLD), 4)));
+        }
+        RecoveredState state = new RecoveredState(mapper);
+        Journal.read(Journal.segmentPath(dir, 1), state::apply);
+        Journal.read(Journal.segmentPath(dir, 1), state::apply);
+        // Un segmento del archivo también es una retención
+        state.truncate(CUTOFF, 3);
+
+        assertEquals(Map.of(1, 3L), state.sales.deleted);
+        assertEquals(Map.of(3, 4L), revisions(state.liveSales()));
+    }
+
+    @Test
+    void eachSaleIsCheckedAgainstTheRetentionsWrittenAfterIt() throws IOException {
+        RecoveredState state = new RecoveredState(mapper);
+        long later = CUTOFF.plusDays(10).toEpochSecond();
+        state.apply(upsert(EntityType.SALE, 1, sale(1, RECENT), 3));
+        state.apply(upsert(EntityType.SALE, 2, sale(2, RECENT), 7));
+        state.apply(upsert(EntityType.SALE, 3, sale(3, OLD), 8));
+        state.apply(upsert(EntityType.SALE, 4, sale(4, OLD), 11));
+        state.apply(upsert(EntityType.SALE, 5, sale(5, later), 1));
+        // Una retención amplia y vieja, y otra más corta pero posterior
+        state.truncate(CUTOFF.plusDays(10), 5);
+        state.truncate(CUTOFF, 10);
+
+        // La 1 cae en la amplia; la 3, escrita después de esa, en la corta; la 5 es del día del corte
+        assertEquals(Map.of(2, 7L, 4, 11L, 5, 1L), revisions(state.liveSales()));
+    }
+
+    private JournalRecord upsert(EntityType type, int key, Object value, long revision) throws IOException {
+        return new JournalRecord(0, revision, type, JournalRecord.Op.UPSERT, key, mapper.writeValueAsBytes(value));
+    }
+
+    private static JournalRecord delete(EntityType type, int key, long revision) {
+        return new JournalRecord(0, revision, type, JournalRecord.Op.DELETE, key, null);
+    }
+
+    private JournalRecord truncate(OffsetDateTime before, long revision) throws IOException {
+        return new JournalRecord(0, revision, EntityType.SALE, JournalRecord.Op.TRUNCATE, 0, mapper.writeValueAsBytes(before));
+    }
+
+    private static Map<Integer, Long> revisions(Iterable<Versioned<SaleRecord>> sales) {
+        Map<Integer, Long> revisions = new TreeMap<>();
+        sales.forEach(sale -> revisions.put(sale.value().saleId(), sale.revision()));
+        return revisions;
+    }
+
+    private static SaleRecord sale(int saleId, long saleDate) {
+        return new SaleRecord(saleId, saleDate, Money.NONE, Money.NONE, Money.NONE, 12, 101,
+            new long[] {SaleRecord.item(1, 1)});
+    }
+}
@@ -0,0 +1,99 @@
+package com.pharmacy.api.data.journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.StockEntry;
+import com.pharmacy.api.data.Versioned;
+import com.pharmacy.api.model.Employee;
+import com.pharmacy.api.model.Employee.TypeEmployeeEnum;
+import com.pharmacy.api.model.Pharmacy;
+import com.pharmacy.api.model.Product;
+import com.pharmacy.api.model.Product.ProductTypeEnum;
+
+class SnapshotFileTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void everyEntityTypeRoundTrips() throws IOException {
+        List<Versioned<Pharmacy>> pharmacies = List.of(
+            new Versioned<>(new Pharmacy(1, "Similares - Real Solare", "Avenida Siempre Viva 123"), 1),
+            new Versioned<>(new Pharmacy(12, "Farmacia ñandú", null), 2));
+        List<Versioned<Product>> products = List.of(
+            new Versioned<>(new Product(1, ProductTypeEnum.GENERICO, "Paracetamol", 50.5), 3),
+            new Versioned<>(new Product(302, ProductTypeEnum.PRESCRITO, "Amoxicilina", 160.0).description("500 mg"), 4));
+        List<Versioned<Employee>> employees = List.of(new Versioned<>(new Employee().idEmployee(101).idPharmacy(12)
+            .name("Juan").lastName("Perez").phone("4421234567").typeEmployee(TypeEmployeeEnum.CAJERO), 5));
+        // Más de un bloque de ventas, para que se decodifiquen en paralelo
+        long date = OffsetDateTime.of(2026, 10, 17, 9, 30, 0, 0, ZoneOffset.UTC).toEpochSecond();
+        List<Versioned<SaleRecord>> sales = new ArrayList<>();
+        for (int i = 1; i <= 40_000; i++) {
+            sales.add(new Versioned<>(new SaleRecord(i, i % 7 == 0 ? SaleRecord.NO_DATE : date + i, 1000L + i,
+                160L, 1160L + i, 12, 101,
+                new long[] {SaleRecord.item(1, 1 + i % 3), SaleRecord.item(302, 2)}), 10L + i));
+        }
+        List<Versioned<StockEntry>> stock = List.of(new Versioned<>(new StockEntry(12, 1, 40, 6), 7),
+            new Versioned<>(new StockEntry(12, 302, 0, 8), 9));
+
+        Path file = SnapshotFile.path(dir, 3);
+        long written = SnapshotFile.write(file, 99, pharmacies, sales, products, employees, stock);
+        assertEquals(2 + 40_000 + 2 + 1 + 2, written);
+
+        SnapshotFile.Contents contents = SnapshotFile.read(file);
+        assertEquals(99, contents.lastSequence());
+        assertEquals(written, contents.size());
+        assertEquals(pharmacies, contents.pharmacies());
+        assertEquals(products, contents.products());
+        assertEquals(employees, contents.employees());
+        assertEquals(stock, contents.stock());
+        // Los bloques se juntan en el orden del índice
+        assertEquals(sales, contents.sales());
+    }
+
+    @Test
+    void truncatedOrForeignFilesAreRejected() throws IOException {
+        Path file = SnapshotFile.path(dir, 1);
+        SnapshotFile.write(file, 1, List.of(new Versioned<>(new Pharmacy(1, "Centro", "Calle 1"), 1)),
+            List.of(), List.of(), List.of(), List.of());
+        byte[] bytes = Files.readAllBytes(file);
+        assertEquals(1, SnapshotFile.read(file).size());
+
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 5));
+        assertThrows(IOException.class, () -> SnapshotFile.read(file));
+
+        Files.write(file, Arrays.copyOf(bytes, 10));
+        assertThrows(IOException.class, () -> SnapshotFile.read(file));
+
+        byte[] foreign = bytes.clone();
+        foreign[0] = 'X';
+        Files.write(file, foreign);
+        assertThrows(IOException.class, () -> SnapshotFile.read(file));
+
+        // El magic del final no coincide con el del inicio
+        byte[] mismatched = bytes.clone();
+        mismatched[mismatched.length - 1] = '3';
+        Files.write(file, mismatched);
+        assertThrows(IOException.class, () -> SnapshotFile.read(file));
+
+        // Un bloque con un byte cambiado no pasa su CRC
+        byte[] corrupt = bytes.clone();
+        corrupt[8 + 8 + 9] ^= 1;
+        Files.write(file, corrupt);
+        assertThrows(IOException.class, () -> SnapshotFile.read(file));
+    }
+}
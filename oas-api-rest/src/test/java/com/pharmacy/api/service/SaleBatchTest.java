@@ -0,0 +1,55 @@
+package com.pharmacy.api.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.pharmacy.api.model.Sale;
+import com.pharmacy.api.model.SaleProduct;
+
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+
+@QuarkusTest
+class SaleBatchTest {
+
+    @Inject
+    SaleService saleService;
+
+    @Inject
+    InventoryService inventoryService;
+
+    @Test
+    void aConflictingSaleFailsAloneAndTheRestOfTheBatchIsCreated() {
+        inventoryService.setStock(12, 302, new StockChange(1L, null));
+
+        SaleBatchResult result = saleService.createSales(List.of(
+            sale(1, 1, 1),
+            sale(12, 302, 1),
+            // La existencia ya la tomó la anterior
+            sale(12, 302, 1),
+            sale(55, 2, 3),
+            sale(32, 55, 1)));
+
+        assertEquals(5, result.received());
+        assertEquals(4, result.created());
+        assertEquals(1, result.failed());
+        assertEquals(409, result.items().get(2).status());
+        assertTrue(result.items().get(1).isCreated());
+        assertTrue(result.items().get(3).isCreated());
+        assertTrue(result.items().get(4).isCreated());
+        assertEquals(0, inventoryService.getStock(12, 302).available());
+        assertEquals(55, saleService.getSaleById(result.items().get(3).sale().getSaleId()).pharmacyId());
+    }
+
+    private static Sale sale(int pharmacyId, int productId, int quantity) {
+        return new Sale().saleDate(OffsetDateTime.of(2026, 10, 17, 10, 0, 0, 0, ZoneOffset.UTC))
+            .subTotal(10.0).iva(1.6).total(11.6).pharmacyId(pharmacyId).employeeId(101)
+            .addProductsItem(new SaleProduct().productId(productId).quantity(quantity));
+    }
+}
@@ -0,0 +1,111 @@
+package com.pharmacy.api.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.pharmacy.api.commons.BadRequestException;
+import com.pharmacy.api.commons.ConflictException;
+import com.pharmacy.api.data.Money;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.data.Versioned;
+import com.pharmacy.api.model.Sale;
+import com.pharmacy.api.model.SaleProduct;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class SaleIdempotencyTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final SaleIdempotency idempotency = new SaleIdempotency(new SimpleMeterRegistry(), 60, 2, now::get);
+
+    @Test
+    void concurrentRetriesShareOneExecution() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<Versioned<SaleRecord>> first = pool.submit(() -> idempotency.execute("k", body(7), () -> {
+                executions.incrementAndGet();
+                started.countDown();
+                await(release);
+                return sale(1);
+            }));
+            started.await();
+            Future<Versioned<SaleRecord>> retry = pool.submit(() -> idempotency.execute("k", body(7), () -> sale(2)));
+            release.countDown();
+
+            assertSame(first.get(5, TimeUnit.SECONDS), retry.get(5, TimeUnit.SECONDS));
+            assertEquals(1, executions.get());
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(0.5, idempotency.hitRatio());
+
+        // Misma clave con otro cuerpo
+        assertThrows(ConflictException.class, () -> idempotency.execute("k", body(8), () -> sale(3)));
+        assertThrows(BadRequestException.class, () -> idempotency.execute(" ", body(7), () -> sale(3)));
+    }
+
+    @Test
+    void failuresAreNotRememberedAndKeysAreBoundedAndExpire() {
+        assertThrows(ConflictException.class, () -> idempotency.execute("a", body(1), () -> {
+            throw new ConflictException("Existencia insuficiente");
+        }));
+        assertEquals(1, idempotency.execute("a", body(1), () -> sale(1)).value().saleId());
+        assertEquals(1, idempotency.size());
+
+        idempotency.execute("b", body(1), () -> sale(2));
+        idempotency.execute("c", body(1), () -> sale(3));
+        // Caben dos claves: "a", la más vieja, se descartó
+        assertEquals(2, idempotency.size());
+        assertEquals(4, idempotency.execute("a", body(1), () -> sale(4)).value().saleId());
+        assertEquals(3, idempotency.execute("c", body(1), () -> sale(5)).value().saleId());
+
+        // Vencida, la clave se vuelve a ejecutar y las demás vencidas se descartan
+        now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        assertEquals(6, idempotency.execute("c", body(1), () -> sale(6)).value().saleId());
+        assertEquals(1, idempotency.size());
+        assertEquals(256 + 2 + 32 + 8, idempotency.bytes());
+    }
+
+    @Test
+    void bodiesWithTheSameHashCodeAreStillDifferentSales() {
+        // 31 x 1 + 31 == 31 x 2 + 0: mismo hashCode, otra venta
+        Sale first = new Sale().pharmacyId(1).employeeId(31).addProductsItem(new SaleProduct().productId(1).quantity(2));
+        Sale second = new Sale().pharmacyId(2).employeeId(0).addProductsItem(new SaleProduct().productId(1).quantity(2));
+        assertEquals(first.hashCode(), second.hashCode());
+
+        idempotency.execute("k", SaleIdempotency.fingerprint(first), () -> sale(1));
+        assertThrows(ConflictException.class, () -> idempotency.execute("k", SaleIdempotency.fingerprint(second), () -> sale(2)));
+        assertEquals(1, idempotency.execute("k", SaleIdempotency.fingerprint(first), () -> sale(3)).value().saleId());
+    }
+
+    private static byte[] body(int employeeId) {
+        return SaleIdempotency.fingerprint(new Sale().pharmacyId(12).employeeId(employeeId));
+    }
+
+    private static Versioned<SaleRecord> sale(int saleId) {
+        return new Versioned<>(new SaleRecord(saleId, SaleRecord.NO_DATE, Money.NONE, Money.NONE, Money.NONE, 12, 101,
+            new long[] {SaleRecord.item(1, 1)}), saleId);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.pharmacy.api.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.pharmacy.api.commons.BadRequestException;
+import com.pharmacy.api.commons.NotFoundException;
+import com.pharmacy.api.data.Money;
+import com.pharmacy.api.data.PriceTable;
+import com.pharmacy.api.data.SaleRecord;
+import com.pharmacy.api.model.Product;
+import com.pharmacy.api.model.Product.ProductTypeEnum;
+
+class SaleTotalsTest {
+
+    private static final PriceTable.Prices PRICES = PriceTable.Prices.of(List.of(
+        new Product(1, ProductTypeEnum.GENERICO, "Paracetamol", 50.50),
+        new Product(2, ProductTypeEnum.GENERICO, "Gasa", 0.10),
+        new Product(3, ProductTypeEnum.PRESCRITO, "Jarabe", 130.22),
+        new Product(5_000_000, ProductTypeEnum.GENERICO, "Vendas", 12.00)));
+
+    private static final TaxRules.Rates FLAT = TaxRules.Rates.compile(1600, List.of());
+
+    @Test
+    void totalsAreComputedInCentsFromLineItems() {
+        SaleRecord sale = sale(SaleRecord.item(1, 3), SaleRecord.item(2, 7), SaleRecord.item(3, 1));
+        SaleRecord priced = SaleTotals.compute(sale, PRICES, FLAT);
+
+        // 3 x 50.50 + 7 x 0.10 + 130.22 = 282.42; IVA 45.1872 se redondea a 45.19
+        assertEquals(28_242, priced.subTotalCents());
+        assertEquals(4_519, priced.ivaCents());
+        assertEquals(32_761, priced.totalCents());
+        assertEquals(sale.saleId(), priced.saleId());
+        assertEquals(sale.saleDate(), priced.saleDate());
+
+        // Con double, sumar 0.10 diez mil veces no da 1000.0; en centavos sí
+        long[] items = new long[10_000];
+        Arrays.fill(items, SaleRecord.item(2, 1));
+        assertEquals(100_000, SaleTotals.compute(sale(items), PRICES, TaxRules.Rates.compile(0, List.of())).totalCents());
+    }
+
+    @Test
+    void priceTableResolvesDenseAndSparseIds() {
+        assertEquals(5_050, PRICES.cents(1));
+        assertEquals(1_200, PRICES.cents(5_000_000));
+        assertEquals(PriceTable.ABSENT, PRICES.cents(4));
+        assertEquals(PriceTable.ABSENT, PRICES.cents(-1));
+        assertEquals(PriceTable.ABSENT, PRICES.cents(5_000_001));
+
+        Product unpriced = new Product();
+        unpriced.setProductId(7);
+        PriceTable.Prices prices = PriceTable.Prices.of(List.of(unpriced));
+        assertEquals(PriceTable.UNPRICED, prices.cents(7));
+        assertThrows(BadRequestException.class,
+            () -> SaleTotals.compute(sale(SaleRecord.item(7, 1)), prices, FLAT));
+        assertThrows(NotFoundException.class,
+            () -> SaleTotals.compute(sale(SaleRecord.item(4, 1)), PRICES, FLAT));
+    }
+
+    @Test
+    void mostSpecificTaxRuleWins() {
+        TaxRules.Rates rates = TaxRules.Rates.compile(1600, List.of(
+            TaxRule.parse("*:PRESCRITO=0"),
+            TaxRule.parse("55:*=800"),
+            TaxRule.parse("55:prescrito=400")));
+        int generico = ProductTypeEnum.GENERICO.ordinal();
+        int prescrito = ProductTypeEnum.PRESCRITO.ordinal();
+        assertEquals(1600, rates.rate(12, generico));
+        assertEquals(0, rates.rate(12, prescrito));
+        assertEquals(1600, rates.rate(12, PriceTable.UNTYPED));
+        assertEquals(800, rates.rate(55, generico));
+        assertEquals(400, rates.rate(55, prescrito));
+        assertEquals(800, rates.rate(55, PriceTable.UNTYPED));
+
+        // El IVA se calcula por grupo de tipo: 3 x 50.50 al 16 % + 130.22 al 0 %
+        SaleRecord priced = SaleTotals.compute(sale(SaleRecord.item(1, 3), SaleRecord.item(3, 1)), PRICES, rates);
+        assertEquals(28_172, priced.subTotalCents());
+        assertEquals(2_424, priced.ivaCents());
+        assertEquals(30_596, priced.totalCents());
+    }
+
+    @Test
+    void rateRoundsHalvesAwayFromZero() {
+        assertEquals(8, Money.rate(50, 1500));
+        assertEquals(-8, Money.rate(-50, 1500));
+        assertEquals(7, Money.rate(49, 1500));
+        assertThrows(BadRequestException.class,
+            () -> SaleTotals.compute(sale(SaleRecord.item(1, 0)), PRICES, FLAT));
+        assertThrows(ArithmeticException.class, () -> Money.times(Long.MAX_VALUE / 2, 3));
+    }
+
+    private static SaleRecord sale(long... items) {
+        return new SaleRecord(9, 1_700_000_000L, SaleRecord.NO_AMOUNT, SaleRecord.NO_AMOUNT, SaleRecord.NO_AMOUNT,
+            12, 101, items);
+    }
+}